@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient.http2;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.jettyclient.JettyClientHttpClient;
+import org.everit.http.restclient.RestClientUtil;
+
+import io.reactivex.Single;
+
+/**
+ * {@link HttpClient} that sends the requests over HTTP/2 with the Jetty HTTP/2 client. The
+ * requests to the same origin are multiplexed as streams on a few connections instead of using one
+ * connection per in-flight request. URLs with the <code>http</code> scheme are sent over h2c with
+ * prior knowledge, <code>https</code> URLs need an ALPN implementation of Jetty on the classpath.
+ *
+ * <p>
+ * The number of concurrent streams per connection that the server allows
+ * (<code>SETTINGS_MAX_CONCURRENT_STREAMS</code>) is available via
+ * {@link #getMaxConcurrentStreams(URI)}. An
+ * {@link org.everit.http.restclient.OriginRequestDispatcher} can keep the number of in-flight
+ * calls of a RestClient within the limit of the server, so the calls wait in the dispatcher (where
+ * they can be prioritized and cancelled) instead of the queue of Jetty:
+ *
+ * <pre>
+ * OriginRequestDispatcher.builder()
+ *     .maxInFlightPerOrigin(http2HttpClient::getMaxInFlight)
+ *     .build();
+ * </pre>
+ */
+public final class Http2HttpClient implements HttpClient {
+
+  /**
+   * Builder class for {@link Http2HttpClient}.
+   */
+  public static final class Builder {
+
+    private int initialMaxConcurrentStreams = DEFAULT_INITIAL_MAX_CONCURRENT_STREAMS;
+
+    private int maxConnectionsPerOrigin = DEFAULT_MAX_CONNECTIONS_PER_ORIGIN;
+
+    private Optional<SslContextFactory> sslContextFactory = Optional.empty();
+
+    private Builder() {
+    }
+
+    /**
+     * Creates and starts the client.
+     *
+     * @throws IllegalStateException
+     *           if the Jetty client cannot be started.
+     */
+    public Http2HttpClient build() {
+      return new Http2HttpClient(this);
+    }
+
+    /**
+     * The number of concurrent streams per connection that is assumed until the first connection
+     * to the origin receives the settings of the server. Default: 100, the minimum that the HTTP/2
+     * specification recommends for servers.
+     */
+    public Builder initialMaxConcurrentStreams(int initialMaxConcurrentStreams) {
+      if (initialMaxConcurrentStreams < 1) {
+        throw new IllegalArgumentException("initialMaxConcurrentStreams must be positive: "
+            + initialMaxConcurrentStreams);
+      }
+      this.initialMaxConcurrentStreams = initialMaxConcurrentStreams;
+      return this;
+    }
+
+    /**
+     * The maximum number of HTTP/2 connections per origin. Default: 1.
+     */
+    public Builder maxConnectionsPerOrigin(int maxConnectionsPerOrigin) {
+      if (maxConnectionsPerOrigin < 1) {
+        throw new IllegalArgumentException("maxConnectionsPerOrigin must be positive: "
+            + maxConnectionsPerOrigin);
+      }
+      this.maxConnectionsPerOrigin = maxConnectionsPerOrigin;
+      return this;
+    }
+
+    /**
+     * The SSL configuration of the <code>https</code> connections.
+     */
+    public Builder sslContextFactory(Optional<SslContextFactory> sslContextFactory) {
+      this.sslContextFactory = Objects.requireNonNull(sslContextFactory);
+      return this;
+    }
+  }
+
+  private static final int DEFAULT_INITIAL_MAX_CONCURRENT_STREAMS = 100;
+
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_ORIGIN = 1;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final JettyClientHttpClient delegate;
+
+  private final int initialMaxConcurrentStreams;
+
+  private final org.eclipse.jetty.client.HttpClient jettyClient;
+
+  private final int maxConnectionsPerOrigin;
+
+  private Http2HttpClient(Builder builder) {
+    this.initialMaxConcurrentStreams = builder.initialMaxConcurrentStreams;
+    this.maxConnectionsPerOrigin = builder.maxConnectionsPerOrigin;
+
+    HttpClientTransportOverHTTP2 transport = new HttpClientTransportOverHTTP2(new HTTP2Client());
+    this.jettyClient = new org.eclipse.jetty.client.HttpClient(transport,
+        builder.sslContextFactory.orElse(null));
+    this.jettyClient.setMaxConnectionsPerDestination(builder.maxConnectionsPerOrigin);
+    try {
+      this.jettyClient.start();
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot start the HTTP/2 client", e);
+    }
+    this.delegate = new JettyClientHttpClient(this.jettyClient);
+  }
+
+  /**
+   * Closes the connections and stops the Jetty client.
+   */
+  @Override
+  public void close() {
+    this.delegate.close();
+    try {
+      this.jettyClient.stop();
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot stop the HTTP/2 client", e);
+    }
+  }
+
+  /**
+   * The number of concurrent streams that the server of the origin allows per connection. Until
+   * a connection to the origin is established, the initial value of the builder is returned.
+   *
+   * @param uri
+   *          Any URI of the origin, e.g. the base path of a request.
+   * @return The maximum number of concurrent streams per connection.
+   */
+  public int getMaxConcurrentStreams(URI uri) {
+    URI origin = RestClientUtil.origin(uri);
+    for (Destination destination : this.jettyClient.getDestinations()) {
+      if (!(destination instanceof HttpDestination)
+          || !origin.getScheme().equalsIgnoreCase(destination.getScheme())
+          || !origin.getHost().equalsIgnoreCase(destination.getHost())
+          || origin.getPort() != destination.getPort()) {
+        continue;
+      }
+      ConnectionPool connectionPool = ((HttpDestination) destination).getConnectionPool();
+      if (connectionPool instanceof MultiplexConnectionPool
+          && ((MultiplexConnectionPool) connectionPool).getConnectionCount() > 0) {
+        return ((MultiplexConnectionPool) connectionPool).getMaxMultiplex();
+      }
+    }
+    return this.initialMaxConcurrentStreams;
+  }
+
+  /**
+   * The number of requests that can be in-flight to the origin without waiting in the queue of
+   * Jetty: the maximum number of connections per origin multiplied by the maximum number of
+   * concurrent streams per connection.
+   *
+   * @param uri
+   *          Any URI of the origin, e.g. the base path of a request.
+   * @return The maximum number of in-flight requests.
+   */
+  public int getMaxInFlight(URI uri) {
+    long maxInFlight = (long) this.maxConnectionsPerOrigin * getMaxConcurrentStreams(uri);
+    return (int) Math.min(Integer.MAX_VALUE, maxInFlight);
+  }
+
+  /**
+   * The maximum number of HTTP/2 connections per origin.
+   */
+  public int getMaxConnectionsPerOrigin() {
+    return this.maxConnectionsPerOrigin;
+  }
+
+  @Override
+  public Single<HttpResponse> send(HttpRequest request) {
+    return this.delegate.send(request);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient.http2;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.everit.http.restclient.OriginRequestDispatcher;
+import org.everit.http.restclient.RestClient;
+import org.everit.http.restclient.RestRequest;
+import org.everit.http.restclient.TypeReference;
+import org.everit.http.restclient.jackson.JacksonJSONObjectMapper;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.reactivex.Single;
+
+public class Http2HttpClientTest {
+
+  /**
+   * Servlet that answers slowly and records the maximum number of requests that it served at the
+   * same time.
+   */
+  private static class ConcurrencyServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp)
+        throws IOException {
+
+      int concurrent = this.concurrentRequests.incrementAndGet();
+      this.maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+      try {
+        Thread.sleep(Http2HttpClientTest.RESPONSE_DELAY_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        this.concurrentRequests.decrementAndGet();
+      }
+      byte[] body = ("{\"protocol\":\"" + req.getProtocol() + "\"}")
+          .getBytes(StandardCharsets.UTF_8);
+      resp.setContentType("application/json");
+      resp.setContentLength(body.length);
+      resp.getOutputStream().write(body);
+    }
+  }
+
+  private static final int MAX_CONCURRENT_STREAMS = 2;
+
+  private static final long RESPONSE_DELAY_MILLIS = 50;
+
+  private static Server server;
+
+  private static ServerConnector serverConnector;
+
+  private static final ConcurrencyServlet SERVLET = new ConcurrencyServlet();
+
+  /**
+   * Stops the h2c server.
+   */
+  @AfterClass
+  public static void afterClass() throws Exception {
+    if (Http2HttpClientTest.server != null) {
+      Http2HttpClientTest.server.stop();
+    }
+  }
+
+  private static String baseUri() {
+    return "http://localhost:" + Http2HttpClientTest.serverConnector.getLocalPort();
+  }
+
+  /**
+   * Starts an h2c server that allows {@value #MAX_CONCURRENT_STREAMS} concurrent streams per
+   * connection.
+   */
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    Http2HttpClientTest.server = new Server();
+    HTTP2CServerConnectionFactory connectionFactory =
+        new HTTP2CServerConnectionFactory(new HttpConfiguration());
+    connectionFactory.setMaxConcurrentStreams(Http2HttpClientTest.MAX_CONCURRENT_STREAMS);
+    Http2HttpClientTest.serverConnector =
+        new ServerConnector(Http2HttpClientTest.server, connectionFactory);
+    Http2HttpClientTest.server.addConnector(Http2HttpClientTest.serverConnector);
+
+    ServletContextHandler servletContextHandler = new ServletContextHandler();
+    servletContextHandler.addServlet(new ServletHolder(Http2HttpClientTest.SERVLET), "/*");
+    Http2HttpClientTest.server.setHandler(servletContextHandler);
+    Http2HttpClientTest.server.start();
+  }
+
+  private static RestRequest request() {
+    return RestRequest.builder()
+        .basePath(Http2HttpClientTest.baseUri())
+        .path("/concurrency")
+        .build();
+  }
+
+  @Test
+  public void testStreamAwareDispatching() {
+    Http2HttpClient httpClient = Http2HttpClient.builder().build();
+    try {
+      OriginRequestDispatcher dispatcher = OriginRequestDispatcher.builder()
+          .maxInFlightPerOrigin(httpClient::getMaxInFlight)
+          .build();
+      RestClient restClient = RestClient.builder()
+          .httpClient(httpClient)
+          .objectMapper(new JacksonJSONObjectMapper())
+          .requestDispatcher(Optional.of(dispatcher))
+          .build();
+      TypeReference<Map<String, Object>> returnType = new TypeReference<Map<String, Object>>() {
+      };
+
+      Map<String, Object> response =
+          restClient.callEndpoint(Http2HttpClientTest.request(), Optional.empty(), returnType)
+              .blockingGet();
+      Assert.assertEquals("HTTP/2.0", response.get("protocol"));
+
+      URI baseUri = URI.create(Http2HttpClientTest.baseUri());
+      Assert.assertEquals(Http2HttpClientTest.MAX_CONCURRENT_STREAMS,
+          httpClient.getMaxConcurrentStreams(baseUri));
+      Assert.assertEquals(Http2HttpClientTest.MAX_CONCURRENT_STREAMS,
+          httpClient.getMaxInFlight(baseUri));
+
+      List<Single<Map<String, Object>>> calls = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        calls.add(restClient.callEndpoint(Http2HttpClientTest.request(), Optional.empty(),
+            returnType));
+      }
+      Assert.assertEquals(Long.valueOf(10), Single.merge(calls).count().blockingGet());
+
+      Assert.assertTrue(Http2HttpClientTest.SERVLET.maxConcurrentRequests
+          .get() <= Http2HttpClientTest.MAX_CONCURRENT_STREAMS);
+      Assert.assertEquals(1, Http2HttpClientTest.serverConnector.getConnectedEndPoints().size());
+      Assert.assertEquals(0, dispatcher.getQueueLength(baseUri));
+    } finally {
+      httpClient.close();
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient.jackson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.everit.http.restclient.JSONObjectMapper;
+import org.everit.http.restclient.TypeReference;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * {@link JSONObjectMapper} implementation based on the streaming API of Jackson. The
+ * {@link ObjectReader} instances are cached per type and the {@link ObjectWriter} is created only
+ * once, so the deserializer and serializer lookups are not repeated for every call. Value
+ * conversion is done via a {@link TokenBuffer}, so no JSON text is generated in between.
+ */
+public class JacksonJSONObjectMapper implements JSONObjectMapper {
+
+  /**
+   * Builder to build {@link JacksonJSONObjectMapper}.
+   */
+  public static final class Builder {
+
+    private boolean bytecodeGeneratedAccessors = false;
+
+    private final List<Module> modules = new ArrayList<>();
+
+    private ObjectMapper objectMapper;
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the object mapper instance.
+     */
+    public JacksonJSONObjectMapper build() {
+      return new JacksonJSONObjectMapper(this);
+    }
+
+    /**
+     * Whether the Jackson Afterburner module should be registered that replaces the reflection
+     * based property access with generated bytecode. The jackson-module-afterburner library must be
+     * available on the classpath if this is set to <code>true</code>. It is ignored in native
+     * images, where bytecode cannot be generated at runtime. Default: <code>false</code>.
+     */
+    public Builder bytecodeGeneratedAccessors(boolean bytecodeGeneratedAccessors) {
+      this.bytecodeGeneratedAccessors = bytecodeGeneratedAccessors;
+      return this;
+    }
+
+    /**
+     * Registers an additional Jackson module on the underlying {@link ObjectMapper}.
+     */
+    public Builder module(Module module) {
+      this.modules.add(Objects.requireNonNull(module));
+      return this;
+    }
+
+    /**
+     * The Jackson {@link ObjectMapper} whose configuration is used to create the readers and
+     * writers. The instance is copied when the {@link JacksonJSONObjectMapper} is built, so the
+     * modules are registered on the copy and the instance of the caller is not modified. Default:
+     * the result of {@link JacksonJSONObjectMapper#createDefaultObjectMapper()}.
+     */
+    public Builder objectMapper(ObjectMapper objectMapper) {
+      this.objectMapper = objectMapper;
+      return this;
+    }
+  }
+
+  private static final String AFTERBURNER_MODULE_CLASS =
+      "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+  /**
+   * System property that is set by GraalVM when the code runs in a native image.
+   */
+  private static final String NATIVE_IMAGE_CODE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+
+  /**
+   * Creates builder to build {@link JacksonJSONObjectMapper}.
+   *
+   * @return created builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Creates an {@link ObjectMapper} that works for Atlassian REST requests: unknown properties are
+   * ignored and enums are converted via their <code>toString()</code> method.
+   */
+  public static ObjectMapper createDefaultObjectMapper() {
+    return new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .configure(DeserializationFeature.READ_ENUMS_USING_TO_STRING, true)
+        .configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true);
+  }
+
+  private static Module createAfterburnerModule() {
+    try {
+      Class<?> moduleClass = Class.forName(JacksonJSONObjectMapper.AFTERBURNER_MODULE_CLASS, true,
+          JacksonJSONObjectMapper.class.getClassLoader());
+      return (Module) moduleClass.getConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      throw new IllegalStateException(
+          "Bytecode generated accessors are requested but jackson-module-afterburner is not"
+              + " available",
+          e);
+    }
+  }
+
+  private final ObjectMapper objectMapper;
+
+  private final ConcurrentMap<Type, ObjectReader> readerCache = new ConcurrentHashMap<>();
+
+  private final ObjectWriter writer;
+
+  /**
+   * Creates a new instance with the default configuration.
+   */
+  public JacksonJSONObjectMapper() {
+    this(JacksonJSONObjectMapper.builder());
+  }
+
+  private JacksonJSONObjectMapper(Builder builder) {
+    this.objectMapper = builder.objectMapper != null
+        ? builder.objectMapper.copy()
+        : JacksonJSONObjectMapper.createDefaultObjectMapper();
+
+    if (builder.bytecodeGeneratedAccessors
+        && System.getProperty(JacksonJSONObjectMapper.NATIVE_IMAGE_CODE_PROPERTY) == null) {
+      this.objectMapper.registerModule(JacksonJSONObjectMapper.createAfterburnerModule());
+    }
+    for (Module module : builder.modules) {
+      this.objectMapper.registerModule(module);
+    }
+
+    this.writer = this.objectMapper.writer();
+  }
+
+  @Override
+  public <T> T convertValue(Object fromValue, Class<T> toValueType) {
+    return convertValue(fromValue, (Type) toValueType);
+  }
+
+  @Override
+  public <T> T convertValue(Object fromValue, TypeReference<T> toValueTypeRef) {
+    return convertValue(fromValue, toValueTypeRef.getType());
+  }
+
+  private <T> T convertValue(Object fromValue, Type toValueType) {
+    if (fromValue == null) {
+      return null;
+    }
+
+    if (toValueType instanceof Class && toValueType != Object.class
+        && ((Class<?>) toValueType).isInstance(fromValue)) {
+      @SuppressWarnings("unchecked")
+      T result = (T) fromValue;
+      return result;
+    }
+
+    try (TokenBuffer tokenBuffer = new TokenBuffer(this.objectMapper, false)) {
+      this.writer.writeValue(tokenBuffer, fromValue);
+      try (JsonParser parser = tokenBuffer.asParser()) {
+        return readerFor(toValueType).readValue(parser);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public <T> T fromJSON(byte[] json, int offset, int length, Class<T> valueType) {
+    try {
+      return readerFor(valueType).readValue(json, offset, length);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public <T> T fromJSON(byte[] json, int offset, int length, TypeReference<T> valueTypeRef) {
+    try {
+      return readerFor(valueTypeRef.getType()).readValue(json, offset, length);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public <T> T fromJSON(InputStream json, TypeReference<T> valueTypeRef) {
+    try {
+      return readerFor(valueTypeRef.getType()).readValue(json);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public <T> T fromJSON(String json, Class<T> valueType) {
+    try {
+      return readerFor(valueType).readValue(json);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public <T> T fromJSON(String json, TypeReference<T> valueTypeRef) {
+    try {
+      return readerFor(valueTypeRef.getType()).readValue(json);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * The types that have a cached {@link ObjectReader}.
+   */
+  public Set<Type> getCachedTypes() {
+    return Collections.unmodifiableSet(this.readerCache.keySet());
+  }
+
+  /**
+   * The underlying Jackson {@link ObjectMapper}. It must not be re-configured.
+   */
+  public ObjectMapper getObjectMapper() {
+    return this.objectMapper;
+  }
+
+  @Override
+  public void prepare(Type type) {
+    readerFor(type);
+  }
+
+  private ObjectReader readerFor(Type type) {
+    ObjectReader reader = this.readerCache.get(type);
+    if (reader != null) {
+      return reader;
+    }
+    return this.readerCache.computeIfAbsent(type,
+        key -> this.objectMapper.readerFor(this.objectMapper.getTypeFactory().constructType(key))
+            .without(JsonParser.Feature.AUTO_CLOSE_SOURCE));
+  }
+
+  @Override
+  public String toJSON(Object object) {
+    try {
+      return this.writer.writeValueAsString(object);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public byte[] toJSONBytes(Object object) {
+    try {
+      return this.writer.writeValueAsBytes(object);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
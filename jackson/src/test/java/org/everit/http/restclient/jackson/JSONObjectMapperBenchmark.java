@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient.jackson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.everit.http.restclient.JSONObjectMapper;
+import org.everit.http.restclient.TypeReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares {@link JacksonJSONObjectMapper} to a naive {@link JSONObjectMapper} implementation that
+ * decodes via Strings and converts values with a JSON text round trip. Run it with the
+ * {@link #main(String[])} function from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JSONObjectMapperBenchmark {
+
+  /**
+   * Sample DTO that looks like a shortened Jira issue.
+   */
+  public static class Issue {
+
+    @JsonProperty("fields")
+    public Map<String, Object> fields;
+
+    @JsonProperty("id")
+    public String id;
+
+    @JsonProperty("key")
+    public String key;
+  }
+
+  /**
+   * Sample DTO that looks like a Jira search result.
+   */
+  public static class SearchResult {
+
+    @JsonProperty("issues")
+    public List<Issue> issues;
+
+    @JsonProperty("total")
+    public int total;
+  }
+
+  /**
+   * The way most consumers implement {@link JSONObjectMapper}: a new type reference for every call,
+   * String based decoding and value conversion via JSON text.
+   */
+  private static class NaiveJSONObjectMapper implements JSONObjectMapper {
+
+    private final ObjectMapper objectMapper = JacksonJSONObjectMapper.createDefaultObjectMapper();
+
+    @Override
+    public <T> T convertValue(Object fromValue, Class<T> toValueType) {
+      return fromJSON(toJSON(fromValue), toValueType);
+    }
+
+    @Override
+    public <T> T convertValue(Object fromValue, TypeReference<T> toValueTypeRef) {
+      return fromJSON(toJSON(fromValue), toValueTypeRef);
+    }
+
+    @Override
+    public <T> T fromJSON(String json, Class<T> valueType) {
+      try {
+        return this.objectMapper.readValue(json, valueType);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public <T> T fromJSON(String json, TypeReference<T> valueTypeRef) {
+      Type type = valueTypeRef.getType();
+      try {
+        return this.objectMapper.readValue(json,
+            new com.fasterxml.jackson.core.type.TypeReference<T>() {
+              @Override
+              public Type getType() {
+                return type;
+              }
+            });
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public String toJSON(Object object) {
+      try {
+        return this.objectMapper.writeValueAsString(object);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private static final TypeReference<SearchResult> SEARCH_RESULT_TYPE =
+      new TypeReference<SearchResult>() {
+      };
+
+  /**
+   * Runs the benchmark.
+   */
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(JSONObjectMapperBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  private JSONObjectMapper jackson;
+
+  private byte[] json;
+
+  private Map<String, Object> jsonTree;
+
+  private JSONObjectMapper naive;
+
+  @Param({ "10", "1000" })
+  public int numberOfIssues;
+
+  @Benchmark
+  public SearchResult convertValueJackson() {
+    return this.jackson.convertValue(this.jsonTree, JSONObjectMapperBenchmark.SEARCH_RESULT_TYPE);
+  }
+
+  @Benchmark
+  public SearchResult convertValueNaive() {
+    return this.naive.convertValue(this.jsonTree, JSONObjectMapperBenchmark.SEARCH_RESULT_TYPE);
+  }
+
+  @Benchmark
+  public SearchResult fromJSONJackson() {
+    return this.jackson.fromJSON(this.json, 0, this.json.length,
+        JSONObjectMapperBenchmark.SEARCH_RESULT_TYPE);
+  }
+
+  @Benchmark
+  public SearchResult fromJSONNaive() {
+    return this.naive.fromJSON(this.json, 0, this.json.length,
+        JSONObjectMapperBenchmark.SEARCH_RESULT_TYPE);
+  }
+
+  /**
+   * Generates the sample search result.
+   */
+  @Setup
+  public void setup() {
+    this.naive = new NaiveJSONObjectMapper();
+    this.jackson = new JacksonJSONObjectMapper();
+
+    SearchResult searchResult = new SearchResult();
+    searchResult.total = this.numberOfIssues;
+    searchResult.issues = new ArrayList<>();
+    for (int i = 0; i < this.numberOfIssues; i++) {
+      Issue issue = new Issue();
+      issue.id = String.valueOf(10000 + i);
+      issue.key = "TEST-" + i;
+      issue.fields = new LinkedHashMap<>();
+      issue.fields.put("summary", "Summary of issue " + i);
+      issue.fields.put("description", "Description of issue " + i + " with some longer text");
+      issue.fields.put("customfield_10000", i);
+      searchResult.issues.add(issue);
+    }
+
+    this.json = this.jackson.toJSONBytes(searchResult);
+    this.jsonTree = this.jackson.convertValue(searchResult,
+        new TypeReference<Map<String, Object>>() {
+        });
+
+    if (!new String(this.json, StandardCharsets.UTF_8)
+        .equals(this.naive.toJSON(searchResult))) {
+      throw new IllegalStateException("The two implementations must generate the same JSON");
+    }
+  }
+
+  @Benchmark
+  public byte[] toJSONJackson() {
+    return this.jackson.toJSONBytes(this.jsonTree);
+  }
+
+  @Benchmark
+  public byte[] toJSONNaive() {
+    return this.naive.toJSONBytes(this.jsonTree);
+  }
+}
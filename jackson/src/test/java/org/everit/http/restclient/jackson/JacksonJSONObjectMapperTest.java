@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient.jackson;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.everit.http.restclient.TypeReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+public class JacksonJSONObjectMapperTest {
+
+  public static class Foo {
+
+    @JsonProperty("name")
+    public String name;
+
+    @JsonProperty("values")
+    public List<Integer> values;
+  }
+
+  private final JacksonJSONObjectMapper objectMapper = new JacksonJSONObjectMapper();
+
+  @Test
+  public void testCallerObjectMapperIsNotModified() {
+    ObjectMapper callerObjectMapper = JacksonJSONObjectMapper.createDefaultObjectMapper();
+
+    JacksonJSONObjectMapper.builder()
+        .objectMapper(callerObjectMapper)
+        .module(new SimpleModule("test-module"))
+        .build();
+
+    Assert.assertTrue(callerObjectMapper.getRegisteredModuleIds().isEmpty());
+  }
+
+  @Test
+  public void testConvertValueFromMap() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("name", "foo");
+    map.put("values", Arrays.asList(1, 2));
+    map.put("unknown", Boolean.TRUE);
+
+    Foo foo = this.objectMapper.convertValue(map, Foo.class);
+
+    Assert.assertEquals("foo", foo.name);
+    Assert.assertEquals(Arrays.asList(1, 2), foo.values);
+  }
+
+  @Test
+  public void testConvertValueToGenericType() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("name", "foo");
+
+    List<Foo> result = this.objectMapper.convertValue(Collections.singletonList(map),
+        new TypeReference<List<Foo>>() {
+        });
+
+    Assert.assertEquals(1, result.size());
+    Assert.assertEquals("foo", result.get(0).name);
+  }
+
+  @Test
+  public void testFromJSONBytesRegion() {
+    byte[] bytes = "xx{\"name\":\"foo\"}yy".getBytes(StandardCharsets.UTF_8);
+
+    Foo foo = this.objectMapper.fromJSON(bytes, 2, bytes.length - 4, Foo.class);
+
+    Assert.assertEquals("foo", foo.name);
+  }
+
+  @Test
+  public void testFromJSONStreamDoesNotCloseStream() {
+    AtomicBoolean closed = new AtomicBoolean();
+    ByteArrayInputStream in = new ByteArrayInputStream(
+        "[{\"name\":\"a\"},{\"name\":\"b\"}]".getBytes(StandardCharsets.UTF_8)) {
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+
+    List<Foo> result = this.objectMapper.fromJSON(in, new TypeReference<List<Foo>>() {
+    });
+
+    Assert.assertEquals(2, result.size());
+    Assert.assertEquals("b", result.get(1).name);
+    Assert.assertFalse(closed.get());
+  }
+
+  @Test
+  public void testReaderIsCachedPerType() {
+    this.objectMapper.fromJSON("{}", Foo.class);
+    this.objectMapper.fromJSON("{}", new TypeReference<Foo>() {
+    });
+
+    Assert.assertEquals(Collections.singleton(Foo.class), this.objectMapper.getCachedTypes());
+  }
+
+  @Test
+  public void testToJSONBytes() {
+    Foo foo = new Foo();
+    foo.name = "foo";
+    foo.values = Arrays.asList(1);
+
+    String json = new String(this.objectMapper.toJSONBytes(foo), StandardCharsets.UTF_8);
+
+    Assert.assertEquals("{\"name\":\"foo\",\"values\":[1]}", json);
+  }
+}
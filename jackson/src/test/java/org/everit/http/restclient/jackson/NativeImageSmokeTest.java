@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient.jackson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.everit.http.restclient.FieldProjection;
+import org.everit.http.restclient.LazyJSONDocument;
+import org.everit.http.restclient.Types;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Decodes JSON with {@link Types} based type references and computes field projections. It runs
+ * on the JVM in every build and as a native image with the <code>native</code> profile, where only
+ * the DTOs of the test are registered for reflection.
+ */
+public class NativeImageSmokeTest {
+
+  /**
+   * DTO that is registered in the reflect-config.json of the test resources.
+   */
+  public static class Issue {
+
+    public Map<String, List<String>> fields;
+
+    public String key;
+  }
+
+  /**
+   * DTO that is registered in the reflect-config.json of the test resources.
+   */
+  public static class ProjectedIssue {
+
+    public ProjectedIssueFields fields;
+
+    public String key;
+  }
+
+  /**
+   * DTO that is registered in the reflect-config.json of the test resources.
+   */
+  public static class ProjectedIssueFields {
+
+    @JsonIgnore
+    public String internal;
+
+    @JsonProperty("customfield_10000")
+    public Double storyPoints;
+
+    public String summary;
+  }
+
+  private static final String JSON = "{\"issues\":["
+      + "{\"key\":\"SIM-1\",\"fields\":{\"labels\":[\"a\",\"b\"]}},"
+      + "{\"key\":\"SIM-2\",\"fields\":{\"labels\":[]}}]}";
+
+  private final JacksonJSONObjectMapper objectMapper = JacksonJSONObjectMapper.builder()
+      .bytecodeGeneratedAccessors(true)
+      .build();
+
+  @Test
+  public void testDecodeWithTypes() {
+    Map<String, List<Issue>> result = this.objectMapper.fromJSON(NativeImageSmokeTest.JSON,
+        Types.mapOf(String.class, Types.listOf(Issue.class)));
+
+    List<Issue> issues = result.get("issues");
+    Assert.assertEquals(2, issues.size());
+    Assert.assertEquals("SIM-1", issues.get(0).key);
+    Assert.assertEquals(2, issues.get(0).fields.get("labels").size());
+  }
+
+  @Test
+  public void testFieldProjection() {
+    Map<String, Collection<String>> projection = FieldProjection.builder().build()
+        .getProjection(Types.listOf(ProjectedIssue.class).getType());
+
+    Assert.assertEquals(
+        Collections.singletonMap("fields", Collections.singleton("customfield_10000,summary")),
+        projection);
+  }
+
+  @Test
+  public void testLazyDocument() {
+    LazyJSONDocument document = new LazyJSONDocument(
+        NativeImageSmokeTest.JSON.getBytes(StandardCharsets.UTF_8), this.objectMapper);
+
+    Assert.assertEquals("SIM-2", document.get("/issues/1/key", String.class).get());
+    Assert.assertEquals(2, document.get("/issues/0/fields/labels", Types.listOf(String.class))
+        .get().size());
+  }
+}
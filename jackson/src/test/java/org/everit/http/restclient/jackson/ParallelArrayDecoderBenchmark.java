@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient.jackson;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.everit.http.restclient.JSONObjectMapper;
+import org.everit.http.restclient.LazyJSONDocument;
+import org.everit.http.restclient.ParallelArrayDecoder;
+import org.everit.http.restclient.TypeReference;
+import org.everit.http.restclient.Types;
+import org.everit.http.restclient.jackson.JSONObjectMapperBenchmark.Issue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the single threaded conversion of a JSON array to the conversion with
+ * {@link ParallelArrayDecoder} at different document sizes and parallelism levels. The size at
+ * which the parallel variant gets faster is the threshold that should be configured for the
+ * decoder on the measured machine. Run it with the {@link #main(String[])} function from the test
+ * classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelArrayDecoderBenchmark {
+
+  private static final TypeReference<Issue> ISSUE_TYPE = Types.of(Issue.class);
+
+  private static final TypeReference<List<Issue>> ISSUE_LIST_TYPE = Types.listOf(Issue.class);
+
+  /**
+   * Runs the benchmark.
+   */
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ParallelArrayDecoderBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  private ParallelArrayDecoder decoder;
+
+  private JSONObjectMapper jackson;
+
+  private byte[] json;
+
+  private ForkJoinPool pool;
+
+  /**
+   * The number of issues in the array. One issue is about 150 bytes, so the documents are about
+   * 15 KB, 150 KB, 1.5 MB and 15 MB long.
+   */
+  @Param({ "100", "1000", "10000", "100000" })
+  public int numberOfIssues;
+
+  @Param({ "2", "8", "32" })
+  public int parallelism;
+
+  @Benchmark
+  public List<Issue> parallel() {
+    return this.decoder.decode(new LazyJSONDocument(this.json, this.jackson), "",
+        ParallelArrayDecoderBenchmark.ISSUE_TYPE).get();
+  }
+
+  @Benchmark
+  public List<Issue> sequential() {
+    return this.jackson.fromJSON(this.json, 0, this.json.length,
+        ParallelArrayDecoderBenchmark.ISSUE_LIST_TYPE);
+  }
+
+  /**
+   * Generates the sample array and starts the pool.
+   */
+  @Setup
+  public void setup() {
+    this.jackson = new JacksonJSONObjectMapper();
+    this.pool = new ForkJoinPool(this.parallelism);
+    this.decoder = ParallelArrayDecoder.builder()
+        .pool(this.pool)
+        .build();
+
+    List<Issue> issues = new ArrayList<>();
+    for (int i = 0; i < this.numberOfIssues; i++) {
+      Issue issue = new Issue();
+      issue.id = String.valueOf(10000 + i);
+      issue.key = "TEST-" + i;
+      issue.fields = new LinkedHashMap<>();
+      issue.fields.put("summary", "Summary of issue " + i);
+      issue.fields.put("description", "Description of issue " + i + " with some longer text");
+      issue.fields.put("customfield_10000", i);
+      issues.add(issue);
+    }
+    this.json = this.jackson.toJSONBytes(issues);
+  }
+
+  /**
+   * Stops the pool.
+   */
+  @TearDown
+  public void tearDown() {
+    this.pool.shutdown();
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Options of the batch calls of {@link RestClient}.
+ */
+public final class BatchOptions {
+
+  /**
+   * Builder to build {@link BatchOptions}.
+   */
+  public static final class Builder {
+
+    private int maxInFlight = BatchOptions.DEFAULT_MAX_IN_FLIGHT;
+
+    private boolean ordered = true;
+
+    private Optional<BatchStatistics> statistics = Optional.empty();
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the unmodifiable batch options instance.
+     */
+    public BatchOptions build() {
+      return new BatchOptions(this);
+    }
+
+    /**
+     * The maximum number of requests that are sent out and not processed yet. New requests are
+     * taken from the source only if the number of in-flight requests is below this limit. Default:
+     * 16.
+     */
+    public Builder maxInFlight(int maxInFlight) {
+      if (maxInFlight < 1) {
+        throw new IllegalArgumentException("Max in-flight must be positive");
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * Whether the results should be emitted in the same order as the requests arrived from the
+     * source. If <code>false</code>, the results are emitted in the order of completion. Default:
+     * <code>true</code>.
+     */
+    public Builder ordered(boolean ordered) {
+      this.ordered = ordered;
+      return this;
+    }
+
+    /**
+     * If specified, the aggregate statistics of the batch are collected into this instance.
+     */
+    public Builder statistics(Optional<BatchStatistics> statistics) {
+      this.statistics = Objects.requireNonNull(statistics);
+      return this;
+    }
+  }
+
+  private static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+  /**
+   * Creates builder to build {@link BatchOptions}.
+   *
+   * @return created builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final int maxInFlight;
+
+  private final boolean ordered;
+
+  private final Optional<BatchStatistics> statistics;
+
+  private BatchOptions(Builder builder) {
+    this.maxInFlight = builder.maxInFlight;
+    this.ordered = builder.ordered;
+    this.statistics = builder.statistics;
+  }
+
+  /**
+   * The maximum number of requests that are sent out and not processed yet.
+   */
+  public int getMaxInFlight() {
+    return this.maxInFlight;
+  }
+
+  /**
+   * The instance that collects the aggregate statistics of the batch if specified.
+   */
+  public Optional<BatchStatistics> getStatistics() {
+    return this.statistics;
+  }
+
+  /**
+   * Whether the results are emitted in the same order as the requests arrived from the source.
+   */
+  public boolean isOrdered() {
+    return this.ordered;
+  }
+}
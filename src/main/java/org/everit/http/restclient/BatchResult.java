@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Optional;
+
+/**
+ * The outcome of one request of a batch call of {@link RestClient}. A failing request does not
+ * abort the batch, its exception is available via {@link #getError()}.
+ *
+ * @param <T>
+ *          Type of the response body.
+ */
+public final class BatchResult<T> {
+
+  static <T> BatchResult<T> failure(long index, RestRequest request, Throwable error,
+      long latencyNanos) {
+    return new BatchResult<>(index, request, null, error, latencyNanos);
+  }
+
+  static <T> BatchResult<T> success(long index, RestRequest request, T value,
+      long latencyNanos) {
+    return new BatchResult<>(index, request, value, null, latencyNanos);
+  }
+
+  private final Throwable error;
+
+  private final long index;
+
+  private final long latencyNanos;
+
+  private final RestRequest request;
+
+  private final T value;
+
+  private BatchResult(long index, RestRequest request, T value, Throwable error,
+      long latencyNanos) {
+    this.index = index;
+    this.request = request;
+    this.value = value;
+    this.error = error;
+    this.latencyNanos = latencyNanos;
+  }
+
+  /**
+   * The exception of the call if it failed.
+   */
+  public Optional<Throwable> getError() {
+    return Optional.ofNullable(this.error);
+  }
+
+  /**
+   * The zero based position of the request within the source of the batch.
+   */
+  public long getIndex() {
+    return this.index;
+  }
+
+  /**
+   * The time in nanoseconds that passed between sending the request and processing the response.
+   */
+  public long getLatencyNanos() {
+    return this.latencyNanos;
+  }
+
+  /**
+   * The request that was used to call the endpoint.
+   */
+  public RestRequest getRequest() {
+    return this.request;
+  }
+
+  /**
+   * The converted response body if the call succeeded.
+   */
+  public Optional<T> getValue() {
+    return Optional.ofNullable(this.value);
+  }
+
+  /**
+   * Whether the call succeeded.
+   */
+  public boolean isSuccess() {
+    return this.error == null;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregate statistics of batch calls of {@link RestClient}. The same instance can be passed to
+ * several batches, in that case the statistics are summarized. All getters can be called while the
+ * batches are running.
+ */
+public final class BatchStatistics {
+
+  private final AtomicInteger activeBatches = new AtomicInteger();
+
+  private final LongAdder failed = new LongAdder();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  private final AtomicLong runningNanos = new AtomicLong();
+
+  private final AtomicLong startNanos = new AtomicLong();
+
+  private final LongAdder started = new LongAdder();
+
+  private final LongAdder succeeded = new LongAdder();
+
+  private final LongAdder totalLatencyNanos = new LongAdder();
+
+  /**
+   * The average latency of the finished requests in nanoseconds.
+   */
+  public long getAverageLatencyNanos() {
+    long finished = getFinished();
+    return finished == 0 ? 0 : this.totalLatencyNanos.sum() / finished;
+  }
+
+  /**
+   * The time in nanoseconds while at least one batch was running.
+   */
+  public long getElapsedNanos() {
+    long elapsed = this.runningNanos.get();
+    if (this.activeBatches.get() > 0) {
+      elapsed += System.nanoTime() - this.startNanos.get();
+    }
+    return elapsed;
+  }
+
+  /**
+   * The number of failed requests.
+   */
+  public long getFailed() {
+    return this.failed.sum();
+  }
+
+  /**
+   * The number of finished requests, either succeeded or failed.
+   */
+  public long getFinished() {
+    return this.succeeded.sum() + this.failed.sum();
+  }
+
+  /**
+   * The number of requests that are sent out and not processed yet.
+   */
+  public int getInFlight() {
+    return this.inFlight.get();
+  }
+
+  /**
+   * The highest number of requests that were in-flight at the same time.
+   */
+  public int getMaxInFlight() {
+    return this.maxInFlight.get();
+  }
+
+  /**
+   * The number of requests that were sent out.
+   */
+  public long getStarted() {
+    return this.started.sum();
+  }
+
+  /**
+   * The number of succeeded requests.
+   */
+  public long getSucceeded() {
+    return this.succeeded.sum();
+  }
+
+  /**
+   * The number of finished requests per second while the batches were running.
+   */
+  public double getThroughput() {
+    long elapsedNanos = getElapsedNanos();
+    if (elapsedNanos == 0) {
+      return 0;
+    }
+    return (double) getFinished() * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  void onBatchFinish() {
+    if (this.activeBatches.decrementAndGet() == 0) {
+      this.runningNanos.addAndGet(System.nanoTime() - this.startNanos.get());
+    }
+  }
+
+  void onBatchStart() {
+    if (this.activeBatches.getAndIncrement() == 0) {
+      this.startNanos.set(System.nanoTime());
+    }
+  }
+
+  void onRequestFinish(boolean success, long latencyNanos) {
+    this.inFlight.decrementAndGet();
+    if (success) {
+      this.succeeded.increment();
+    } else {
+      this.failed.increment();
+    }
+    this.totalLatencyNanos.add(latencyNanos);
+  }
+
+  void onRequestStart() {
+    this.started.increment();
+    int currentInFlight = this.inFlight.incrementAndGet();
+    this.maxInFlight.accumulateAndGet(currentInFlight, Math::max);
+  }
+
+  @Override
+  public String toString() {
+    return "BatchStatistics [started=" + getStarted() + ", succeeded=" + getSucceeded()
+        + ", failed=" + getFailed() + ", inFlight=" + getInFlight() + ", maxInFlight="
+        + getMaxInFlight() + ", averageLatencyNanos=" + getAverageLatencyNanos()
+        + ", throughput=" + getThroughput() + "]";
+  }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Synchronous facade of {@link RestClient} for code that is written in a blocking style. The
+ * blocking calls wait with {@link java.util.concurrent.locks.LockSupport#park()} based primitives
+ * and the class does not use <code>synchronized</code> blocks, so a virtual thread that waits for a
+ * response is unmounted from its carrier thread instead of pinning it.
+ *
+ * <p>
+ * The fan-out functions run the tasks on the executor of this instance. By default it is a virtual
+ * thread per task executor if the JVM supports it (Java 21 or newer), otherwise a cached thread
+ * pool with daemon threads.
+ */
+public class BlockingRestClient implements AutoCloseable {
+
+  /**
+   * The state of one {@link #invokeAll(List)} call.
+   */
+  private static final class Fork<T> {
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private final CountDownLatch finished;
+
+    private final List<Subtask<T>> subtasks;
+
+    Fork(int size) {
+      this.finished = new CountDownLatch(size);
+      this.subtasks = new ArrayList<>(size);
+    }
+
+    void fail(AtomicBoolean failingSubtaskStarted, Throwable cause) {
+      if (!this.failure.compareAndSet(null, cause)) {
+        return;
+      }
+      for (Subtask<T> subtask : this.subtasks) {
+        if (subtask.started != failingSubtaskStarted) {
+          if (subtask.started.compareAndSet(false, true)) {
+            // The callable will not be executed so it will not count down
+            this.finished.countDown();
+          }
+          subtask.cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * A task of a {@link Fork} that counts down the latch of the fork exactly once, even if it is
+   * cancelled before it could start. Failures are registered in the fork before counting down.
+   */
+  private static final class Subtask<T> extends FutureTask<T> {
+
+    private final AtomicBoolean started;
+
+    Subtask(Fork<T> fork, Callable<? extends T> callable) {
+      this(fork, callable, new AtomicBoolean());
+    }
+
+    private Subtask(Fork<T> fork, Callable<? extends T> callable, AtomicBoolean started) {
+      super(() -> {
+        if (!started.compareAndSet(false, true)) {
+          return null;
+        }
+        try {
+          return callable.call();
+        } catch (Exception | Error e) {
+          fork.fail(started, e);
+          throw e;
+        } finally {
+          fork.finished.countDown();
+        }
+      });
+      this.started = started;
+    }
+  }
+
+  private static final String VIRTUAL_THREAD_EXECUTOR_FACTORY_METHOD =
+      "newVirtualThreadPerTaskExecutor";
+
+  private static ExecutorService createDefaultExecutor() {
+    try {
+      Method factoryMethod =
+          Executors.class.getMethod(BlockingRestClient.VIRTUAL_THREAD_EXECUTOR_FACTORY_METHOD);
+      return (ExecutorService) factoryMethod.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "blocking-restclient");
+        thread.setDaemon(true);
+        return thread;
+      });
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static RuntimeException propagate(Throwable throwable) {
+    if (throwable instanceof RuntimeException) {
+      return (RuntimeException) throwable;
+    }
+    if (throwable instanceof Error) {
+      throw (Error) throwable;
+    }
+    if (throwable instanceof IOException) {
+      return new UncheckedIOException((IOException) throwable);
+    }
+    return new RuntimeException(throwable);
+  }
+
+  private final ExecutorService executor;
+
+  private final boolean ownExecutor;
+
+  private final RestClient restClient;
+
+  /**
+   * Creates a new instance that uses virtual threads for the fan-out functions if they are
+   * supported by the JVM.
+   *
+   * @param restClient
+   *          The rest client that sends the requests.
+   */
+  public BlockingRestClient(RestClient restClient) {
+    this(restClient, BlockingRestClient.createDefaultExecutor(), true);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param restClient
+   *          The rest client that sends the requests.
+   * @param executor
+   *          The executor that runs the tasks of the fan-out functions. It is not shut down when
+   *          this instance is closed.
+   */
+  public BlockingRestClient(RestClient restClient, ExecutorService executor) {
+    this(restClient, executor, false);
+  }
+
+  private BlockingRestClient(RestClient restClient, ExecutorService executor,
+      boolean ownExecutor) {
+    this.restClient = Objects.requireNonNull(restClient);
+    this.executor = Objects.requireNonNull(executor);
+    this.ownExecutor = ownExecutor;
+  }
+
+  private <T> T await(Single<T> single) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    Disposable disposable = single.subscribe(future::complete, future::completeExceptionally);
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      disposable.dispose();
+      Thread.currentThread().interrupt();
+      CancellationException cancellationException =
+          new CancellationException("Interrupted while waiting for the response");
+      cancellationException.initCause(e);
+      throw cancellationException;
+    } catch (ExecutionException e) {
+      throw BlockingRestClient.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Calls a rest endpoint and waits for the response. If the waiting thread is interrupted, the
+   * call is cancelled and a {@link CancellationException} is thrown.
+   *
+   * @param <T>
+   *          Type of the response body.
+   * @param restRequest
+   *          The request that is used to call the endpoint.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest request before sending it.
+   * @param returnType
+   *          Type of the response body.
+   * @return The response body converted to the return type.
+   * @throws RestException
+   *           if the status of the response is an error code.
+   */
+  public <T> T call(RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer,
+      TypeReference<T> returnType) {
+    return await(this.restClient.callEndpoint(restRequest, requestEnhancer, returnType));
+  }
+
+  /**
+   * Calls all rest endpoints concurrently and waits for their responses. If any of the calls fails,
+   * the other calls are cancelled and the exception of the first failure is thrown after all calls
+   * are finished.
+   *
+   * @param <T>
+   *          Type of the response bodies.
+   * @param restRequests
+   *          The requests that are used to call the endpoints.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest requests before sending them.
+   * @param returnType
+   *          Type of the response bodies.
+   * @return The response bodies in the same order as the requests were passed.
+   */
+  public <T> List<T> callAll(List<RestRequest> restRequests,
+      Optional<RestRequestEnhancer> requestEnhancer, TypeReference<T> returnType) {
+
+    List<Callable<T>> tasks = new ArrayList<>(restRequests.size());
+    for (RestRequest restRequest : restRequests) {
+      tasks.add(() -> call(restRequest, requestEnhancer, returnType));
+    }
+    return invokeAll(tasks);
+  }
+
+  /**
+   * Calls a rest endpoint where there is no response body and waits until the response arrives.
+   *
+   * @param restRequest
+   *          The request that is used to call the endpoint.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest request before sending it.
+   * @throws RestException
+   *           if the status of the response is an error code.
+   */
+  public void callVoid(RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer) {
+    await(this.restClient.callEndpoint(restRequest, requestEnhancer)
+        .toSingleDefault(Boolean.TRUE));
+  }
+
+  /**
+   * Shuts down the executor if it was created by this instance.
+   */
+  @Override
+  public void close() {
+    if (this.ownExecutor) {
+      this.executor.shutdown();
+    }
+  }
+
+  /**
+   * Checks whether the resource of the request exists and waits for the answer. See
+   * {@link RestClient#exists(RestRequest, Optional)}.
+   *
+   * @param restRequest
+   *          The request that is used to call the endpoint.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest request before sending it.
+   * @return <code>true</code> if the status of the response is below 400, <code>false</code> if it
+   *         is 404.
+   * @throws RestException
+   *           if the status of the response is an error code other than 404.
+   */
+  public boolean exists(RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer) {
+    return await(this.restClient.exists(restRequest, requestEnhancer));
+  }
+
+  public RestClient getRestClient() {
+    return this.restClient;
+  }
+
+  /**
+   * Runs the tasks concurrently and waits until all of them are finished. If any of the tasks
+   * fails, the other tasks are cancelled by interrupting their threads and the exception of the
+   * first failure is thrown. No task is running anymore when this function returns or throws.
+   *
+   * @param <T>
+   *          Type of the results of the tasks.
+   * @param tasks
+   *          The tasks to run.
+   * @return The results of the tasks in the same order as the tasks were passed.
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<? extends T>> tasks) {
+    Fork<T> fork = new Fork<>(tasks.size());
+    for (Callable<? extends T> task : tasks) {
+      fork.subtasks.add(new Subtask<>(fork, task));
+    }
+
+    for (Subtask<T> subtask : fork.subtasks) {
+      try {
+        this.executor.execute(subtask);
+      } catch (RejectedExecutionException e) {
+        fork.fail(null, e);
+        break;
+      }
+    }
+
+    boolean interrupted = false;
+    while (fork.finished.getCount() > 0) {
+      try {
+        fork.finished.await();
+      } catch (InterruptedException e) {
+        if (!interrupted) {
+          interrupted = true;
+          fork.fail(null, new CancellationException("Interrupted while waiting for the tasks"));
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Throwable failure = fork.failure.get();
+    if (failure != null) {
+      throw BlockingRestClient.propagate(failure);
+    }
+
+    List<T> result = new ArrayList<>(fork.subtasks.size());
+    for (Subtask<T> subtask : fork.subtasks) {
+      try {
+        result.add(subtask.get());
+      } catch (InterruptedException | ExecutionException e) {
+        throw new IllegalStateException("Finished subtask cannot fail at this point", e);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.everit.http.client.async.AsyncContentProvider;
+
+import io.reactivex.Single;
+
+/**
+ * A pool of byte arrays in power-of-two size classes that are used to aggregate response bodies
+ * without allocating large, short-lived arrays. Released arrays are kept in a small cache of the
+ * releasing thread first and in a bounded shared pool after that. With leak detection enabled,
+ * the allocation site of every outstanding buffer is recorded, so tests can report the buffers
+ * that were never released.
+ */
+public final class BufferPool {
+
+  /**
+   * Builder class for {@link BufferPool}.
+   */
+  public static final class Builder {
+
+    private boolean leakDetection = false;
+
+    private long maxPooledBytes = DEFAULT_MAX_POOLED_BYTES;
+
+    private int maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+    private int threadLocalCacheSize = DEFAULT_THREAD_LOCAL_CACHE_SIZE;
+
+    private Builder() {
+    }
+
+    public BufferPool build() {
+      return new BufferPool(this);
+    }
+
+    /**
+     * Whether the allocation sites of the outstanding buffers are recorded. It is expensive and
+     * should be used only in tests. Default: false.
+     */
+    public Builder leakDetection(boolean leakDetection) {
+      this.leakDetection = leakDetection;
+      return this;
+    }
+
+    /**
+     * The maximum number of bytes that are kept in the shared pool. Default: 64 MiB.
+     */
+    public Builder maxPooledBytes(long maxPooledBytes) {
+      if (maxPooledBytes < 0) {
+        throw new IllegalArgumentException("maxPooledBytes must not be negative: "
+            + maxPooledBytes);
+      }
+      this.maxPooledBytes = maxPooledBytes;
+      return this;
+    }
+
+    /**
+     * The size of the largest size class. It must be a power of two and at least 4 KiB. Keeping
+     * it well below the G1 region size avoids humongous allocations. Default: 64 KiB.
+     */
+    public Builder maxSegmentSize(int maxSegmentSize) {
+      if (maxSegmentSize < MIN_SEGMENT_SIZE || Integer.bitCount(maxSegmentSize) != 1) {
+        throw new IllegalArgumentException(
+            "maxSegmentSize must be a power of two and at least " + MIN_SEGMENT_SIZE + ": "
+                + maxSegmentSize);
+      }
+      this.maxSegmentSize = maxSegmentSize;
+      return this;
+    }
+
+    /**
+     * The number of arrays per size class that are cached by every thread. Default: 16.
+     */
+    public Builder threadLocalCacheSize(int threadLocalCacheSize) {
+      if (threadLocalCacheSize < 0) {
+        throw new IllegalArgumentException("threadLocalCacheSize must not be negative: "
+            + threadLocalCacheSize);
+      }
+      this.threadLocalCacheSize = threadLocalCacheSize;
+      return this;
+    }
+  }
+
+  static final int BYTE_MASK = 0xFF;
+
+  private static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+  private static final int DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024;
+
+  private static final int DEFAULT_THREAD_LOCAL_CACHE_SIZE = 16;
+
+  private static final int MIN_SEGMENT_SIZE = 4 * 1024;
+
+  private static final int MIN_SEGMENT_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_SEGMENT_SIZE);
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static int sizeClass(int size) {
+    return Integer.numberOfTrailingZeros(size) - MIN_SEGMENT_SIZE_SHIFT;
+  }
+
+  private final AtomicLong allocatedBuffers = new AtomicLong();
+
+  private final Map<byte[], Throwable> leakTraces;
+
+  private final long maxPooledBytes;
+
+  private final int maxSegmentSize;
+
+  private final AtomicLong outstandingBuffers = new AtomicLong();
+
+  private final AtomicLong pooledBytes = new AtomicLong();
+
+  private final List<Queue<byte[]>> sharedPools = new ArrayList<>();
+
+  private final ThreadLocal<List<ArrayDeque<byte[]>>> threadLocalCaches;
+
+  private final int threadLocalCacheSize;
+
+  private BufferPool(Builder builder) {
+    this.leakTraces = builder.leakDetection
+        ? Collections.synchronizedMap(new IdentityHashMap<>())
+        : null;
+    this.maxPooledBytes = builder.maxPooledBytes;
+    this.maxSegmentSize = builder.maxSegmentSize;
+    this.threadLocalCacheSize = builder.threadLocalCacheSize;
+
+    int sizeClassCount = sizeClass(this.maxSegmentSize) + 1;
+    for (int i = 0; i < sizeClassCount; i++) {
+      this.sharedPools.add(new ConcurrentLinkedQueue<>());
+    }
+    this.threadLocalCaches = ThreadLocal.withInitial(() -> {
+      List<ArrayDeque<byte[]>> caches = new ArrayList<>();
+      for (int i = 0; i < sizeClassCount; i++) {
+        caches.add(new ArrayDeque<>());
+      }
+      return caches;
+    });
+  }
+
+  /**
+   * Reads the whole content of the provider into a {@link CompositeBuffer}. The content provider
+   * is closed when the content is read, when reading fails or when the returned single is
+   * disposed. The caller must release the emitted buffer.
+   *
+   * @param contentProvider
+   *          The provider of the content.
+   * @return The single that emits the content.
+   */
+  public Single<CompositeBuffer> aggregate(AsyncContentProvider contentProvider) {
+    return Single.create((emitter) -> {
+      CompositeBuffer buffer = newCompositeBuffer();
+      AtomicBoolean done = new AtomicBoolean(false);
+
+      contentProvider.onContent((chunk, callback) -> {
+        try {
+          buffer.write(chunk);
+          callback.processed();
+        } catch (RuntimeException e) {
+          callback.failed(e);
+        }
+      }).onSuccess(() -> {
+        contentProvider.close();
+        if (done.compareAndSet(false, true)) {
+          emitter.onSuccess(buffer);
+        }
+      }).onError((error) -> {
+        contentProvider.close();
+        if (done.compareAndSet(false, true)) {
+          buffer.release();
+          emitter.tryOnError(error);
+        }
+      });
+
+      emitter.setCancellable(() -> {
+        if (done.compareAndSet(false, true)) {
+          contentProvider.close();
+          buffer.release();
+        }
+      });
+    });
+  }
+
+  /**
+   * Borrows an array of the size class that fits the requested size.
+   *
+   * @param minCapacity
+   *          The minimum capacity of the buffer. It must not be greater than the maximum segment
+   *          size of the pool.
+   * @return The buffer with reference count one.
+   */
+  public PooledBuffer allocate(int minCapacity) {
+    if (minCapacity > this.maxSegmentSize) {
+      throw new IllegalArgumentException("Requested capacity " + minCapacity
+          + " is greater than the maximum segment size " + this.maxSegmentSize);
+    }
+    int size = Math.max(MIN_SEGMENT_SIZE,
+        Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1);
+    int sizeClass = sizeClass(size);
+
+    byte[] array = this.threadLocalCaches.get().get(sizeClass).poll();
+    if (array == null) {
+      array = this.sharedPools.get(sizeClass).poll();
+      if (array != null) {
+        this.pooledBytes.addAndGet(-array.length);
+      }
+    }
+    if (array == null) {
+      array = new byte[size];
+      this.allocatedBuffers.incrementAndGet();
+    }
+
+    this.outstandingBuffers.incrementAndGet();
+    if (this.leakTraces != null) {
+      this.leakTraces.put(array, new Throwable("Buffer allocated at"));
+    }
+    return new PooledBuffer(this, array);
+  }
+
+  /**
+   * The number of arrays that were created by the pool because there was no free array in it.
+   */
+  public long getAllocatedBuffers() {
+    return this.allocatedBuffers.get();
+  }
+
+  /**
+   * The allocation stack traces of the buffers that are not released yet. Empty if leak detection
+   * is disabled.
+   */
+  public List<String> getLeakReports() {
+    if (this.leakTraces == null) {
+      return Collections.emptyList();
+    }
+    List<String> result = new ArrayList<>();
+    synchronized (this.leakTraces) {
+      for (Throwable trace : this.leakTraces.values()) {
+        StringWriter sw = new StringWriter();
+        trace.printStackTrace(new PrintWriter(sw));
+        result.add(sw.toString());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The number of buffers that are borrowed from the pool and not released yet.
+   */
+  public long getOutstandingBuffers() {
+    return this.outstandingBuffers.get();
+  }
+
+  /**
+   * The number of bytes in the shared pool.
+   */
+  public long getPooledBytes() {
+    return this.pooledBytes.get();
+  }
+
+  /**
+   * Creates an empty composite buffer that borrows its segments from this pool.
+   */
+  public CompositeBuffer newCompositeBuffer() {
+    return new CompositeBuffer(this);
+  }
+
+  /**
+   * The size of the next segment of a composite buffer: the segments double until the maximum
+   * segment size is reached, so the content doubles with every new segment.
+   */
+  int nextSegmentSize(long currentSize) {
+    if (currentSize < MIN_SEGMENT_SIZE) {
+      return MIN_SEGMENT_SIZE;
+    }
+    return (int) Math.min(this.maxSegmentSize, Long.highestOneBit(currentSize));
+  }
+
+  void recycle(byte[] array) {
+    this.outstandingBuffers.decrementAndGet();
+    if (this.leakTraces != null) {
+      this.leakTraces.remove(array);
+    }
+
+    int sizeClass = sizeClass(array.length);
+    ArrayDeque<byte[]> threadLocalCache = this.threadLocalCaches.get().get(sizeClass);
+    if (threadLocalCache.size() < this.threadLocalCacheSize) {
+      threadLocalCache.push(array);
+      return;
+    }
+    if (this.pooledBytes.addAndGet(array.length) <= this.maxPooledBytes) {
+      this.sharedPools.get(sizeClass).offer(array);
+    } else {
+      this.pooledBytes.addAndGet(-array.length);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+/**
+ * The timestamps of the phases of one call that are used by {@link SlowCallSampler}. The phases
+ * are marked sequentially by the operators of the call that publish the values to the next phase.
+ * The {@link #DISABLED} instance is used if no sampler is configured, so nothing is allocated for
+ * the trace.
+ */
+final class CallTrace {
+
+  static final CallTrace DISABLED = new CallTrace(null, 0, false);
+
+  static final long NOT_REACHED = -1;
+
+  long bodyNanos = CallTrace.NOT_REACHED;
+
+  long dispatchedNanos = CallTrace.NOT_REACHED;
+
+  private final boolean enabled;
+
+  long enhancedNanos = CallTrace.NOT_REACHED;
+
+  long headersNanos = CallTrace.NOT_REACHED;
+
+  byte[] requestBody;
+
+  byte[] responseBody;
+
+  long responseSize = CallTrace.NOT_REACHED;
+
+  final RestRequest restRequest;
+
+  final long startNanos;
+
+  int status;
+
+  CallTrace(RestRequest restRequest, long startNanos) {
+    this(restRequest, startNanos, true);
+  }
+
+  private CallTrace(RestRequest restRequest, long startNanos, boolean enabled) {
+    this.restRequest = restRequest;
+    this.startNanos = startNanos;
+    this.enabled = enabled;
+  }
+
+  boolean isEnabled() {
+    return this.enabled;
+  }
+
+  void markBody(long size) {
+    if (this.enabled) {
+      this.bodyNanos = System.nanoTime();
+      this.responseSize = size;
+    }
+  }
+
+  /**
+   * Marks the end of reading the body. Only the reference of the body is stored, its size and
+   * snippet are computed only if the call is sampled.
+   */
+  void markBody(byte[] body) {
+    if (this.enabled) {
+      this.bodyNanos = System.nanoTime();
+      this.responseBody = body;
+    }
+  }
+
+  void markDispatched() {
+    if (this.enabled) {
+      this.dispatchedNanos = System.nanoTime();
+    }
+  }
+
+  void markEnhanced() {
+    if (this.enabled) {
+      this.enhancedNanos = System.nanoTime();
+    }
+  }
+
+  void markHeaders(int status) {
+    if (this.enabled) {
+      this.headersNanos = System.nanoTime();
+      this.status = status;
+    }
+  }
+
+  /**
+   * Keeps the reference of the encoded request body, so the sampler does not have to convert the
+   * body again to compute its size and snippet.
+   */
+  void markRequestBody(byte[] body) {
+    if (this.enabled) {
+      this.requestBody = body;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A growable byte sequence that is stored in {@link PooledBuffer} segments instead of one large
+ * array. The segments get bigger as the content grows, so small contents use small segments and
+ * large contents do not need a contiguous array. The segments are returned to the pool when the
+ * reference count of the composite drops to zero.
+ */
+public final class CompositeBuffer {
+
+  private final BufferPool pool;
+
+  private final AtomicInteger refCnt = new AtomicInteger(1);
+
+  private final List<PooledBuffer> segments = new ArrayList<>();
+
+  private long size = 0;
+
+  CompositeBuffer(BufferPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Returns an input stream that reads the content. The stream must not be used after the buffer
+   * is released.
+   */
+  public InputStream newInputStream() {
+    return new InputStream() {
+
+      private int position = 0;
+
+      private int segmentIndex = 0;
+
+      @Override
+      public int available() {
+        long remaining = CompositeBuffer.this.size - readBytes();
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+      }
+
+      private boolean nextSegment() {
+        while (this.segmentIndex < CompositeBuffer.this.segments.size()) {
+          if (this.position < CompositeBuffer.this.segments.get(this.segmentIndex).getLength()) {
+            return true;
+          }
+          this.segmentIndex++;
+          this.position = 0;
+        }
+        return false;
+      }
+
+      @Override
+      public int read() {
+        if (!nextSegment()) {
+          return -1;
+        }
+        PooledBuffer segment = CompositeBuffer.this.segments.get(this.segmentIndex);
+        return segment.array()[segment.getOffset() + this.position++] & BufferPool.BYTE_MASK;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+          return 0;
+        }
+        if (!nextSegment()) {
+          return -1;
+        }
+        PooledBuffer segment = CompositeBuffer.this.segments.get(this.segmentIndex);
+        int count = Math.min(len, segment.getLength() - this.position);
+        System.arraycopy(segment.array(), segment.getOffset() + this.position, b, off, count);
+        this.position += count;
+        return count;
+      }
+
+      private long readBytes() {
+        long result = this.position;
+        for (int i = 0; i < this.segmentIndex; i++) {
+          result += CompositeBuffer.this.segments.get(i).getLength();
+        }
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Decrements the reference count and returns the segments to the pool if the count drops to
+   * zero.
+   *
+   * @return <code>true</code> if the segments were returned to the pool.
+   */
+  public synchronized boolean release() {
+    int value = this.refCnt.decrementAndGet();
+    if (value < 0) {
+      this.refCnt.incrementAndGet();
+      throw new IllegalStateException("Buffer is already released");
+    }
+    if (value > 0) {
+      return false;
+    }
+    for (PooledBuffer segment : this.segments) {
+      segment.release();
+    }
+    this.segments.clear();
+    return true;
+  }
+
+  /**
+   * Increments the reference count.
+   *
+   * @return This buffer.
+   */
+  public CompositeBuffer retain() {
+    if (this.refCnt.getAndIncrement() <= 0) {
+      this.refCnt.decrementAndGet();
+      throw new IllegalStateException("Buffer is already released");
+    }
+    return this;
+  }
+
+  /**
+   * The number of bytes in the buffer.
+   */
+  public long size() {
+    return this.size;
+  }
+
+  /**
+   * Copies the content into a new array.
+   */
+  public byte[] toByteArray() {
+    if (this.size > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Content is too large for an array: " + this.size);
+    }
+    byte[] result = new byte[(int) this.size];
+    int position = 0;
+    for (PooledBuffer segment : this.segments) {
+      System.arraycopy(segment.array(), segment.getOffset(), result, position,
+          segment.getLength());
+      position += segment.getLength();
+    }
+    return result;
+  }
+
+  /**
+   * Decodes the content to a String.
+   */
+  public String toString(Charset charset) {
+    return new String(toByteArray(), charset);
+  }
+
+  /**
+   * Appends the remaining bytes of the source to the buffer.
+   *
+   * @throws IllegalStateException
+   *           if the buffer is already released.
+   */
+  public synchronized void write(ByteBuffer source) {
+    if (this.refCnt.get() <= 0) {
+      throw new IllegalStateException("Buffer is already released");
+    }
+    while (source.hasRemaining()) {
+      PooledBuffer last = this.segments.isEmpty() ? null
+          : this.segments.get(this.segments.size() - 1);
+      if (last == null || last.getLength() == last.getCapacity()) {
+        last = this.pool.allocate(this.pool.nextSegmentSize(this.size));
+        this.segments.add(last);
+      }
+      this.size += last.write(source);
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes the <code>fields</code> / <code>properties</code> query parameters of the Jira and
+ * Confluence endpoints from the type that the response is converted to, so the server sends only
+ * the fields that are used by the caller. For example, if the response type has a property called
+ * <code>fields</code> (directly or in the elements of a collection, like the issues of a search
+ * result), the names of the properties of its type are requested in the <code>fields</code> query
+ * parameter.
+ *
+ * <p>
+ * The property names are read from the fields and setters of the classes. The
+ * <code>JsonProperty</code> and <code>JsonIgnore</code> annotations of Jackson are respected
+ * without having a dependency on Jackson. If the projected type cannot be introspected (e.g. it is
+ * a {@link Map} or it has a <code>JsonAnySetter</code>), no projection is computed for it. The
+ * results are cached per type.
+ *
+ * <p>
+ * The classes are introspected via reflection. In GraalVM native images, the projected classes
+ * must be registered with their declared fields and methods; the annotation methods that are read
+ * are registered by the library.
+ */
+public final class FieldProjection {
+
+  /**
+   * Builder class for {@link FieldProjection}.
+   */
+  public static final class Builder {
+
+    private final Map<Type, Map<String, Collection<String>>> explicitProjections =
+        new HashMap<>();
+
+    private final Map<String, String> projectedProperties = new LinkedHashMap<>();
+
+    private Builder() {
+      this.projectedProperties.put(DEFAULT_FIELDS_PROPERTY, DEFAULT_FIELDS_PROPERTY);
+      this.projectedProperties.put(DEFAULT_PROPERTIES_PROPERTY, DEFAULT_PROPERTIES_PROPERTY);
+    }
+
+    public FieldProjection build() {
+      return new FieldProjection(this);
+    }
+
+    /**
+     * Uses the specified projection for the type instead of computing it.
+     *
+     * @param type
+     *          The type of the response.
+     * @param queryParams
+     *          The query parameters that are added to the requests.
+     */
+    public Builder explicitProjection(Type type, Map<String, Collection<String>> queryParams) {
+      this.explicitProjections.put(Objects.requireNonNull(type),
+          Collections.unmodifiableMap(new TreeMap<>(queryParams)));
+      return this;
+    }
+
+    /**
+     * Registers a JSON property whose type defines the values of a query parameter. By default,
+     * the <code>fields</code> and <code>properties</code> JSON properties are projected to the
+     * query parameters with the same names.
+     *
+     * @param jsonProperty
+     *          The name of the JSON property in the response.
+     * @param queryParam
+     *          The name of the query parameter that lists the properties of the type of the JSON
+     *          property.
+     */
+    public Builder projectedProperty(String jsonProperty, String queryParam) {
+      this.projectedProperties.put(Objects.requireNonNull(jsonProperty),
+          Objects.requireNonNull(queryParam));
+      return this;
+    }
+  }
+
+  private static final String DEFAULT_FIELDS_PROPERTY = "fields";
+
+  private static final String DEFAULT_PROPERTIES_PROPERTY = "properties";
+
+  private static final String JSON_ANY_SETTER_ANNOTATION =
+      "com.fasterxml.jackson.annotation.JsonAnySetter";
+
+  private static final String JSON_IGNORE_ANNOTATION =
+      "com.fasterxml.jackson.annotation.JsonIgnore";
+
+  private static final String JSON_PROPERTY_ANNOTATION =
+      "com.fasterxml.jackson.annotation.JsonProperty";
+
+  private static final String SETTER_PREFIX = "set";
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static Optional<Annotation> findAnnotation(AnnotatedElement element, String name) {
+    for (Annotation annotation : element.getAnnotations()) {
+      if (annotation.annotationType().getName().equals(name)) {
+        return Optional.of(annotation);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static Object invokeAnnotationMethod(Annotation annotation, String methodName) {
+    try {
+      return annotation.annotationType().getMethod(methodName).invoke(annotation);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot read " + annotation.annotationType().getName() + "#"
+          + methodName, e);
+    }
+  }
+
+  private static boolean isIgnored(AnnotatedElement element) {
+    Optional<Annotation> jsonIgnore = findAnnotation(element, JSON_IGNORE_ANNOTATION);
+    return jsonIgnore.isPresent()
+        && Boolean.TRUE.equals(invokeAnnotationMethod(jsonIgnore.get(), "value"));
+  }
+
+  private static boolean isIntrospectable(Class<?> type) {
+    return !type.isPrimitive() && !type.isEnum() && !type.isArray() && !type.isInterface()
+        && !type.getName().startsWith("java.")
+        && !Map.class.isAssignableFrom(type)
+        && !Collection.class.isAssignableFrom(type);
+  }
+
+  private static boolean isSetter(Method method) {
+    return Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers())
+        && method.getParameterCount() == 1
+        && method.getName().length() > SETTER_PREFIX.length()
+        && method.getName().startsWith(SETTER_PREFIX);
+  }
+
+  private static String jsonName(AnnotatedElement element, String defaultName) {
+    Optional<Annotation> jsonProperty = findAnnotation(element, JSON_PROPERTY_ANNOTATION);
+    if (jsonProperty.isPresent()) {
+      Object value = invokeAnnotationMethod(jsonProperty.get(), "value");
+      if (value instanceof String && !((String) value).isEmpty()) {
+        return (String) value;
+      }
+    }
+    return defaultName;
+  }
+
+  /**
+   * Returns the JSON properties of the class with their types or empty if the class accepts
+   * arbitrary properties.
+   */
+  private static Optional<Map<String, Type>> properties(Class<?> type) {
+    Map<String, Type> result = new TreeMap<>();
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+            && !field.isSynthetic() && !isIgnored(field)) {
+          result.putIfAbsent(jsonName(field, field.getName()), field.getGenericType());
+        }
+      }
+      for (Method method : c.getDeclaredMethods()) {
+        if (findAnnotation(method, JSON_ANY_SETTER_ANNOTATION).isPresent()) {
+          return Optional.empty();
+        }
+        if (isSetter(method) && !isIgnored(method)) {
+          String name = method.getName().substring(SETTER_PREFIX.length());
+          name = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+          result.putIfAbsent(jsonName(method, name), method.getGenericParameterTypes()[0]);
+        }
+      }
+    }
+    return Optional.of(result);
+  }
+
+  private static Class<?> rawType(Type type) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    }
+    if (type instanceof ParameterizedType) {
+      return rawType(((ParameterizedType) type).getRawType());
+    }
+    if (type instanceof GenericArrayType) {
+      return Object[].class;
+    }
+    if (type instanceof WildcardType) {
+      return rawType(((WildcardType) type).getUpperBounds()[0]);
+    }
+    return Object.class;
+  }
+
+  private final Map<Type, Map<String, Collection<String>>> cache = new ConcurrentHashMap<>();
+
+  private final Map<String, String> projectedProperties;
+
+  private FieldProjection(Builder builder) {
+    this.projectedProperties = new LinkedHashMap<>(builder.projectedProperties);
+    this.cache.putAll(builder.explicitProjections);
+  }
+
+  /**
+   * Adds the projection of the type to the query parameters of the request. The query parameters
+   * that are already specified in the request are not overridden.
+   *
+   * @param restRequest
+   *          The request.
+   * @param type
+   *          The type that the response is converted to.
+   * @return The request with the projection or the same request if there is nothing to add.
+   */
+  public RestRequest apply(RestRequest restRequest, Type type) {
+    Map<String, Collection<String>> projection = getProjection(type);
+    Map<String, Collection<String>> queryParams = null;
+    for (Entry<String, Collection<String>> entry : projection.entrySet()) {
+      if (!restRequest.getQueryParams().containsKey(entry.getKey())) {
+        if (queryParams == null) {
+          queryParams = new HashMap<>(restRequest.getQueryParams());
+        }
+        queryParams.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (queryParams == null) {
+      return restRequest;
+    }
+    return RestRequest.builderFrom(restRequest).queryParams(queryParams).build();
+  }
+
+  private void collect(Type type, Map<TypeVariable<?>, Type> bindings, Set<Type> visited,
+      Map<String, Set<String>> projection, Set<String> unknown) {
+
+    Type resolvedType = resolve(type, bindings);
+    if (!visited.add(resolvedType)) {
+      return;
+    }
+    Optional<Type> elementType = elementType(resolvedType, bindings);
+    if (elementType.isPresent()) {
+      collect(elementType.get(), bindings, visited, projection, unknown);
+      return;
+    }
+
+    Class<?> rawType = rawType(resolvedType);
+    if (!isIntrospectable(rawType)) {
+      return;
+    }
+    Map<TypeVariable<?>, Type> typeBindings = typeBindings(resolvedType, bindings);
+    Optional<Map<String, Type>> properties = properties(rawType);
+    if (!properties.isPresent()) {
+      return;
+    }
+    for (Entry<String, Type> property : properties.get().entrySet()) {
+      String queryParam = this.projectedProperties.get(property.getKey());
+      if (queryParam == null) {
+        collect(property.getValue(), typeBindings, visited, projection, unknown);
+        continue;
+      }
+      Class<?> projectedType = rawType(resolve(property.getValue(), typeBindings));
+      Optional<Map<String, Type>> projectedProperties =
+          isIntrospectable(projectedType) ? properties(projectedType) : Optional.empty();
+      if (projectedProperties.isPresent()) {
+        projection.computeIfAbsent(queryParam, (key) -> new TreeSet<>())
+            .addAll(projectedProperties.get().keySet());
+      } else {
+        unknown.add(queryParam);
+      }
+    }
+  }
+
+  /**
+   * Returns the element type if the type is an array, a {@link Collection} or an {@link Optional}.
+   */
+  private Optional<Type> elementType(Type type, Map<TypeVariable<?>, Type> bindings) {
+    if (type instanceof GenericArrayType) {
+      return Optional.of(((GenericArrayType) type).getGenericComponentType());
+    }
+    if (type instanceof Class && ((Class<?>) type).isArray()) {
+      return Optional.of(((Class<?>) type).getComponentType());
+    }
+    if (type instanceof ParameterizedType) {
+      Class<?> rawType = rawType(type);
+      if (Collection.class.isAssignableFrom(rawType) || Optional.class.equals(rawType)) {
+        return Optional.of(((ParameterizedType) type).getActualTypeArguments()[0]);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Returns the query parameters that project the response to the properties that are used by the
+   * type.
+   *
+   * @param type
+   *          The type that the response is converted to.
+   * @return The query parameters. Empty if nothing can be projected.
+   */
+  public Map<String, Collection<String>> getProjection(Type type) {
+    Map<String, Collection<String>> projection = this.cache.get(type);
+    if (projection != null) {
+      return projection;
+    }
+
+    Map<String, Set<String>> collected = new TreeMap<>();
+    Set<String> unknown = new HashSet<>();
+    collect(type, Collections.emptyMap(), new HashSet<>(), collected, unknown);
+
+    Map<String, Collection<String>> result = new TreeMap<>();
+    for (Entry<String, Set<String>> entry : collected.entrySet()) {
+      if (!unknown.contains(entry.getKey()) && !entry.getValue().isEmpty()) {
+        result.put(entry.getKey(), Collections.singleton(String.join(",", entry.getValue())));
+      }
+    }
+    projection = Collections.unmodifiableMap(result);
+    Map<String, Collection<String>> previous = this.cache.putIfAbsent(type, projection);
+    return (previous != null) ? previous : projection;
+  }
+
+  private Type resolve(Type type, Map<TypeVariable<?>, Type> bindings) {
+    Type resolved = type;
+    while (resolved instanceof TypeVariable && bindings.containsKey(resolved)) {
+      resolved = bindings.get(resolved);
+    }
+    return resolved;
+  }
+
+  private Map<TypeVariable<?>, Type> typeBindings(Type type,
+      Map<TypeVariable<?>, Type> bindings) {
+    if (!(type instanceof ParameterizedType)) {
+      return Collections.emptyMap();
+    }
+    TypeVariable<?>[] typeParameters = rawType(type).getTypeParameters();
+    Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+    Map<TypeVariable<?>, Type> result = new HashMap<>();
+    for (int i = 0; i < typeParameters.length && i < arguments.length; i++) {
+      result.put(typeParameters[i], resolve(arguments[i], bindings));
+    }
+    return result;
+  }
+}
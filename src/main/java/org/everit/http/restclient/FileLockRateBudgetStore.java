@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * A {@link RateBudgetStore} that keeps the budgets in files of a directory and coordinates the
+ * processes with file locks. It is meant for testing the coordination of multiple processes on
+ * one machine; production clusters should use a store backed by a shared service.
+ */
+public final class FileLockRateBudgetStore implements RateBudgetStore {
+
+  /**
+   * Builder class for {@link FileLockRateBudgetStore}.
+   */
+  public static final class Builder {
+
+    private Clock clock = Clock.systemUTC();
+
+    private Path directory;
+
+    private int limit = DEFAULT_LIMIT;
+
+    private Scheduler scheduler = Schedulers.io();
+
+    private Duration window = Duration.ofMinutes(1);
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the store and creates its directory if it does not exist.
+     *
+     * @throws IOException
+     *           if the directory cannot be created.
+     */
+    public FileLockRateBudgetStore build() throws IOException {
+      Objects.requireNonNull(this.directory, "directory must be specified");
+      Files.createDirectories(this.directory);
+      return new FileLockRateBudgetStore(this);
+    }
+
+    /**
+     * The clock that determines the budget windows. Default: {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * The directory where the budget files are stored. All processes that share the budgets must
+     * use the same directory.
+     */
+    public Builder directory(Path directory) {
+      this.directory = Objects.requireNonNull(directory);
+      return this;
+    }
+
+    /**
+     * The number of requests that are allowed in a window for every budget key. Default: 1000.
+     */
+    public Builder limit(int limit) {
+      if (limit < 0) {
+        throw new IllegalArgumentException("limit must not be negative: " + limit);
+      }
+      this.limit = limit;
+      return this;
+    }
+
+    /**
+     * The scheduler where the blocking file operations run. Default: {@link Schedulers#io()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+
+    /**
+     * The length of the budget windows. Default: one minute.
+     */
+    public Builder window(Duration window) {
+      if (window.isNegative() || window.isZero()) {
+        throw new IllegalArgumentException("window must be positive: " + window);
+      }
+      this.window = window;
+      return this;
+    }
+  }
+
+  private static final int DEFAULT_LIMIT = 1000;
+
+  private static final String FILE_EXTENSION = ".budget";
+
+  private static final int RECORD_SIZE = Long.BYTES * 2;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Clock clock;
+
+  private final Path directory;
+
+  private final int limit;
+
+  /**
+   * File locks are held by the whole JVM, so the threads of this process have to be serialized
+   * separately.
+   */
+  private final ReentrantLock localLock = new ReentrantLock();
+
+  private final Scheduler scheduler;
+
+  private final long windowMillis;
+
+  private FileLockRateBudgetStore(Builder builder) {
+    this.clock = builder.clock;
+    this.directory = builder.directory;
+    this.limit = builder.limit;
+    this.scheduler = builder.scheduler;
+    this.windowMillis = builder.window.toMillis();
+  }
+
+  @Override
+  public Single<RateBudgetLease> lease(String budgetKey, int requestedTokens) {
+    return Single.fromCallable(() -> leaseBlocking(budgetKey, requestedTokens))
+        .subscribeOn(this.scheduler);
+  }
+
+  private RateBudgetLease leaseBlocking(String budgetKey, int requestedTokens) throws IOException {
+    long windowIndex = this.clock.millis() / this.windowMillis;
+    Path file = this.directory.resolve(RestClientUtil.hashedFileName(budgetKey, FILE_EXTENSION));
+    int grantedTokens;
+    this.localLock.lock();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock fileLock = channel.lock()) {
+
+      ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+      while (record.hasRemaining() && channel.read(record, record.position()) >= 0) {
+        // Read until the record is complete or the end of the file is reached
+      }
+      long storedWindowIndex = -1;
+      long used = 0;
+      if (!record.hasRemaining()) {
+        record.flip();
+        storedWindowIndex = record.getLong();
+        used = record.getLong();
+      }
+      if (storedWindowIndex != windowIndex) {
+        used = 0;
+      }
+      grantedTokens = (int) Math.max(0, Math.min(requestedTokens, this.limit - used));
+
+      record.clear();
+      record.putLong(windowIndex).putLong(used + grantedTokens).flip();
+      while (record.hasRemaining()) {
+        channel.write(record, record.position());
+      }
+      channel.force(false);
+    } finally {
+      this.localLock.unlock();
+    }
+    return new RateBudgetLease(grantedTokens,
+        Instant.ofEpochMilli((windowIndex + 1) * this.windowMillis));
+  }
+}
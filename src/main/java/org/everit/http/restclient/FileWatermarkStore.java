@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * A {@link WatermarkStore} that keeps the watermark of each query in a file of a directory. The
+ * files are replaced atomically, so a crash during saving leaves the previous watermark intact.
+ */
+public final class FileWatermarkStore implements WatermarkStore {
+
+  /**
+   * Builder class for {@link FileWatermarkStore}.
+   */
+  public static final class Builder {
+
+    private Path directory;
+
+    private Scheduler scheduler = Schedulers.io();
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the store and creates its directory if it does not exist.
+     *
+     * @throws IOException
+     *           if the directory cannot be created.
+     */
+    public FileWatermarkStore build() throws IOException {
+      Objects.requireNonNull(this.directory, "directory must be specified");
+      Files.createDirectories(this.directory);
+      return new FileWatermarkStore(this);
+    }
+
+    /**
+     * The directory where the watermark files are stored.
+     */
+    public Builder directory(Path directory) {
+      this.directory = Objects.requireNonNull(directory);
+      return this;
+    }
+
+    /**
+     * The scheduler where the blocking file operations run. Default: {@link Schedulers#io()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+  }
+
+  private static final String FILE_EXTENSION = ".watermark";
+
+  private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private final Path directory;
+
+  private final Scheduler scheduler;
+
+  private FileWatermarkStore(Builder builder) {
+    this.directory = builder.directory;
+    this.scheduler = builder.scheduler;
+  }
+
+  private Path file(String queryKey) {
+    return this.directory.resolve(RestClientUtil.hashedFileName(queryKey, FILE_EXTENSION));
+  }
+
+  @Override
+  public Single<Optional<Watermark>> load(String queryKey) {
+    return Single.fromCallable(() -> loadBlocking(queryKey)).subscribeOn(this.scheduler);
+  }
+
+  private Optional<Watermark> loadBlocking(String queryKey) throws IOException {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(file(queryKey), StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+    if (lines.isEmpty()) {
+      return Optional.empty();
+    }
+    Map<String, String> seenVersions = new HashMap<>();
+    for (String line : lines.subList(1, lines.size())) {
+      int separatorIndex = line.indexOf(' ');
+      if (separatorIndex > 0) {
+        seenVersions.put(decode(line.substring(0, separatorIndex)),
+            decode(line.substring(separatorIndex + 1)));
+      }
+    }
+    return Optional.of(new Watermark(Instant.parse(lines.get(0)), seenVersions));
+  }
+
+  @Override
+  public Completable save(String queryKey, Watermark watermark) {
+    return Completable.fromAction(() -> saveBlocking(queryKey, watermark))
+        .subscribeOn(this.scheduler);
+  }
+
+  private void saveBlocking(String queryKey, Watermark watermark) throws IOException {
+    StringBuilder sb = new StringBuilder(watermark.getTimestamp().toString()).append('\n');
+    for (Entry<String, String> seenVersion : watermark.getSeenVersions().entrySet()) {
+      sb.append(encode(seenVersion.getKey())).append(' ').append(encode(seenVersion.getValue()))
+          .append('\n');
+    }
+
+    Path file = file(queryKey);
+    Path tempFile = file.resolveSibling(file.getFileName() + TEMP_FILE_EXTENSION);
+    try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+      ByteBuffer content = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+      channel.force(true);
+    }
+    try {
+      Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(tempFile);
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+/**
+ * Count-Min sketch with 4-bit counters that estimates how often keys were accessed recently.
+ * Sixteen counters are packed into each <code>long</code> of the table. The counters are halved
+ * periodically, so the estimation follows the changes of the access pattern. The class is not
+ * thread-safe.
+ */
+final class FrequencySketch {
+
+  private static final int COUNTER_BITS = 4;
+
+  private static final int COUNTERS_PER_SLOT_SHIFT = 4;
+
+  private static final int DEPTH = 4;
+
+  private static final int GOLDEN_RATIO = 0x9e3779b9;
+
+  private static final int HALF_INT_BITS = 16;
+
+  /**
+   * Clears the lowest bit of every counter, so shifting a slot right by one halves every counter.
+   */
+  private static final long HALVING_MASK = 0x7777777777777777L;
+
+  private static final int MAX_COUNT = 15;
+
+  private static final int MIN_WIDTH = 16;
+
+  private static final int SAMPLE_SIZE_MULTIPLIER = 10;
+
+  private static final int[] SEEDS = { 0x97cb3127, 0xc2b2ae35, 0x85ebca6b, 0x27d4eb2f };
+
+  /**
+   * Selects the position of a counter within its <code>long</code> slot.
+   */
+  private static final int SLOT_POSITION_MASK = 15;
+
+  private static int offset(int counterIndex) {
+    return (counterIndex & FrequencySketch.SLOT_POSITION_MASK) * FrequencySketch.COUNTER_BITS;
+  }
+
+  private static int spread(int hashCode) {
+    int h = hashCode * FrequencySketch.GOLDEN_RATIO;
+    return h ^ (h >>> FrequencySketch.HALF_INT_BITS);
+  }
+
+  private static int tableSizeFor(int value) {
+    return Integer.highestOneBit(value - 1) << 1;
+  }
+
+  private int additions;
+
+  private final int mask;
+
+  private final int sampleSize;
+
+  private final long[] table;
+
+  private final int width;
+
+  FrequencySketch(int maximumSize) {
+    int size = Math.max(maximumSize, FrequencySketch.MIN_WIDTH);
+    this.width = FrequencySketch.tableSizeFor(size);
+    this.mask = this.width - 1;
+    this.table =
+        new long[(this.width * FrequencySketch.DEPTH) >>> FrequencySketch.COUNTERS_PER_SLOT_SHIFT];
+    this.sampleSize = size * FrequencySketch.SAMPLE_SIZE_MULTIPLIER;
+  }
+
+  private int count(int counterIndex) {
+    return (int) (this.table[counterIndex >>> FrequencySketch.COUNTERS_PER_SLOT_SHIFT]
+        >>> FrequencySketch.offset(counterIndex)) & FrequencySketch.MAX_COUNT;
+  }
+
+  /**
+   * Returns the estimated number of accesses of the key since the last aging.
+   */
+  int frequency(Object key) {
+    int hash = FrequencySketch.spread(key.hashCode());
+    int frequency = FrequencySketch.MAX_COUNT;
+    for (int i = 0; i < FrequencySketch.DEPTH; i++) {
+      frequency = Math.min(frequency, count(index(hash, i)));
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the counters of the key if they are not at the maximum.
+   */
+  void increment(Object key) {
+    int hash = FrequencySketch.spread(key.hashCode());
+    boolean added = false;
+    for (int i = 0; i < FrequencySketch.DEPTH; i++) {
+      int index = index(hash, i);
+      if (count(index) < FrequencySketch.MAX_COUNT) {
+        this.table[index >>> FrequencySketch.COUNTERS_PER_SLOT_SHIFT] +=
+            1L << FrequencySketch.offset(index);
+        added = true;
+      }
+    }
+
+    if (added && ++this.additions >= this.sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Returns the index of the counter of the hash in the row.
+   */
+  private int index(int hash, int row) {
+    int h = FrequencySketch.spread(hash ^ FrequencySketch.SEEDS[row]);
+    return (row * this.width) + (h & this.mask);
+  }
+
+  private void reset() {
+    for (int i = 0; i < this.table.length; i++) {
+      this.table[i] = (this.table[i] >>> 1) & FrequencySketch.HALVING_MASK;
+    }
+    this.additions = this.additions / 2;
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.everit.http.client.HttpMethod;
+
+/**
+ * The file format of the recorded HTTP traffic. The file starts with a magic number and a version
+ * that are followed by the records. Every record starts with its length, so a record that was
+ * not written completely (e.g. because the process was killed) can be detected and ignored.
+ *
+ * <pre>
+ * record: int length, string method, string url, headers requestHeaders, bytes requestBody,
+ *         long startOffsetNanos, long latencyNanos, int status, headers responseHeaders,
+ *         bytes responseBody
+ * headers: int headerCount, (string name, string value)*
+ * bytes: int byteLength, byte[] bytes
+ * string: int byteLength, byte[] utf8
+ * </pre>
+ *
+ * <p>
+ * The request headers that carry credentials are not recorded.
+ */
+final class HttpTrafficFormat {
+
+  /**
+   * A record that is read from the file. The bodies are slices of the buffer of the file.
+   */
+  static final class Record {
+
+    final ByteBuffer body;
+
+    final RecordedExchange exchange;
+
+    final ByteBuffer requestBody;
+
+    Record(RecordedExchange exchange, ByteBuffer requestBody, ByteBuffer body) {
+      this.exchange = exchange;
+      this.requestBody = requestBody;
+      this.body = body;
+    }
+  }
+
+  private static final Set<String> CREDENTIAL_HEADERS = new TreeSet<>(
+      Arrays.asList("authorization", "cookie", "proxy-authorization"));
+
+  static final int FILE_HEADER_LENGTH = Integer.BYTES * 2;
+
+  static final int MAGIC = 0x48545250;
+
+  static final int VERSION = 2;
+
+  /**
+   * Builds the key that identifies the recorded responses of a request. The requests are the same
+   * if their method, URL, recorded headers and body are the same.
+   */
+  static String exchangeKey(HttpMethod method, String url, Map<String, String> requestHeaders,
+      byte[] requestBody) {
+
+    Map<String, String> headers = new TreeMap<>();
+    for (Entry<String, String> header : recordedHeaders(requestHeaders).entrySet()) {
+      headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+    }
+    return method + " " + url + '|' + headers + '|' + RestClientUtil.sha256Hex(requestBody);
+  }
+
+  private static ByteBuffer readBytes(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    ByteBuffer bytes = buffer.slice();
+    bytes.limit(length);
+    buffer.position(buffer.position() + length);
+    return bytes;
+  }
+
+  private static Map<String, String> readHeaders(ByteBuffer buffer) {
+    int headerCount = buffer.getInt();
+    Map<String, String> headers = new LinkedHashMap<>();
+    for (int i = 0; i < headerCount; i++) {
+      headers.put(readString(buffer), readString(buffer));
+    }
+    return Collections.unmodifiableMap(headers);
+  }
+
+  /**
+   * Reads the record from the current position of the buffer. Returns null if the remaining part
+   * of the buffer does not contain a complete record.
+   */
+  static Record readRecord(ByteBuffer buffer) {
+    if (buffer.remaining() < Integer.BYTES) {
+      return null;
+    }
+    int length = buffer.getInt();
+    if (length < 0 || buffer.remaining() < length) {
+      return null;
+    }
+    ByteBuffer recordBuffer = buffer.slice();
+    recordBuffer.limit(length);
+    buffer.position(buffer.position() + length);
+    return readRecordContent(recordBuffer);
+  }
+
+  /**
+   * Reads a record whose length prefix was read already.
+   */
+  static Record readRecordContent(ByteBuffer recordBuffer) {
+    HttpMethod method = HttpMethod.valueOf(readString(recordBuffer));
+    String url = readString(recordBuffer);
+    Map<String, String> requestHeaders = readHeaders(recordBuffer);
+    ByteBuffer requestBody = readBytes(recordBuffer);
+    long startOffsetNanos = recordBuffer.getLong();
+    long latencyNanos = recordBuffer.getLong();
+    int status = recordBuffer.getInt();
+    Map<String, String> headers = readHeaders(recordBuffer);
+    ByteBuffer body = readBytes(recordBuffer);
+
+    return new Record(new RecordedExchange(method, url, requestHeaders, startOffsetNanos,
+        latencyNanos, status, headers), requestBody, body);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the request headers without the ones that carry credentials.
+   */
+  static Map<String, String> recordedHeaders(Map<String, String> requestHeaders) {
+    Map<String, String> headers = new LinkedHashMap<>();
+    for (Entry<String, String> header : requestHeaders.entrySet()) {
+      if (!HttpTrafficFormat.CREDENTIAL_HEADERS
+          .contains(header.getKey().toLowerCase(Locale.ROOT))) {
+        headers.put(header.getKey(), header.getValue());
+      }
+    }
+    return headers;
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeHeaders(DataOutputStream out, Map<String, String> headers)
+      throws IOException {
+    out.writeInt(headers.size());
+    for (Entry<String, String> header : headers.entrySet()) {
+      writeString(out, header.getKey());
+      writeString(out, header.getValue());
+    }
+  }
+
+  /**
+   * Writes a record into the stream without its length prefix.
+   */
+  static void writeRecordContent(DataOutputStream out, RecordedExchange exchange,
+      byte[] requestBody, byte[] body) throws IOException {
+    writeString(out, exchange.getMethod().name());
+    writeString(out, exchange.getUrl());
+    writeHeaders(out, exchange.getRequestHeaders());
+    writeBytes(out, requestBody);
+    out.writeLong(exchange.getStartOffsetNanos());
+    out.writeLong(exchange.getLatencyNanos());
+    out.writeInt(exchange.getStatus());
+    writeHeaders(out, exchange.getResponseHeaders());
+    writeBytes(out, body);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private HttpTrafficFormat() {
+  }
+}
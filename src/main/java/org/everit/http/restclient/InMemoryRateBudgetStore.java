@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import io.reactivex.Single;
+
+/**
+ * A {@link RateBudgetStore} that keeps the budgets in memory. It is useful when the nodes share
+ * the store instance (e.g. in tests) or to limit a single process.
+ */
+public final class InMemoryRateBudgetStore implements RateBudgetStore {
+
+  /**
+   * Builder class for {@link InMemoryRateBudgetStore}.
+   */
+  public static final class Builder {
+
+    private Clock clock = Clock.systemUTC();
+
+    private int limit = DEFAULT_LIMIT;
+
+    private Duration window = Duration.ofMinutes(1);
+
+    private Builder() {
+    }
+
+    public InMemoryRateBudgetStore build() {
+      return new InMemoryRateBudgetStore(this);
+    }
+
+    /**
+     * The clock that determines the budget windows. Default: {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * The number of requests that are allowed in a window for every budget key. Default: 1000.
+     */
+    public Builder limit(int limit) {
+      if (limit < 0) {
+        throw new IllegalArgumentException("limit must not be negative: " + limit);
+      }
+      this.limit = limit;
+      return this;
+    }
+
+    /**
+     * The length of the budget windows. Default: one minute.
+     */
+    public Builder window(Duration window) {
+      if (window.isNegative() || window.isZero()) {
+        throw new IllegalArgumentException("window must be positive: " + window);
+      }
+      this.window = window;
+      return this;
+    }
+  }
+
+  private static final int DEFAULT_LIMIT = 1000;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Clock clock;
+
+  private final int limit;
+
+  private final Map<String, long[]> usages = new HashMap<>();
+
+  private final long windowMillis;
+
+  private InMemoryRateBudgetStore(Builder builder) {
+    this.clock = builder.clock;
+    this.limit = builder.limit;
+    this.windowMillis = builder.window.toMillis();
+  }
+
+  @Override
+  public Single<RateBudgetLease> lease(String budgetKey, int requestedTokens) {
+    return Single.fromCallable(() -> {
+      long windowIndex = this.clock.millis() / this.windowMillis;
+      int grantedTokens;
+      synchronized (this.usages) {
+        long[] usage = this.usages.computeIfAbsent(budgetKey, (key) -> new long[2]);
+        if (usage[0] != windowIndex) {
+          usage[0] = windowIndex;
+          usage[1] = 0;
+        }
+        grantedTokens = (int) Math.max(0, Math.min(requestedTokens, this.limit - usage[1]));
+        usage[1] += grantedTokens;
+      }
+      return new RateBudgetLease(grantedTokens,
+          Instant.ofEpochMilli((windowIndex + 1) * this.windowMillis));
+    });
+  }
+}
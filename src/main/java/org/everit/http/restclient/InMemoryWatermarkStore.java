@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+
+/**
+ * A {@link WatermarkStore} that keeps the watermarks in memory. It is useful in tests or when a
+ * full synchronization after a restart is acceptable.
+ */
+public final class InMemoryWatermarkStore implements WatermarkStore {
+
+  private final ConcurrentMap<String, Watermark> watermarks = new ConcurrentHashMap<>();
+
+  @Override
+  public Single<Optional<Watermark>> load(String queryKey) {
+    return Single.fromCallable(() -> Optional.ofNullable(this.watermarks.get(queryKey)));
+  }
+
+  @Override
+  public Completable save(String queryKey, Watermark watermark) {
+    return Completable.fromAction(() -> this.watermarks.put(queryKey, watermark));
+  }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+
+/**
+ * Synchronizes the changes of a paged search (e.g. a JQL search ordered by the update time) with
+ * an updated-since watermark instead of re-running the full search. Every cycle queries the
+ * entities that were updated since the stored watermark minus the overlap, streams the pages and
+ * emits the entities whose version was not emitted before. The watermark is advanced to the
+ * latest update time of the fetched entities when all pages are processed, so a cycle costs in
+ * proportion to the changed data.
+ *
+ * <p>
+ * The pages are fetched with keyset paging: every page is queried since the latest update time of
+ * the previous page instead of with a growing offset. An entity that is updated during the cycle
+ * moves to the end of the result, which would shift the following entities out of the next page
+ * with offset paging.
+ *
+ * <p>
+ * The overlap handles the clock skew between the nodes of the server, late commits and the
+ * precision of the query (JQL compares times in minutes). The entities that are fetched again in
+ * the overlap are dropped by their id and version. The sync is at-least-once: if a cycle fails or
+ * is cancelled, the watermark is not advanced and the next cycle emits the same changes again.
+ * The cycles of the same query must not run concurrently.
+ *
+ * @param <T>
+ *          The type of the entities.
+ */
+public final class IncrementalSync<T> {
+
+  /**
+   * Builder class for {@link IncrementalSync}.
+   *
+   * @param <T>
+   *          The type of the entities.
+   */
+  public static final class Builder<T> {
+
+    private Function<T, String> idFunction;
+
+    private Instant initialTimestamp = Instant.EPOCH;
+
+    private String itemsPointer = DEFAULT_ITEMS_POINTER;
+
+    private TypeReference<T> itemType;
+
+    private Duration overlap = DEFAULT_OVERLAP;
+
+    private BiFunction<Instant, Integer, RestRequest> pageRequestFactory;
+
+    private String queryKey;
+
+    private Optional<RestRequestEnhancer> requestEnhancer = Optional.empty();
+
+    private RestClient restClient;
+
+    private Function<T, Instant> updatedFunction;
+
+    private Function<T, String> versionFunction;
+
+    private WatermarkStore watermarkStore;
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the sync, all properties without default value must be specified.
+     */
+    public IncrementalSync<T> build() {
+      Objects.requireNonNull(this.idFunction, "idFunction must be specified");
+      Objects.requireNonNull(this.itemType, "itemType must be specified");
+      Objects.requireNonNull(this.pageRequestFactory, "pageRequestFactory must be specified");
+      Objects.requireNonNull(this.queryKey, "queryKey must be specified");
+      Objects.requireNonNull(this.restClient, "restClient must be specified");
+      Objects.requireNonNull(this.updatedFunction, "updatedFunction must be specified");
+      Objects.requireNonNull(this.versionFunction, "versionFunction must be specified");
+      Objects.requireNonNull(this.watermarkStore, "watermarkStore must be specified");
+      return new IncrementalSync<>(this);
+    }
+
+    /**
+     * Returns the id of an entity.
+     */
+    public Builder<T> idFunction(Function<T, String> idFunction) {
+      this.idFunction = Objects.requireNonNull(idFunction);
+      return this;
+    }
+
+    /**
+     * The timestamp that the first cycle queries the changes since, if the query has no stored
+     * watermark. Default: {@link Instant#EPOCH}, so the first cycle fetches everything.
+     */
+    public Builder<T> initialTimestamp(Instant initialTimestamp) {
+      this.initialTimestamp = Objects.requireNonNull(initialTimestamp);
+      return this;
+    }
+
+    /**
+     * The JSON pointer of the array of the entities within a page. Default: <code>/values</code>.
+     * The Jira issue search uses <code>/issues</code>.
+     */
+    public Builder<T> itemsPointer(String itemsPointer) {
+      this.itemsPointer = Objects.requireNonNull(itemsPointer);
+      return this;
+    }
+
+    /**
+     * The type that the entities are converted to.
+     */
+    public Builder<T> itemType(TypeReference<T> itemType) {
+      this.itemType = Objects.requireNonNull(itemType);
+      return this;
+    }
+
+    /**
+     * The time that is subtracted from the watermark when the changes are queried. It should be
+     * larger than the clock skew of the server plus the precision of the query. Default: 2
+     * minutes.
+     */
+    public Builder<T> overlap(Duration overlap) {
+      if (overlap.isNegative()) {
+        throw new IllegalArgumentException("overlap must not be negative: " + overlap);
+      }
+      this.overlap = overlap;
+      return this;
+    }
+
+    /**
+     * Creates the request of a page from the timestamp that the changes are queried since and the
+     * number of entities to skip from the beginning of the result (<code>startAt</code>). The
+     * query must return the entities that were updated at or after the timestamp, ordered by the
+     * update time ascending. The timestamp of a page is the latest update time of the previous
+     * page and <code>startAt</code> skips the entities of the previous page that have that update
+     * time. If a page does not advance the update time, because more entities have the same update
+     * time (within the precision of the query) than fit on a page, the next page is requested from
+     * the same timestamp with the offset grown by the size of the page.
+     */
+    public Builder<T> pageRequestFactory(
+        BiFunction<Instant, Integer, RestRequest> pageRequestFactory) {
+      this.pageRequestFactory = Objects.requireNonNull(pageRequestFactory);
+      return this;
+    }
+
+    /**
+     * Identifies the query in the {@link WatermarkStore}.
+     */
+    public Builder<T> queryKey(String queryKey) {
+      this.queryKey = Objects.requireNonNull(queryKey);
+      return this;
+    }
+
+    public Builder<T> requestEnhancer(Optional<RestRequestEnhancer> requestEnhancer) {
+      this.requestEnhancer = Objects.requireNonNull(requestEnhancer);
+      return this;
+    }
+
+    public Builder<T> restClient(RestClient restClient) {
+      this.restClient = Objects.requireNonNull(restClient);
+      return this;
+    }
+
+    /**
+     * Returns the update time of an entity as the server reports it.
+     */
+    public Builder<T> updatedFunction(Function<T, Instant> updatedFunction) {
+      this.updatedFunction = Objects.requireNonNull(updatedFunction);
+      return this;
+    }
+
+    /**
+     * Returns the version of an entity. If the entity has no version, the update time can be
+     * used.
+     */
+    public Builder<T> versionFunction(Function<T, String> versionFunction) {
+      this.versionFunction = Objects.requireNonNull(versionFunction);
+      return this;
+    }
+
+    public Builder<T> watermarkStore(WatermarkStore watermarkStore) {
+      this.watermarkStore = Objects.requireNonNull(watermarkStore);
+      return this;
+    }
+  }
+
+  /**
+   * The state of one sync cycle.
+   */
+  private final class Cycle {
+
+    private Instant latestUpdate;
+
+    private final Watermark previousWatermark;
+
+    private final Map<String, Instant> seenUpdates = new HashMap<>();
+
+    private final Map<String, String> seenVersions = new HashMap<>();
+
+    Cycle(Watermark previousWatermark) {
+      this.previousWatermark = previousWatermark;
+      this.latestUpdate = previousWatermark.getTimestamp();
+    }
+
+    private boolean accept(T item) {
+      String id = IncrementalSync.this.idFunction.apply(item);
+      String version = IncrementalSync.this.versionFunction.apply(item);
+      Instant updated = IncrementalSync.this.updatedFunction.apply(item);
+      if (updated.isAfter(this.latestUpdate)) {
+        this.latestUpdate = updated;
+      }
+
+      this.seenUpdates.put(id, updated);
+      String emittedVersion = this.seenVersions.put(id, version);
+      if (emittedVersion == null) {
+        emittedVersion = this.previousWatermark.getSeenVersions().get(id);
+      }
+      return !version.equals(emittedVersion);
+    }
+
+    /**
+     * Returns the entities of the page that were not emitted before.
+     */
+    List<T> acceptPage(List<T> items) {
+      List<T> changes = new ArrayList<>(items.size());
+      for (T item : items) {
+        if (accept(item)) {
+          changes.add(item);
+        }
+      }
+      return changes;
+    }
+
+    /**
+     * Creates the watermark that contains the versions of the entities that the next cycle fetches
+     * again due to the overlap.
+     */
+    Optional<Watermark> createWatermark() {
+      if (this.seenUpdates.isEmpty()) {
+        return Optional.empty();
+      }
+      Instant overlapStart = this.latestUpdate.minus(IncrementalSync.this.overlap);
+      Map<String, String> overlapVersions = new HashMap<>();
+      for (Entry<String, Instant> seenUpdate : this.seenUpdates.entrySet()) {
+        if (!seenUpdate.getValue().isBefore(overlapStart)) {
+          String id = seenUpdate.getKey();
+          overlapVersions.put(id, this.seenVersions.get(id));
+        }
+      }
+      return Optional.of(new Watermark(this.latestUpdate, overlapVersions));
+    }
+  }
+
+  private static final String DEFAULT_ITEMS_POINTER = "/values";
+
+  private static final Duration DEFAULT_OVERLAP = Duration.ofMinutes(2);
+
+  public static <T> Builder<T> builder() {
+    return new Builder<>();
+  }
+
+  private final Function<T, String> idFunction;
+
+  private final Instant initialTimestamp;
+
+  private final String itemsPointer;
+
+  private final TypeReference<T> itemType;
+
+  private final Duration overlap;
+
+  private final BiFunction<Instant, Integer, RestRequest> pageRequestFactory;
+
+  private final String queryKey;
+
+  private final Optional<RestRequestEnhancer> requestEnhancer;
+
+  private final RestClient restClient;
+
+  private final Function<T, Instant> updatedFunction;
+
+  private final Function<T, String> versionFunction;
+
+  private final WatermarkStore watermarkStore;
+
+  private IncrementalSync(Builder<T> builder) {
+    this.idFunction = builder.idFunction;
+    this.initialTimestamp = builder.initialTimestamp;
+    this.itemsPointer = builder.itemsPointer;
+    this.itemType = builder.itemType;
+    this.overlap = builder.overlap;
+    this.pageRequestFactory = builder.pageRequestFactory;
+    this.queryKey = builder.queryKey;
+    this.requestEnhancer = builder.requestEnhancer;
+    this.restClient = builder.restClient;
+    this.updatedFunction = builder.updatedFunction;
+    this.versionFunction = builder.versionFunction;
+    this.watermarkStore = builder.watermarkStore;
+  }
+
+  private List<T> convertItems(LazyJSONDocument page, int itemCount) {
+    List<T> items = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      page.get(this.itemsPointer + '/' + i, this.itemType).ifPresent(items::add);
+    }
+    return items;
+  }
+
+  /**
+   * Fetches the pages one after the other with keyset paging (see
+   * {@link Builder#pageRequestFactory(BiFunction)}). The next page is requested only when the
+   * previous one is processed, so the pages are streamed with backpressure. The entities that are
+   * fetched twice at the page boundaries are dropped by the cycle by their id and version.
+   */
+  private Flowable<List<T>> fetchPages(Instant since, int startAt) {
+    return this.restClient
+        .callEndpointAsDocument(this.pageRequestFactory.apply(since, startAt),
+            this.requestEnhancer)
+        .flatMapPublisher((page) -> {
+          int itemCount = itemCount(page);
+          List<T> items = convertItems(page, itemCount);
+          Flowable<List<T>> result = Flowable.just(items);
+          if (isLastPage(page, startAt, itemCount)) {
+            return result;
+          }
+
+          Instant latestUpdate = since;
+          int latestUpdateCount = 0;
+          for (T item : items) {
+            Instant updated = this.updatedFunction.apply(item);
+            if (updated.isAfter(latestUpdate)) {
+              latestUpdate = updated;
+              latestUpdateCount = 0;
+            }
+            if (updated.equals(latestUpdate)) {
+              latestUpdateCount++;
+            }
+          }
+          Instant nextSince = latestUpdate;
+          int nextStartAt = latestUpdate.equals(since) ? startAt + itemCount : latestUpdateCount;
+          return result.concatWith(Flowable.defer(() -> fetchPages(nextSince, nextStartAt)));
+        });
+  }
+
+  private boolean isLastPage(LazyJSONDocument page, int startAt, int itemCount) {
+    if (itemCount == 0 || page.get("/isLast", Boolean.class).orElse(Boolean.FALSE)) {
+      return true;
+    }
+    Optional<Integer> total = page.get("/total", Integer.class);
+    return total.isPresent() && startAt + itemCount >= total.get();
+  }
+
+  private int itemCount(LazyJSONDocument page) {
+    return Math.max(0, page.getSize(this.itemsPointer));
+  }
+
+  /**
+   * Runs a sync cycle. The watermark is loaded when the flowable is subscribed and it is stored
+   * before the flowable completes.
+   *
+   * @return The entities that changed since the previous cycle.
+   */
+  public Flowable<T> sync() {
+    return this.watermarkStore.load(this.queryKey).flatMapPublisher((storedWatermark) -> {
+      Cycle cycle = new Cycle(storedWatermark.orElseGet(
+          () -> new Watermark(this.initialTimestamp, new HashMap<>())));
+      Instant since = storedWatermark.isPresent()
+          ? cycle.previousWatermark.getTimestamp().minus(this.overlap)
+          : this.initialTimestamp;
+      return fetchPages(since, 0)
+          .concatMapIterable(cycle::acceptPage)
+          .concatWith(Completable.defer(() -> cycle.createWatermark()
+              .map((watermark) -> this.watermarkStore.save(this.queryKey, watermark))
+              .orElseGet(Completable::complete)).<T> toFlowable());
+    });
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.everit.http.client.MediaType;
+import org.everit.http.client.async.AbstractAsyncContentProvider;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import io.reactivex.Flowable;
+import io.reactivex.exceptions.Exceptions;
+
+/**
+ * Serializes the elements of a {@link JSONArrayBody} one by one. An element is requested from the
+ * publisher only when the transport asks for the next chunk, so the backpressure of the connection
+ * is propagated to the source. If the publisher fails, the error is thrown when the transport asks
+ * for the next chunk.
+ */
+class JSONArrayAsyncContentProvider extends AbstractAsyncContentProvider {
+
+  /**
+   * Receives the elements of the publisher.
+   */
+  private final class ElementSubscriber implements Subscriber<Object> {
+
+    @Override
+    public void onComplete() {
+      Consumer<ByteBuffer> callback;
+      synchronized (JSONArrayAsyncContentProvider.this.lock) {
+        JSONArrayAsyncContentProvider.this.sourceCompleted = true;
+        callback = takePendingCallback();
+        if (callback != null) {
+          JSONArrayAsyncContentProvider.this.suffixSent = true;
+        }
+      }
+      if (callback != null) {
+        callback.accept(ByteBuffer.wrap(JSONArrayAsyncContentProvider.this.suffix));
+      }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      Consumer<ByteBuffer> callback;
+      synchronized (JSONArrayAsyncContentProvider.this.lock) {
+        JSONArrayAsyncContentProvider.this.sourceError = error;
+        callback = takePendingCallback();
+      }
+      if (callback != null) {
+        // An empty chunk makes the transport ask for the next one, where the error is thrown
+        callback.accept(ByteBuffer.allocate(0));
+      }
+    }
+
+    @Override
+    public void onNext(Object element) {
+      byte[] json;
+      try {
+        json = JSONArrayAsyncContentProvider.this.objectMapper.toJSONBytes(element);
+      } catch (RuntimeException e) {
+        JSONArrayAsyncContentProvider.this.subscription.cancel();
+        onError(e);
+        return;
+      }
+
+      Consumer<ByteBuffer> callback;
+      boolean firstElement;
+      synchronized (JSONArrayAsyncContentProvider.this.lock) {
+        callback = takePendingCallback();
+        firstElement = !JSONArrayAsyncContentProvider.this.elementSent;
+        JSONArrayAsyncContentProvider.this.elementSent = true;
+      }
+      ByteBuffer chunk;
+      if (firstElement) {
+        chunk = ByteBuffer.wrap(json);
+      } else {
+        chunk = ByteBuffer.allocate(json.length + 1);
+        chunk.put((byte) ',').put(json);
+        chunk.flip();
+      }
+      callback.accept(chunk);
+    }
+
+    @Override
+    public void onSubscribe(Subscription newSubscription) {
+      JSONArrayAsyncContentProvider.this.subscription = newSubscription;
+    }
+  }
+
+  private static final MediaType APPLICATION_JSON = MediaType.parse("application/json");
+
+  private boolean elementSent = false;
+
+  private final Flowable<?> elements;
+
+  private final Object lock = new Object();
+
+  private final JSONObjectMapper objectMapper;
+
+  private Consumer<ByteBuffer> pendingCallback;
+
+  private final byte[] prefix;
+
+  private boolean prefixSent = false;
+
+  private boolean sourceCompleted = false;
+
+  private Throwable sourceError;
+
+  private volatile Subscription subscription;
+
+  private final byte[] suffix;
+
+  private boolean suffixSent = false;
+
+  JSONArrayAsyncContentProvider(JSONArrayBody body, JSONObjectMapper objectMapper) {
+    this.elements = Flowable.fromPublisher(body.getElements());
+    this.objectMapper = objectMapper;
+    if (body.getPropertyName().isPresent()) {
+      this.prefix = ("{" + new String(objectMapper.toJSONBytes(body.getPropertyName().get()),
+          StandardCharsets.UTF_8) + ":[").getBytes(StandardCharsets.UTF_8);
+      this.suffix = "]}".getBytes(StandardCharsets.UTF_8);
+    } else {
+      this.prefix = "[".getBytes(StandardCharsets.UTF_8);
+      this.suffix = "]".getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  @Override
+  protected void doClose() {
+    Subscription currentSubscription = this.subscription;
+    if (currentSubscription != null) {
+      currentSubscription.cancel();
+    }
+  }
+
+  @Override
+  public Optional<Long> getContentLength() {
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<MediaType> getContentType() {
+    return Optional.of(JSONArrayAsyncContentProvider.APPLICATION_JSON);
+  }
+
+  @Override
+  protected void provideNextChunk(Consumer<ByteBuffer> callback) {
+    byte[] chunk = null;
+    boolean subscribe = false;
+    boolean requestElement = false;
+    synchronized (this.lock) {
+      if (this.sourceError != null) {
+        throw Exceptions.propagate(this.sourceError);
+      }
+      if (!this.prefixSent) {
+        this.prefixSent = true;
+        subscribe = true;
+        chunk = this.prefix;
+      } else if (this.sourceCompleted && !this.suffixSent) {
+        this.suffixSent = true;
+        chunk = this.suffix;
+      } else if (!this.suffixSent) {
+        this.pendingCallback = callback;
+        requestElement = true;
+      }
+    }
+
+    if (requestElement) {
+      this.subscription.request(1);
+      return;
+    }
+    if (subscribe) {
+      this.elements.subscribe(new ElementSubscriber());
+    }
+    // A null chunk signals the end of the content
+    callback.accept((chunk != null) ? ByteBuffer.wrap(chunk) : null);
+  }
+
+  private Consumer<ByteBuffer> takePendingCallback() {
+    Consumer<ByteBuffer> callback = this.pendingCallback;
+    this.pendingCallback = null;
+    return callback;
+  }
+}
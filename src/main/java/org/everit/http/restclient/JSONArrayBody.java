@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import org.reactivestreams.Publisher;
+
+/**
+ * Request body that is a JSON array whose elements are serialized one by one from a
+ * {@link Publisher} as the transport demands the bytes, so the elements do not have to be collected
+ * in memory. The array can be wrapped in an object with a single property, e.g.
+ * <code>{"issueUpdates":[...]}</code> for the bulk create endpoint of Jira. A {@link Publisher}
+ * that is passed directly as a request body is sent as a bare array.
+ *
+ * <p>
+ * The publisher is subscribed when the transport starts sending the body, so it should not be
+ * reused for multiple requests.
+ */
+public final class JSONArrayBody {
+
+  /**
+   * Creates a body that is sent as a bare JSON array.
+   *
+   * @param elements
+   *          The elements of the array.
+   */
+  public static JSONArrayBody of(Publisher<?> elements) {
+    return new JSONArrayBody(elements, Optional.empty());
+  }
+
+  private final Publisher<?> elements;
+
+  private final Optional<String> propertyName;
+
+  private JSONArrayBody(Publisher<?> elements, Optional<String> propertyName) {
+    this.elements = Objects.requireNonNull(elements);
+    this.propertyName = propertyName;
+  }
+
+  public Publisher<?> getElements() {
+    return this.elements;
+  }
+
+  /**
+   * The name of the property of the object that wraps the array, if the array is wrapped.
+   */
+  public Optional<String> getPropertyName() {
+    return this.propertyName;
+  }
+
+  /**
+   * Creates a body with the same property name and different elements.
+   */
+  JSONArrayBody withElements(Publisher<?> newElements) {
+    return new JSONArrayBody(newElements, this.propertyName);
+  }
+
+  /**
+   * Creates a body that wraps the array in an object with a single property.
+   *
+   * @param newPropertyName
+   *          The name of the property whose value is the array.
+   */
+  public JSONArrayBody wrappedIn(String newPropertyName) {
+    return new JSONArrayBody(this.elements, Optional.of(newPropertyName));
+  }
+}
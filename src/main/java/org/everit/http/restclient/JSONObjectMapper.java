@@ -15,6 +15,13 @@
  */
 package org.everit.http.restclient;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Libraries that use REST Client should provide a {@link JSONObjectMapper} that tells the REST
  * client how to convert from String to JSON and vice versa.
@@ -51,6 +58,78 @@ public interface JSONObjectMapper {
    */
   <T> T convertValue(Object fromValue, TypeReference<T> toValueTypeRef);
 
+  /**
+   * Converts a UTF-8 encoded JSON byte array region to a type. The default implementation creates a
+   * String from the bytes and calls {@link #fromJSON(String, Class)}, implementations should
+   * override this method if they can parse the bytes directly.
+   *
+   * @param <T>
+   *          The type to convert the JSON to.
+   * @param json
+   *          The byte array that contains the UTF-8 encoded JSON.
+   * @param offset
+   *          The index of the first byte of the JSON within the array.
+   * @param length
+   *          The number of bytes of the JSON.
+   * @param valueType
+   *          The type as class type that the JSON will be converted to.
+   * @return The generated instance.
+   */
+  default <T> T fromJSON(byte[] json, int offset, int length, Class<T> valueType) {
+    return fromJSON(new String(json, offset, length, StandardCharsets.UTF_8), valueType);
+  }
+
+  /**
+   * Converts a UTF-8 encoded JSON byte array region to a type. The default implementation creates a
+   * String from the bytes and calls {@link #fromJSON(String, TypeReference)}, implementations
+   * should override this method if they can parse the bytes directly.
+   *
+   * @param <T>
+   *          The type to convert the JSON to.
+   * @param json
+   *          The byte array that contains the UTF-8 encoded JSON.
+   * @param offset
+   *          The index of the first byte of the JSON within the array.
+   * @param length
+   *          The number of bytes of the JSON.
+   * @param valueTypeRef
+   *          The type as reference type that the JSON will be converted to.
+   * @return The generated instance.
+   */
+  default <T> T fromJSON(byte[] json, int offset, int length, TypeReference<T> valueTypeRef) {
+    return fromJSON(new String(json, offset, length, StandardCharsets.UTF_8), valueTypeRef);
+  }
+
+  /**
+   * Converts a UTF-8 encoded JSON stream to a type. The stream is not closed by this method. The
+   * default implementation reads the whole stream into memory and calls
+   * {@link #fromJSON(byte[], int, int, TypeReference)}.
+   *
+   * @param <T>
+   *          The type to convert the JSON to.
+   * @param json
+   *          The stream that provides the UTF-8 encoded JSON.
+   * @param valueTypeRef
+   *          The type as reference type that the JSON will be converted to.
+   * @return The generated instance.
+   */
+  default <T> T fromJSON(InputStream json, TypeReference<T> valueTypeRef) {
+    final int bufferSize = 8192;
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    byte[] buffer = new byte[bufferSize];
+    try {
+      int r = json.read(buffer);
+      while (r >= 0) {
+        bout.write(buffer, 0, r);
+        r = json.read(buffer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    byte[] bytes = bout.toByteArray();
+    return fromJSON(bytes, 0, bytes.length, valueTypeRef);
+  }
+
   /**
    * Converts a JSON string to a type.
    *
@@ -77,6 +156,17 @@ public interface JSONObjectMapper {
    */
   <T> T fromJSON(String json, TypeReference<T> valueTypeRef);
 
+  /**
+   * Prepares the conversion of JSON to the type, so the first call of the fromJSON functions with
+   * the type is not slower than the following ones. Implementations that cache the readers per type
+   * should resolve and cache the reader here. The default implementation does nothing.
+   *
+   * @param type
+   *          The type that JSON will be converted to.
+   */
+  default void prepare(Type type) {
+  }
+
   /**
    * Converts an object to JSON.
    *
@@ -85,4 +175,17 @@ public interface JSONObjectMapper {
    * @return
    */
   String toJSON(Object object);
+
+  /**
+   * Converts an object to UTF-8 encoded JSON. The default implementation encodes the result of
+   * {@link #toJSON(Object)}, implementations should override this method if they can write bytes
+   * directly.
+   *
+   * @param object
+   *          The object that is converted to JSON.
+   * @return The UTF-8 encoded JSON.
+   */
+  default byte[] toJSONBytes(Object object) {
+    return toJSON(object).getBytes(StandardCharsets.UTF_8);
+  }
 }
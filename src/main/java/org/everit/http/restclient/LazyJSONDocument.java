@@ -0,0 +1,525 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A read-only view over a UTF-8 encoded JSON document that converts only the values that are
+ * actually read. A structural index (tape) of the document is built on the first access; after
+ * that, values are located by <a href="https://tools.ietf.org/html/rfc6901">JSON pointers</a>
+ * without parsing the parts of the document that are not addressed, and only the located region
+ * is converted by the {@link JSONObjectMapper}.
+ *
+ * <p>
+ * The index is structural: it checks the nesting of the objects, arrays and strings, but it does
+ * not validate the document completely. Instances are thread-safe.
+ */
+public final class LazyJSONDocument {
+
+  /**
+   * The structural index of the document. Every JSON value and object key has an entry; the
+   * entries of the children of a container follow the entry of the container and the keys precede
+   * their values.
+   */
+  private static final class Tape {
+
+    private int[] ends;
+
+    private int[] nexts;
+
+    private int size = 0;
+
+    private int[] starts;
+
+    private byte[] types;
+
+    Tape(int capacity) {
+      this.types = new byte[capacity];
+      this.starts = new int[capacity];
+      this.ends = new int[capacity];
+      this.nexts = new int[capacity];
+    }
+
+    int add(byte type, int start, int end) {
+      if (this.size == this.types.length) {
+        int capacity = this.size * 2;
+        this.types = Arrays.copyOf(this.types, capacity);
+        this.starts = Arrays.copyOf(this.starts, capacity);
+        this.ends = Arrays.copyOf(this.ends, capacity);
+        this.nexts = Arrays.copyOf(this.nexts, capacity);
+      }
+      int index = this.size++;
+      this.types[index] = type;
+      this.starts[index] = start;
+      this.ends[index] = end;
+      this.nexts[index] = index + 1;
+      return index;
+    }
+  }
+
+  private static final int ESCAPE_UNICODE_LENGTH = 4;
+
+  private static final int HEX_RADIX = 16;
+
+  private static final int INITIAL_TAPE_CAPACITY = 16;
+
+  private static final int JSON_BYTES_PER_TAPE_ENTRY = 8;
+
+  private static final byte TYPE_ARRAY = 1;
+
+  private static final byte TYPE_FALSE = 2;
+
+  private static final byte TYPE_NULL = 3;
+
+  private static final byte TYPE_NUMBER = 4;
+
+  private static final byte TYPE_OBJECT = 5;
+
+  private static final byte TYPE_STRING = 6;
+
+  /**
+   * A string that contains escape sequences, so it cannot be compared byte-by-byte.
+   */
+  private static final byte TYPE_STRING_ESCAPED = 7;
+
+  private static final byte TYPE_TRUE = 8;
+
+  private static boolean isNumberPart(byte b) {
+    return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+
+  private static List<String> parsePointer(String pointer) {
+    List<String> segments = new ArrayList<>();
+    if (pointer.isEmpty()) {
+      return segments;
+    }
+    if (pointer.charAt(0) != '/') {
+      throw new IllegalArgumentException("JSON pointer must start with '/': " + pointer);
+    }
+    int start = 1;
+    while (true) {
+      int end = pointer.indexOf('/', start);
+      String segment = pointer.substring(start, (end < 0) ? pointer.length() : end);
+      segments.add(segment.replace("~1", "/").replace("~0", "~"));
+      if (end < 0) {
+        return segments;
+      }
+      start = end + 1;
+    }
+  }
+
+  private final byte[] json;
+
+  private final JSONObjectMapper objectMapper;
+
+  private volatile Tape tape;
+
+  /**
+   * Constructor. The array is not copied, so it must not be modified after passing it to the
+   * document.
+   *
+   * @param json
+   *          The UTF-8 encoded JSON document.
+   * @param objectMapper
+   *          The mapper that converts the values that are read.
+   */
+  public LazyJSONDocument(byte[] json, JSONObjectMapper objectMapper) {
+    this.json = Objects.requireNonNull(json);
+    this.objectMapper = Objects.requireNonNull(objectMapper);
+  }
+
+  private Tape buildTape() {
+    Tape result = new Tape(
+        Math.max(INITIAL_TAPE_CAPACITY, this.json.length / JSON_BYTES_PER_TAPE_ENTRY));
+    int[] stack = new int[INITIAL_TAPE_CAPACITY];
+    int depth = 0;
+    boolean rootDone = false;
+    int pos = 0;
+    while (pos < this.json.length) {
+      byte b = this.json[pos];
+      if (isWhitespace(b) || b == ',' || b == ':') {
+        pos++;
+        continue;
+      }
+      if (rootDone) {
+        throw malformed(pos);
+      }
+      if (b == '{' || b == '[') {
+        if (depth == stack.length) {
+          stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = result.add(b == '{' ? TYPE_OBJECT : TYPE_ARRAY, pos, -1);
+        pos++;
+        continue;
+      }
+      if (b == '}' || b == ']') {
+        if (depth == 0) {
+          throw malformed(pos);
+        }
+        int container = stack[--depth];
+        if (result.types[container] != (b == '}' ? TYPE_OBJECT : TYPE_ARRAY)) {
+          throw malformed(pos);
+        }
+        pos++;
+        result.ends[container] = pos;
+        result.nexts[container] = result.size;
+      } else if (b == '"') {
+        int start = pos;
+        boolean escaped = false;
+        pos++;
+        while (pos < this.json.length && this.json[pos] != '"') {
+          if (this.json[pos] == '\\') {
+            escaped = true;
+            pos++;
+          }
+          pos++;
+        }
+        if (pos >= this.json.length) {
+          throw malformed(start);
+        }
+        pos++;
+        result.add(escaped ? TYPE_STRING_ESCAPED : TYPE_STRING, start, pos);
+      } else if (b == '-' || (b >= '0' && b <= '9')) {
+        int start = pos;
+        while (pos < this.json.length && isNumberPart(this.json[pos])) {
+          pos++;
+        }
+        result.add(TYPE_NUMBER, start, pos);
+      } else {
+        int start = pos;
+        pos = literal(pos, "true", "false", "null");
+        result.add(b == 't' ? TYPE_TRUE : (b == 'f' ? TYPE_FALSE : TYPE_NULL), start, pos);
+      }
+      rootDone = depth == 0;
+    }
+    if (!rootDone) {
+      throw malformed(pos);
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether the document has a value (including <code>null</code>) at the pointer.
+   *
+   * @param pointer
+   *          JSON pointer, e.g. <code>/fields/status/name</code>.
+   */
+  public boolean contains(String pointer) {
+    return find(pointer) >= 0;
+  }
+
+  /**
+   * Converts a region of the document, e.g. one that is returned by
+   * {@link #getElementBounds(String)}.
+   */
+  <T> T convert(int offset, int length, TypeReference<T> valueTypeRef) {
+    return this.objectMapper.fromJSON(this.json, offset, length, valueTypeRef);
+  }
+
+  private String decodeString(Tape currentTape, int index) {
+    int start = currentTape.starts[index] + 1;
+    int end = currentTape.ends[index] - 1;
+    if (currentTape.types[index] == TYPE_STRING) {
+      return new String(this.json, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    StringBuilder sb = new StringBuilder(end - start);
+    int runStart = start;
+    int pos = start;
+    while (pos < end) {
+      if (this.json[pos] != '\\') {
+        pos++;
+        continue;
+      }
+      sb.append(new String(this.json, runStart, pos - runStart, StandardCharsets.UTF_8));
+      char escaped = (char) this.json[pos + 1];
+      pos += 2;
+      switch (escaped) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          sb.append((char) Integer.parseInt(
+              new String(this.json, pos, ESCAPE_UNICODE_LENGTH, StandardCharsets.US_ASCII),
+              HEX_RADIX));
+          pos += ESCAPE_UNICODE_LENGTH;
+          break;
+        default:
+          sb.append(escaped);
+          break;
+      }
+      runStart = pos;
+    }
+    sb.append(new String(this.json, runStart, end - runStart, StandardCharsets.UTF_8));
+    return sb.toString();
+  }
+
+  /**
+   * Returns the tape index of the value at the pointer or -1 if there is no such value.
+   */
+  private int find(String pointer) {
+    Tape currentTape = getTape();
+    int index = 0;
+    for (String segment : parsePointer(pointer)) {
+      byte type = currentTape.types[index];
+      if (type == TYPE_OBJECT) {
+        index = findMember(currentTape, index, segment);
+      } else if (type == TYPE_ARRAY) {
+        index = findElement(currentTape, index, segment);
+      } else {
+        return -1;
+      }
+      if (index < 0) {
+        return -1;
+      }
+    }
+    return index;
+  }
+
+  private int findElement(Tape currentTape, int arrayIndex, String segment) {
+    int elementIndex;
+    try {
+      elementIndex = Integer.parseInt(segment);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+    if (elementIndex < 0) {
+      return -1;
+    }
+    int end = currentTape.nexts[arrayIndex];
+    int index = arrayIndex + 1;
+    for (int i = 0; i < elementIndex && index < end; i++) {
+      index = currentTape.nexts[index];
+    }
+    return (index < end) ? index : -1;
+  }
+
+  private int findMember(Tape currentTape, int objectIndex, String segment) {
+    byte[] segmentBytes = segment.getBytes(StandardCharsets.UTF_8);
+    int end = currentTape.nexts[objectIndex];
+    int keyIndex = objectIndex + 1;
+    while (keyIndex < end) {
+      int valueIndex = keyIndex + 1;
+      if (keyEquals(currentTape, keyIndex, segment, segmentBytes)) {
+        return valueIndex;
+      }
+      keyIndex = currentTape.nexts[valueIndex];
+    }
+    return -1;
+  }
+
+  /**
+   * Converts the value at the pointer to the specified type.
+   *
+   * @param pointer
+   *          JSON pointer, e.g. <code>/fields/status</code>.
+   * @param valueType
+   *          The type to convert to.
+   * @return The converted value or empty if there is no value or the value is <code>null</code>.
+   */
+  public <T> Optional<T> get(String pointer, Class<T> valueType) {
+    int index = find(pointer);
+    if (index < 0 || this.tape.types[index] == TYPE_NULL) {
+      return Optional.empty();
+    }
+    int start = this.tape.starts[index];
+    return Optional.ofNullable(this.objectMapper.fromJSON(this.json, start,
+        this.tape.ends[index] - start, valueType));
+  }
+
+  /**
+   * Converts the value at the pointer to the specified type.
+   *
+   * @param pointer
+   *          JSON pointer, e.g. <code>/fields/customfield_10010</code>.
+   * @param valueTypeRef
+   *          The type to convert to.
+   * @return The converted value or empty if there is no value or the value is <code>null</code>.
+   */
+  public <T> Optional<T> get(String pointer, TypeReference<T> valueTypeRef) {
+    int index = find(pointer);
+    if (index < 0 || this.tape.types[index] == TYPE_NULL) {
+      return Optional.empty();
+    }
+    int start = this.tape.starts[index];
+    return Optional.ofNullable(this.objectMapper.fromJSON(this.json, start,
+        this.tape.ends[index] - start, valueTypeRef));
+  }
+
+  /**
+   * Returns the regions of the elements of the array at the pointer. The start offset of the
+   * element <code>i</code> is at the index <code>2 * i</code> of the result and its end offset
+   * (exclusive) is at <code>2 * i + 1</code>.
+   *
+   * @return The element regions or empty if there is no array at the pointer.
+   */
+  Optional<int[]> getElementBounds(String pointer) {
+    int index = find(pointer);
+    if (index < 0 || this.tape.types[index] != TYPE_ARRAY) {
+      return Optional.empty();
+    }
+    int end = this.tape.nexts[index];
+    int size = 0;
+    for (int child = index + 1; child < end; child = this.tape.nexts[child]) {
+      size++;
+    }
+    int[] bounds = new int[size * 2];
+    int i = 0;
+    for (int child = index + 1; child < end; child = this.tape.nexts[child]) {
+      bounds[i++] = this.tape.starts[child];
+      bounds[i++] = this.tape.ends[child];
+    }
+    return Optional.of(bounds);
+  }
+
+  /**
+   * Returns the JSON text of the value at the pointer without converting it.
+   */
+  public Optional<String> getRawJSON(String pointer) {
+    int index = find(pointer);
+    if (index < 0) {
+      return Optional.empty();
+    }
+    int start = this.tape.starts[index];
+    return Optional.of(new String(this.json, start, this.tape.ends[index] - start,
+        StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the number of elements of an array or the number of members of an object at the
+   * pointer.
+   *
+   * @return The size or -1 if there is no array or object at the pointer.
+   */
+  public int getSize(String pointer) {
+    int index = find(pointer);
+    if (index < 0) {
+      return -1;
+    }
+    byte type = this.tape.types[index];
+    if (type != TYPE_ARRAY && type != TYPE_OBJECT) {
+      return -1;
+    }
+    int size = 0;
+    int end = this.tape.nexts[index];
+    for (int child = index + 1; child < end; child = this.tape.nexts[child]) {
+      size++;
+    }
+    return (type == TYPE_OBJECT) ? size / 2 : size;
+  }
+
+  /**
+   * Returns the value at the pointer as text without using the {@link JSONObjectMapper}. Strings
+   * are unescaped, numbers and booleans are returned as they appear in the document.
+   *
+   * @return The text or empty if there is no value, the value is <code>null</code>, an object or
+   *         an array.
+   */
+  public Optional<String> getString(String pointer) {
+    int index = find(pointer);
+    if (index < 0) {
+      return Optional.empty();
+    }
+    switch (this.tape.types[index]) {
+      case TYPE_STRING:
+      case TYPE_STRING_ESCAPED:
+        return Optional.of(decodeString(this.tape, index));
+      case TYPE_NUMBER:
+      case TYPE_TRUE:
+      case TYPE_FALSE:
+        int start = this.tape.starts[index];
+        return Optional.of(new String(this.json, start, this.tape.ends[index] - start,
+            StandardCharsets.US_ASCII));
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private Tape getTape() {
+    Tape result = this.tape;
+    if (result == null) {
+      synchronized (this) {
+        result = this.tape;
+        if (result == null) {
+          result = buildTape();
+          this.tape = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private boolean keyEquals(Tape currentTape, int keyIndex, String segment,
+      byte[] segmentBytes) {
+    if (currentTape.types[keyIndex] == TYPE_STRING_ESCAPED) {
+      return segment.equals(decodeString(currentTape, keyIndex));
+    }
+    int start = currentTape.starts[keyIndex] + 1;
+    int length = currentTape.ends[keyIndex] - 1 - start;
+    if (length != segmentBytes.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (this.json[start + i] != segmentBytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int literal(int pos, String... literals) {
+    for (String literal : literals) {
+      int end = pos + literal.length();
+      if (end <= this.json.length
+          && literal.equals(new String(this.json, pos, literal.length(),
+              StandardCharsets.US_ASCII))) {
+        return end;
+      }
+    }
+    throw malformed(pos);
+  }
+
+  private IllegalArgumentException malformed(int pos) {
+    return new IllegalArgumentException("Malformed JSON at position " + pos);
+  }
+
+  @Override
+  public String toString() {
+    return new String(this.json, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped open addressing hash table that maps 64-bit key hashes to record locations within
+ * the segment files of a {@link PersistentResponseStore}. As different keys may have the same hash,
+ * every slot with a matching hash is offered to the caller that verifies the key. The class is not
+ * thread-safe.
+ */
+final class MappedIndex implements Closeable {
+
+  /**
+   * Visits the slots whose hash matches during a lookup.
+   */
+  @FunctionalInterface
+  interface SlotVisitor {
+
+    /**
+     * Returns <code>true</code> if the slot belongs to the searched key and the probing should
+     * stop.
+     */
+    boolean visit(int slot, int segmentId, int offset, int length) throws IOException;
+  }
+
+  private static final int DELETED_SEGMENT_ID = -1;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final int MAGIC = 0x52434958;
+
+  private static final int MAX_LOAD_PERCENT = 70;
+
+  private static final int OFFSET_HASH = 0;
+
+  private static final int OFFSET_LENGTH = 16;
+
+  private static final int OFFSET_OFFSET = 12;
+
+  private static final int OFFSET_SEGMENT_ID = 8;
+
+  private static final int PERCENT = 100;
+
+  private static final int POSITION_SLOT_COUNT = 8;
+
+  private static final int POSITION_USED_SLOTS = 12;
+
+  private static final int SLOT_SIZE = 24;
+
+  private static final int VERSION = 1;
+
+  /**
+   * Creates a new empty index file, overwriting the existing one.
+   */
+  static MappedIndex create(Path file, int slotCount) throws IOException {
+    int normalizedSlotCount = Integer.highestOneBit(Math.max(slotCount, 2) - 1) << 1;
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0,
+          MappedIndex.HEADER_SIZE + ((long) normalizedSlotCount * MappedIndex.SLOT_SIZE));
+      buffer.putInt(0, MappedIndex.MAGIC);
+      buffer.putInt(Integer.BYTES, MappedIndex.VERSION);
+      buffer.putInt(MappedIndex.POSITION_SLOT_COUNT, normalizedSlotCount);
+      buffer.putInt(MappedIndex.POSITION_USED_SLOTS, 0);
+      return new MappedIndex(channel, buffer);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens an existing index file.
+   *
+   * @return The index or <code>null</code> if the file does not exist or it is not a valid index
+   *         file.
+   */
+  static MappedIndex open(Path file) throws IOException {
+    if (!file.toFile().isFile()) {
+      return null;
+    }
+    FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long size = channel.size();
+      if (size < MappedIndex.HEADER_SIZE) {
+        channel.close();
+        return null;
+      }
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+      int slotCount = buffer.getInt(MappedIndex.POSITION_SLOT_COUNT);
+      if (buffer.getInt(0) != MappedIndex.MAGIC
+          || buffer.getInt(Integer.BYTES) != MappedIndex.VERSION
+          || slotCount <= 0 || Integer.bitCount(slotCount) != 1
+          || size != MappedIndex.HEADER_SIZE + ((long) slotCount * MappedIndex.SLOT_SIZE)) {
+        channel.close();
+        return null;
+      }
+      return new MappedIndex(channel, buffer);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private final MappedByteBuffer buffer;
+
+  private final FileChannel channel;
+
+  private final int slotCount;
+
+  private MappedIndex(FileChannel channel, MappedByteBuffer buffer) {
+    this.channel = channel;
+    this.buffer = buffer;
+    this.slotCount = buffer.getInt(MappedIndex.POSITION_SLOT_COUNT);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.buffer.force();
+    this.channel.close();
+  }
+
+  /**
+   * Visits all live slots.
+   */
+  void forEachLive(SlotVisitor visitor) throws IOException {
+    for (int slot = 0; slot < this.slotCount; slot++) {
+      if (!isFree(slot) && segmentId(slot) != MappedIndex.DELETED_SEGMENT_ID) {
+        if (visitor.visit(slot, segmentId(slot), offset(slot), length(slot))) {
+          return;
+        }
+      }
+    }
+  }
+
+  int getSlotCount() {
+    return this.slotCount;
+  }
+
+  private long hash(int slot) {
+    return this.buffer.getLong(position(slot) + MappedIndex.OFFSET_HASH);
+  }
+
+  /**
+   * Whether a new key can be inserted without exceeding the maximum load factor.
+   */
+  boolean hasRoomForInsert() {
+    return (long) (usedSlots() + 1) * MappedIndex.PERCENT <= (long) this.slotCount
+        * MappedIndex.MAX_LOAD_PERCENT;
+  }
+
+  /**
+   * Inserts a new key. The caller must ensure that the key is not in the index yet and that
+   * {@link #hasRoomForInsert()} is <code>true</code>.
+   */
+  void insert(long hash, int segmentId, int offset, int length) {
+    int slot = startSlot(hash);
+    while (!isFree(slot) && segmentId(slot) != MappedIndex.DELETED_SEGMENT_ID) {
+      slot = (slot + 1) & (this.slotCount - 1);
+    }
+    if (isFree(slot)) {
+      this.buffer.putInt(MappedIndex.POSITION_USED_SLOTS, usedSlots() + 1);
+    }
+    set(slot, hash, segmentId, offset, length);
+  }
+
+  private boolean isFree(int slot) {
+    return hash(slot) == 0;
+  }
+
+  int length(int slot) {
+    return this.buffer.getInt(position(slot) + MappedIndex.OFFSET_LENGTH);
+  }
+
+  int offset(int slot) {
+    return this.buffer.getInt(position(slot) + MappedIndex.OFFSET_OFFSET);
+  }
+
+  private int position(int slot) {
+    return MappedIndex.HEADER_SIZE + (slot * MappedIndex.SLOT_SIZE);
+  }
+
+  /**
+   * Visits the live slots that have the same hash until the visitor returns <code>true</code>.
+   *
+   * @return The slot where the visitor returned <code>true</code> or -1.
+   */
+  int probe(long hash, SlotVisitor visitor) throws IOException {
+    int slot = startSlot(hash);
+    for (int i = 0; i < this.slotCount && !isFree(slot); i++) {
+      int segmentId = segmentId(slot);
+      if (segmentId != MappedIndex.DELETED_SEGMENT_ID && hash(slot) == hash
+          && visitor.visit(slot, segmentId, offset(slot), length(slot))) {
+        return slot;
+      }
+      slot = (slot + 1) & (this.slotCount - 1);
+    }
+    return -1;
+  }
+
+  /**
+   * Marks the slot as deleted. The slot stays in the probe sequence until the index is rebuilt.
+   */
+  void remove(int slot) {
+    this.buffer.putInt(position(slot) + MappedIndex.OFFSET_SEGMENT_ID,
+        MappedIndex.DELETED_SEGMENT_ID);
+  }
+
+  int segmentId(int slot) {
+    return this.buffer.getInt(position(slot) + MappedIndex.OFFSET_SEGMENT_ID);
+  }
+
+  /**
+   * Overwrites the location of a slot.
+   */
+  void set(int slot, long hash, int segmentId, int offset, int length) {
+    int position = position(slot);
+    this.buffer.putLong(position + MappedIndex.OFFSET_HASH, hash);
+    this.buffer.putInt(position + MappedIndex.OFFSET_SEGMENT_ID, segmentId);
+    this.buffer.putInt(position + MappedIndex.OFFSET_OFFSET, offset);
+    this.buffer.putInt(position + MappedIndex.OFFSET_LENGTH, length);
+  }
+
+  private int startSlot(long hash) {
+    return (int) (hash ^ (hash >>> Integer.SIZE)) & (this.slotCount - 1);
+  }
+
+  private int usedSlots() {
+    return this.buffer.getInt(MappedIndex.POSITION_USED_SLOTS);
+  }
+}
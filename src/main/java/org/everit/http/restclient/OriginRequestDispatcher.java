@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+import io.reactivex.Single;
+
+/**
+ * A {@link RequestDispatcher} that limits the number of in-flight calls per origin (the scheme,
+ * host and port of the base path of the requests). The limit is evaluated every time a call of the
+ * origin could start, so it can follow a limit that the server announces at runtime, like the
+ * maximum number of concurrent streams of HTTP/2 connections. Calls whose deadline passes while
+ * they are queued are failed with {@link RequestDeadlineExceededException} without being started.
+ */
+public final class OriginRequestDispatcher implements RequestDispatcher {
+
+  /**
+   * Builder class for {@link OriginRequestDispatcher}.
+   */
+  public static final class Builder {
+
+    private Clock clock = Clock.systemUTC();
+
+    private ToIntFunction<URI> maxInFlightPerOrigin =
+        (origin) -> OriginRequestDispatcher.DEFAULT_MAX_IN_FLIGHT_PER_ORIGIN;
+
+    private Builder() {
+    }
+
+    public OriginRequestDispatcher build() {
+      return new OriginRequestDispatcher(this);
+    }
+
+    /**
+     * The clock that is used to check the deadlines of the requests. Default:
+     * {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * The maximum number of calls per origin that can be in-flight at the same time. Default: 8.
+     */
+    public Builder maxInFlightPerOrigin(int maxInFlightPerOrigin) {
+      if (maxInFlightPerOrigin < 1) {
+        throw new IllegalArgumentException("maxInFlightPerOrigin must be positive: "
+            + maxInFlightPerOrigin);
+      }
+      this.maxInFlightPerOrigin = (origin) -> maxInFlightPerOrigin;
+      return this;
+    }
+
+    /**
+     * A function that returns the maximum number of in-flight calls of the origin that is passed
+     * to it (see {@link RestClientUtil#origin(URI)}). The function is called every time a queued
+     * call of the origin could start, so it must be cheap. Values below one are treated as one.
+     */
+    public Builder maxInFlightPerOrigin(ToIntFunction<URI> maxInFlightPerOrigin) {
+      this.maxInFlightPerOrigin = Objects.requireNonNull(maxInFlightPerOrigin);
+      return this;
+    }
+  }
+
+  /**
+   * The queue and the number of in-flight calls of one origin.
+   */
+  private static final class OriginState {
+
+    private int inFlight = 0;
+
+    private final ArrayDeque<PendingCall<?>> queue = new ArrayDeque<>();
+  }
+
+  private static final int DEFAULT_MAX_IN_FLIGHT_PER_ORIGIN = 8;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Clock clock;
+
+  private final SerializedDrain drain = new SerializedDrain(this::drainStep);
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final ToIntFunction<URI> maxInFlightPerOrigin;
+
+  private final Map<URI, OriginState> origins = new HashMap<>();
+
+  private OriginRequestDispatcher(Builder builder) {
+    this.clock = builder.clock;
+    this.maxInFlightPerOrigin = builder.maxInFlightPerOrigin;
+  }
+
+  @Override
+  public <T> Single<T> dispatch(RestRequest restRequest, Single<T> call) {
+    return Single.create((emitter) -> {
+      Optional<Instant> deadline = restRequest.getDeadline();
+      if (PendingCall.rejectIfExpired(deadline, this.clock.instant(), emitter)) {
+        return;
+      }
+
+      URI origin = RestClientUtil.origin(URI.create(restRequest.getBasePath()));
+      PendingCall<T> pendingCall =
+          new PendingCall<>(call, deadline, emitter, () -> releaseSlot(origin));
+      emitter.setCancellable(pendingCall::cancel);
+
+      this.lock.lock();
+      try {
+        this.origins.computeIfAbsent(origin, (key) -> new OriginState()).queue.add(pendingCall);
+      } finally {
+        this.lock.unlock();
+      }
+      this.drain.run();
+    });
+  }
+
+  /**
+   * Starts the next queued call whose origin has a free slot.
+   *
+   * @return Whether a call was started.
+   */
+  private boolean drainStep() {
+    List<PendingCall<?>> expiredCalls = new ArrayList<>();
+    PendingCall<?> next;
+    this.lock.lock();
+    try {
+      next = pollNext(expiredCalls);
+    } finally {
+      this.lock.unlock();
+    }
+    PendingCall.expireAll(expiredCalls);
+    if (next == null) {
+      return false;
+    }
+    next.start();
+    return true;
+  }
+
+  /**
+   * The number of calls of the origin that are started but not completed yet.
+   *
+   * @param uri
+   *          Any URI of the origin, e.g. the base path of a request.
+   */
+  public int getInFlight(URI uri) {
+    this.lock.lock();
+    try {
+      OriginState originState = this.origins.get(RestClientUtil.origin(uri));
+      return (originState != null) ? originState.inFlight : 0;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * The number of calls of the origin that wait for a free slot, including the cancelled calls
+   * that are not dropped yet.
+   *
+   * @param uri
+   *          Any URI of the origin, e.g. the base path of a request.
+   */
+  public int getQueueLength(URI uri) {
+    this.lock.lock();
+    try {
+      OriginState originState = this.origins.get(RestClientUtil.origin(uri));
+      return (originState != null) ? originState.queue.size() : 0;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Takes the first call whose origin has a free slot and reserves the slot for it. The states of
+   * the origins that have neither queued nor in-flight calls are dropped on the way. Must be called
+   * while holding the lock.
+   */
+  private PendingCall<?> pollNext(List<PendingCall<?>> expiredCalls) {
+    Instant now = this.clock.instant();
+    Iterator<Map.Entry<URI, OriginState>> iterator = this.origins.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<URI, OriginState> entry = iterator.next();
+      OriginState originState = entry.getValue();
+      PendingCall.pollDeadCalls(originState.queue, now, expiredCalls);
+      if (originState.queue.isEmpty()) {
+        if (originState.inFlight == 0) {
+          iterator.remove();
+        }
+        continue;
+      }
+      int maxInFlight = Math.max(1, this.maxInFlightPerOrigin.applyAsInt(entry.getKey()));
+      if (originState.inFlight < maxInFlight) {
+        originState.inFlight++;
+        return originState.queue.poll();
+      }
+    }
+    return null;
+  }
+
+  private void releaseSlot(URI origin) {
+    this.lock.lock();
+    try {
+      OriginState originState = this.origins.get(origin);
+      originState.inFlight--;
+      if (originState.inFlight == 0 && originState.queue.isEmpty()) {
+        this.origins.remove(origin);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    this.drain.run();
+  }
+}
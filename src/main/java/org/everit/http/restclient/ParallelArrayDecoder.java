@@ -0,0 +1,271 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import io.reactivex.Single;
+
+/**
+ * Converts large JSON arrays in parallel. The element boundaries are taken from the structural
+ * index of a {@link LazyJSONDocument}, the elements are split into ranges of similar length, the
+ * ranges are converted on a {@link ForkJoinPool} and the elements are put into the result list in
+ * the order of the document.
+ *
+ * <p>
+ * Splitting costs a scan of the document and a fork per range, so it pays off only for large
+ * documents; see the <code>ParallelArrayDecoderBenchmark</code> of the Jackson module for the
+ * break-even point on a given machine. If the decoder is passed to
+ * {@link RestClient.Builder#parallelArrayDecoder(Optional)}, the {@link List} responses that are
+ * larger than the {@link Builder#threshold(int)} are converted with it via
+ * {@link #decodeAsync(LazyJSONDocument, String, TypeReference)}, so the thread that received the
+ * response does not wait for the pool.
+ */
+public final class ParallelArrayDecoder {
+
+  /**
+   * Builder to build {@link ParallelArrayDecoder}.
+   */
+  public static final class Builder {
+
+    private int minRangeLength = ParallelArrayDecoder.DEFAULT_MIN_RANGE_LENGTH;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private int threshold = ParallelArrayDecoder.DEFAULT_THRESHOLD;
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the decoder.
+     */
+    public ParallelArrayDecoder build() {
+      return new ParallelArrayDecoder(this);
+    }
+
+    /**
+     * The length in bytes below which a range of elements is converted in one task instead of
+     * being split further. Default: 65536.
+     */
+    public Builder minRangeLength(int minRangeLength) {
+      if (minRangeLength < 1) {
+        throw new IllegalArgumentException("Min range length must be positive");
+      }
+      this.minRangeLength = minRangeLength;
+      return this;
+    }
+
+    /**
+     * The pool that converts the element ranges. Default: {@link ForkJoinPool#commonPool()}.
+     */
+    public Builder pool(ForkJoinPool pool) {
+      this.pool = Objects.requireNonNull(pool);
+      return this;
+    }
+
+    /**
+     * The length of the response JSON in bytes below which {@link RestClient} converts the
+     * response on a single thread. Default: 1048576.
+     */
+    public Builder threshold(int threshold) {
+      if (threshold < 0) {
+        throw new IllegalArgumentException("Threshold must not be negative");
+      }
+      this.threshold = threshold;
+      return this;
+    }
+  }
+
+  /**
+   * Converts the elements from <code>from</code> (inclusive) to <code>to</code> (exclusive).
+   */
+  private final class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int[] bounds;
+
+    private final transient LazyJSONDocument document;
+
+    private final transient TypeReference<?> elementType;
+
+    private final int from;
+
+    private final Object[] results;
+
+    private final int to;
+
+    RangeTask(LazyJSONDocument document, TypeReference<?> elementType, int[] bounds,
+        Object[] results, int from, int to) {
+      this.document = document;
+      this.elementType = elementType;
+      this.bounds = bounds;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      int start = this.bounds[this.from * 2];
+      int end = this.bounds[this.to * 2 - 1];
+      if (this.to - this.from == 1 || end - start <= ParallelArrayDecoder.this.minRangeLength) {
+        for (int i = this.from; i < this.to; i++) {
+          int elementStart = this.bounds[i * 2];
+          this.results[i] = this.document.convert(elementStart,
+              this.bounds[i * 2 + 1] - elementStart, this.elementType);
+        }
+        return;
+      }
+      int middle = splitIndex(start + (end - start) / 2);
+      ForkJoinTask.invokeAll(
+          new RangeTask(this.document, this.elementType, this.bounds, this.results, this.from,
+              middle),
+          new RangeTask(this.document, this.elementType, this.bounds, this.results, middle,
+              this.to));
+    }
+
+    /**
+     * Returns the index of the first element that starts at or after the offset, so the two
+     * halves have a similar length even if the elements differ in size. Both halves contain at
+     * least one element.
+     */
+    private int splitIndex(int offset) {
+      int low = this.from + 1;
+      int high = this.to - 1;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (this.bounds[mid * 2] < offset) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  private static final int DEFAULT_MIN_RANGE_LENGTH = 64 * 1024;
+
+  private static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+  /**
+   * Creates builder to build {@link ParallelArrayDecoder}.
+   *
+   * @return created builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final int minRangeLength;
+
+  private final ForkJoinPool pool;
+
+  private final int threshold;
+
+  private ParallelArrayDecoder(Builder builder) {
+    this.minRangeLength = builder.minRangeLength;
+    this.pool = builder.pool;
+    this.threshold = builder.threshold;
+  }
+
+  /**
+   * Converts the elements of the array at the pointer. The calling thread waits until all ranges
+   * are converted; if the conversion of an element fails, the exception of the conversion is
+   * thrown.
+   *
+   * @param document
+   *          The document that contains the array.
+   * @param pointer
+   *          JSON pointer of the array, e.g. <code>/issues</code> or an empty string for the root.
+   * @param elementType
+   *          The type of the elements.
+   * @return The modifiable list of the converted elements in the order of the document or empty
+   *         if there is no array at the pointer.
+   */
+  public <E> Optional<List<E>> decode(LazyJSONDocument document, String pointer,
+      TypeReference<E> elementType) {
+    Objects.requireNonNull(elementType);
+    Optional<int[]> bounds = document.getElementBounds(pointer);
+    if (!bounds.isPresent()) {
+      return Optional.empty();
+    }
+    Object[] results = new Object[bounds.get().length / 2];
+    if (results.length > 0) {
+      this.pool.invoke(
+          new RangeTask(document, elementType, bounds.get(), results, 0, results.length));
+    }
+    @SuppressWarnings("unchecked")
+    List<E> elements = (List<E>) (List<?>) new ArrayList<>(Arrays.asList(results));
+    return Optional.of(elements);
+  }
+
+  /**
+   * Converts the elements of the array at the pointer like
+   * {@link #decode(LazyJSONDocument, String, TypeReference)}, but the whole conversion, including
+   * the indexing of the document, runs on the pool and the subscriber is notified from the pool.
+   * The subscribing thread does not wait. Disposing the returned single cancels the conversion if
+   * it has not started yet.
+   */
+  public <E> Single<Optional<List<E>>> decodeAsync(LazyJSONDocument document, String pointer,
+      TypeReference<E> elementType) {
+    Objects.requireNonNull(elementType);
+    return Single.create((emitter) -> {
+      ForkJoinTask<?> task = this.pool.submit(() -> {
+        Optional<List<E>> elements;
+        try {
+          elements = decode(document, pointer, elementType);
+        } catch (RuntimeException e) {
+          emitter.tryOnError(e);
+          return;
+        }
+        emitter.onSuccess(elements);
+      });
+      emitter.setCancellable(() -> task.cancel(false));
+    });
+  }
+
+  /**
+   * The length in bytes below which a range of elements is not split further.
+   */
+  public int getMinRangeLength() {
+    return this.minRangeLength;
+  }
+
+  /**
+   * The pool that converts the element ranges.
+   */
+  public ForkJoinPool getPool() {
+    return this.pool;
+  }
+
+  /**
+   * The length of the response JSON in bytes below which {@link RestClient} does not use the
+   * decoder.
+   */
+  public int getThreshold() {
+    return this.threshold;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.disposables.CompositeDisposable;
+
+/**
+ * A call that is queued by a {@link RequestDispatcher} until a slot is free for it. The dispatcher
+ * reserves the slot before it calls {@link #start()} and the slot is released exactly once via the
+ * release callback when the started call terminates or is disposed.
+ *
+ * @param <T>
+ *          Type of the result of the call.
+ */
+final class PendingCall<T> {
+
+  private static final int STATE_DONE = 2;
+
+  private static final int STATE_QUEUED = 0;
+
+  private static final int STATE_RUNNING = 1;
+
+  /**
+   * Fails the expired calls that were removed from their queues by
+   * {@link #pollDeadCalls(Queue, Instant, List)}. Must be called without holding the lock of the
+   * dispatcher, as the subscribers are notified synchronously.
+   */
+  static void expireAll(List<PendingCall<?>> expiredCalls) {
+    for (PendingCall<?> expiredCall : expiredCalls) {
+      expiredCall.expire();
+    }
+  }
+
+  /**
+   * Removes the cancelled and expired calls from the head of the queue.
+   *
+   * @param expiredCalls
+   *          The calls that are still queued but whose deadline passed are added to this list.
+   * @return The number of calls that were added to the list.
+   */
+  static int pollDeadCalls(Queue<PendingCall<?>> queue, Instant now,
+      List<PendingCall<?>> expiredCalls) {
+    int expiredCount = 0;
+    PendingCall<?> head = queue.peek();
+    while (head != null && (!head.isQueued() || head.isExpired(now))) {
+      queue.poll();
+      if (head.isQueued()) {
+        expiredCalls.add(head);
+        expiredCount++;
+      }
+      head = queue.peek();
+    }
+    return expiredCount;
+  }
+
+  /**
+   * Fails the emitter with {@link RequestDeadlineExceededException} if the deadline passed before
+   * the call could be queued.
+   *
+   * @return <code>true</code> if the emitter was failed.
+   */
+  static boolean rejectIfExpired(Optional<Instant> deadline, Instant now,
+      SingleEmitter<?> emitter) {
+    if (deadline.isPresent() && !now.isBefore(deadline.get())) {
+      emitter.onError(new RequestDeadlineExceededException(
+          "The deadline of the request passed before it was dispatched.", deadline.get()));
+      return true;
+    }
+    return false;
+  }
+
+  private final Single<T> call;
+
+  private final Optional<Instant> deadline;
+
+  private final CompositeDisposable disposable = new CompositeDisposable();
+
+  private final SingleEmitter<T> emitter;
+
+  private final Runnable releaseSlot;
+
+  private final AtomicInteger state = new AtomicInteger(STATE_QUEUED);
+
+  PendingCall(Single<T> call, Optional<Instant> deadline, SingleEmitter<T> emitter,
+      Runnable releaseSlot) {
+    this.call = call;
+    this.deadline = deadline;
+    this.emitter = emitter;
+    this.releaseSlot = releaseSlot;
+  }
+
+  /**
+   * Cancels the call. If the call is running, it is disposed and its slot is released. If it is
+   * still queued, the dispatcher drops it when it reaches the head of its queue.
+   */
+  void cancel() {
+    int previousState = this.state.getAndSet(STATE_DONE);
+    if (previousState == STATE_RUNNING) {
+      this.disposable.dispose();
+      this.releaseSlot.run();
+    }
+  }
+
+  /**
+   * Fails the call with {@link RequestDeadlineExceededException} if it is still queued. Must be
+   * called after the call is removed from its queue.
+   */
+  void expire() {
+    if (this.state.compareAndSet(STATE_QUEUED, STATE_DONE)) {
+      this.emitter.tryOnError(new RequestDeadlineExceededException(
+          "The deadline of the request passed while it was waiting for being sent.",
+          this.deadline.get()));
+    }
+  }
+
+  private void finish() {
+    if (this.state.compareAndSet(STATE_RUNNING, STATE_DONE)) {
+      this.releaseSlot.run();
+    }
+  }
+
+  boolean isExpired(Instant now) {
+    return this.deadline.isPresent() && !now.isBefore(this.deadline.get());
+  }
+
+  boolean isQueued() {
+    return this.state.get() == STATE_QUEUED;
+  }
+
+  /**
+   * Subscribes to the call. A slot must be reserved for the call before this method is invoked.
+   */
+  void start() {
+    if (!this.state.compareAndSet(STATE_QUEUED, STATE_RUNNING)) {
+      this.releaseSlot.run();
+      return;
+    }
+    this.disposable.add(this.call.subscribe((result) -> {
+      finish();
+      this.emitter.onSuccess(result);
+    }, (error) -> {
+      finish();
+      this.emitter.tryOnError(error);
+    }));
+  }
+}
@@ -0,0 +1,867 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Disk based store of response bodies and their validators that survives the restart of the
+ * process. If it is registered on {@link RestClient}, the bodies of GET requests are stored and
+ * after the expiration they are revalidated with conditional requests (If-None-Match,
+ * If-Modified-Since) instead of downloading them again.
+ *
+ * <p>
+ * The records are appended to segment files. The location of the latest record of each key is
+ * stored in a memory-mapped hash index. Overwritten and removed records stay in the segments as
+ * garbage until the store is compacted. When the ratio of the garbage exceeds the configured
+ * limit, compaction is scheduled on the scheduler of the store. It copies the live records one by
+ * one into new segments, so its memory use does not depend on the size of the store. If the index
+ * file is missing or invalid, it is rebuilt by scanning the segments. Records are protected with a
+ * CRC32 checksum, so a record that was not written completely due to a crash is handled as a
+ * missing one. Only the SHA-256 hash of the keys is written to the disk, so the credentials in the
+ * headers of the requests are not persisted.
+ *
+ * <p>
+ * The public functions do blocking file I/O. {@link RestClient} calls them on the scheduler of
+ * the store.
+ */
+public final class PersistentResponseStore implements Closeable {
+
+  /**
+   * Builder to build {@link PersistentResponseStore}.
+   */
+  public static final class Builder {
+
+    private double compactionGarbageRatio = PersistentResponseStore.DEFAULT_COMPACTION_RATIO;
+
+    private Duration defaultTtl = Duration.ZERO;
+
+    private Path directory;
+
+    private int maxSegmentSize = PersistentResponseStore.DEFAULT_MAX_SEGMENT_SIZE;
+
+    private Scheduler scheduler = Schedulers.io();
+
+    private Builder() {
+    }
+
+    /**
+     * Opens the store in the specified directory.
+     *
+     * @throws UncheckedIOException
+     *           if the store cannot be opened.
+     */
+    public PersistentResponseStore build() {
+      try {
+        return new PersistentResponseStore(this);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * The ratio of garbage bytes within the segments above which the store is compacted.
+     * Default: 0.5.
+     */
+    public Builder compactionGarbageRatio(double compactionGarbageRatio) {
+      if (compactionGarbageRatio <= 0 || compactionGarbageRatio >= 1) {
+        throw new IllegalArgumentException("Compaction garbage ratio must be between 0 and 1");
+      }
+      this.compactionGarbageRatio = compactionGarbageRatio;
+      return this;
+    }
+
+    /**
+     * The time while a response can be used without revalidation if the response does not have a
+     * <code>Cache-Control: max-age</code> header. Default: zero, all stored responses are
+     * revalidated.
+     */
+    public Builder defaultTtl(Duration defaultTtl) {
+      this.defaultTtl = Objects.requireNonNull(defaultTtl);
+      return this;
+    }
+
+    /**
+     * The directory where the segment and index files are stored. It is created if it does not
+     * exist.
+     */
+    public Builder directory(Path directory) {
+      this.directory = directory;
+      return this;
+    }
+
+    /**
+     * The size in bytes after which a new segment file is started. Default: 64 MiB.
+     */
+    public Builder maxSegmentSize(int maxSegmentSize) {
+      this.maxSegmentSize = maxSegmentSize;
+      return this;
+    }
+
+    /**
+     * The scheduler where the automatic compaction and the file operations of {@link RestClient}
+     * run. Default: {@link Schedulers#io()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+  }
+
+  private static final Pattern CACHE_CONTROL_MAX_AGE_PATTERN =
+      Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+  private static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+  private static final int DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static final String INDEX_FILE_NAME = "index.dat";
+
+  private static final int INITIAL_SLOT_COUNT = 1024;
+
+  private static final int MIN_COMPACTION_SIZE = 1024 * 1024;
+
+  private static final int NO_VALUE = -1;
+
+  private static final int RECORD_MAGIC = 0x52435248;
+
+  private static final String SEGMENT_FILE_PREFIX = "segment-";
+
+  private static final String SEGMENT_FILE_SUFFIX = ".dat";
+
+  private static final Pattern SEGMENT_FILE_PATTERN = Pattern.compile(
+      Pattern.quote(PersistentResponseStore.SEGMENT_FILE_PREFIX) + "(\\d+)"
+          + Pattern.quote(PersistentResponseStore.SEGMENT_FILE_SUFFIX));
+
+  /**
+   * Creates builder to build {@link PersistentResponseStore}.
+   *
+   * @return created builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static long checksum(ByteBuffer record, int length) {
+    CRC32 crc = new CRC32();
+    ByteBuffer content = record.duplicate();
+    content.position(Integer.BYTES);
+    content.limit(length - Integer.BYTES);
+    crc.update(content);
+    return crc.getValue();
+  }
+
+  /**
+   * Decodes a record.
+   *
+   * @return The key and the response or <code>null</code> if the record is corrupt. The response is
+   *         <code>null</code> if the record is a tombstone of a removed key.
+   */
+  private static Map.Entry<String, StoredResponse> decode(ByteBuffer record) {
+    int length = record.remaining();
+    ByteBuffer buffer = record.slice();
+    try {
+      if (buffer.getInt() != PersistentResponseStore.RECORD_MAGIC
+          || (int) PersistentResponseStore.checksum(buffer, length) != buffer
+              .getInt(length - Integer.BYTES)) {
+        return null;
+      }
+      String key = new String(PersistentResponseStore.readBytes(buffer), StandardCharsets.UTF_8);
+      long storedAtMillis = buffer.getLong();
+      long expiresAtMillis = buffer.getLong();
+      Optional<String> etag = PersistentResponseStore.readOptionalString(buffer);
+      Optional<String> lastModified = PersistentResponseStore.readOptionalString(buffer);
+      byte[] body = PersistentResponseStore.readBytes(buffer);
+      if (body == null) {
+        return new SimpleImmutableEntry<>(key, null);
+      }
+      return new SimpleImmutableEntry<>(key,
+          new StoredResponse(body, etag, lastModified, storedAtMillis, expiresAtMillis));
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Encodes a record. If the response is <code>null</code>, a tombstone is encoded that marks the
+   * removal of the key when the index is rebuilt from the segments.
+   */
+  private static ByteBuffer encode(String key, StoredResponse response) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] etag = null;
+    byte[] lastModified = null;
+    byte[] body = null;
+    long storedAtMillis = 0;
+    long expiresAtMillis = 0;
+    if (response != null) {
+      etag = response.getEtag().map(v -> v.getBytes(StandardCharsets.UTF_8)).orElse(null);
+      lastModified =
+          response.getLastModified().map(v -> v.getBytes(StandardCharsets.UTF_8)).orElse(null);
+      body = response.getBody();
+      storedAtMillis = response.getStoredAtMillis();
+      expiresAtMillis = response.getExpiresAtMillis();
+    }
+
+    int length = Integer.BYTES
+        + Integer.BYTES + keyBytes.length
+        + Long.BYTES + Long.BYTES
+        + Integer.BYTES + (etag != null ? etag.length : 0)
+        + Integer.BYTES + (lastModified != null ? lastModified.length : 0)
+        + Integer.BYTES + (body != null ? body.length : 0)
+        + Integer.BYTES;
+
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    buffer.putInt(PersistentResponseStore.RECORD_MAGIC);
+    PersistentResponseStore.writeBytes(buffer, keyBytes);
+    buffer.putLong(storedAtMillis);
+    buffer.putLong(expiresAtMillis);
+    PersistentResponseStore.writeBytes(buffer, etag);
+    PersistentResponseStore.writeBytes(buffer, lastModified);
+    PersistentResponseStore.writeBytes(buffer, body);
+    buffer.putInt((int) PersistentResponseStore.checksum(buffer, length));
+    buffer.flip();
+    return buffer;
+  }
+
+  private static Optional<String> headerValue(Map<String, String> headers, String name) {
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey())) {
+        return Optional.ofNullable(header.getValue());
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static long keyHash(String key) {
+    long hash = PersistentResponseStore.FNV_OFFSET_BASIS;
+    for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= PersistentResponseStore.FNV_PRIME;
+    }
+    // Zero marks the free slots of the index
+    return hash == 0 ? 1 : hash;
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length == PersistentResponseStore.NO_VALUE) {
+      return null;
+    }
+    byte[] result = new byte[length];
+    buffer.get(result);
+    return result;
+  }
+
+  private static Optional<String> readOptionalString(ByteBuffer buffer) {
+    byte[] bytes = PersistentResponseStore.readBytes(buffer);
+    return bytes != null ? Optional.of(new String(bytes, StandardCharsets.UTF_8))
+        : Optional.empty();
+  }
+
+  private static int recordLength(ByteBuffer segment, int offset) {
+    ByteBuffer buffer = segment.duplicate();
+    buffer.position(offset);
+    if (buffer.remaining() < Integer.BYTES * 2
+        || buffer.getInt() != PersistentResponseStore.RECORD_MAGIC) {
+      return -1;
+    }
+    int length = Integer.BYTES;
+    // key, storedAt + expiresAt, etag, lastModified, body
+    int[] skippedLongsBeforeField = { 0, 2, 0, 0 };
+    for (int skippedLongs : skippedLongsBeforeField) {
+      if (buffer.remaining() < (skippedLongs * Long.BYTES) + Integer.BYTES) {
+        return -1;
+      }
+      buffer.position(buffer.position() + (skippedLongs * Long.BYTES));
+      int fieldLength = buffer.getInt();
+      length += (skippedLongs * Long.BYTES) + Integer.BYTES;
+      if (fieldLength == PersistentResponseStore.NO_VALUE) {
+        continue;
+      }
+      if (fieldLength < 0 || fieldLength > buffer.remaining()) {
+        return -1;
+      }
+      buffer.position(buffer.position() + fieldLength);
+      length += fieldLength;
+    }
+    if (buffer.remaining() < Integer.BYTES) {
+      return -1;
+    }
+    return length + Integer.BYTES;
+  }
+
+  private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+    if (bytes == null) {
+      buffer.putInt(PersistentResponseStore.NO_VALUE);
+    } else {
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+    }
+  }
+
+  private FileChannel activeSegment;
+
+  private int activeSegmentId;
+
+  private final double compactionGarbageRatio;
+
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+  private final Duration defaultTtl;
+
+  private final Path directory;
+
+  private MappedIndex index;
+
+  private long liveBytes;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final int maxSegmentSize;
+
+  private final Scheduler scheduler;
+
+  private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+
+  private long totalBytes;
+
+  private PersistentResponseStore(Builder builder) throws IOException {
+    this.directory = Objects.requireNonNull(builder.directory, "Directory must be specified");
+    this.defaultTtl = builder.defaultTtl;
+    this.maxSegmentSize = builder.maxSegmentSize;
+    this.compactionGarbageRatio = builder.compactionGarbageRatio;
+    this.scheduler = builder.scheduler;
+
+    Files.createDirectories(this.directory);
+    try {
+      openSegments();
+      this.index = MappedIndex.open(indexFile());
+      if (this.index == null) {
+        rebuildIndex();
+      } else {
+        calculateLiveBytes();
+      }
+    } catch (IOException | RuntimeException e) {
+      closeQuietly();
+      throw e;
+    }
+  }
+
+  private int append(ByteBuffer record) throws IOException {
+    if (this.totalBytesOfActiveSegment() + record.remaining() > this.maxSegmentSize
+        && this.totalBytesOfActiveSegment() > 0) {
+      this.activeSegmentId++;
+      this.activeSegment = openSegment(this.activeSegmentId);
+    }
+
+    long offset = this.activeSegment.size();
+    int length = record.remaining();
+    while (record.hasRemaining()) {
+      this.activeSegment.write(record, offset + (length - record.remaining()));
+    }
+    this.totalBytes += length;
+    return (int) offset;
+  }
+
+  private void calculateLiveBytes() throws IOException {
+    long[] sum = new long[1];
+    this.index.forEachLive((slot, segmentId, offset, length) -> {
+      sum[0] += length;
+      return false;
+    });
+    this.liveBytes = sum[0];
+  }
+
+  /**
+   * Closes the files of the store.
+   */
+  @Override
+  public void close() {
+    this.lock.writeLock().lock();
+    try {
+      closeQuietly();
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      if (this.index != null) {
+        this.index.close();
+        this.index = null;
+      }
+    } catch (IOException e) {
+      // Nothing to do, the index is rebuilt at next start if it is corrupt
+    }
+    for (FileChannel segment : this.segments.values()) {
+      try {
+        segment.close();
+      } catch (IOException e) {
+        // Nothing to do, the records are protected with checksum
+      }
+    }
+    this.segments.clear();
+  }
+
+  /**
+   * Rewrites the live records into new segments and drops the old segments.
+   */
+  public void compact() {
+    this.lock.writeLock().lock();
+    try {
+      doCompact();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Calculates until when a response can be used without revalidation based on its headers.
+   *
+   * @param responseHeaders
+   *          The headers of the response.
+   * @param nowMillis
+   *          The current time in epoch milliseconds.
+   * @return The expiration time in epoch milliseconds.
+   */
+  long computeExpiresAt(Map<String, String> responseHeaders, long nowMillis) {
+    Optional<String> cacheControl =
+        PersistentResponseStore.headerValue(responseHeaders, "Cache-Control");
+    if (cacheControl.isPresent()) {
+      String value = cacheControl.get().toLowerCase();
+      if (value.contains("no-cache")) {
+        return nowMillis;
+      }
+      Matcher matcher = PersistentResponseStore.CACHE_CONTROL_MAX_AGE_PATTERN.matcher(value);
+      if (matcher.find()) {
+        return nowMillis + Duration.ofSeconds(Long.parseLong(matcher.group(1))).toMillis();
+      }
+    }
+    return nowMillis + this.defaultTtl.toMillis();
+  }
+
+  /**
+   * Creates the entry of a response based on its headers.
+   *
+   * @return The entry or empty if the response must not be stored.
+   */
+  Optional<StoredResponse> createStoredResponse(Map<String, String> responseHeaders,
+      byte[] body, long nowMillis) {
+    Optional<String> cacheControl =
+        PersistentResponseStore.headerValue(responseHeaders, "Cache-Control");
+    if (cacheControl.isPresent() && cacheControl.get().toLowerCase().contains("no-store")) {
+      return Optional.empty();
+    }
+    return Optional.of(new StoredResponse(body,
+        PersistentResponseStore.headerValue(responseHeaders, "ETag"),
+        PersistentResponseStore.headerValue(responseHeaders, "Last-Modified"),
+        nowMillis, computeExpiresAt(responseHeaders, nowMillis)));
+  }
+
+  /**
+   * Copies the live records into new segments. Only one record is held in memory at a time.
+   */
+  private void doCompact() throws IOException {
+    int[] liveCount = new int[1];
+    this.index.forEachLive((slot, segmentId, offset, length) -> {
+      liveCount[0]++;
+      return false;
+    });
+
+    List<Integer> oldSegmentIds = new ArrayList<>(this.segments.keySet());
+    this.activeSegmentId++;
+    this.activeSegment = openSegment(this.activeSegmentId);
+
+    int slotCount = Math.max(PersistentResponseStore.INITIAL_SLOT_COUNT, liveCount[0] * 2);
+    MappedIndex newIndex = MappedIndex.create(newIndexFile(), slotCount);
+    this.totalBytes = 0;
+    this.liveBytes = 0;
+    this.index.forEachLive((slot, segmentId, offset, length) -> {
+      ByteBuffer record = readRecord(segmentId, offset, length);
+      Map.Entry<String, StoredResponse> entry = PersistentResponseStore.decode(record);
+      if (entry != null) {
+        int newOffset = append(record);
+        newIndex.insert(PersistentResponseStore.keyHash(entry.getKey()), this.activeSegmentId,
+            newOffset, length);
+        this.liveBytes += length;
+      }
+      return false;
+    });
+    this.activeSegment.force(false);
+    replaceIndex(newIndex);
+
+    for (Integer oldSegmentId : oldSegmentIds) {
+      FileChannel oldSegment = this.segments.remove(oldSegmentId);
+      oldSegment.close();
+      Files.deleteIfExists(segmentFile(oldSegmentId));
+    }
+  }
+
+  private int findSlot(String key, long hash, StoredResponse[] result) throws IOException {
+    return this.index.probe(hash, (slot, segmentId, offset, length) -> {
+      Map.Entry<String, StoredResponse> entry =
+          PersistentResponseStore.decode(readRecord(segmentId, offset, length));
+      if (entry != null && entry.getKey().equals(key)) {
+        if (result != null) {
+          result[0] = entry.getValue();
+        }
+        return true;
+      }
+      return false;
+    });
+  }
+
+  /**
+   * Returns the stored response of the key, even if it is expired.
+   *
+   * @param key
+   *          The canonical key of the request.
+   * @return The stored response or empty if there is no valid record for the key.
+   */
+  public Optional<StoredResponse> get(String key) {
+    String hashedKey = RestClientUtil.sha256Hex(key);
+    long hash = PersistentResponseStore.keyHash(hashedKey);
+    StoredResponse[] result = new StoredResponse[1];
+    this.lock.readLock().lock();
+    try {
+      findSlot(hashedKey, hash, result);
+      return Optional.ofNullable(result[0]);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Reads the stored response of the key on the scheduler of the store.
+   *
+   * @see #get(String)
+   */
+  Single<Optional<StoredResponse>> getAsync(String key) {
+    return Single.fromCallable(() -> get(key)).subscribeOn(this.scheduler);
+  }
+
+  /**
+   * The number of bytes in the segments that belong to the latest records of the keys.
+   */
+  public long getLiveBytes() {
+    this.lock.readLock().lock();
+    try {
+      return this.liveBytes;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * The number of bytes in all segments.
+   */
+  public long getTotalBytes() {
+    this.lock.readLock().lock();
+    try {
+      return this.totalBytes;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  private Path indexFile() {
+    return this.directory.resolve(PersistentResponseStore.INDEX_FILE_NAME);
+  }
+
+  /**
+   * Schedules the compaction if there is too much garbage and no compaction is scheduled yet.
+   * The writer does not wait for the compaction.
+   */
+  private void maybeCompact() {
+    if (needsCompaction() && this.compactionScheduled.compareAndSet(false, true)) {
+      this.scheduler.scheduleDirect(this::runScheduledCompaction);
+    }
+  }
+
+  private boolean needsCompaction() {
+    long garbage = this.totalBytes - this.liveBytes;
+    return this.totalBytes >= PersistentResponseStore.MIN_COMPACTION_SIZE
+        && garbage > this.totalBytes * this.compactionGarbageRatio;
+  }
+
+  private Path newIndexFile() {
+    return this.directory.resolve(PersistentResponseStore.INDEX_FILE_NAME + ".new");
+  }
+
+  private FileChannel openSegment(int segmentId) throws IOException {
+    FileChannel segment = FileChannel.open(segmentFile(segmentId), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.segments.put(segmentId, segment);
+    return segment;
+  }
+
+  private void openSegments() throws IOException {
+    File[] files = this.directory.toFile().listFiles();
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        Matcher matcher = PersistentResponseStore.SEGMENT_FILE_PATTERN.matcher(file.getName());
+        if (matcher.matches()) {
+          FileChannel segment = openSegment(Integer.parseInt(matcher.group(1)));
+          this.totalBytes += segment.size();
+        }
+      }
+    }
+    if (this.segments.isEmpty()) {
+      openSegment(0);
+    }
+    this.activeSegmentId = this.segments.lastKey();
+    this.activeSegment = this.segments.get(this.activeSegmentId);
+  }
+
+  /**
+   * Stores the response of a key. The previous record of the key becomes garbage.
+   *
+   * @param key
+   *          The canonical key of the request.
+   * @param response
+   *          The response to store.
+   */
+  public void put(String key, StoredResponse response) {
+    String hashedKey = RestClientUtil.sha256Hex(key);
+    ByteBuffer record = PersistentResponseStore.encode(hashedKey, response);
+    long hash = PersistentResponseStore.keyHash(hashedKey);
+    this.lock.writeLock().lock();
+    try {
+      int length = record.remaining();
+      int offset = append(record);
+      int slot = findSlot(hashedKey, hash, null);
+      if (slot >= 0) {
+        this.liveBytes -= this.index.length(slot);
+        this.index.set(slot, hash, this.activeSegmentId, offset, length);
+      } else {
+        if (!this.index.hasRoomForInsert()) {
+          resizeIndex();
+        }
+        this.index.insert(hash, this.activeSegmentId, offset, length);
+      }
+      this.liveBytes += length;
+      maybeCompact();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stores the response of the key on the scheduler of the store.
+   *
+   * @see #put(String, StoredResponse)
+   */
+  Completable putAsync(String key, StoredResponse response) {
+    return Completable.fromAction(() -> put(key, response)).subscribeOn(this.scheduler);
+  }
+
+  private void rebuildIndex() throws IOException {
+    MappedIndex newIndex =
+        MappedIndex.create(newIndexFile(), PersistentResponseStore.INITIAL_SLOT_COUNT);
+    this.liveBytes = 0;
+    for (Map.Entry<Integer, FileChannel> segmentEntry : this.segments.entrySet()) {
+      int segmentId = segmentEntry.getKey();
+      FileChannel segment = segmentEntry.getValue();
+      long size = segment.size();
+      if (size == 0) {
+        continue;
+      }
+      MappedByteBuffer segmentBuffer = segment.map(MapMode.READ_ONLY, 0, size);
+      int offset = 0;
+      int length = PersistentResponseStore.recordLength(segmentBuffer, offset);
+      while (length > 0 && offset + length <= size) {
+        ByteBuffer record = segmentBuffer.duplicate();
+        record.position(offset);
+        record.limit(offset + length);
+        Map.Entry<String, StoredResponse> entry = PersistentResponseStore.decode(record);
+        if (entry == null) {
+          break;
+        }
+        long hash = PersistentResponseStore.keyHash(entry.getKey());
+        int slot = newIndex.probe(hash, (existingSlot, existingSegmentId, existingOffset,
+            existingLength) -> {
+          Map.Entry<String, StoredResponse> existing = PersistentResponseStore
+              .decode(readRecord(existingSegmentId, existingOffset, existingLength));
+          return existing != null && existing.getKey().equals(entry.getKey());
+        });
+        if (slot >= 0) {
+          this.liveBytes -= newIndex.length(slot);
+        }
+        if (entry.getValue() == null) {
+          if (slot >= 0) {
+            newIndex.remove(slot);
+          }
+        } else if (slot >= 0) {
+          newIndex.set(slot, hash, segmentId, offset, length);
+          this.liveBytes += length;
+        } else {
+          if (!newIndex.hasRoomForInsert()) {
+            newIndex = resize(newIndex, newIndexFile(), newIndex.getSlotCount() * 2);
+          }
+          newIndex.insert(hash, segmentId, offset, length);
+          this.liveBytes += length;
+        }
+        offset += length;
+        length = PersistentResponseStore.recordLength(segmentBuffer, offset);
+      }
+      if (segmentId == this.activeSegmentId && offset < size) {
+        // Drop the incomplete tail of a crashed write so new records stay reachable
+        segment.truncate(offset);
+        this.totalBytes -= size - offset;
+      }
+    }
+    replaceIndex(newIndex);
+  }
+
+  /**
+   * Removes the record of the key.
+   *
+   * @param key
+   *          The canonical key of the request.
+   */
+  public void remove(String key) {
+    String hashedKey = RestClientUtil.sha256Hex(key);
+    long hash = PersistentResponseStore.keyHash(hashedKey);
+    this.lock.writeLock().lock();
+    try {
+      int slot = findSlot(hashedKey, hash, null);
+      if (slot >= 0) {
+        this.liveBytes -= this.index.length(slot);
+        this.index.remove(slot);
+        append(PersistentResponseStore.encode(hashedKey, null));
+        maybeCompact();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private void replaceIndex(MappedIndex newIndex) throws IOException {
+    newIndex.close();
+    if (this.index != null) {
+      this.index.close();
+    }
+    Files.move(newIndexFile(), indexFile(), StandardCopyOption.REPLACE_EXISTING);
+    this.index = MappedIndex.open(indexFile());
+  }
+
+  private MappedIndex resize(MappedIndex source, Path file, int slotCount) throws IOException {
+    Path resizedFile = file.resolveSibling(file.getFileName() + ".resize");
+    MappedIndex resized = MappedIndex.create(resizedFile, slotCount);
+    source.forEachLive((slot, segmentId, offset, length) -> {
+      Map.Entry<String, StoredResponse> entry =
+          PersistentResponseStore.decode(readRecord(segmentId, offset, length));
+      if (entry != null) {
+        resized.insert(PersistentResponseStore.keyHash(entry.getKey()), segmentId, offset,
+            length);
+      }
+      return false;
+    });
+    source.close();
+    resized.close();
+    Files.move(resizedFile, file, StandardCopyOption.REPLACE_EXISTING);
+    return MappedIndex.open(file);
+  }
+
+  private void resizeIndex() throws IOException {
+    this.index = resize(this.index, indexFile(), this.index.getSlotCount() * 2);
+  }
+
+  private ByteBuffer readRecord(int segmentId, int offset, int length) throws IOException {
+    FileChannel segment = this.segments.get(segmentId);
+    ByteBuffer record = ByteBuffer.allocate(length);
+    if (segment == null) {
+      return record;
+    }
+    while (record.hasRemaining()) {
+      int read = segment.read(record, offset + record.position());
+      if (read < 0) {
+        break;
+      }
+    }
+    record.flip();
+    return record;
+  }
+
+  private void runScheduledCompaction() {
+    this.lock.writeLock().lock();
+    try {
+      this.compactionScheduled.set(false);
+      if (this.index != null && needsCompaction()) {
+        doCompact();
+      }
+    } catch (IOException e) {
+      // Nothing to do, the garbage stays until the next compaction and the records are protected
+      // with checksum
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  private Path segmentFile(int segmentId) {
+    return this.directory.resolve(PersistentResponseStore.SEGMENT_FILE_PREFIX + segmentId
+        + PersistentResponseStore.SEGMENT_FILE_SUFFIX);
+  }
+
+  private long totalBytesOfActiveSegment() throws IOException {
+    return this.activeSegment.size();
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted byte array that is borrowed from a {@link BufferPool}. The array is returned
+ * to the pool when the reference count drops to zero. Slices share the reference count of the
+ * buffer they were created from.
+ */
+public final class PooledBuffer {
+
+  private final byte[] array;
+
+  private int length;
+
+  private final int offset;
+
+  private final BufferPool pool;
+
+  private final AtomicInteger refCnt;
+
+  PooledBuffer(BufferPool pool, byte[] array) {
+    this.pool = pool;
+    this.array = array;
+    this.offset = 0;
+    this.length = 0;
+    this.refCnt = new AtomicInteger(1);
+  }
+
+  private PooledBuffer(PooledBuffer root, int offset, int length) {
+    this.pool = root.pool;
+    this.array = root.array;
+    this.offset = offset;
+    this.length = length;
+    this.refCnt = root.refCnt;
+  }
+
+  /**
+   * The backing array. Only the region that starts at {@link #getOffset()} and is
+   * {@link #getLength()} long belongs to this buffer.
+   */
+  public byte[] array() {
+    return this.array;
+  }
+
+  private void ensureAccessible() {
+    if (this.refCnt.get() <= 0) {
+      throw new IllegalStateException("Buffer is already released");
+    }
+  }
+
+  /**
+   * The number of bytes that can be written into the buffer.
+   */
+  public int getCapacity() {
+    return this.array.length - this.offset;
+  }
+
+  /**
+   * The number of bytes in the buffer.
+   */
+  public int getLength() {
+    return this.length;
+  }
+
+  public int getOffset() {
+    return this.offset;
+  }
+
+  public int getRefCnt() {
+    return this.refCnt.get();
+  }
+
+  /**
+   * Decrements the reference count and returns the array to the pool if the count drops to zero.
+   *
+   * @return <code>true</code> if the array was returned to the pool.
+   * @throws IllegalStateException
+   *           if the buffer is already released.
+   */
+  public boolean release() {
+    int value = this.refCnt.decrementAndGet();
+    if (value < 0) {
+      this.refCnt.incrementAndGet();
+      throw new IllegalStateException("Buffer is already released");
+    }
+    if (value == 0) {
+      this.pool.recycle(this.array);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Increments the reference count.
+   *
+   * @return This buffer.
+   */
+  public PooledBuffer retain() {
+    int value;
+    do {
+      value = this.refCnt.get();
+      if (value <= 0) {
+        throw new IllegalStateException("Buffer is already released");
+      }
+    } while (!this.refCnt.compareAndSet(value, value + 1));
+    return this;
+  }
+
+  /**
+   * Creates a slice of the buffer that shares the backing array and the reference count with this
+   * buffer and increments the reference count. The slice must be released separately.
+   *
+   * @param sliceOffset
+   *          The offset of the slice relative to the offset of this buffer.
+   * @param sliceLength
+   *          The length of the slice.
+   * @return The slice.
+   */
+  public PooledBuffer retainedSlice(int sliceOffset, int sliceLength) {
+    if (sliceOffset < 0 || sliceLength < 0 || sliceOffset + sliceLength > this.length) {
+      throw new IndexOutOfBoundsException(
+          "offset: " + sliceOffset + ", length: " + sliceLength + ", buffer length: "
+              + this.length);
+    }
+    retain();
+    return new PooledBuffer(this, this.offset + sliceOffset, sliceLength);
+  }
+
+  /**
+   * Copies as many bytes from the source as fit into the buffer.
+   *
+   * @return The number of copied bytes.
+   */
+  int write(ByteBuffer source) {
+    ensureAccessible();
+    int count = Math.min(source.remaining(), getCapacity() - this.length);
+    source.get(this.array, this.offset + this.length, count);
+    this.length += count;
+    return count;
+  }
+}
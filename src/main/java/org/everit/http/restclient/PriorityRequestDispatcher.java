@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.reactivex.Single;
+
+/**
+ * A {@link RequestDispatcher} that limits the number of in-flight calls and starts the queued calls
+ * based on their {@link RequestPriority}. The priority classes share the free slots in proportion
+ * to their weights (smooth weighted round-robin), so background calls progress even if there are
+ * always interactive calls waiting. Calls whose deadline passes while they are queued are failed
+ * with {@link RequestDeadlineExceededException} without being started.
+ */
+public final class PriorityRequestDispatcher implements RequestDispatcher {
+
+  /**
+   * Builder class for {@link PriorityRequestDispatcher}.
+   */
+  public static final class Builder {
+
+    private Clock clock = Clock.systemUTC();
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    private final Map<RequestPriority, Integer> weights = new EnumMap<>(RequestPriority.class);
+
+    private Builder() {
+      this.weights.put(RequestPriority.BACKGROUND, DEFAULT_BACKGROUND_WEIGHT);
+      this.weights.put(RequestPriority.INTERACTIVE, DEFAULT_INTERACTIVE_WEIGHT);
+      this.weights.put(RequestPriority.NORMAL, DEFAULT_NORMAL_WEIGHT);
+    }
+
+    public PriorityRequestDispatcher build() {
+      return new PriorityRequestDispatcher(this);
+    }
+
+    /**
+     * The clock that is used to check the deadlines of the requests. Default:
+     * {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * The maximum number of calls that can be in-flight at the same time. Default: 64.
+     */
+    public Builder maxInFlight(int maxInFlight) {
+      if (maxInFlight < 1) {
+        throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * The share of the free slots that the priority class gets when calls of multiple priority
+     * classes are waiting. Default: 8 for {@link RequestPriority#INTERACTIVE}, 4 for
+     * {@link RequestPriority#NORMAL} and 1 for {@link RequestPriority#BACKGROUND}.
+     */
+    public Builder weight(RequestPriority priority, int weight) {
+      if (weight < 1) {
+        throw new IllegalArgumentException("weight must be positive: " + weight);
+      }
+      this.weights.put(Objects.requireNonNull(priority), weight);
+      return this;
+    }
+  }
+
+  private static final int DEFAULT_BACKGROUND_WEIGHT = 1;
+
+  private static final int DEFAULT_INTERACTIVE_WEIGHT = 8;
+
+  private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private static final int DEFAULT_NORMAL_WEIGHT = 4;
+
+  private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Clock clock;
+
+  private final int[] currentWeights = new int[PRIORITIES.length];
+
+  private final SerializedDrain drain = new SerializedDrain(this::drainStep);
+
+  private int inFlight = 0;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final int maxInFlight;
+
+  private final List<ArrayDeque<PendingCall<?>>> queues = new ArrayList<>();
+
+  private final int[] weights = new int[PRIORITIES.length];
+
+  private PriorityRequestDispatcher(Builder builder) {
+    this.clock = builder.clock;
+    this.maxInFlight = builder.maxInFlight;
+    for (RequestPriority priority : PRIORITIES) {
+      this.queues.add(new ArrayDeque<>());
+      this.weights[priority.ordinal()] = builder.weights.get(priority);
+    }
+  }
+
+  @Override
+  public <T> Single<T> dispatch(RestRequest restRequest, Single<T> call) {
+    return Single.create((emitter) -> {
+      Optional<Instant> deadline = restRequest.getDeadline();
+      if (PendingCall.rejectIfExpired(deadline, this.clock.instant(), emitter)) {
+        return;
+      }
+
+      PendingCall<T> pendingCall = new PendingCall<>(call, deadline, emitter, this::releaseSlot);
+      emitter.setCancellable(pendingCall::cancel);
+
+      this.lock.lock();
+      try {
+        this.queues.get(restRequest.getPriority().ordinal()).add(pendingCall);
+      } finally {
+        this.lock.unlock();
+      }
+      this.drain.run();
+    });
+  }
+
+  /**
+   * Starts the next queued call if there is a free slot.
+   *
+   * @return Whether a call was started.
+   */
+  private boolean drainStep() {
+    List<PendingCall<?>> expiredCalls = new ArrayList<>();
+    PendingCall<?> next;
+    this.lock.lock();
+    try {
+      next = (this.inFlight < this.maxInFlight) ? pollNext(expiredCalls) : null;
+      if (next != null) {
+        this.inFlight++;
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    PendingCall.expireAll(expiredCalls);
+    if (next == null) {
+      return false;
+    }
+    next.start();
+    return true;
+  }
+
+  /**
+   * The number of calls that are started but not completed yet.
+   */
+  public int getInFlight() {
+    this.lock.lock();
+    try {
+      return this.inFlight;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * The number of calls that wait for a free slot with the given priority.
+   */
+  public int getQueueLength(RequestPriority priority) {
+    this.lock.lock();
+    try {
+      return (int) this.queues.get(priority.ordinal()).stream()
+          .filter(PendingCall::isQueued)
+          .count();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Selects the next call with smooth weighted round-robin among the priority classes that have
+   * waiting calls. Must be called while holding the lock.
+   */
+  private PendingCall<?> pollNext(List<PendingCall<?>> expiredCalls) {
+    Instant now = this.clock.instant();
+    int totalWeight = 0;
+    int selected = -1;
+    for (int i = 0; i < PRIORITIES.length; i++) {
+      ArrayDeque<PendingCall<?>> queue = this.queues.get(i);
+      PendingCall.pollDeadCalls(queue, now, expiredCalls);
+      if (queue.isEmpty()) {
+        this.currentWeights[i] = 0;
+        continue;
+      }
+      totalWeight += this.weights[i];
+      this.currentWeights[i] += this.weights[i];
+      if (selected < 0 || this.currentWeights[i] > this.currentWeights[selected]) {
+        selected = i;
+      }
+    }
+    if (selected < 0) {
+      return null;
+    }
+    this.currentWeights[selected] -= totalWeight;
+    return this.queues.get(selected).poll();
+  }
+
+  private void releaseSlot() {
+    this.lock.lock();
+    try {
+      this.inFlight--;
+    } finally {
+      this.lock.unlock();
+    }
+    this.drain.run();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Tokens leased from a {@link RateBudgetStore}. Every token allows sending one request until the
+ * lease becomes invalid.
+ */
+public final class RateBudgetLease {
+
+  private final int grantedTokens;
+
+  private final Instant validUntil;
+
+  /**
+   * Constructor.
+   *
+   * @param grantedTokens
+   *          The number of tokens that were granted. Zero if the budget is exhausted.
+   * @param validUntil
+   *          The end of the budget window. Unused tokens expire at this time and an exhausted
+   *          budget is refilled.
+   */
+  public RateBudgetLease(int grantedTokens, Instant validUntil) {
+    if (grantedTokens < 0) {
+      throw new IllegalArgumentException("grantedTokens must not be negative: " + grantedTokens);
+    }
+    this.grantedTokens = grantedTokens;
+    this.validUntil = Objects.requireNonNull(validUntil);
+  }
+
+  public int getGrantedTokens() {
+    return this.grantedTokens;
+  }
+
+  public Instant getValidUntil() {
+    return this.validUntil;
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * A {@link RequestDispatcher} that starts a call only if there is a token for it in the budget of
+ * the tenant (the tenant id of the request or its base path). The tokens are leased in blocks from
+ * a {@link RateBudgetStore} that is shared by the nodes of the cluster. If the store fails or does
+ * not respond in time, the dispatcher falls back to a local rate limit for a while before it
+ * contacts the store again. The state of a tenant is dropped when it has no waiting calls and
+ * neither its lease nor its fallback period is in effect anymore.
+ */
+public final class RateBudgetRequestDispatcher implements RequestDispatcher {
+
+  /**
+   * Builder class for {@link RateBudgetRequestDispatcher}.
+   */
+  public static final class Builder {
+
+    private Clock clock = Clock.systemUTC();
+
+    private int fallbackBurst = 1;
+
+    private double fallbackRateLimit = 1;
+
+    private int leaseSize = DEFAULT_LEASE_SIZE;
+
+    private Scheduler scheduler = Schedulers.computation();
+
+    private RateBudgetStore store;
+
+    private Duration storeRetryDelay = Duration.ofSeconds(DEFAULT_STORE_RETRY_DELAY_SECONDS);
+
+    private Duration storeTimeout = Duration.ofSeconds(1);
+
+    private Builder() {
+    }
+
+    public RateBudgetRequestDispatcher build() {
+      Objects.requireNonNull(this.store, "store must be specified");
+      return new RateBudgetRequestDispatcher(this);
+    }
+
+    /**
+     * The clock that is used to check the deadlines of the requests and the validity of the
+     * leases. Default: {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * The number of calls that can be started in a burst per tenant while the store is
+     * unavailable. Default: 1.
+     */
+    public Builder fallbackBurst(int fallbackBurst) {
+      if (fallbackBurst < 1) {
+        throw new IllegalArgumentException("fallbackBurst must be positive: " + fallbackBurst);
+      }
+      this.fallbackBurst = fallbackBurst;
+      return this;
+    }
+
+    /**
+     * The number of calls per second that can be started per tenant while the store is
+     * unavailable. It should be the share of this node from the budget. Default: 1.
+     */
+    public Builder fallbackRateLimit(double fallbackRateLimit) {
+      if (!(fallbackRateLimit > 0)) {
+        throw new IllegalArgumentException(
+            "fallbackRateLimit must be positive: " + fallbackRateLimit);
+      }
+      this.fallbackRateLimit = fallbackRateLimit;
+      return this;
+    }
+
+    /**
+     * The number of tokens that are requested from the store at once. Default: 50.
+     */
+    public Builder leaseSize(int leaseSize) {
+      if (leaseSize < 1) {
+        throw new IllegalArgumentException("leaseSize must be positive: " + leaseSize);
+      }
+      this.leaseSize = leaseSize;
+      return this;
+    }
+
+    /**
+     * The scheduler of the timeouts and the delayed retries. Default:
+     * {@link Schedulers#computation()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+
+    /**
+     * The store where the tokens are leased from.
+     */
+    public Builder store(RateBudgetStore store) {
+      this.store = Objects.requireNonNull(store);
+      return this;
+    }
+
+    /**
+     * The time while the local rate limit is used after the store failed. Default: 5 seconds.
+     */
+    public Builder storeRetryDelay(Duration storeRetryDelay) {
+      this.storeRetryDelay = Objects.requireNonNull(storeRetryDelay);
+      return this;
+    }
+
+    /**
+     * The time after a lease request is considered failed. Default: 1 second.
+     */
+    public Builder storeTimeout(Duration storeTimeout) {
+      this.storeTimeout = Objects.requireNonNull(storeTimeout);
+      return this;
+    }
+  }
+
+  /**
+   * The leased tokens and the waiting calls of a tenant. Guarded by the lock of the dispatcher.
+   */
+  private final class Budget {
+
+    private final SerializedDrain drain =
+        new SerializedDrain(() -> RateBudgetRequestDispatcher.this.drainStep(this));
+
+    private long exhaustedUntilMillis = 0;
+
+    private long fallbackLastRefillNanos;
+
+    private double fallbackTokens;
+
+    private long fallbackUntilNanos = Long.MIN_VALUE;
+
+    private final String key;
+
+    private boolean leasing = false;
+
+    private final ArrayDeque<PendingCall<?>> queue = new ArrayDeque<>();
+
+    private int tokens = 0;
+
+    private long validUntilMillis = 0;
+
+    private boolean wakeUpScheduled = false;
+
+    Budget(String key) {
+      this.key = key;
+    }
+  }
+
+  private static final int DEFAULT_LEASE_SIZE = 50;
+
+  private static final int DEFAULT_STORE_RETRY_DELAY_SECONDS = 5;
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Map<String, Budget> budgets = new HashMap<>();
+
+  private final Clock clock;
+
+  private final int fallbackBurst;
+
+  private final double fallbackRateLimit;
+
+  private final int leaseSize;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Scheduler scheduler;
+
+  private final RateBudgetStore store;
+
+  private final long storeRetryDelayNanos;
+
+  private final Duration storeTimeout;
+
+  private RateBudgetRequestDispatcher(Builder builder) {
+    this.clock = builder.clock;
+    this.fallbackBurst = builder.fallbackBurst;
+    this.fallbackRateLimit = builder.fallbackRateLimit;
+    this.leaseSize = builder.leaseSize;
+    this.scheduler = builder.scheduler;
+    this.store = builder.store;
+    this.storeRetryDelayNanos = builder.storeRetryDelay.toNanos();
+    this.storeTimeout = builder.storeTimeout;
+  }
+
+  @Override
+  public <T> Single<T> dispatch(RestRequest restRequest, Single<T> call) {
+    String budgetKey = restRequest.getTenantId().orElse(restRequest.getBasePath());
+    return Single.create((emitter) -> {
+      Optional<Instant> deadline = restRequest.getDeadline();
+      if (PendingCall.rejectIfExpired(deadline, this.clock.instant(), emitter)) {
+        return;
+      }
+
+      PendingCall<T> pendingCall = new PendingCall<>(call, deadline, emitter, () -> {
+      });
+      emitter.setCancellable(pendingCall::cancel);
+      Budget budget;
+      this.lock.lock();
+      try {
+        budget = this.budgets.computeIfAbsent(budgetKey, Budget::new);
+        budget.queue.add(pendingCall);
+      } finally {
+        this.lock.unlock();
+      }
+      budget.drain.run();
+    });
+  }
+
+  /**
+   * Starts the waiting calls of the budget while there are tokens and requests a new lease or
+   * schedules a wake-up if there are calls left. If no call is waiting, the budget is dropped or,
+   * if its lease or fallback period is still in effect, a wake-up is scheduled for the end of it.
+   * Called via the {@link SerializedDrain} of the budget, so the calls of a budget are started in
+   * order by one thread at a time.
+   *
+   * @return Always <code>false</code>, as one round starts all calls that can be started.
+   */
+  private boolean drainStep(Budget budget) {
+    List<PendingCall<?>> expiredCalls = new ArrayList<>();
+    List<PendingCall<?>> callsToStart = new ArrayList<>();
+    boolean lease = false;
+    long wakeUpDelayNanos = -1;
+
+    this.lock.lock();
+    try {
+      Instant now = this.clock.instant();
+      long nowMillis = now.toEpochMilli();
+      long nowNanos = this.scheduler.now(TimeUnit.NANOSECONDS);
+      if (budget.validUntilMillis <= nowMillis) {
+        budget.tokens = 0;
+      }
+      while (true) {
+        PendingCall.pollDeadCalls(budget.queue, now, expiredCalls);
+        if (budget.queue.isEmpty()) {
+          break;
+        }
+        if (budget.tokens > 0) {
+          budget.tokens--;
+        } else if (nowNanos < budget.fallbackUntilNanos) {
+          long delay = takeFallbackToken(budget, nowNanos);
+          if (delay > 0) {
+            wakeUpDelayNanos = delay;
+            break;
+          }
+        } else if (budget.exhaustedUntilMillis > nowMillis) {
+          wakeUpDelayNanos = TimeUnit.MILLISECONDS.toNanos(budget.exhaustedUntilMillis - nowMillis);
+          break;
+        } else {
+          lease = !budget.leasing;
+          budget.leasing = true;
+          break;
+        }
+        callsToStart.add(budget.queue.poll());
+      }
+      if (budget.queue.isEmpty() && !budget.leasing && !budget.wakeUpScheduled) {
+        wakeUpDelayNanos = retentionNanos(budget, nowMillis, nowNanos);
+        if (wakeUpDelayNanos <= 0) {
+          this.budgets.remove(budget.key, budget);
+          wakeUpDelayNanos = -1;
+        }
+      }
+      if (wakeUpDelayNanos >= 0) {
+        if (budget.wakeUpScheduled) {
+          wakeUpDelayNanos = -1;
+        } else {
+          budget.wakeUpScheduled = true;
+        }
+      }
+    } finally {
+      this.lock.unlock();
+    }
+
+    PendingCall.expireAll(expiredCalls);
+    for (PendingCall<?> callToStart : callsToStart) {
+      callToStart.start();
+    }
+    if (wakeUpDelayNanos >= 0) {
+      this.scheduler.scheduleDirect(() -> wakeUp(budget), wakeUpDelayNanos, TimeUnit.NANOSECONDS);
+    }
+    if (lease) {
+      lease(budget);
+    }
+    return false;
+  }
+
+  private void lease(Budget budget) {
+    this.store.lease(budget.key, this.leaseSize)
+        .timeout(this.storeTimeout.toNanos(), TimeUnit.NANOSECONDS, this.scheduler)
+        .subscribe((rateBudgetLease) -> onLease(budget, Optional.of(rateBudgetLease)),
+            (error) -> onLease(budget, Optional.empty()));
+  }
+
+  private void onLease(Budget budget, Optional<RateBudgetLease> rateBudgetLease) {
+    this.lock.lock();
+    try {
+      budget.leasing = false;
+      if (rateBudgetLease.isPresent()) {
+        long validUntilMillis = rateBudgetLease.get().getValidUntil().toEpochMilli();
+        budget.tokens = rateBudgetLease.get().getGrantedTokens();
+        budget.validUntilMillis = validUntilMillis;
+        if (budget.tokens == 0) {
+          budget.exhaustedUntilMillis = validUntilMillis;
+        }
+      } else {
+        long nowNanos = this.scheduler.now(TimeUnit.NANOSECONDS);
+        budget.fallbackUntilNanos = nowNanos + this.storeRetryDelayNanos;
+        budget.fallbackLastRefillNanos = nowNanos;
+        budget.fallbackTokens = this.fallbackBurst;
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    budget.drain.run();
+  }
+
+  /**
+   * Returns the nanoseconds while the budget has to be kept although no call is waiting, because
+   * it has leased tokens or the store is not contacted for a while. Must be called while holding
+   * the lock.
+   */
+  private long retentionNanos(Budget budget, long nowMillis, long nowNanos) {
+    long retentionMillis = budget.exhaustedUntilMillis - nowMillis;
+    if (budget.tokens > 0) {
+      retentionMillis = Math.max(retentionMillis, budget.validUntilMillis - nowMillis);
+    }
+    long retentionNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, retentionMillis));
+    if (budget.fallbackUntilNanos > nowNanos) {
+      retentionNanos = Math.max(retentionNanos, budget.fallbackUntilNanos - nowNanos);
+    }
+    return retentionNanos;
+  }
+
+  /**
+   * Takes a token of the local rate limit. Returns zero if a token was taken, otherwise the
+   * nanoseconds until the next token is available. Must be called while holding the lock.
+   */
+  private long takeFallbackToken(Budget budget, long nowNanos) {
+    budget.fallbackTokens = Math.min(this.fallbackBurst, budget.fallbackTokens
+        + (nowNanos - budget.fallbackLastRefillNanos) * this.fallbackRateLimit / NANOS_PER_SECOND);
+    budget.fallbackLastRefillNanos = nowNanos;
+    if (budget.fallbackTokens >= 1) {
+      budget.fallbackTokens--;
+      return 0;
+    }
+    long delay = (long) Math.ceil(
+        (1 - budget.fallbackTokens) * NANOS_PER_SECOND / this.fallbackRateLimit);
+    return Math.max(1, Math.min(delay, budget.fallbackUntilNanos - nowNanos));
+  }
+
+  private void wakeUp(Budget budget) {
+    this.lock.lock();
+    try {
+      budget.wakeUpScheduled = false;
+    } finally {
+      this.lock.unlock();
+    }
+    budget.drain.run();
+  }
+}
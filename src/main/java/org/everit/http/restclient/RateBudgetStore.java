@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import io.reactivex.Single;
+
+/**
+ * A store shared by the nodes of a cluster that hands out the request budget of the rate limited
+ * applications or sites. The nodes lease the tokens in blocks, so the store is contacted rarely.
+ */
+public interface RateBudgetStore {
+
+  /**
+   * Leases tokens from the budget.
+   *
+   * @param budgetKey
+   *          Identifies the budget (e.g. the base path of the site).
+   * @param requestedTokens
+   *          The number of tokens that the caller would like to have.
+   * @return The lease that contains at most the requested number of tokens.
+   */
+  Single<RateBudgetLease> lease(String budgetKey, int requestedTokens);
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Map;
+
+import org.everit.http.client.HttpMethod;
+
+/**
+ * Metadata of a request-response pair that was captured by {@link RecordingHttpClient}.
+ */
+public final class RecordedExchange {
+
+  private final long latencyNanos;
+
+  private final HttpMethod method;
+
+  private final Map<String, String> requestHeaders;
+
+  private final Map<String, String> responseHeaders;
+
+  private final long startOffsetNanos;
+
+  private final int status;
+
+  private final String url;
+
+  RecordedExchange(HttpMethod method, String url, Map<String, String> requestHeaders,
+      long startOffsetNanos, long latencyNanos, int status, Map<String, String> responseHeaders) {
+    this.method = method;
+    this.url = url;
+    this.requestHeaders = requestHeaders;
+    this.startOffsetNanos = startOffsetNanos;
+    this.latencyNanos = latencyNanos;
+    this.status = status;
+    this.responseHeaders = responseHeaders;
+  }
+
+  /**
+   * The time between sending the request and receiving the whole response body.
+   */
+  public long getLatencyNanos() {
+    return this.latencyNanos;
+  }
+
+  public HttpMethod getMethod() {
+    return this.method;
+  }
+
+  /**
+   * The headers of the request without the ones that carry credentials (Authorization,
+   * Proxy-Authorization, Cookie).
+   */
+  public Map<String, String> getRequestHeaders() {
+    return this.requestHeaders;
+  }
+
+  public Map<String, String> getResponseHeaders() {
+    return this.responseHeaders;
+  }
+
+  /**
+   * The time between the start of the recording and sending the request. It can be used to replay
+   * the traffic with its recorded pace.
+   */
+  public long getStartOffsetNanos() {
+    return this.startOffsetNanos;
+  }
+
+  public int getStatus() {
+    return this.status;
+  }
+
+  public String getUrl() {
+    return this.url;
+  }
+}
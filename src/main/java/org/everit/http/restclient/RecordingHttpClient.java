@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.async.AutoCloseAsyncContentProvider;
+import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+
+import io.reactivex.Single;
+
+/**
+ * An {@link HttpClient} decorator that captures the request-response pairs with their timing into
+ * a file that can be served by {@link ReplayingHttpClient}. The request headers (except the ones
+ * that carry credentials) and the request bodies are recorded, so the requests that differ only in
+ * their body (e.g. searches with different queries) can be told apart. The request bodies are read
+ * completely before the requests are sent and the response bodies are read completely before the
+ * responses are passed to the caller, so the recorded latency contains the time of downloading
+ * the body.
+ */
+public final class RecordingHttpClient implements HttpClient {
+
+  /**
+   * Builder class for {@link RecordingHttpClient}.
+   */
+  public static final class Builder {
+
+    private Path file;
+
+    private HttpClient httpClient;
+
+    private Builder() {
+    }
+
+    /**
+     * Opens the recording file and builds the client. If the file already contains a recording,
+     * the new records are appended to it and their start offsets continue after the last recorded
+     * exchange. A record at the end of the file that was not written completely is dropped.
+     *
+     * @throws IOException
+     *           if the file cannot be opened or it is not a recording file.
+     */
+    public RecordingHttpClient build() throws IOException {
+      Objects.requireNonNull(this.httpClient, "httpClient must be specified");
+      Objects.requireNonNull(this.file, "file must be specified");
+      return new RecordingHttpClient(this);
+    }
+
+    /**
+     * The file where the traffic is recorded.
+     */
+    public Builder file(Path file) {
+      this.file = Objects.requireNonNull(file);
+      return this;
+    }
+
+    /**
+     * The client that sends the requests.
+     */
+    public Builder httpClient(HttpClient httpClient) {
+      this.httpClient = Objects.requireNonNull(httpClient);
+      return this;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Verifies the header of an existing recording, drops the record at its end that was not
+   * written completely and returns the time when the last recorded exchange finished, relative to
+   * the start of the recording.
+   */
+  private static long prepareAppend(Path file) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer header =
+          RecordingHttpClient.read(channel, 0, HttpTrafficFormat.FILE_HEADER_LENGTH);
+      if (header == null
+          || header.getInt() != HttpTrafficFormat.MAGIC
+          || header.getInt() != HttpTrafficFormat.VERSION) {
+        throw new IOException("Not a recording file or unsupported version: " + file);
+      }
+
+      long validLength = HttpTrafficFormat.FILE_HEADER_LENGTH;
+      long endOffsetNanos = 0;
+      ByteBuffer lengthBuffer = RecordingHttpClient.read(channel, validLength, Integer.BYTES);
+      while (lengthBuffer != null) {
+        int length = lengthBuffer.getInt();
+        ByteBuffer content = (length >= 0)
+            ? RecordingHttpClient.read(channel, validLength + Integer.BYTES, length)
+            : null;
+        if (content == null) {
+          break;
+        }
+        RecordedExchange exchange = HttpTrafficFormat.readRecordContent(content).exchange;
+        endOffsetNanos = Math.max(endOffsetNanos,
+            exchange.getStartOffsetNanos() + exchange.getLatencyNanos());
+        validLength += Integer.BYTES + length;
+        lengthBuffer = RecordingHttpClient.read(channel, validLength, Integer.BYTES);
+      }
+      channel.truncate(validLength);
+      return endOffsetNanos;
+    }
+  }
+
+  /**
+   * Reads the bytes from the position of the channel. Returns null if the channel ends before.
+   */
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return null;
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private final HttpClient httpClient;
+
+  private final DataOutputStream out;
+
+  private final long recordingStartNanos;
+
+  private RecordingHttpClient(Builder builder) throws IOException {
+    this.httpClient = builder.httpClient;
+    boolean newFile = !Files.exists(builder.file) || Files.size(builder.file) == 0;
+    long recordedNanos = newFile ? 0 : RecordingHttpClient.prepareAppend(builder.file);
+    this.recordingStartNanos = System.nanoTime() - recordedNanos;
+    this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(builder.file,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    if (newFile) {
+      this.out.writeInt(HttpTrafficFormat.MAGIC);
+      this.out.writeInt(HttpTrafficFormat.VERSION);
+      this.out.flush();
+    }
+  }
+
+  /**
+   * Closes the recording file and the decorated client.
+   */
+  @Override
+  public void close() {
+    try {
+      synchronized (this.out) {
+        this.out.close();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      this.httpClient.close();
+    }
+  }
+
+  private void record(RecordedExchange exchange, byte[] requestBody, byte[] body) {
+    try {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      HttpTrafficFormat.writeRecordContent(new DataOutputStream(bout), exchange, requestBody,
+          body);
+      synchronized (this.out) {
+        this.out.writeInt(bout.size());
+        bout.writeTo(this.out);
+        this.out.flush();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public Single<HttpResponse> send(HttpRequest request) {
+    Single<byte[]> requestBody = request.getBody()
+        .map(RestClientUtil::readBytes)
+        .orElse(Single.just(new byte[0]));
+    return requestBody.flatMap((requestBodyBytes) -> {
+      HttpRequest sentRequest = HttpRequest.builder()
+          .url(request.getUrl())
+          .method(request.getMethod())
+          .headers(request.getHeaders())
+          .body(request.getBody().map((body) -> new ByteArrayAsyncContentProvider(
+              requestBodyBytes, body.getContentType())))
+          .build();
+      long startNanos = System.nanoTime();
+      return this.httpClient.send(sentRequest).flatMap((httpResponse) -> RestClientUtil
+          .readBytes(new AutoCloseAsyncContentProvider(httpResponse.getBody(), httpResponse))
+          .map((body) -> {
+            record(new RecordedExchange(request.getMethod(), request.getUrl(),
+                HttpTrafficFormat.recordedHeaders(request.getHeaders()),
+                startNanos - this.recordingStartNanos, System.nanoTime() - startNanos,
+                httpResponse.getStatus(), httpResponse.getHeaders()), requestBodyBytes, body);
+
+            return HttpResponse.builder()
+                .status(httpResponse.getStatus())
+                .headers(httpResponse.getHeaders())
+                .body(new ByteArrayAsyncContentProvider(body, Optional.empty()))
+                .build();
+          }));
+    });
+  }
+}
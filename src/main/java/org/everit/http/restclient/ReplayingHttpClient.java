@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * An {@link HttpClient} that serves the responses that were captured by
+ * {@link RecordingHttpClient} from a memory-mapped recording file. The responses are looked up by
+ * the method, the URL, the headers (except the ones that carry credentials) and the body of the
+ * request; if the same request was recorded multiple times, the recorded responses are served in
+ * round-robin.
+ */
+public final class ReplayingHttpClient implements HttpClient {
+
+  /**
+   * Builder class for {@link ReplayingHttpClient}.
+   */
+  public static final class Builder {
+
+    private Path file;
+
+    private ReplayLatency latency = ReplayLatency.NONE;
+
+    private Scheduler scheduler = Schedulers.computation();
+
+    private Builder() {
+    }
+
+    /**
+     * Maps the recording file into the memory and indexes the records.
+     *
+     * @throws IOException
+     *           if the file cannot be read or it is not a recording file.
+     */
+    public ReplayingHttpClient build() throws IOException {
+      Objects.requireNonNull(this.file, "file must be specified");
+      return new ReplayingHttpClient(this);
+    }
+
+    /**
+     * The file that was written by {@link RecordingHttpClient}.
+     */
+    public Builder file(Path file) {
+      this.file = Objects.requireNonNull(file);
+      return this;
+    }
+
+    /**
+     * How the responses are delayed. Default: {@link ReplayLatency#NONE}.
+     */
+    public Builder latency(ReplayLatency latency) {
+      this.latency = Objects.requireNonNull(latency);
+      return this;
+    }
+
+    /**
+     * The scheduler of the delayed responses. Default: {@link Schedulers#computation()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    ByteBuffer duplicate = buffer.duplicate();
+    byte[] bytes = new byte[duplicate.remaining()];
+    duplicate.get(bytes);
+    return bytes;
+  }
+
+  private final Map<String, AtomicInteger> counters = new HashMap<>();
+
+  private final List<RecordedExchange> exchanges;
+
+  private final ReplayLatency latency;
+
+  private final Map<String, List<HttpTrafficFormat.Record>> records = new HashMap<>();
+
+  private final Scheduler scheduler;
+
+  private ReplayingHttpClient(Builder builder) throws IOException {
+    this.latency = builder.latency;
+    this.scheduler = builder.scheduler;
+
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(builder.file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Recording file is too large to be mapped: " + builder.file);
+      }
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.remaining() < HttpTrafficFormat.FILE_HEADER_LENGTH
+        || buffer.getInt() != HttpTrafficFormat.MAGIC
+        || buffer.getInt() != HttpTrafficFormat.VERSION) {
+      throw new IOException("Not a recording file or unsupported version: " + builder.file);
+    }
+
+    List<RecordedExchange> exchangeList = new ArrayList<>();
+    HttpTrafficFormat.Record record = HttpTrafficFormat.readRecord(buffer);
+    while (record != null) {
+      exchangeList.add(record.exchange);
+      String key = HttpTrafficFormat.exchangeKey(record.exchange.getMethod(),
+          record.exchange.getUrl(), record.exchange.getRequestHeaders(),
+          ReplayingHttpClient.toBytes(record.requestBody));
+      this.records.computeIfAbsent(key, (k) -> new ArrayList<>()).add(record);
+      this.counters.putIfAbsent(key, new AtomicInteger());
+      record = HttpTrafficFormat.readRecord(buffer);
+    }
+    this.exchanges = Collections.unmodifiableList(exchangeList);
+  }
+
+  @Override
+  public void close() {
+    // The mapped buffer is released by the garbage collector
+  }
+
+  /**
+   * The metadata of the recorded exchanges in the order they were recorded. Traffic generators can
+   * use the start offsets to replay the traffic with its recorded pace.
+   */
+  public List<RecordedExchange> getRecordedExchanges() {
+    return this.exchanges;
+  }
+
+  private long latencyNanos(List<HttpTrafficFormat.Record> candidates,
+      HttpTrafficFormat.Record record) {
+    switch (this.latency) {
+      case RECORDED:
+        return record.exchange.getLatencyNanos();
+      case DISTRIBUTION:
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()))
+            .exchange.getLatencyNanos();
+      default:
+        return 0;
+    }
+  }
+
+  @Override
+  public Single<HttpResponse> send(HttpRequest request) {
+    Single<byte[]> requestBody = request.getBody()
+        .map(RestClientUtil::readBytes)
+        .orElse(Single.just(new byte[0]));
+    return requestBody.flatMap((requestBodyBytes) -> {
+      String key = HttpTrafficFormat.exchangeKey(request.getMethod(), request.getUrl(),
+          request.getHeaders(), requestBodyBytes);
+      List<HttpTrafficFormat.Record> candidates = this.records.get(key);
+      if (candidates == null) {
+        return Single.error(new NoSuchElementException("No recorded response for "
+            + request.getMethod() + " " + request.getUrl()));
+      }
+      int index = Math.floorMod(this.counters.get(key).getAndIncrement(), candidates.size());
+      HttpTrafficFormat.Record record = candidates.get(index);
+
+      Single<HttpResponse> response = Single.just(HttpResponse.builder()
+          .status(record.exchange.getStatus())
+          .headers(record.exchange.getResponseHeaders())
+          .body(new ByteArrayAsyncContentProvider(ReplayingHttpClient.toBytes(record.body),
+              Optional.empty()))
+          .build());
+
+      long delay = latencyNanos(candidates, record);
+      if (delay <= 0) {
+        return response;
+      }
+      return response.delay(delay, TimeUnit.NANOSECONDS, this.scheduler);
+    });
+  }
+}
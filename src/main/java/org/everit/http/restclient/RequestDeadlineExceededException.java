@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Instant;
+
+/**
+ * Thrown when the deadline of a rest request passes before the call could be completed.
+ */
+public class RequestDeadlineExceededException extends RuntimeException {
+
+  private static final long serialVersionUID = -1766389406045734187L;
+
+  private final Instant deadline;
+
+  /**
+   * Constructor.
+   *
+   * @param message
+   *          Message of the exception.
+   * @param deadline
+   *          The deadline of the request.
+   */
+  public RequestDeadlineExceededException(String message, Instant deadline) {
+    super(message + " Deadline: " + deadline);
+    this.deadline = deadline;
+  }
+
+  public Instant getDeadline() {
+    return this.deadline;
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Objects;
+
+import io.reactivex.Single;
+
+/**
+ * Decides when the calls of a {@link RestClient} may start. Implementations can queue the calls to
+ * limit the concurrency or to prefer some calls over others.
+ */
+public interface RequestDispatcher {
+
+  /**
+   * Returns a dispatcher that lets the calls through this dispatcher first and then through the
+   * next one. The next dispatcher sees a call only after this dispatcher allowed it to start.
+   *
+   * @param next
+   *          The dispatcher that is applied after this one.
+   * @return The composed dispatcher.
+   */
+  default RequestDispatcher andThen(RequestDispatcher next) {
+    Objects.requireNonNull(next);
+    RequestDispatcher first = this;
+    return new RequestDispatcher() {
+      @Override
+      public <T> Single<T> dispatch(RestRequest restRequest, Single<T> call) {
+        return first.dispatch(restRequest, next.dispatch(restRequest, call));
+      }
+    };
+  }
+
+  /**
+   * Returns a single that subscribes to the call when the dispatcher allows it. The call is
+   * considered in-flight until it terminates or the returned single is disposed.
+   *
+   * @param <T>
+   *          Type of the result of the call.
+   * @param restRequest
+   *          The request of the call.
+   * @param call
+   *          The call that sends the request and processes the response.
+   * @return The single that is notified with the result of the call.
+   */
+  <T> Single<T> dispatch(RestRequest restRequest, Single<T> call);
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.everit.http.client.HttpMethod;
+
+import io.reactivex.Single;
+
+/**
+ * In-memory cache of converted response bodies that can be registered on {@link RestClient}. Only
+ * GET requests are cached whose endpoint has a time-to-live. The entries are keyed by the method,
+ * the URL with the sorted query parameters, the headers of the request and the return type, so a
+ * cache hit does not touch the network or the JSON parser.
+ *
+ * <p>
+ * {@link RestClient} looks up the entries with the request that is already enhanced by the
+ * {@link RestRequestEnhancer}, so the headers that the enhancer adds (e.g. the
+ * <code>Authorization</code> header) are part of the key and the responses of one user are not
+ * served to another user. The enhancer therefore runs for cache hits, too. The cached instances are
+ * shared between the callers with the same key, so they must not be modified.
+ *
+ * <p>
+ * Features:
+ * <ul>
+ * <li>Size-bounded eviction with a frequency-aware admission policy (Window TinyLFU).</li>
+ * <li>Time-to-live per endpoint, where the endpoint is the path template of the request.</li>
+ * <li>Stale-while-revalidate: an expired entry is still returned within the stale period and it is
+ * refreshed in the background.</li>
+ * <li>Negative caching of {@link RestException}s with 404 status.</li>
+ * <li>Concurrent misses of the same key share one call.</li>
+ * </ul>
+ */
+public final class ResponseCache {
+
+  /**
+   * Builder to build {@link ResponseCache}.
+   */
+  public static final class Builder {
+
+    private Optional<Duration> defaultTtl = Optional.empty();
+
+    private final Map<String, Duration> endpointTtls = new HashMap<>();
+
+    private int maximumSize = ResponseCache.DEFAULT_MAXIMUM_SIZE;
+
+    private Duration negativeTtl = Duration.ZERO;
+
+    private Duration staleWhileRevalidate = Duration.ZERO;
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the cache instance.
+     */
+    public ResponseCache build() {
+      return new ResponseCache(this);
+    }
+
+    /**
+     * The time-to-live of the responses of endpoints that do not have an
+     * {@link #endpointTtl(String, Duration)}. If not specified, only the responses of the
+     * explicitly configured endpoints are cached.
+     */
+    public Builder defaultTtl(Optional<Duration> defaultTtl) {
+      this.defaultTtl = Objects.requireNonNull(defaultTtl);
+      return this;
+    }
+
+    /**
+     * The time-to-live of the responses of an endpoint.
+     *
+     * @param path
+     *          The path template of the endpoint, as it is passed to
+     *          {@link RestRequest.Builder#path(String)}. E.g.: /rest/api/2/issue/{issueIdOrKey}
+     * @param ttl
+     *          The time-to-live of the responses.
+     */
+    public Builder endpointTtl(String path, Duration ttl) {
+      this.endpointTtls.put(Objects.requireNonNull(path), Objects.requireNonNull(ttl));
+      return this;
+    }
+
+    /**
+     * The maximum number of entries in the cache. Default: 10000.
+     */
+    public Builder maximumSize(int maximumSize) {
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * The time-to-live of the cached 404 responses. Default: zero, 404 responses are not cached.
+     */
+    public Builder negativeTtl(Duration negativeTtl) {
+      this.negativeTtl = Objects.requireNonNull(negativeTtl);
+      return this;
+    }
+
+    /**
+     * The period after the expiration while the stale entry is still returned and refreshed in the
+     * background. Default: zero.
+     */
+    public Builder staleWhileRevalidate(Duration staleWhileRevalidate) {
+      this.staleWhileRevalidate = Objects.requireNonNull(staleWhileRevalidate);
+      return this;
+    }
+  }
+
+  /**
+   * Entry of the cache that holds either a converted response body or the exception of a 404
+   * response.
+   */
+  private static final class CacheEntry {
+
+    private final Throwable error;
+
+    private final long expiresAtNanos;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final long staleUntilNanos;
+
+    private final Object value;
+
+    CacheEntry(Object value, Throwable error, long expiresAtNanos, long staleUntilNanos) {
+      this.value = value;
+      this.error = error;
+      this.expiresAtNanos = expiresAtNanos;
+      this.staleUntilNanos = staleUntilNanos;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Single<T> toSingle() {
+      if (this.error != null) {
+        return Single.error(this.error);
+      }
+      return Single.just((T) this.value);
+    }
+  }
+
+  /**
+   * Canonical key of a request and a return type.
+   */
+  private static final class CacheKey {
+
+    private final int hashCode;
+
+    private final String request;
+
+    private final Type type;
+
+    CacheKey(RestRequest restRequest, Type type) {
+      this.request = RestClientUtil.canonicalKey(restRequest);
+      this.type = type;
+      this.hashCode = Objects.hash(this.request, type);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey other = (CacheKey) obj;
+      return this.hashCode == other.hashCode && this.request.equals(other.request)
+          && this.type.equals(other.type);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hashCode;
+    }
+  }
+
+  private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+  private static final int HTTP_NOT_FOUND = 404;
+
+  /**
+   * Creates builder to build {@link ResponseCache}.
+   *
+   * @return created builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Optional<Duration> defaultTtl;
+
+  private final Map<String, Duration> endpointTtls;
+
+  private final ConcurrentMap<CacheKey, CacheEntry> entries = new ConcurrentHashMap<>();
+
+  private final LongAdder evictionCount = new LongAdder();
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final ConcurrentMap<CacheKey, Single<?>> inFlight = new ConcurrentHashMap<>();
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final LongAdder missCount = new LongAdder();
+
+  private final long negativeTtlNanos;
+
+  private final WindowTinyLfuPolicy<CacheKey> policy;
+
+  private final LongAdder staleHitCount = new LongAdder();
+
+  private final long staleWhileRevalidateNanos;
+
+  private ResponseCache(Builder builder) {
+    this.defaultTtl = builder.defaultTtl;
+    this.endpointTtls = new HashMap<>(builder.endpointTtls);
+    this.negativeTtlNanos = builder.negativeTtl.toNanos();
+    this.staleWhileRevalidateNanos = builder.staleWhileRevalidate.toNanos();
+    this.policy = new WindowTinyLfuPolicy<>(builder.maximumSize);
+  }
+
+  /**
+   * Returns the cached response of the request or calls the loader if there is no fresh entry in
+   * the cache.
+   *
+   * @param <T>
+   *          Type of the response body.
+   * @param restRequest
+   *          The request that identifies the entry together with the return type.
+   * @param returnType
+   *          Type of the response body.
+   * @param loader
+   *          Calls the endpoint if the response is not in the cache or it must be refreshed.
+   * @return The cached or the loaded response body.
+   */
+  <T> Single<T> get(RestRequest restRequest, TypeReference<T> returnType,
+      Supplier<Single<T>> loader) {
+
+    Optional<Duration> ttl = ttlOf(restRequest);
+    if (!ttl.isPresent()) {
+      return loader.get();
+    }
+
+    long ttlNanos = ttl.get().toNanos();
+    CacheKey key = new CacheKey(restRequest, returnType.getType());
+    return Single.defer(() -> {
+      CacheEntry entry = this.entries.get(key);
+      if (entry != null) {
+        long now = System.nanoTime();
+        if (now - entry.expiresAtNanos < 0) {
+          this.hitCount.increment();
+          recordAccess(key);
+          return entry.toSingle();
+        }
+
+        if (now - entry.staleUntilNanos < 0) {
+          this.staleHitCount.increment();
+          recordAccess(key);
+          refresh(key, entry, loader, ttlNanos);
+          return entry.toSingle();
+        }
+
+        remove(key, entry);
+      }
+
+      this.missCount.increment();
+      return load(key, loader, ttlNanos);
+    });
+  }
+
+  /**
+   * The number of entries that were evicted due to the size limit.
+   */
+  public long getEvictionCount() {
+    return this.evictionCount.sum();
+  }
+
+  /**
+   * The number of calls that were served from a fresh entry.
+   */
+  public long getHitCount() {
+    return this.hitCount.sum();
+  }
+
+  /**
+   * The number of calls that did not find a usable entry in the cache.
+   */
+  public long getMissCount() {
+    return this.missCount.sum();
+  }
+
+  /**
+   * The number of calls that were served from an expired entry while it was refreshed.
+   */
+  public long getStaleHitCount() {
+    return this.staleHitCount.sum();
+  }
+
+  /**
+   * Removes all entries from the cache.
+   */
+  public void invalidateAll() {
+    this.lock.lock();
+    try {
+      for (CacheKey key : this.entries.keySet()) {
+        this.entries.remove(key);
+        this.policy.onRemove(key);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private boolean isNegativeCacheable(Throwable error) {
+    return this.negativeTtlNanos > 0 && error instanceof RestException
+        && ((RestException) error).getStatus() == ResponseCache.HTTP_NOT_FOUND;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> Single<T> load(CacheKey key, Supplier<Single<T>> loader, long ttlNanos) {
+    Single<?> existing = this.inFlight.get(key);
+    if (existing != null) {
+      return (Single<T>) existing;
+    }
+
+    Single<T> loading = loader.get()
+        .doOnSuccess(value -> {
+          long now = System.nanoTime();
+          put(key, new CacheEntry(value, null, now + ttlNanos,
+              now + ttlNanos + this.staleWhileRevalidateNanos));
+        })
+        .doOnError(error -> {
+          if (isNegativeCacheable(error)) {
+            long expiresAt = System.nanoTime() + this.negativeTtlNanos;
+            put(key, new CacheEntry(null, error, expiresAt, expiresAt));
+          }
+        })
+        .doFinally(() -> this.inFlight.remove(key))
+        .cache();
+
+    Single<?> previous = this.inFlight.putIfAbsent(key, loading);
+    if (previous != null) {
+      return (Single<T>) previous;
+    }
+    return loading;
+  }
+
+  private void put(CacheKey key, CacheEntry entry) {
+    this.lock.lock();
+    try {
+      this.entries.put(key, entry);
+      List<CacheKey> evictedKeys = this.policy.onInsert(key);
+      for (CacheKey evictedKey : evictedKeys) {
+        this.entries.remove(evictedKey);
+        this.evictionCount.increment();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void recordAccess(CacheKey key) {
+    // Lossy on contention: skipping a reordering is cheaper than blocking a hot read
+    if (this.lock.tryLock()) {
+      try {
+        if (this.entries.containsKey(key)) {
+          this.policy.onAccess(key);
+        }
+      } finally {
+        this.lock.unlock();
+      }
+    }
+  }
+
+  private <T> void refresh(CacheKey key, CacheEntry entry, Supplier<Single<T>> loader,
+      long ttlNanos) {
+    if (entry.refreshing.compareAndSet(false, true)) {
+      load(key, loader, ttlNanos).subscribe(value -> {
+      }, error -> entry.refreshing.set(false));
+    }
+  }
+
+  private void remove(CacheKey key, CacheEntry entry) {
+    this.lock.lock();
+    try {
+      if (this.entries.remove(key, entry)) {
+        this.policy.onRemove(key);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * The number of entries in the cache, including the expired ones that are not removed yet.
+   */
+  public int size() {
+    return this.entries.size();
+  }
+
+  private Optional<Duration> ttlOf(RestRequest restRequest) {
+    if (restRequest.getMethod() != HttpMethod.GET) {
+      return Optional.empty();
+    }
+    Duration endpointTtl = this.endpointTtls.get(restRequest.getPath());
+    if (endpointTtl != null) {
+      return Optional.of(endpointTtl);
+    }
+    return this.defaultTtl;
+  }
+}
@@ -15,10 +15,26 @@
  */
 package org.everit.http.restclient;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpMethod;
 import org.everit.http.client.HttpRequest;
 import org.everit.http.client.HttpResponse;
 import org.everit.http.client.MediaType;
@@ -26,25 +42,316 @@ import org.everit.http.client.async.AsyncContentProvider;
 import org.everit.http.client.async.AsyncContentUtil;
 import org.everit.http.client.async.AutoCloseAsyncContentProvider;
 import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+import org.reactivestreams.Publisher;
 
 import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
-import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * Calls REST endpoints.
  */
 public class RestClient {
 
+  /**
+   * Builder to build {@link RestClient}.
+   */
+  public static final class Builder {
+
+    private Optional<BufferPool> bufferPool = Optional.empty();
+
+    private Clock clock = Clock.systemUTC();
+
+    private Optional<Scheduler> decodeScheduler = Optional.empty();
+
+    private Optional<Duration> defaultTimeout = Optional.empty();
+
+    private Optional<Scheduler> encodeScheduler = Optional.empty();
+
+    private Optional<FieldProjection> fieldProjection = Optional.empty();
+
+    private HttpClient httpClient;
+
+    private JSONObjectMapper objectMapper;
+
+    private int offloadThreshold = RestClient.DEFAULT_OFFLOAD_THRESHOLD;
+
+    private Optional<ParallelArrayDecoder> parallelArrayDecoder = Optional.empty();
+
+    private Optional<PersistentResponseStore> persistentResponseStore = Optional.empty();
+
+    private Optional<RequestDispatcher> requestDispatcher = Optional.empty();
+
+    private Optional<ResponseCache> responseCache = Optional.empty();
+
+    private Optional<SlowCallSampler> slowCallSampler = Optional.empty();
+
+    private Scheduler timeoutScheduler = Schedulers.computation();
+
+    private Builder() {
+    }
+
+    /**
+     * Builds the rest client instance.
+     */
+    public RestClient build() {
+      return new RestClient(this);
+    }
+
+    /**
+     * If specified, the response bodies are aggregated into pooled buffers instead of Strings and
+     * they are converted from the pooled buffers by
+     * {@link JSONObjectMapper#fromJSON(java.io.InputStream, TypeReference)}. The buffers are
+     * released as soon as the body is converted.
+     */
+    public Builder bufferPool(Optional<BufferPool> bufferPool) {
+      this.bufferPool = Objects.requireNonNull(bufferPool);
+      return this;
+    }
+
+    /**
+     * The clock that the deadlines of the requests are compared to. Default:
+     * {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * The scheduler that is used to convert the JSON response bodies to java objects. If not
+     * specified, the conversion runs on the thread that received the last chunk of the response
+     * body, that is normally an I/O thread of the {@link HttpClient}.
+     */
+    public Builder decodeScheduler(Optional<Scheduler> decodeScheduler) {
+      this.decodeScheduler = Objects.requireNonNull(decodeScheduler);
+      return this;
+    }
+
+    /**
+     * The deadline of the requests that do not have one is the time of the call plus this timeout.
+     * If not specified, such requests can wait for the response forever.
+     */
+    public Builder defaultTimeout(Optional<Duration> defaultTimeout) {
+      this.defaultTimeout = Objects.requireNonNull(defaultTimeout);
+      return this;
+    }
+
+    /**
+     * The scheduler that is used to convert the request bodies to JSON. If not specified, the
+     * conversion runs on the thread that subscribes to the request. As the size of the JSON is not
+     * known before the conversion, the {@link #offloadThreshold(int)} does not apply to encoding.
+     */
+    public Builder encodeScheduler(Optional<Scheduler> encodeScheduler) {
+      this.encodeScheduler = Objects.requireNonNull(encodeScheduler);
+      return this;
+    }
+
+    /**
+     * If specified, the GET requests of the typed calls get the <code>fields</code> /
+     * <code>properties</code> query parameters that are computed from the return type, so the
+     * server sends only the fields that are converted. Query parameters that are specified in the
+     * request are not overridden.
+     */
+    public Builder fieldProjection(Optional<FieldProjection> fieldProjection) {
+      this.fieldProjection = Objects.requireNonNull(fieldProjection);
+      return this;
+    }
+
+    /**
+     * The HTTP client that is used to send the requests.
+     */
+    public Builder httpClient(HttpClient httpClient) {
+      this.httpClient = httpClient;
+      return this;
+    }
+
+    /**
+     * The object mapper that converts the request and response bodies from and to JSON.
+     */
+    public Builder objectMapper(JSONObjectMapper objectMapper) {
+      this.objectMapper = objectMapper;
+      return this;
+    }
+
+    /**
+     * The length of the response JSON below which it is converted on the thread that received the
+     * body, even if a {@link #decodeScheduler(Optional)} is specified. Switching threads costs more
+     * than decoding small documents. Default: 65536.
+     */
+    public Builder offloadThreshold(int offloadThreshold) {
+      if (offloadThreshold < 0) {
+        throw new IllegalArgumentException("Offload threshold must not be negative");
+      }
+      this.offloadThreshold = offloadThreshold;
+      return this;
+    }
+
+    /**
+     * If specified, the responses that are converted to a {@link List} (or to its super
+     * interfaces) and that are larger than the {@link ParallelArrayDecoder#getThreshold()} are
+     * converted in parallel on the pool of the decoder, even if a decode scheduler is specified.
+     * The rest of the responses are converted as usual.
+     */
+    public Builder parallelArrayDecoder(Optional<ParallelArrayDecoder> parallelArrayDecoder) {
+      this.parallelArrayDecoder = Objects.requireNonNull(parallelArrayDecoder);
+      return this;
+    }
+
+    /**
+     * If specified, the bodies of the GET responses are stored in it and they are revalidated with
+     * conditional requests after they expire. The store works below the {@link ResponseCache}, so
+     * it is used only if the response cache does not have the converted response.
+     */
+    public Builder persistentResponseStore(
+        Optional<PersistentResponseStore> persistentResponseStore) {
+      this.persistentResponseStore = Objects.requireNonNull(persistentResponseStore);
+      return this;
+    }
+
+    /**
+     * If specified, every call goes through the dispatcher that decides when the call may start.
+     * The call is in-flight from sending the request until the response body is processed. See
+     * {@link PriorityRequestDispatcher}.
+     */
+    public Builder requestDispatcher(Optional<RequestDispatcher> requestDispatcher) {
+      this.requestDispatcher = Objects.requireNonNull(requestDispatcher);
+      return this;
+    }
+
+    /**
+     * If specified, the converted response bodies of the typed calls are cached in it.
+     */
+    public Builder responseCache(Optional<ResponseCache> responseCache) {
+      this.responseCache = Objects.requireNonNull(responseCache);
+      return this;
+    }
+
+    /**
+     * If specified, the calls whose latency exceeds the threshold of the sampler are recorded in
+     * it with the timings of their phases and the snippets of their bodies.
+     */
+    public Builder slowCallSampler(Optional<SlowCallSampler> slowCallSampler) {
+      this.slowCallSampler = Objects.requireNonNull(slowCallSampler);
+      return this;
+    }
+
+    /**
+     * The scheduler that fails the calls when the deadline of their request passes. Default:
+     * {@link Schedulers#computation()}.
+     */
+    public Builder timeoutScheduler(Scheduler timeoutScheduler) {
+      this.timeoutScheduler = Objects.requireNonNull(timeoutScheduler);
+      return this;
+    }
+  }
+
+  private static final int DEFAULT_OFFLOAD_THRESHOLD = 64 * 1024;
+
   private static final int HTTP_LOWEST_ERROR_CODE = 400;
 
+  private static final int HTTP_NOT_FOUND = 404;
+
+  private static final int HTTP_NOT_MODIFIED = 304;
+
+  private static final int HTTP_OK = 200;
+
+  /**
+   * Creates builder to build {@link RestClient}.
+   *
+   * @return created builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the element type if the return type is a parameterized type that an {@link ArrayList}
+   * can be assigned to, e.g. <code>List&lt;Issue&gt;</code>.
+   */
+  private static Optional<TypeReference<Object>> listElementType(TypeReference<?> returnType) {
+    Type type = returnType.getType();
+    if (!(type instanceof ParameterizedType)) {
+      return Optional.empty();
+    }
+    ParameterizedType parameterizedType = (ParameterizedType) type;
+    Type rawType = parameterizedType.getRawType();
+    Type[] typeArguments = parameterizedType.getActualTypeArguments();
+    if (!(rawType instanceof Class) || !((Class<?>) rawType).isAssignableFrom(ArrayList.class)
+        || typeArguments.length != 1) {
+      return Optional.empty();
+    }
+    return Optional.of(Types.of(typeArguments[0]));
+  }
+
+  /**
+   * Returns the request body as a {@link JSONArrayBody} if its elements are streamed.
+   */
+  private static Optional<JSONArrayBody> streamedBody(Object requestBody) {
+    if (requestBody instanceof JSONArrayBody) {
+      return Optional.of((JSONArrayBody) requestBody);
+    }
+    if (requestBody instanceof Publisher) {
+      return Optional.of(JSONArrayBody.of((Publisher<?>) requestBody));
+    }
+    return Optional.empty();
+  }
+
+  private final Optional<BufferPool> bufferPool;
+
+  private final Clock clock;
+
+  private final Optional<Scheduler> decodeScheduler;
+
+  private final Optional<Duration> defaultTimeout;
+
+  private final Optional<Scheduler> encodeScheduler;
+
+  private final Optional<FieldProjection> fieldProjection;
+
   private HttpClient httpClient;
 
   private final JSONObjectMapper objectMapper;
 
+  private final int offloadThreshold;
+
+  private final Optional<ParallelArrayDecoder> parallelArrayDecoder;
+
+  private final Optional<PersistentResponseStore> persistentResponseStore;
+
+  private final Optional<RequestDispatcher> requestDispatcher;
+
+  private final Optional<ResponseCache> responseCache;
+
+  private final Optional<SlowCallSampler> slowCallSampler;
+
+  private final Scheduler timeoutScheduler;
+
+  private RestClient(Builder builder) {
+    this.httpClient = Objects.requireNonNull(builder.httpClient, "HttpClient must be specified");
+    this.objectMapper =
+        Objects.requireNonNull(builder.objectMapper, "JSONObjectMapper must be specified");
+    this.bufferPool = builder.bufferPool;
+    this.clock = builder.clock;
+    this.decodeScheduler = builder.decodeScheduler;
+    this.defaultTimeout = builder.defaultTimeout;
+    this.encodeScheduler = builder.encodeScheduler;
+    this.fieldProjection = builder.fieldProjection;
+    this.offloadThreshold = builder.offloadThreshold;
+    this.parallelArrayDecoder = builder.parallelArrayDecoder;
+    this.persistentResponseStore = builder.persistentResponseStore;
+    this.requestDispatcher = builder.requestDispatcher;
+    this.responseCache = builder.responseCache;
+    this.slowCallSampler = builder.slowCallSampler;
+    this.timeoutScheduler = builder.timeoutScheduler;
+  }
+
   public RestClient(HttpClient httpClient, JSONObjectMapper objectMapper) {
-    this.httpClient = httpClient;
-    this.objectMapper = objectMapper;
+    this(RestClient.builder().httpClient(httpClient).objectMapper(objectMapper));
   }
 
   /**
@@ -55,25 +362,15 @@ public class RestClient {
    * @param requestEnhancer
    *          If specified, it is used to enhance the rest request before sending it.
    * @return An asynchronous instance that is notified when the response without a body has arrived
-   *         back.
+   *         back. If the response has a body anyway, it is drained and dropped chunk by chunk
+   *         before the notification, so the connection can be reused.
    */
   public Completable callEndpoint(
       RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer) {
 
-    Single<HttpResponse> single =
-        callEndpointAndHandleErrors(restRequest, requestEnhancer);
-
-    return Single.create((emitter) -> {
-      Disposable disposable = single.subscribe(httpResponse -> {
-        try {
-          emitter.onSuccess(httpResponse);
-        } finally {
-          httpResponse.close();
-        }
-      }, error -> emitter.onError(error));
-
-      emitter.setCancellable(() -> disposable.dispose());
-    }).ignoreElement();
+    return runCall(restRequest, (deadlineRestRequest, trace) -> dispatch(deadlineRestRequest,
+        callEndpointAndHandleErrors(deadlineRestRequest, requestEnhancer, trace)
+            .flatMap(this::discardBody))).ignoreElement();
   }
 
   /**
@@ -89,99 +386,707 @@ public class RestClient {
    *          Type of the response body, Jackson is used to convert it from JSON to a typed java
    *          object.
    * @return An asynchronous object that is notified when the response is processed to the return
-   *         type.
+   *         type. If the deadline of the request passes before that, the single fails with
+   *         {@link RequestDeadlineExceededException} and the response is closed.
    */
   public <T> Single<T> callEndpoint(
       RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer,
       TypeReference<T> returnType) {
 
-    Single<HttpResponse> response =
-        callEndpointAndHandleErrors(restRequest, requestEnhancer);
+    return runCall(restRequest, (deadlineRestRequest, trace) -> {
+      RestRequest projectedRestRequest = deadlineRestRequest;
+      if (this.fieldProjection.isPresent() && restRequest.getMethod() == HttpMethod.GET) {
+        projectedRestRequest =
+            this.fieldProjection.get().apply(deadlineRestRequest, returnType.getType());
+      }
 
-    return response.flatMap((httpResponse) -> {
+      RestRequest finalRestRequest = projectedRestRequest;
+      if (this.responseCache.isPresent()) {
+        // The cache is keyed by the enhanced request, so the responses that are fetched with the
+        // credentials of one user are not served to another user
+        ResponseCache cache = this.responseCache.get();
+        return enhanceRequest(finalRestRequest, requestEnhancer, CallTrace.DISABLED)
+            .flatMap((enhancedRestRequest) -> cache.get(enhancedRestRequest, returnType,
+                () -> callEndpointAndDecode(enhancedRestRequest, Optional.empty(), returnType,
+                    trace)));
+      }
+      return callEndpointAndDecode(finalRestRequest, requestEnhancer, returnType, trace);
+    });
+  }
 
-      return AsyncContentUtil.readString(
-          new AutoCloseAsyncContentProvider(httpResponse.getBody(), httpResponse),
-          StandardCharsets.UTF_8);
+  private <T> Single<T> callEndpointAndDecode(
+      RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer,
+      TypeReference<T> returnType, CallTrace trace) {
 
-    }).map((stringResponse) -> {
-      return this.objectMapper.fromJSON(stringResponse, returnType);
-    });
+    boolean storeUsed =
+        this.persistentResponseStore.isPresent() && restRequest.getMethod() == HttpMethod.GET;
+    if (this.bufferPool.isPresent() && !storeUsed) {
+      BufferPool pool = this.bufferPool.get();
+      // The aggregated body is captured as soon as it is emitted, so it is released even if the
+      // call is disposed (e.g. by the deadline or the dispatcher) before it is converted
+      return Single.using(AtomicReference<CompositeBuffer>::new, (pooledBody) -> {
+        Single<CompositeBuffer> body =
+            callEndpointAndHandleErrors(restRequest, requestEnhancer, trace)
+                .flatMap((httpResponse) -> pool.aggregate(
+                    new AutoCloseAsyncContentProvider(httpResponse.getBody(), httpResponse)))
+                .doOnSuccess(pooledBody::set);
+        if (trace.isEnabled()) {
+          body = body.doOnSuccess((buffer) -> trace.markBody(buffer.size()));
+        }
+        return dispatch(restRequest, body)
+            .flatMap((buffer) -> decodePooledBody(buffer, returnType));
+      }, (pooledBody) -> {
+        CompositeBuffer buffer = pooledBody.getAndSet(null);
+        if (buffer != null) {
+          buffer.release();
+        }
+      });
+    }
+
+    return readResponseBody(restRequest, requestEnhancer, trace)
+        .flatMap((body) -> decodeBody(body, returnType));
   }
 
+
   private Single<HttpResponse> callEndpointAndHandleErrors(
-      RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer) {
+      RestRequest restRequest, Optional<RestRequestEnhancer> requestEnhancer, CallTrace trace) {
 
-    return enhanceRequest(restRequest, requestEnhancer).flatMap(
-        enhancedRestRequest -> callHttpEndpointAndHandleErrorsWithEnhancedRequest(
-            enhancedRestRequest));
+    return enhanceRequest(restRequest, requestEnhancer, trace).flatMap(
+        enhancedRestRequest -> callHttpEndpointWithEnhancedRequest(enhancedRestRequest,
+            this::handleErrors, trace));
 
   }
 
-  private Single<HttpResponse> callHttpEndpointAndHandleErrorsWithEnhancedRequest(
-      final RestRequest enhancedRestRequest) {
+  /**
+   * Calls a rest endpoint and returns a lazy view over the JSON response. Only the values that are
+   * read from the document are converted, which is cheaper than converting the whole response if
+   * only a few values of a large response are needed. The same result can be achieved by calling
+   * {@link #callEndpoint(RestRequest, Optional, TypeReference)} with {@link LazyJSONDocument} as
+   * return type.
+   *
+   * @param restRequest
+   *          The request to send.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest request before sending it.
+   * @return The lazy view over the response.
+   */
+  public Single<LazyJSONDocument> callEndpointAsDocument(RestRequest restRequest,
+      Optional<RestRequestEnhancer> requestEnhancer) {
+    return callEndpoint(restRequest, requestEnhancer, Types.of(LazyJSONDocument.class));
+  }
 
-    String url = enhancedRestRequest.buildURI();
-    HttpRequest request = HttpRequest.builder()
-        .url(url)
-        .method(enhancedRestRequest.getMethod())
-        .headers(enhancedRestRequest.getHeaders())
-        .body(createHttpBody(enhancedRestRequest.getRequestBody()))
-        .build();
+  /**
+   * Calls a rest endpoint and returns only the status of the response. The body of the response
+   * is drained and dropped chunk by chunk, even if the status is an error code, so neither the
+   * body is read into memory nor a {@link RestException} is created. This is useful for
+   * permission probes where the status is the answer.
+   *
+   * @param restRequest
+   *          The request that is used to call the endpoint.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest request before sending it.
+   * @return The status of the response.
+   */
+  public Single<Integer> callEndpointForStatus(RestRequest restRequest,
+      Optional<RestRequestEnhancer> requestEnhancer) {
 
-    Single<HttpResponse> response = this.httpClient.send(request).flatMap((httpResponse) -> {
-      int status = httpResponse.getStatus();
-      if (status >= RestClient.HTTP_LOWEST_ERROR_CODE) {
-        return AsyncContentUtil
-            .readString(new AutoCloseAsyncContentProvider(httpResponse.getBody(), httpResponse),
-                StandardCharsets.UTF_8)
-            .map((content) -> {
-              throw new RestException("Error sending request!",
-                  request.getMethod(),
-                  request.getUrl(),
-                  createHttpBody(enhancedRestRequest.getRequestBody()),
-                  status,
-                  Optional.ofNullable("".equals(content) ? null : content),
-                  null);
-            });
-      }
+    return runCall(restRequest, (deadlineRestRequest, trace) -> dispatch(deadlineRestRequest,
+        enhanceRequest(deadlineRestRequest, requestEnhancer, trace).flatMap(
+            (enhancedRestRequest) -> callHttpEndpointWithEnhancedRequest(enhancedRestRequest,
+                (request, httpResponse) -> discardBody(httpResponse), trace))));
+  }
 
-      return Single.just(httpResponse);
+  /**
+   * Calls a bulk endpoint with a streamed JSON array body and splits the elements into multiple
+   * requests if their number exceeds the maximum batch size of the endpoint. The batches are sent
+   * one after the other and the elements of each batch are serialized as the transport demands the
+   * bytes. The elements of a batch are collected in a list, so the body of the batch can be
+   * subscribed again (e.g. when it is retried). At most two batches of elements are buffered.
+   *
+   * @param <T>
+   *          Type of the response bodies.
+   * @param restRequest
+   *          The request that is used for every batch. Its body must be a {@link JSONArrayBody} or
+   *          a {@link Publisher} of the elements.
+   * @param maxBatchSize
+   *          The maximum number of elements that the endpoint accepts in one request.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest requests before sending them.
+   * @param returnType
+   *          Type of the response bodies.
+   * @return The responses of the batches in the order of the batches.
+   */
+  public <T> Flowable<T> callEndpointInBatches(RestRequest restRequest, int maxBatchSize,
+      Optional<RestRequestEnhancer> requestEnhancer, TypeReference<T> returnType) {
+
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+    }
+    JSONArrayBody body = restRequest.getRequestBody()
+        .flatMap(RestClient::streamedBody)
+        .orElseThrow(() -> new IllegalArgumentException(
+            "The request body must be a JSONArrayBody or a Publisher"));
+
+    return Flowable.fromPublisher(body.getElements())
+        .buffer(maxBatchSize)
+        .concatMap((batch) -> callEndpoint(RestRequest.builderFrom(restRequest)
+            .requestBody(Optional.of(body.withElements(Flowable.fromIterable(batch))))
+            .build(), requestEnhancer, returnType).toFlowable(), 1);
+  }
+
+  /**
+   * Calls a rest endpoint for each request of the source with a bounded number of in-flight
+   * requests. New requests are taken from the source only when the number of in-flight requests
+   * goes below {@link BatchOptions#getMaxInFlight()}. A failing request does not abort the batch,
+   * its exception is emitted within the {@link BatchResult}.
+   *
+   * @param <T>
+   *          Type of the response bodies.
+   * @param restRequests
+   *          The source of the requests.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest requests before sending them.
+   * @param returnType
+   *          Type of the response bodies.
+   * @param options
+   *          The options of the batch.
+   * @return The results of the requests in input or in completion order, depending on
+   *         {@link BatchOptions#isOrdered()}.
+   */
+  public <T> Flowable<BatchResult<T>> callEndpoints(Flowable<RestRequest> restRequests,
+      Optional<RestRequestEnhancer> requestEnhancer, TypeReference<T> returnType,
+      BatchOptions options) {
+
+    return Flowable.defer(() -> {
+      BatchStatistics statistics = options.getStatistics().orElseGet(BatchStatistics::new);
+      AtomicLong nextIndex = new AtomicLong();
+
+      Function<RestRequest, Publisher<BatchResult<T>>> callFunction = restRequest -> {
+        long index = nextIndex.getAndIncrement();
+        return Single.defer(() -> {
+          statistics.onRequestStart();
+          long startNanos = System.nanoTime();
+          return callEndpoint(restRequest, requestEnhancer, returnType)
+              .map(value -> BatchResult.success(index, restRequest, value,
+                  System.nanoTime() - startNanos))
+              .onErrorReturn(error -> BatchResult.<T> failure(index, restRequest, error,
+                  System.nanoTime() - startNanos))
+              .doOnSuccess(result -> statistics.onRequestFinish(result.isSuccess(),
+                  result.getLatencyNanos()));
+        }).toFlowable();
+      };
+
+      Flowable<BatchResult<T>> results = options.isOrdered()
+          ? restRequests.concatMapEager(callFunction, options.getMaxInFlight(), 1)
+          : restRequests.flatMap(callFunction, options.getMaxInFlight());
+
+      return results
+          .doOnSubscribe(subscription -> statistics.onBatchStart())
+          .doFinally(statistics::onBatchFinish);
     });
+  }
 
-    return response;
+  /**
+   * Calls a rest endpoint for each request of the iterable with a bounded number of in-flight
+   * requests. See {@link #callEndpoints(Flowable, Optional, TypeReference, BatchOptions)}.
+   *
+   * @param <T>
+   *          Type of the response bodies.
+   * @param restRequests
+   *          The requests that are iterated lazily.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest requests before sending them.
+   * @param returnType
+   *          Type of the response bodies.
+   * @param options
+   *          The options of the batch.
+   * @return The results of the requests in input or in completion order, depending on
+   *         {@link BatchOptions#isOrdered()}.
+   */
+  public <T> Flowable<BatchResult<T>> callEndpoints(Iterable<RestRequest> restRequests,
+      Optional<RestRequestEnhancer> requestEnhancer, TypeReference<T> returnType,
+      BatchOptions options) {
+    return callEndpoints(Flowable.fromIterable(restRequests), requestEnhancer, returnType,
+        options);
   }
 
-  private Optional<AsyncContentProvider> createHttpBody(Optional<?> requestBodyOpt) {
+  private <T> Single<T> callHttpEndpointWithEnhancedRequest(final RestRequest enhancedRestRequest,
+      BiFunction<RestRequest, HttpResponse, Single<T>> responseHandler, CallTrace trace) {
+
+    return encodeBody(enhancedRestRequest.getRequestBody(), trace)
+        .flatMap(httpBody -> this.httpClient.send(createHttpRequest(enhancedRestRequest, httpBody)))
+        .flatMap(httpResponse -> {
+          trace.markHeaders(httpResponse.getStatus());
+          return responseHandler.apply(enhancedRestRequest, httpResponse);
+        });
+  }
+
+  /**
+   * Creates the body of the HTTP request. The JSON of an object body is passed to the trace, so
+   * the {@link SlowCallSampler} does not have to convert the body again.
+   */
+  private Optional<AsyncContentProvider> createHttpBody(Optional<?> requestBodyOpt,
+      CallTrace trace) {
 
     if (!requestBodyOpt.isPresent()) {
       return Optional.empty();
     }
 
     Object requestBody = requestBodyOpt.get();
-    if (requestBody instanceof AsyncContentProvider) {
+    Optional<JSONArrayBody> streamedBody = RestClient.streamedBody(requestBody);
+    if (streamedBody.isPresent()) {
+      // Streamed bodies are serialized lazily, so they are not captured in the trace
+      return Optional.of(new JSONArrayAsyncContentProvider(streamedBody.get(), this.objectMapper));
+    } else if (requestBody instanceof AsyncContentProvider) {
       return Optional.of((AsyncContentProvider) requestBody);
     } else {
-      String json;
-      json = this.objectMapper.toJSON(requestBody);
-
-      byte[] jsonByteArray = json.getBytes(StandardCharsets.UTF_8);
+      byte[] jsonByteArray = this.objectMapper.toJSONBytes(requestBody);
+      trace.markRequestBody(jsonByteArray);
 
       return Optional.of(new ByteArrayAsyncContentProvider(jsonByteArray,
           Optional.of(MediaType.parse("application/json"))));
     }
   }
 
+  private HttpRequest createHttpRequest(RestRequest enhancedRestRequest,
+      Optional<AsyncContentProvider> httpBody) {
+
+    return HttpRequest.builder()
+        .url(enhancedRestRequest.buildURI())
+        .method(enhancedRestRequest.getMethod())
+        .headers(enhancedRestRequest.getHeaders())
+        .body(httpBody)
+        .build();
+  }
+
+  private CallTrace createTrace(RestRequest restRequest) {
+    if (!this.slowCallSampler.isPresent()) {
+      return CallTrace.DISABLED;
+    }
+    return new CallTrace(restRequest, System.nanoTime());
+  }
+
+  private List<Completable> createWarmUpSteps(WarmUpPlan plan, WarmUpPhase phase) {
+    List<Completable> steps = new ArrayList<>();
+    switch (phase) {
+      case AUTHENTICATION:
+        plan.getRequestEnhancer().ifPresent((requestEnhancer) -> {
+          for (String basePath : plan.getBasePaths()) {
+            steps.add(Single.defer(() -> requestEnhancer
+                .enhanceRestRequest(RestRequest.builder().basePath(basePath).build()))
+                .ignoreElement());
+          }
+        });
+        break;
+      case CODECS:
+        for (Type type : plan.getTypes()) {
+          steps.add(Completable.fromAction(() -> this.objectMapper.prepare(type)));
+        }
+        break;
+      case CONNECTIONS:
+        for (String basePath : plan.getBasePaths()) {
+          steps.add(callEndpointForStatus(
+              RestRequest.builder().basePath(basePath).method(HttpMethod.HEAD).build(),
+              Optional.empty()).ignoreElement());
+        }
+        break;
+      case REQUESTS:
+        for (Map.Entry<RestRequest, TypeReference<?>> syntheticRequest : plan
+            .getSyntheticRequests().entrySet()) {
+          for (int i = 0; i < plan.getSyntheticRequestRepetitions(); i++) {
+            steps.add(callEndpoint(syntheticRequest.getKey(), plan.getRequestEnhancer(),
+                syntheticRequest.getValue()).ignoreElement());
+          }
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unknown warm-up phase: " + phase);
+    }
+    return steps;
+  }
+
+  /**
+   * Converts the JSON in parallel if its root is an array, otherwise on a single thread. The
+   * conversion runs on the pool of the {@link ParallelArrayDecoder}, so neither the thread that
+   * received the body nor a thread of the decode scheduler waits for the pool.
+   */
+  private <T> Single<T> decodeArray(byte[] json, TypeReference<T> returnType,
+      TypeReference<Object> elementType) {
+    return this.parallelArrayDecoder.get()
+        .decodeAsync(new LazyJSONDocument(json, this.objectMapper), "", elementType)
+        .map((elements) -> {
+          if (!elements.isPresent()) {
+            return this.objectMapper.fromJSON(json, 0, json.length, returnType);
+          }
+          @SuppressWarnings("unchecked")
+          T result = (T) elements.get();
+          return result;
+        });
+  }
+
+  /**
+   * Converts the UTF-8 encoded body. The array is passed to the converters without copying it.
+   */
+  private <T> Single<T> decodeBody(byte[] json, TypeReference<T> returnType) {
+    if (LazyJSONDocument.class.equals(returnType.getType())) {
+      @SuppressWarnings("unchecked")
+      T document = (T) new LazyJSONDocument(json, this.objectMapper);
+      return Single.just(document);
+    }
+
+    Optional<TypeReference<Object>> elementType = parallelElementType(returnType, json.length);
+    if (elementType.isPresent()) {
+      return decodeArray(json, returnType, elementType.get());
+    }
+
+    if (!this.decodeScheduler.isPresent() || json.length < this.offloadThreshold) {
+      return Single.just(this.objectMapper.fromJSON(json, 0, json.length, returnType));
+    }
+
+    return Single.fromCallable(() -> this.objectMapper.fromJSON(json, 0, json.length, returnType))
+        .subscribeOn(this.decodeScheduler.get());
+  }
+
+  /**
+   * Converts the pooled body. The caller releases the body when the returned single terminates
+   * or it is disposed.
+   */
+  private <T> Single<T> decodePooledBody(CompositeBuffer buffer, TypeReference<T> returnType) {
+    Optional<TypeReference<Object>> elementType = parallelElementType(returnType, buffer.size());
+    if (elementType.isPresent()) {
+      return decodeArray(buffer.toByteArray(), returnType, elementType.get());
+    }
+    Single<T> decoded = Single.fromCallable(() -> {
+      if (LazyJSONDocument.class.equals(returnType.getType())) {
+        @SuppressWarnings("unchecked")
+        T document = (T) new LazyJSONDocument(buffer.toByteArray(), this.objectMapper);
+        return document;
+      }
+      return this.objectMapper.fromJSON(buffer.newInputStream(), returnType);
+    });
+    if (!this.decodeScheduler.isPresent() || buffer.size() < this.offloadThreshold) {
+      return decoded;
+    }
+    return decoded.subscribeOn(this.decodeScheduler.get());
+  }
+
+  /**
+   * Drains the body of the response and drops the chunks as they arrive, so the connection can be
+   * reused as soon as the response is complete. The response is closed when the body is drained,
+   * when reading fails or when the returned single is disposed.
+   *
+   * @return The status of the response.
+   */
+  private Single<Integer> discardBody(HttpResponse httpResponse) {
+    return Single.create((emitter) -> {
+      emitter.setCancellable(httpResponse::close);
+      int status = httpResponse.getStatus();
+      httpResponse.getBody()
+          .onContent((chunk, callback) -> callback.processed())
+          .onSuccess(() -> emitter.onSuccess(status))
+          .onError((error) -> emitter.tryOnError(error));
+    });
+  }
+
+  private <T> Single<T> dispatch(RestRequest restRequest, Single<T> call) {
+    if (!this.requestDispatcher.isPresent()) {
+      return call;
+    }
+    return this.requestDispatcher.get().dispatch(restRequest, call);
+  }
+
+  private Single<Optional<AsyncContentProvider>> encodeBody(Optional<?> requestBody,
+      CallTrace trace) {
+    if (!this.encodeScheduler.isPresent() || !requestBody.isPresent()
+        || requestBody.get() instanceof AsyncContentProvider
+        || RestClient.streamedBody(requestBody.get()).isPresent()) {
+      return Single.just(createHttpBody(requestBody, trace));
+    }
+
+    return Single.fromCallable(() -> createHttpBody(requestBody, trace))
+        .subscribeOn(this.encodeScheduler.get());
+  }
+
   private Single<RestRequest> enhanceRequest(RestRequest restRequest,
-      Optional<RestRequestEnhancer> requestEnhancer) {
+      Optional<RestRequestEnhancer> requestEnhancer, CallTrace trace) {
 
+    if (trace.isEnabled()) {
+      return Single.defer(() -> {
+        trace.markDispatched();
+        return enhanceRequest(restRequest, requestEnhancer, CallTrace.DISABLED);
+      }).doOnSuccess((enhancedRestRequest) -> trace.markEnhanced());
+    }
     if (requestEnhancer.isPresent()) {
       return requestEnhancer.get().enhanceRestRequest(restRequest);
     }
     return Single.just(restRequest);
   }
 
+  /**
+   * Checks whether the resource of the request exists. The body of the response is drained and
+   * dropped chunk by chunk. A 404 response is mapped to <code>false</code> without creating a
+   * {@link RestException}, other error codes are propagated as {@link RestException} with the
+   * error body.
+   *
+   * @param restRequest
+   *          The request that is used to call the endpoint. Normally a GET or HEAD request.
+   * @param requestEnhancer
+   *          If specified, it is used to enhance the rest request before sending it.
+   * @return <code>true</code> if the status of the response is below 400, <code>false</code> if it
+   *         is 404.
+   */
+  public Single<Boolean> exists(RestRequest restRequest,
+      Optional<RestRequestEnhancer> requestEnhancer) {
+
+    return runCall(restRequest, (deadlineRestRequest, trace) -> dispatch(deadlineRestRequest,
+        enhanceRequest(deadlineRestRequest, requestEnhancer, trace).flatMap(
+            (enhancedRestRequest) -> callHttpEndpointWithEnhancedRequest(enhancedRestRequest,
+                (request, httpResponse) -> {
+                  if (httpResponse.getStatus() == RestClient.HTTP_NOT_FOUND) {
+                    return discardBody(httpResponse).map((status) -> Boolean.FALSE);
+                  }
+                  return handleErrors(request, httpResponse)
+                      .flatMap(this::discardBody)
+                      .map((status) -> Boolean.TRUE);
+                }, trace))));
+  }
+
   public JSONObjectMapper getObjectMapper() {
     return this.objectMapper;
   }
+
+  private Single<HttpResponse> handleErrors(RestRequest enhancedRestRequest,
+      HttpResponse httpResponse) {
+
+    int status = httpResponse.getStatus();
+    if (status < RestClient.HTTP_LOWEST_ERROR_CODE) {
+      return Single.just(httpResponse);
+    }
+    return readErrorBody(httpResponse)
+        .map((content) -> {
+          Optional<?> requestBody = enhancedRestRequest.getRequestBody();
+          boolean streamed =
+              requestBody.isPresent() && RestClient.streamedBody(requestBody.get()).isPresent();
+          throw new RestException("Error sending request!",
+              enhancedRestRequest.getMethod(),
+              enhancedRestRequest.buildURI(),
+              streamed ? Optional.empty() : createHttpBody(requestBody, CallTrace.DISABLED),
+              status,
+              Optional.ofNullable("".equals(content) ? null : content),
+              null);
+        });
+  }
+
+  /**
+   * Returns the element type if the response should be converted by the
+   * {@link ParallelArrayDecoder}.
+   */
+  private Optional<TypeReference<Object>> parallelElementType(TypeReference<?> returnType,
+      long bodySize) {
+    if (!this.parallelArrayDecoder.isPresent()
+        || bodySize < this.parallelArrayDecoder.get().getThreshold()) {
+      return Optional.empty();
+    }
+    return RestClient.listElementType(returnType);
+  }
+
+  /**
+   * Reads the body of the response into a byte array, so the JSON does not have to be decoded into
+   * a String and encoded again before it is converted. The response is closed when the body is
+   * read, when reading fails or when the subscription is disposed, e.g. because the deadline of
+   * the request passed.
+   */
+  private Single<byte[]> readBodyAsBytes(HttpResponse httpResponse, CallTrace trace) {
+    Single<byte[]> body =
+        RestClientUtil.readBytes(httpResponse.getBody()).doFinally(httpResponse::close);
+    if (trace.isEnabled()) {
+      return body.doOnSuccess((content) -> trace.markBody(content));
+    }
+    return body;
+  }
+
+  /**
+   * Reads the body of the response as a String. The response is closed when the body is read or
+   * when the subscription is disposed.
+   */
+  private Single<String> readBodyAsString(HttpResponse httpResponse) {
+    return AsyncContentUtil.readString(
+        new AutoCloseAsyncContentProvider(httpResponse.getBody(), httpResponse),
+        StandardCharsets.UTF_8).doOnDispose(httpResponse::close);
+  }
+
+  private Single<String> readErrorBody(HttpResponse httpResponse) {
+    if (!this.bufferPool.isPresent()) {
+      return readBodyAsString(httpResponse);
+    }
+    AsyncContentProvider body =
+        new AutoCloseAsyncContentProvider(httpResponse.getBody(), httpResponse);
+    return this.bufferPool.get().aggregate(body).map((buffer) -> {
+      try {
+        return buffer.toString(StandardCharsets.UTF_8);
+      } finally {
+        buffer.release();
+      }
+    });
+  }
+
+  private Single<byte[]> readResponseBody(RestRequest restRequest,
+      Optional<RestRequestEnhancer> requestEnhancer, CallTrace trace) {
+
+    if (this.persistentResponseStore.isPresent() && restRequest.getMethod() == HttpMethod.GET) {
+      return dispatch(restRequest, readResponseBodyWithStore(restRequest, requestEnhancer,
+          this.persistentResponseStore.get(), trace));
+    }
+
+    Single<HttpResponse> response =
+        callEndpointAndHandleErrors(restRequest, requestEnhancer, trace);
+
+    return dispatch(restRequest,
+        response.flatMap((httpResponse) -> readBodyAsBytes(httpResponse, trace)));
+  }
+
+  private Single<byte[]> readResponseBodyWithStore(RestRequest restRequest,
+      Optional<RestRequestEnhancer> requestEnhancer, PersistentResponseStore store,
+      CallTrace trace) {
+
+    // The store is keyed by the enhanced request, so the responses that are fetched with the
+    // credentials of one user are not served to another user
+    return enhanceRequest(restRequest, requestEnhancer, trace).flatMap(enhancedRestRequest -> {
+      String key = RestClientUtil.canonicalKey(enhancedRestRequest);
+      return store.getAsync(key).flatMap(stored -> {
+        if (stored.isPresent() && stored.get().isFresh(this.clock.millis())) {
+          return Single.just(stored.get().getBody());
+        }
+
+        RestRequest request = enhancedRestRequest;
+        if (stored.isPresent() && stored.get().hasValidator()) {
+          Map<String, String> headers = new HashMap<>(enhancedRestRequest.getHeaders());
+          stored.get().getEtag().ifPresent(etag -> headers.put("If-None-Match", etag));
+          stored.get().getLastModified()
+              .ifPresent(lastModified -> headers.put("If-Modified-Since", lastModified));
+          request = RestRequest.builderFrom(enhancedRestRequest).headers(headers).build();
+        }
+
+        return callHttpEndpointWithEnhancedRequest(request, this::handleErrors, trace)
+            .flatMap(httpResponse -> readStoredResponseBody(httpResponse, key, stored, store,
+                trace));
+      });
+    });
+  }
+
+  private Single<byte[]> readStoredResponseBody(HttpResponse httpResponse, String key,
+      Optional<StoredResponse> stored, PersistentResponseStore store, CallTrace trace) {
+
+    long now = this.clock.millis();
+    Map<String, String> responseHeaders = httpResponse.getHeaders();
+    int status = httpResponse.getStatus();
+
+    // The response is fetched already, so the call does not fail if it cannot be stored
+    if (status == RestClient.HTTP_NOT_MODIFIED && stored.isPresent()) {
+      httpResponse.close();
+      StoredResponse revalidated =
+          stored.get().revalidated(now, store.computeExpiresAt(responseHeaders, now));
+      return store.putAsync(key, revalidated).onErrorComplete()
+          .andThen(Single.just(revalidated.getBody()));
+    }
+
+    return readBodyAsBytes(httpResponse, trace).flatMap(body -> {
+      Optional<StoredResponse> storedResponse = Optional.empty();
+      if (status == RestClient.HTTP_OK) {
+        storedResponse = store.createStoredResponse(responseHeaders, body, now);
+      }
+      return storedResponse.map(r -> store.putAsync(key, r).onErrorComplete())
+          .orElse(Completable.complete())
+          .andThen(Single.just(body));
+    });
+  }
+
+  /**
+   * Runs the call with the request that has the effective deadline (its own one or the default
+   * timeout from now), so the dispatcher and the enhancer see the deadline too. The enhancer can
+   * pass the remaining budget to its nested calls (e.g. fetching an access token) via
+   * {@link RestRequest#getDeadline()}. If the deadline passes before the call completes, the call
+   * is disposed, that closes the response if it arrived already, and the returned single fails
+   * with {@link RequestDeadlineExceededException}. If a {@link SlowCallSampler} is configured,
+   * the call gets a trace that the sampler receives when the call finishes.
+   */
+  private <T> Single<T> runCall(RestRequest restRequest,
+      BiFunction<RestRequest, CallTrace, Single<T>> call) {
+
+    return Single.defer(() -> {
+      Optional<Instant> deadline = restRequest.getDeadline();
+      if (!deadline.isPresent() && this.defaultTimeout.isPresent()) {
+        deadline = Optional.of(this.clock.instant().plus(this.defaultTimeout.get()));
+      }
+
+      Single<T> result;
+      CallTrace trace;
+      if (!deadline.isPresent()) {
+        trace = createTrace(restRequest);
+        result = call.apply(restRequest, trace);
+      } else {
+        Instant deadlineInstant = deadline.get();
+        Single<T> deadlineExceeded = Single.error(() -> new RequestDeadlineExceededException(
+            "The deadline of the request passed before the response was processed.",
+            deadlineInstant));
+        long remainingMillis =
+            Duration.between(this.clock.instant(), deadlineInstant).toMillis();
+        if (remainingMillis <= 0) {
+          return deadlineExceeded;
+        }
+
+        RestRequest deadlineRestRequest = restRequest.getDeadline().isPresent()
+            ? restRequest
+            : RestRequest.builderFrom(restRequest).deadline(deadline).build();
+        trace = createTrace(deadlineRestRequest);
+        result = call.apply(deadlineRestRequest, trace).timeout(remainingMillis,
+            TimeUnit.MILLISECONDS, this.timeoutScheduler, deadlineExceeded);
+      }
+
+      if (!trace.isEnabled()) {
+        return result;
+      }
+      SlowCallSampler sampler = this.slowCallSampler.get();
+      return result.doOnEvent(
+          (value, error) -> sampler.onCallFinished(trace, error));
+    });
+  }
+
+  /**
+   * Warms up the client before it gets real traffic, so the first calls do not pay for the TLS
+   * handshakes, the resolution of the types in the {@link JSONObjectMapper}, the first token fetch
+   * of the request enhancer and the JIT compilation of the pipeline. The phases of
+   * {@link WarmUpPhase} run one after the other, the steps of a phase run concurrently up to
+   * {@link WarmUpPlan#getMaxInFlight()}. A failing step does not abort the warm-up, its exception
+   * is emitted within the {@link WarmUpProgress}. Readiness probes can wait for the last progress
+   * (or for the completion of the flowable).
+   *
+   * @param plan
+   *          The known endpoints and types.
+   * @return The progress after each finished step.
+   */
+  public Flowable<WarmUpProgress> warmUp(WarmUpPlan plan) {
+    return Flowable.defer(() -> {
+      Map<WarmUpPhase, List<Completable>> stepsPerPhase = new EnumMap<>(WarmUpPhase.class);
+      int stepCount = 0;
+      for (WarmUpPhase phase : WarmUpPhase.values()) {
+        List<Completable> steps = createWarmUpSteps(plan, phase);
+        stepsPerPhase.put(phase, steps);
+        stepCount += steps.size();
+      }
+
+      int totalSteps = stepCount;
+      AtomicInteger completedSteps = new AtomicInteger();
+      AtomicInteger failedSteps = new AtomicInteger();
+      return Flowable.fromIterable(stepsPerPhase.entrySet())
+          .concatMap((phaseSteps) -> Flowable.fromIterable(phaseSteps.getValue())
+              .flatMap((step) -> step.toSingleDefault(Optional.<Throwable> empty())
+                  .onErrorReturn(Optional::of)
+                  .toFlowable(), plan.getMaxInFlight())
+              .map((error) -> new WarmUpProgress(phaseSteps.getKey(),
+                  completedSteps.incrementAndGet(),
+                  error.isPresent() ? failedSteps.incrementAndGet() : failedSteps.get(),
+                  totalSteps, error.orElse(null))));
+    });
+  }
 }
@@ -15,15 +15,56 @@
  */
 package org.everit.http.restclient;
 
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.everit.http.client.async.AsyncContentProvider;
+
+import io.reactivex.Single;
 
 /**
  * Helper functions to build a {@link RestRequest} and do a call.
  */
 public final class RestClientUtil {
 
+  private static final int DEFAULT_HTTP_PORT = 80;
+
+  private static final int DEFAULT_HTTPS_PORT = 443;
+
+  private static final int HEX_RADIX = 16;
+
+  private static final int UNSIGNED_BYTE_MASK = 0xFF;
+
+  /**
+   * Builds a key that identifies the resource of the request. Two requests have the same key if
+   * they have the same method, URL, query parameters and headers, independently from the order of
+   * the query parameters and headers.
+   */
+  static String canonicalKey(RestRequest restRequest) {
+    return restRequest.getMethod() + " " + restRequest.getBasePath() + '|'
+        + restRequest.buildPathWithPathParams() + '|'
+        + new TreeMap<>(restRequest.getQueryParams()) + '|'
+        + new TreeMap<>(restRequest.getHeaders());
+  }
+
+  /**
+   * Builds a file name from the hex encoded SHA-256 hash of the key, so any key can be stored in a
+   * file of a directory.
+   */
+  static String hashedFileName(String key, String fileExtension) {
+    return RestClientUtil.sha256Hex(key) + fileExtension;
+  }
+
   /**
    * Converts any kind of collection to a string collection. This is useful when the programmer does
    * not know the type that is in the instance in advance and it must be passed to query parameters.
@@ -42,6 +83,82 @@ public final class RestClientUtil {
     return result;
   }
 
+  /**
+   * Reduces the URI to its origin with a lower case scheme and host and an explicit port, e.g.
+   * <code>https://example.atlassian.net:443</code>. The scheme is <code>http</code> if it is not
+   * specified.
+   *
+   * @param uri
+   *          Any URI, e.g. the base path of a request.
+   * @return The origin of the URI.
+   */
+  public static URI origin(URI uri) {
+    String scheme = Objects.toString(uri.getScheme(), "http").toLowerCase(Locale.ROOT);
+    int port = uri.getPort();
+    if (port < 0) {
+      port = "https".equals(scheme) ? RestClientUtil.DEFAULT_HTTPS_PORT
+          : RestClientUtil.DEFAULT_HTTP_PORT;
+    }
+    try {
+      return new URI(scheme, null, Objects.toString(uri.getHost(), "").toLowerCase(Locale.ROOT),
+          port, null, null, null);
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  /**
+   * Reads the content completely into a byte array.
+   */
+  static Single<byte[]> readBytes(AsyncContentProvider content) {
+    return Single.create((emitter) -> {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      content
+          .onContent((chunk, callback) -> {
+            if (chunk.hasArray()) {
+              bytes.write(chunk.array(), chunk.arrayOffset() + chunk.position(),
+                  chunk.remaining());
+            } else {
+              byte[] chunkBytes = new byte[chunk.remaining()];
+              chunk.get(chunkBytes);
+              bytes.write(chunkBytes, 0, chunkBytes.length);
+            }
+            callback.processed();
+          })
+          .onSuccess(() -> emitter.onSuccess(bytes.toByteArray()))
+          .onError((error) -> emitter.tryOnError(error));
+    });
+  }
+
+  /**
+   * Returns the hex encoded SHA-256 hash of the value.
+   */
+  static String sha256Hex(String value) {
+    return RestClientUtil.sha256Hex(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the hex encoded SHA-256 hash of the bytes.
+   */
+  static String sha256Hex(byte[] bytes) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest(bytes)) {
+      String hex =
+          Integer.toString(b & RestClientUtil.UNSIGNED_BYTE_MASK, RestClientUtil.HEX_RADIX);
+      if (hex.length() == 1) {
+        sb.append('0');
+      }
+      sb.append(hex);
+    }
+    return sb.toString();
+  }
+
   private RestClientUtil() {
   }
 }
@@ -17,11 +17,15 @@ package org.everit.http.restclient;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 
 import javax.annotation.Generated;
@@ -42,6 +46,8 @@ public final class RestRequest {
   public static final class Builder {
     private String basePath;
 
+    private Optional<Instant> deadline = Optional.empty();
+
     private Map<String, String> headers = Collections.emptyMap();
 
     private HttpMethod method = HttpMethod.GET;
@@ -50,21 +56,28 @@ public final class RestRequest {
 
     private Map<String, String> pathParams = Collections.emptyMap();
 
+    private RequestPriority priority = RequestPriority.NORMAL;
+
     private Map<String, Collection<String>> queryParams = Collections.emptyMap();
 
     private Optional<?> requestBody = Optional.empty();
 
+    private Optional<String> tenantId = Optional.empty();
+
     private Builder() {
     }
 
     private Builder(RestRequest restRequest) {
       this.basePath = restRequest.basePath;
+      this.deadline = restRequest.deadline;
       this.headers = restRequest.headers;
       this.method = restRequest.method;
       this.path = restRequest.path;
       this.pathParams = restRequest.pathParams;
+      this.priority = restRequest.priority;
       this.queryParams = restRequest.queryParams;
       this.requestBody = restRequest.requestBody;
+      this.tenantId = restRequest.tenantId;
     }
 
     /**
@@ -82,6 +95,16 @@ public final class RestRequest {
       return new RestRequest(this);
     }
 
+    /**
+     * The point in time after which the request is not worth sending anymore. Requests whose
+     * deadline has passed are failed with {@link RequestDeadlineExceededException} instead of
+     * being sent.
+     */
+    public Builder deadline(Optional<Instant> deadline) {
+      this.deadline = Objects.requireNonNull(deadline);
+      return this;
+    }
+
     /**
      * The headers of the rest request.
      */
@@ -114,6 +137,15 @@ public final class RestRequest {
       return this;
     }
 
+    /**
+     * The priority class of the request that is used by the {@link RequestDispatcher} of the
+     * {@link RestClient}. Default: {@link RequestPriority#NORMAL}
+     */
+    public Builder priority(RequestPriority priority) {
+      this.priority = Objects.requireNonNull(priority);
+      return this;
+    }
+
     /**
      * Query parameters that will be appended after the path.
      */
@@ -131,6 +163,15 @@ public final class RestRequest {
       this.requestBody = requestBody;
       return this;
     }
+
+    /**
+     * Identifies the tenant (e.g. the customer site) that the request belongs to. Dispatchers that
+     * queue the requests per tenant use the base path if no tenant id is specified.
+     */
+    public Builder tenantId(Optional<String> tenantId) {
+      this.tenantId = Objects.requireNonNull(tenantId);
+      return this;
+    }
   }
 
   /**
@@ -157,6 +198,8 @@ public final class RestRequest {
 
   private final String basePath;
 
+  private final Optional<Instant> deadline;
+
   private final Map<String, String> headers;
 
   private final HttpMethod method;
@@ -165,19 +208,26 @@ public final class RestRequest {
 
   private final Map<String, String> pathParams;
 
+  private final RequestPriority priority;
+
   private final Map<String, Collection<String>> queryParams;
 
   private final Optional<?> requestBody;
 
+  private final Optional<String> tenantId;
+
   @Generated("SparkTools")
   private RestRequest(Builder builder) {
     this.basePath = builder.basePath;
+    this.deadline = builder.deadline;
     this.headers = Collections.unmodifiableMap(new HashMap<>(builder.headers));
     this.method = builder.method;
     this.path = builder.path;
     this.pathParams = Collections.unmodifiableMap(new HashMap<>(builder.pathParams));
+    this.priority = builder.priority;
     this.queryParams = Collections.unmodifiableMap(new HashMap<>(builder.queryParams));
     this.requestBody = builder.requestBody;
+    this.tenantId = builder.tenantId;
   }
 
   /**
@@ -237,6 +287,13 @@ public final class RestRequest {
     return this.basePath;
   }
 
+  /**
+   * The point in time after which the request is not worth sending anymore.
+   */
+  public Optional<Instant> getDeadline() {
+    return this.deadline;
+  }
+
   /**
    * The headers of the rest request.
    */
@@ -265,6 +322,13 @@ public final class RestRequest {
     return this.pathParams;
   }
 
+  /**
+   * The priority class of the request.
+   */
+  public RequestPriority getPriority() {
+    return this.priority;
+  }
+
   /**
    * Query parameters that will be appended after the path.
    */
@@ -272,6 +336,22 @@ public final class RestRequest {
     return this.queryParams;
   }
 
+  /**
+   * The time that is left until the deadline of the request or zero if the deadline passed
+   * already. Nested calls, like fetching an access token in a {@link RestRequestEnhancer}, should
+   * not wait longer than this.
+   *
+   * @param clock
+   *          The clock that is used to get the current time.
+   * @return The remaining time or empty if the request does not have a deadline.
+   */
+  public Optional<Duration> getRemainingTime(Clock clock) {
+    return this.deadline.map((deadlineInstant) -> {
+      Duration remaining = Duration.between(clock.instant(), deadlineInstant);
+      return remaining.isNegative() ? Duration.ZERO : remaining;
+    });
+  }
+
   /**
    * Optional body of the request. If the object is an implementation of
    * {@link AsyncContentProvider} it is be used as is, otherwise Jackson is used to convert the
@@ -281,4 +361,11 @@ public final class RestRequest {
     return this.requestBody;
   }
 
+  /**
+   * Identifies the tenant (e.g. the customer site) that the request belongs to.
+   */
+  public Optional<String> getTenantId() {
+    return this.tenantId;
+  }
+
 }
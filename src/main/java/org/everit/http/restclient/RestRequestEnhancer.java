@@ -21,6 +21,11 @@ import io.reactivex.Single;
  * Programmers can pass an optional {@link RestRequestEnhancer} to any of the callEndpoint functions
  * of {@link RestClient} that will modify the original request by creating a new one. This can be
  * useful for example if we want to add authorization headers to the request on the fly.
+ *
+ * <p>
+ * The request that is passed to the enhancer has the effective deadline of the call. Nested calls
+ * of the enhancer (e.g. refreshing an access token) should be sent with the same deadline, so they
+ * do not use more time than the budget of the call.
  */
 public interface RestRequestEnhancer {
 
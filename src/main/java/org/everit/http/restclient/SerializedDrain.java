@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the drain step of a {@link RequestDispatcher} on one thread at a time. If a drain is
+ * requested while another thread is draining, that thread runs the step again instead, so no
+ * request is lost and calls that complete synchronously do not cause deep recursion.
+ */
+final class SerializedDrain {
+
+  private final BooleanSupplier step;
+
+  private final AtomicInteger wip = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param step
+   *          Does one round of the drain and returns whether it should be repeated right away, e.g.
+   *          because it started a call and there can be more to start.
+   */
+  SerializedDrain(BooleanSupplier step) {
+    this.step = step;
+  }
+
+  void run() {
+    if (this.wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      while (this.step.getAsBoolean()) {
+        // Repeat while the step starts calls
+      }
+      missed = this.wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.everit.http.client.HttpMethod;
+
+/**
+ * A call that was recorded by {@link SlowCallSampler} as its latency exceeded the threshold. The
+ * durations of the phases are in nanoseconds and they are {@value #NOT_REACHED} if the call did
+ * not reach the end of the phase (e.g. it failed before the headers of the response arrived or the
+ * body was not read).
+ */
+public final class SlowCall {
+
+  /**
+   * Builder to build {@link SlowCall}.
+   */
+  static final class Builder {
+
+    private long bodyReadNanos = SlowCall.NOT_REACHED;
+
+    private long decodeNanos = SlowCall.NOT_REACHED;
+
+    private long enhanceNanos = SlowCall.NOT_REACHED;
+
+    private Optional<String> error = Optional.empty();
+
+    private HttpMethod method;
+
+    private String normalizedPath;
+
+    private long queueNanos = SlowCall.NOT_REACHED;
+
+    private long requestSize = SlowCall.NOT_REACHED;
+
+    private Optional<String> requestSnippet = Optional.empty();
+
+    private long responseSize = SlowCall.NOT_REACHED;
+
+    private Optional<String> responseSnippet = Optional.empty();
+
+    private long sequence;
+
+    private Instant startTime;
+
+    private int status;
+
+    private long thresholdNanos;
+
+    private long timeToHeadersNanos = SlowCall.NOT_REACHED;
+
+    private long totalNanos;
+
+    private Builder() {
+    }
+
+    Builder bodyReadNanos(long bodyReadNanos) {
+      this.bodyReadNanos = bodyReadNanos;
+      return this;
+    }
+
+    SlowCall build() {
+      return new SlowCall(this);
+    }
+
+    Builder decodeNanos(long decodeNanos) {
+      this.decodeNanos = decodeNanos;
+      return this;
+    }
+
+    Builder enhanceNanos(long enhanceNanos) {
+      this.enhanceNanos = enhanceNanos;
+      return this;
+    }
+
+    Builder error(Optional<String> error) {
+      this.error = error;
+      return this;
+    }
+
+    Builder method(HttpMethod method) {
+      this.method = method;
+      return this;
+    }
+
+    Builder normalizedPath(String normalizedPath) {
+      this.normalizedPath = normalizedPath;
+      return this;
+    }
+
+    Builder queueNanos(long queueNanos) {
+      this.queueNanos = queueNanos;
+      return this;
+    }
+
+    Builder requestSize(long requestSize) {
+      this.requestSize = requestSize;
+      return this;
+    }
+
+    Builder requestSnippet(Optional<String> requestSnippet) {
+      this.requestSnippet = requestSnippet;
+      return this;
+    }
+
+    Builder responseSize(long responseSize) {
+      this.responseSize = responseSize;
+      return this;
+    }
+
+    Builder responseSnippet(Optional<String> responseSnippet) {
+      this.responseSnippet = responseSnippet;
+      return this;
+    }
+
+    Builder sequence(long sequence) {
+      this.sequence = sequence;
+      return this;
+    }
+
+    Builder startTime(Instant startTime) {
+      this.startTime = startTime;
+      return this;
+    }
+
+    Builder status(int status) {
+      this.status = status;
+      return this;
+    }
+
+    Builder thresholdNanos(long thresholdNanos) {
+      this.thresholdNanos = thresholdNanos;
+      return this;
+    }
+
+    Builder timeToHeadersNanos(long timeToHeadersNanos) {
+      this.timeToHeadersNanos = timeToHeadersNanos;
+      return this;
+    }
+
+    Builder totalNanos(long totalNanos) {
+      this.totalNanos = totalNanos;
+      return this;
+    }
+  }
+
+  /**
+   * The value of the durations and sizes that are not known.
+   */
+  public static final long NOT_REACHED = -1;
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  private final long bodyReadNanos;
+
+  private final long decodeNanos;
+
+  private final long enhanceNanos;
+
+  private final Optional<String> error;
+
+  private final HttpMethod method;
+
+  private final String normalizedPath;
+
+  private final long queueNanos;
+
+  private final long requestSize;
+
+  private final Optional<String> requestSnippet;
+
+  private final long responseSize;
+
+  private final Optional<String> responseSnippet;
+
+  private final long sequence;
+
+  private final Instant startTime;
+
+  private final int status;
+
+  private final long thresholdNanos;
+
+  private final long timeToHeadersNanos;
+
+  private final long totalNanos;
+
+  private SlowCall(Builder builder) {
+    this.bodyReadNanos = builder.bodyReadNanos;
+    this.decodeNanos = builder.decodeNanos;
+    this.enhanceNanos = builder.enhanceNanos;
+    this.error = builder.error;
+    this.method = builder.method;
+    this.normalizedPath = builder.normalizedPath;
+    this.queueNanos = builder.queueNanos;
+    this.requestSize = builder.requestSize;
+    this.requestSnippet = builder.requestSnippet;
+    this.responseSize = builder.responseSize;
+    this.responseSnippet = builder.responseSnippet;
+    this.sequence = builder.sequence;
+    this.startTime = builder.startTime;
+    this.status = builder.status;
+    this.thresholdNanos = builder.thresholdNanos;
+    this.timeToHeadersNanos = builder.timeToHeadersNanos;
+    this.totalNanos = builder.totalNanos;
+  }
+
+  /**
+   * The time between the arrival of the headers and reading the whole response body.
+   */
+  public long getBodyReadNanos() {
+    return this.bodyReadNanos;
+  }
+
+  /**
+   * The time of converting the response body to the return type.
+   */
+  public long getDecodeNanos() {
+    return this.decodeNanos;
+  }
+
+  /**
+   * The time that the {@link RestRequestEnhancer} took.
+   */
+  public long getEnhanceNanos() {
+    return this.enhanceNanos;
+  }
+
+  /**
+   * The class and the message of the exception if the call failed.
+   */
+  public Optional<String> getError() {
+    return this.error;
+  }
+
+  public HttpMethod getMethod() {
+    return this.method;
+  }
+
+  /**
+   * The path of the request that is the same for the calls of the same endpoint, so the slow calls
+   * can be grouped by it. The path parameters stay placeholders (e.g.
+   * <code>/rest/api/2/issue/{issueIdOrKey}</code>) and the segments that look like identifiers
+   * (issue keys like <code>ABC-123</code>, numbers with at least two digits and UUIDs) are
+   * replaced by <code>{id}</code>, e.g. <code>/rest/api/2/issue/{id}/comment</code>.
+   */
+  public String getNormalizedPath() {
+    return this.normalizedPath;
+  }
+
+  /**
+   * The time that the call waited in the {@link RequestDispatcher} before it started.
+   */
+  public long getQueueNanos() {
+    return this.queueNanos;
+  }
+
+  /**
+   * The length of the JSON request body in bytes or {@value #NOT_REACHED} if there was no body or
+   * it was passed as an {@link org.everit.http.client.async.AsyncContentProvider}.
+   */
+  public long getRequestSize() {
+    return this.requestSize;
+  }
+
+  /**
+   * The beginning of the JSON request body.
+   */
+  public Optional<String> getRequestSnippet() {
+    return this.requestSnippet;
+  }
+
+  /**
+   * The length of the response body in bytes or {@value #NOT_REACHED} if it was not read.
+   */
+  public long getResponseSize() {
+    return this.responseSize;
+  }
+
+  /**
+   * The beginning of the response body or the error body.
+   */
+  public Optional<String> getResponseSnippet() {
+    return this.responseSnippet;
+  }
+
+  /**
+   * The increasing number of the sampled call within the sampler.
+   */
+  public long getSequence() {
+    return this.sequence;
+  }
+
+  public Instant getStartTime() {
+    return this.startTime;
+  }
+
+  /**
+   * The status of the response or zero if no response arrived.
+   */
+  public int getStatus() {
+    return this.status;
+  }
+
+  /**
+   * The latency threshold that the call exceeded.
+   */
+  public long getThresholdNanos() {
+    return this.thresholdNanos;
+  }
+
+  /**
+   * The time between the end of the enhancement and the arrival of the response headers,
+   * including the encoding of the request body and the acquisition of the connection.
+   */
+  public long getTimeToHeadersNanos() {
+    return this.timeToHeadersNanos;
+  }
+
+  /**
+   * The time between subscribing to the call and its completion.
+   */
+  public long getTotalNanos() {
+    return this.totalNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "SlowCall [sequence=" + this.sequence + ", startTime=" + this.startTime + ", method="
+        + this.method + ", normalizedPath=" + this.normalizedPath + ", status=" + this.status
+        + ", totalNanos=" + this.totalNanos + ", thresholdNanos=" + this.thresholdNanos
+        + ", queueNanos=" + this.queueNanos + ", enhanceNanos=" + this.enhanceNanos
+        + ", timeToHeadersNanos=" + this.timeToHeadersNanos + ", bodyReadNanos="
+        + this.bodyReadNanos + ", decodeNanos=" + this.decodeNanos + ", requestSize="
+        + this.requestSize + ", responseSize=" + this.responseSize + ", error=" + this.error
+        + ", requestSnippet=" + this.requestSnippet + ", responseSnippet="
+        + this.responseSnippet + "]";
+  }
+}
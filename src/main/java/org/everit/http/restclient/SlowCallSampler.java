@@ -0,0 +1,308 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+
+/**
+ * Records the calls of a {@link RestClient} whose latency exceeds a dynamic threshold into a
+ * fixed-size ring buffer that can be dumped on demand with {@link #getSlowCalls()}. The threshold
+ * is the exponentially weighted moving average of the latencies plus a multiple of their average
+ * deviation, but at least the minimum threshold. The buffer is lock-free; when it is full, the
+ * oldest calls are overwritten.
+ *
+ * <p>
+ * The sampler is designed to be always on. A call that is not sampled costs a small trace object
+ * with the timestamps of its phases and a few atomic updates of the statistics. The snippets and
+ * the sizes of the bodies are computed only for the sampled calls.
+ */
+public final class SlowCallSampler {
+
+  /**
+   * Builder class for {@link SlowCallSampler}.
+   */
+  public static final class Builder {
+
+    private int capacity = DEFAULT_CAPACITY;
+
+    private Clock clock = Clock.systemUTC();
+
+    private Duration minThreshold = DEFAULT_MIN_THRESHOLD;
+
+    private int snippetLength = DEFAULT_SNIPPET_LENGTH;
+
+    private double thresholdMultiplier = DEFAULT_THRESHOLD_MULTIPLIER;
+
+    private Builder() {
+    }
+
+    public SlowCallSampler build() {
+      return new SlowCallSampler(this);
+    }
+
+    /**
+     * The number of slow calls that are kept. It must be a power of two. Default: 128.
+     */
+    public Builder capacity(int capacity) {
+      if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+        throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * The clock that is used to compute the start time of the sampled calls. Default:
+     * {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * Calls that are faster than this are never sampled, even if the average latency is much lower.
+     * Default: 200 milliseconds.
+     */
+    public Builder minThreshold(Duration minThreshold) {
+      if (minThreshold.isNegative()) {
+        throw new IllegalArgumentException("minThreshold must not be negative: " + minThreshold);
+      }
+      this.minThreshold = minThreshold;
+      return this;
+    }
+
+    /**
+     * The maximum number of characters of the request and response snippets. Default: 512.
+     */
+    public Builder snippetLength(int snippetLength) {
+      if (snippetLength < 0) {
+        throw new IllegalArgumentException("snippetLength must not be negative: "
+            + snippetLength);
+      }
+      this.snippetLength = snippetLength;
+      return this;
+    }
+
+    /**
+     * The multiple of the average deviation that a call must exceed the average latency with to
+     * be sampled. Default: 4.
+     */
+    public Builder thresholdMultiplier(double thresholdMultiplier) {
+      if (thresholdMultiplier < 0) {
+        throw new IllegalArgumentException("thresholdMultiplier must not be negative: "
+            + thresholdMultiplier);
+      }
+      this.thresholdMultiplier = thresholdMultiplier;
+      return this;
+    }
+  }
+
+  private static final int DEFAULT_CAPACITY = 128;
+
+  private static final Duration DEFAULT_MIN_THRESHOLD = Duration.ofMillis(200);
+
+  private static final int DEFAULT_SNIPPET_LENGTH = 512;
+
+  private static final double DEFAULT_THRESHOLD_MULTIPLIER = 4;
+
+  /**
+   * The weight of a new latency in the moving averages is 1/2^EWMA_SHIFT.
+   */
+  private static final int EWMA_SHIFT = 4;
+
+  /**
+   * Issue keys (e.g. ABC-123), numbers with at least two digits and UUIDs.
+   */
+  private static final Pattern ID_SEGMENT_PATTERN = Pattern.compile("[A-Za-z][A-Za-z0-9_]*-\\d+"
+      + "|\\d{2,}|\\p{XDigit}{8}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{4}-\\p{XDigit}{12}");
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static long elapsed(long fromNanos, long toNanos) {
+    if (fromNanos == CallTrace.NOT_REACHED || toNanos == CallTrace.NOT_REACHED) {
+      return SlowCall.NOT_REACHED;
+    }
+    return toNanos - fromNanos;
+  }
+
+  /**
+   * Replaces the segments of the path that look like identifiers with <code>{id}</code>.
+   */
+  static String normalizePath(String path) {
+    String[] segments = path.split("/", -1);
+    for (int i = 0; i < segments.length; i++) {
+      if (SlowCallSampler.ID_SEGMENT_PATTERN.matcher(segments[i]).matches()) {
+        segments[i] = "{id}";
+      }
+    }
+    return String.join("/", segments);
+  }
+
+  private static void updateAverage(AtomicLong average, long sample) {
+    long current;
+    long next;
+    do {
+      current = average.get();
+      next = current + ((sample - current) >> SlowCallSampler.EWMA_SHIFT);
+    } while (!average.compareAndSet(current, next));
+  }
+
+  private final Clock clock;
+
+  private final AtomicLong deviationNanos = new AtomicLong();
+
+  private final int mask;
+
+  private final AtomicLong meanNanos = new AtomicLong();
+
+  private final long minThresholdNanos;
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final AtomicReferenceArray<SlowCall> slots;
+
+  private final int snippetLength;
+
+  private final double thresholdMultiplier;
+
+  private SlowCallSampler(Builder builder) {
+    this.clock = builder.clock;
+    this.mask = builder.capacity - 1;
+    this.minThresholdNanos = builder.minThreshold.toNanos();
+    this.slots = new AtomicReferenceArray<>(builder.capacity);
+    this.snippetLength = builder.snippetLength;
+    this.thresholdMultiplier = builder.thresholdMultiplier;
+  }
+
+  /**
+   * The number of calls that were sampled since the sampler was created, including the ones that
+   * were overwritten in the buffer already.
+   */
+  public long getSampledCallCount() {
+    return this.sequence.get();
+  }
+
+  /**
+   * A snapshot of the sampled calls that are in the buffer, ordered by their sequence.
+   */
+  public List<SlowCall> getSlowCalls() {
+    List<SlowCall> result = new ArrayList<>(this.slots.length());
+    for (int i = 0, n = this.slots.length(); i < n; i++) {
+      SlowCall slowCall = this.slots.get(i);
+      if (slowCall != null) {
+        result.add(slowCall);
+      }
+    }
+    result.sort(Comparator.comparingLong(SlowCall::getSequence));
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * The current latency threshold above which the calls are sampled.
+   */
+  public Duration getThreshold() {
+    return Duration.ofNanos(getThresholdNanos());
+  }
+
+  private long getThresholdNanos() {
+    long dynamicThresholdNanos = this.meanNanos.get()
+        + (long) (this.deviationNanos.get() * this.thresholdMultiplier);
+    return Math.max(this.minThresholdNanos, dynamicThresholdNanos);
+  }
+
+  /**
+   * Updates the statistics with the latency of the finished call and records the call if it was
+   * slower than the threshold.
+   *
+   * @param trace
+   *          The trace of the call.
+   * @param error
+   *          The exception of the call or <code>null</code> if the call succeeded.
+   */
+  void onCallFinished(CallTrace trace, Throwable error) {
+    long endNanos = System.nanoTime();
+    long totalNanos = endNanos - trace.startNanos;
+    long thresholdNanos = getThresholdNanos();
+
+    long meanBefore = this.meanNanos.get();
+    SlowCallSampler.updateAverage(this.meanNanos, totalNanos);
+    SlowCallSampler.updateAverage(this.deviationNanos, Math.abs(totalNanos - meanBefore));
+
+    if (totalNanos < thresholdNanos) {
+      return;
+    }
+
+    long callSequence = this.sequence.getAndIncrement();
+    RestRequest restRequest = trace.restRequest;
+    SlowCall.Builder builder = SlowCall.builder()
+        .sequence(callSequence)
+        .startTime(this.clock.instant().minusNanos(totalNanos))
+        .method(restRequest.getMethod())
+        .normalizedPath(SlowCallSampler.normalizePath(Objects.toString(restRequest.getPath(), "")))
+        .status(trace.status)
+        .totalNanos(totalNanos)
+        .thresholdNanos(thresholdNanos)
+        .queueNanos(SlowCallSampler.elapsed(trace.startNanos, trace.dispatchedNanos))
+        .enhanceNanos(SlowCallSampler.elapsed(trace.dispatchedNanos, trace.enhancedNanos))
+        .timeToHeadersNanos(SlowCallSampler.elapsed(trace.enhancedNanos, trace.headersNanos))
+        .bodyReadNanos(SlowCallSampler.elapsed(trace.headersNanos, trace.bodyNanos))
+        .decodeNanos(SlowCallSampler.elapsed(trace.bodyNanos, endNanos));
+
+    if (trace.requestBody != null) {
+      builder.requestSize(trace.requestBody.length)
+          .requestSnippet(Optional.of(snippet(trace.requestBody)));
+    }
+
+    if (trace.responseBody != null) {
+      builder.responseSize(trace.responseBody.length)
+          .responseSnippet(Optional.of(snippet(trace.responseBody)));
+    } else {
+      builder.responseSize(trace.responseSize);
+    }
+
+    if (error != null) {
+      builder.error(Optional.of(error.getClass().getName() + ": " + error.getMessage()));
+      if (error instanceof RestException) {
+        builder.responseSnippet(((RestException) error).getResponseBody().map(this::snippet));
+      }
+    }
+
+    this.slots.set((int) (callSequence & this.mask), builder.build());
+  }
+
+  private String snippet(byte[] utf8) {
+    return new String(utf8, 0, Math.min(utf8.length, this.snippetLength), StandardCharsets.UTF_8);
+  }
+
+  private String snippet(String text) {
+    return text.length() <= this.snippetLength ? text : text.substring(0, this.snippetLength);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A response body with its validators that is stored in a {@link PersistentResponseStore}.
+ */
+public final class StoredResponse {
+
+  private final byte[] body;
+
+  private final Optional<String> etag;
+
+  private final long expiresAtMillis;
+
+  private final Optional<String> lastModified;
+
+  private final long storedAtMillis;
+
+  /**
+   * Constructor.
+   *
+   * @param body
+   *          The UTF-8 encoded body of the response.
+   * @param etag
+   *          The value of the ETag header of the response if there was one.
+   * @param lastModified
+   *          The value of the Last-Modified header of the response if there was one.
+   * @param storedAtMillis
+   *          The time when the response was received or revalidated in epoch milliseconds.
+   * @param expiresAtMillis
+   *          The time until the response can be used without revalidation in epoch milliseconds.
+   */
+  public StoredResponse(byte[] body, Optional<String> etag, Optional<String> lastModified,
+      long storedAtMillis, long expiresAtMillis) {
+    this.body = Objects.requireNonNull(body);
+    this.etag = Objects.requireNonNull(etag);
+    this.lastModified = Objects.requireNonNull(lastModified);
+    this.storedAtMillis = storedAtMillis;
+    this.expiresAtMillis = expiresAtMillis;
+  }
+
+  /**
+   * The UTF-8 encoded body of the response. The returned array must not be modified.
+   */
+  public byte[] getBody() {
+    return this.body;
+  }
+
+  /**
+   * The body of the response decoded as UTF-8 String.
+   */
+  public String getBodyAsString() {
+    return new String(this.body, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The value of the ETag header of the response if there was one.
+   */
+  public Optional<String> getEtag() {
+    return this.etag;
+  }
+
+  /**
+   * The time until the response can be used without revalidation in epoch milliseconds.
+   */
+  public long getExpiresAtMillis() {
+    return this.expiresAtMillis;
+  }
+
+  /**
+   * The value of the Last-Modified header of the response if there was one.
+   */
+  public Optional<String> getLastModified() {
+    return this.lastModified;
+  }
+
+  /**
+   * The time when the response was received or revalidated in epoch milliseconds.
+   */
+  public long getStoredAtMillis() {
+    return this.storedAtMillis;
+  }
+
+  /**
+   * Whether the response has a validator that can be used in a conditional request.
+   */
+  public boolean hasValidator() {
+    return this.etag.isPresent() || this.lastModified.isPresent();
+  }
+
+  /**
+   * Whether the response can be used without revalidation at the given time.
+   */
+  public boolean isFresh(long nowMillis) {
+    return nowMillis < this.expiresAtMillis;
+  }
+
+  /**
+   * Creates a copy of this response with new timestamps after a successful revalidation.
+   */
+  public StoredResponse revalidated(long storedAtMillis, long expiresAtMillis) {
+    return new StoredResponse(this.body, this.etag, this.lastModified, storedAtMillis,
+        expiresAtMillis);
+  }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * {@link HttpClient} that spreads the requests across independent {@link HttpClient} instances
+ * (stripes), so the connection pools and selectors of a single client do not become a contention
+ * point. The requests of a host are assigned to a few stripes based on the hash of the host and
+ * the stripe with the least outstanding requests is chosen among them. Stripes can be replaced at
+ * runtime: the replaced stripe gets no new requests and it is closed when its outstanding requests
+ * are finished and the drain period has passed.
+ *
+ * <p>
+ * A request is outstanding from sending it until the response headers arrive. The drain period
+ * gives the callers time to read the bodies of the responses of a replaced stripe.
+ */
+public final class StripedHttpClient implements HttpClient {
+
+  /**
+   * Builder class for {@link StripedHttpClient}.
+   */
+  public static final class Builder {
+
+    private Duration drainPeriod = DEFAULT_DRAIN_PERIOD;
+
+    private Supplier<HttpClient> httpClientFactory;
+
+    private Scheduler scheduler = Schedulers.computation();
+
+    private int stripeCount = Math.max(1,
+        Runtime.getRuntime().availableProcessors() / DEFAULT_CORES_PER_STRIPE);
+
+    private int stripesPerHost = DEFAULT_STRIPES_PER_HOST;
+
+    private Builder() {
+    }
+
+    /**
+     * Creates the stripes with the factory.
+     */
+    public StripedHttpClient build() {
+      Objects.requireNonNull(this.httpClientFactory, "httpClientFactory must be specified");
+      return new StripedHttpClient(this);
+    }
+
+    /**
+     * The minimum time between replacing a stripe and closing it. Default: 30 seconds.
+     */
+    public Builder drainPeriod(Duration drainPeriod) {
+      if (drainPeriod.isNegative()) {
+        throw new IllegalArgumentException("drainPeriod must not be negative: " + drainPeriod);
+      }
+      this.drainPeriod = drainPeriod;
+      return this;
+    }
+
+    /**
+     * Creates the clients of the stripes. It is called once per stripe when the striped client is
+     * built and every time a stripe is replaced.
+     */
+    public Builder httpClientFactory(Supplier<HttpClient> httpClientFactory) {
+      this.httpClientFactory = Objects.requireNonNull(httpClientFactory);
+      return this;
+    }
+
+    /**
+     * The scheduler that closes the replaced stripes after the drain period. Default:
+     * {@link Schedulers#computation()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+
+    /**
+     * The number of stripes. Default: one stripe per four available processors, at least one.
+     */
+    public Builder stripeCount(int stripeCount) {
+      if (stripeCount < 1) {
+        throw new IllegalArgumentException("stripeCount must be positive: " + stripeCount);
+      }
+      this.stripeCount = stripeCount;
+      return this;
+    }
+
+    /**
+     * The number of stripes that the requests of the same host are spread across. A higher value
+     * balances the load better, a lower value keeps the connections of a host on fewer stripes.
+     * Default: 2.
+     */
+    public Builder stripesPerHost(int stripesPerHost) {
+      if (stripesPerHost < 1) {
+        throw new IllegalArgumentException("stripesPerHost must be positive: " + stripesPerHost);
+      }
+      this.stripesPerHost = stripesPerHost;
+      return this;
+    }
+  }
+
+  /**
+   * One client with the number of its outstanding requests. The count is {@link #CLOSED} after the
+   * stripe is closed, so no request can be sent on it anymore.
+   */
+  private static final class Stripe {
+
+    private static final int CLOSED = -1;
+
+    private final AtomicBoolean closeWhenIdle = new AtomicBoolean(false);
+
+    private final HttpClient httpClient;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    Stripe(HttpClient httpClient) {
+      this.httpClient = Objects.requireNonNull(httpClient, "httpClientFactory returned null");
+    }
+
+    /**
+     * Closes the client if no request is outstanding.
+     *
+     * @return Whether the client is closed by this call.
+     */
+    boolean closeIfIdle() {
+      if (!this.outstanding.compareAndSet(0, Stripe.CLOSED)) {
+        return false;
+      }
+      this.httpClient.close();
+      return true;
+    }
+
+    /**
+     * Unregisters an outstanding request and closes the client if the stripe is drained.
+     *
+     * @return Whether the client is closed by this call.
+     */
+    boolean release() {
+      return this.outstanding.decrementAndGet() == 0 && this.closeWhenIdle.get()
+          && closeIfIdle();
+    }
+
+    /**
+     * Registers an outstanding request unless the stripe is closed.
+     */
+    boolean tryAcquire() {
+      int current = this.outstanding.get();
+      while (current != Stripe.CLOSED) {
+        if (this.outstanding.compareAndSet(current, current + 1)) {
+          return true;
+        }
+        current = this.outstanding.get();
+      }
+      return false;
+    }
+  }
+
+  private static final int DEFAULT_CORES_PER_STRIPE = 4;
+
+  private static final Duration DEFAULT_DRAIN_PERIOD = Duration.ofSeconds(30);
+
+  private static final int DEFAULT_STRIPES_PER_HOST = 2;
+
+  private static final int HASH_MULTIPLIER = 31;
+
+  private static final int HASH_SPREAD_SHIFT = 16;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Hashes the authority (host and port) of the URL without allocating a substring.
+   */
+  private static int hostHash(String url) {
+    int schemeEnd = url.indexOf("://");
+    int start = (schemeEnd < 0) ? 0 : schemeEnd + "://".length();
+    int hash = 0;
+    for (int i = start, n = url.length(); i < n; i++) {
+      char c = url.charAt(i);
+      if (c == '/' || c == '?' || c == '#') {
+        break;
+      }
+      hash = StripedHttpClient.HASH_MULTIPLIER * hash + Character.toLowerCase(c);
+    }
+    return hash ^ (hash >>> StripedHttpClient.HASH_SPREAD_SHIFT);
+  }
+
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  private final Set<Stripe> drainingStripes = ConcurrentHashMap.newKeySet();
+
+  private final long drainPeriodMillis;
+
+  private final Supplier<HttpClient> httpClientFactory;
+
+  private final Scheduler scheduler;
+
+  private final AtomicReferenceArray<Stripe> stripes;
+
+  private final int stripesPerHost;
+
+  private StripedHttpClient(Builder builder) {
+    this.drainPeriodMillis = builder.drainPeriod.toMillis();
+    this.httpClientFactory = builder.httpClientFactory;
+    this.scheduler = builder.scheduler;
+    this.stripes = new AtomicReferenceArray<>(builder.stripeCount);
+    this.stripesPerHost = Math.min(builder.stripesPerHost, builder.stripeCount);
+    for (int i = 0; i < builder.stripeCount; i++) {
+      this.stripes.set(i, new Stripe(this.httpClientFactory.get()));
+    }
+  }
+
+  /**
+   * Chooses the stripe with the least outstanding requests among the stripes of the host and
+   * registers the request on it.
+   */
+  private Stripe acquireStripe(String url) {
+    int stripeCount = this.stripes.length();
+    int hash = StripedHttpClient.hostHash(url);
+    while (true) {
+      Stripe selected = null;
+      int selectedOutstanding = Integer.MAX_VALUE;
+      for (int i = 0; i < this.stripesPerHost; i++) {
+        Stripe stripe = this.stripes.get(Math.floorMod(hash + i, stripeCount));
+        int outstanding = stripe.outstanding.get();
+        if (outstanding != Stripe.CLOSED && outstanding < selectedOutstanding) {
+          selected = stripe;
+          selectedOutstanding = outstanding;
+        }
+      }
+      if (selected != null && selected.tryAcquire()) {
+        return selected;
+      }
+    }
+  }
+
+  /**
+   * Closes the clients of all stripes, including the ones that are being drained.
+   */
+  @Override
+  public void close() {
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
+    }
+    for (int i = 0, n = this.stripes.length(); i < n; i++) {
+      this.stripes.get(i).httpClient.close();
+    }
+    for (Stripe drainingStripe : this.drainingStripes) {
+      drainingStripe.httpClient.close();
+    }
+    this.drainingStripes.clear();
+  }
+
+  private void closeWhenIdle(Stripe stripe) {
+    stripe.closeWhenIdle.set(true);
+    if (stripe.closeIfIdle()) {
+      this.drainingStripes.remove(stripe);
+    }
+  }
+
+  /**
+   * The number of requests of the stripe that are waiting for the response headers.
+   *
+   * @param index
+   *          The index of the stripe.
+   */
+  public int getOutstandingRequests(int index) {
+    return Math.max(0, this.stripes.get(index).outstanding.get());
+  }
+
+  public int getStripeCount() {
+    return this.stripes.length();
+  }
+
+  private void release(Stripe stripe) {
+    if (stripe.release()) {
+      this.drainingStripes.remove(stripe);
+    }
+  }
+
+  /**
+   * Replaces the client of the stripe with a new one that is created by the factory. The old
+   * client gets no new requests and it is closed when its outstanding requests are finished and
+   * the drain period has passed.
+   *
+   * @param index
+   *          The index of the stripe.
+   */
+  public void replaceStripe(int index) {
+    if (this.closed.get()) {
+      throw new IllegalStateException("The client is closed");
+    }
+    Stripe oldStripe = this.stripes.getAndSet(index, new Stripe(this.httpClientFactory.get()));
+    this.drainingStripes.add(oldStripe);
+    this.scheduler.scheduleDirect(() -> closeWhenIdle(oldStripe), this.drainPeriodMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Single<HttpResponse> send(HttpRequest request) {
+    return Single.defer(() -> {
+      if (this.closed.get()) {
+        return Single.error(new IllegalStateException("The client is closed"));
+      }
+      Stripe stripe = acquireStripe(request.getUrl());
+      return stripe.httpClient.send(request).doFinally(() -> release(stripe));
+    });
+  }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * A {@link RequestDispatcher} that queues the calls per tenant and serves the tenants with deficit
+ * round-robin, so a tenant with a large bulk job cannot starve the others. Tenants are identified
+ * by {@link RestRequest#getTenantId()} or by the base path of the request if no tenant id is
+ * specified. Besides the global in-flight limit, every tenant can have an in-flight limit and a
+ * rate limit. The state of a tenant, including its statistics, is dropped when the tenant has not
+ * had queued or in-flight calls for the idle tenant timeout.
+ */
+public final class TenantFairRequestDispatcher implements RequestDispatcher {
+
+  /**
+   * Builder class for {@link TenantFairRequestDispatcher}.
+   */
+  public static final class Builder {
+
+    private Clock clock = Clock.systemUTC();
+
+    private Duration idleTenantTimeout = Duration.ofMinutes(DEFAULT_IDLE_TENANT_TIMEOUT_MINUTES);
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    private int maxInFlightPerTenant = DEFAULT_MAX_IN_FLIGHT_PER_TENANT;
+
+    private int quantum = 1;
+
+    private Scheduler scheduler = Schedulers.computation();
+
+    private int tenantRateBurst = 1;
+
+    private Optional<Double> tenantRateLimit = Optional.empty();
+
+    private final Map<String, Integer> tenantWeights = new HashMap<>();
+
+    private Builder() {
+    }
+
+    public TenantFairRequestDispatcher build() {
+      return new TenantFairRequestDispatcher(this);
+    }
+
+    /**
+     * The clock that is used to check the deadlines of the requests. Default:
+     * {@link Clock#systemUTC()}.
+     */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * The time after the state of a tenant that has neither queued nor in-flight calls is dropped.
+     * It should be longer than the time the rate limit of a tenant needs to refill its burst.
+     * Default: 5 minutes.
+     */
+    public Builder idleTenantTimeout(Duration idleTenantTimeout) {
+      if (idleTenantTimeout.isNegative() || idleTenantTimeout.isZero()) {
+        throw new IllegalArgumentException(
+            "idleTenantTimeout must be positive: " + idleTenantTimeout);
+      }
+      this.idleTenantTimeout = idleTenantTimeout;
+      return this;
+    }
+
+    /**
+     * The maximum number of calls that can be in-flight at the same time for all tenants.
+     * Default: 64.
+     */
+    public Builder maxInFlight(int maxInFlight) {
+      this.maxInFlight = requirePositive(maxInFlight, "maxInFlight");
+      return this;
+    }
+
+    /**
+     * The maximum number of calls that can be in-flight at the same time for one tenant.
+     * Default: 8.
+     */
+    public Builder maxInFlightPerTenant(int maxInFlightPerTenant) {
+      this.maxInFlightPerTenant = requirePositive(maxInFlightPerTenant, "maxInFlightPerTenant");
+      return this;
+    }
+
+    /**
+     * The number of calls a tenant can start in one round-robin turn (multiplied by the weight of
+     * the tenant). Default: 1.
+     */
+    public Builder quantum(int quantum) {
+      this.quantum = requirePositive(quantum, "quantum");
+      return this;
+    }
+
+    /**
+     * The scheduler that wakes up the dispatcher when a rate limited tenant can start its next
+     * call. Default: {@link Schedulers#computation()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+
+    /**
+     * The number of calls a tenant can start in a burst when it did not use its rate limit for a
+     * while. Default: 1.
+     */
+    public Builder tenantRateBurst(int tenantRateBurst) {
+      this.tenantRateBurst = requirePositive(tenantRateBurst, "tenantRateBurst");
+      return this;
+    }
+
+    /**
+     * The maximum number of calls per second that a tenant can start. Default: unlimited.
+     */
+    public Builder tenantRateLimit(Optional<Double> tenantRateLimit) {
+      if (tenantRateLimit.isPresent() && !(tenantRateLimit.get() > 0)) {
+        throw new IllegalArgumentException(
+            "tenantRateLimit must be positive: " + tenantRateLimit.get());
+      }
+      this.tenantRateLimit = tenantRateLimit;
+      return this;
+    }
+
+    /**
+     * The weight of the tenant. A tenant with weight 2 can start twice as many calls in a
+     * round-robin turn as a tenant with the default weight 1.
+     */
+    public Builder tenantWeight(String tenant, int weight) {
+      this.tenantWeights.put(Objects.requireNonNull(tenant), requirePositive(weight, "weight"));
+      return this;
+    }
+  }
+
+  /**
+   * The queue and the counters of a tenant. Guarded by the lock of the dispatcher except the
+   * {@link LongAdder} counters.
+   */
+  private final class Tenant {
+
+    private boolean active = false;
+
+    private final LongAdder completed = new LongAdder();
+
+    private int deficit = 0;
+
+    private long expired = 0;
+
+    private final LongAdder failed = new LongAdder();
+
+    private int inFlight = 0;
+
+    private final String key;
+
+    private long lastActiveNanos;
+
+    private long lastRefillNanos;
+
+    private final ArrayDeque<PendingCall<?>> queue = new ArrayDeque<>();
+
+    private long started = 0;
+
+    private long throttled = 0;
+
+    private PendingCall<?> throttledCall;
+
+    private double tokens;
+
+    private final int weight;
+
+    Tenant(String key, int weight, long nowNanos) {
+      this.key = key;
+      this.weight = weight;
+      this.lastActiveNanos = nowNanos;
+      this.lastRefillNanos = nowNanos;
+      this.tokens = TenantFairRequestDispatcher.this.tenantRateBurst;
+    }
+
+    /**
+     * Returns zero if the tenant can start a call now, the nanoseconds until the rate limit allows
+     * the next call or {@link Long#MAX_VALUE} if the in-flight limit of the tenant is reached. A
+     * call that is held back by the rate limit is counted as throttled only once, no matter how
+     * many times the queue is drained while it waits.
+     */
+    long delayUntilStart(long nowNanos) {
+      if (this.inFlight >= TenantFairRequestDispatcher.this.maxInFlightPerTenant) {
+        return Long.MAX_VALUE;
+      }
+      if (!TenantFairRequestDispatcher.this.tenantRateLimit.isPresent()) {
+        return 0;
+      }
+      double rate = TenantFairRequestDispatcher.this.tenantRateLimit.get();
+      this.tokens = Math.min(TenantFairRequestDispatcher.this.tenantRateBurst,
+          this.tokens + (nowNanos - this.lastRefillNanos) * rate / NANOS_PER_SECOND);
+      this.lastRefillNanos = nowNanos;
+      if (this.tokens >= 1) {
+        return 0;
+      }
+      PendingCall<?> head = this.queue.peek();
+      if (head != this.throttledCall) {
+        this.throttled++;
+        this.throttledCall = head;
+      }
+      return Math.max(1, (long) Math.ceil((1 - this.tokens) * NANOS_PER_SECOND / rate));
+    }
+
+    boolean isIdle(long nowNanos) {
+      return !this.active && this.inFlight == 0 && nowNanos - this.lastActiveNanos
+          >= TenantFairRequestDispatcher.this.idleTenantTimeoutNanos;
+    }
+
+    TenantStatistics toStatistics() {
+      int queued = (int) this.queue.stream().filter(PendingCall::isQueued).count();
+      return new TenantStatistics(this.key, queued, this.inFlight, this.started,
+          this.completed.sum(), this.failed.sum(), this.expired, this.throttled);
+    }
+  }
+
+  private static final int DEFAULT_IDLE_TENANT_TIMEOUT_MINUTES = 5;
+
+  private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private static final int DEFAULT_MAX_IN_FLIGHT_PER_TENANT = 8;
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static int requirePositive(int value, String name) {
+    if (value < 1) {
+      throw new IllegalArgumentException(name + " must be positive: " + value);
+    }
+    return value;
+  }
+
+  private final ArrayDeque<Tenant> activeTenants = new ArrayDeque<>();
+
+  private final Clock clock;
+
+  private final SerializedDrain drain = new SerializedDrain(this::drainStep);
+
+  private boolean evictionScheduled = false;
+
+  private final long idleTenantTimeoutNanos;
+
+  private int inFlight = 0;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final int maxInFlight;
+
+  private final int maxInFlightPerTenant;
+
+  private final int quantum;
+
+  private final Scheduler scheduler;
+
+  private long scheduledWakeUpNanos = Long.MAX_VALUE;
+
+  private final int tenantRateBurst;
+
+  private final Optional<Double> tenantRateLimit;
+
+  private final Map<String, Tenant> tenants = new HashMap<>();
+
+  private final Map<String, Integer> tenantWeights;
+
+  private TenantFairRequestDispatcher(Builder builder) {
+    this.clock = builder.clock;
+    this.idleTenantTimeoutNanos = builder.idleTenantTimeout.toNanos();
+    this.maxInFlight = builder.maxInFlight;
+    this.maxInFlightPerTenant = builder.maxInFlightPerTenant;
+    this.quantum = builder.quantum;
+    this.scheduler = builder.scheduler;
+    this.tenantRateBurst = builder.tenantRateBurst;
+    this.tenantRateLimit = builder.tenantRateLimit;
+    this.tenantWeights = new HashMap<>(builder.tenantWeights);
+  }
+
+  @Override
+  public <T> Single<T> dispatch(RestRequest restRequest, Single<T> call) {
+    String tenantKey = restRequest.getTenantId().orElse(restRequest.getBasePath());
+    return Single.create((emitter) -> {
+      Optional<Instant> deadline = restRequest.getDeadline();
+      if (PendingCall.rejectIfExpired(deadline, this.clock.instant(), emitter)) {
+        return;
+      }
+
+      boolean scheduleEviction;
+      this.lock.lock();
+      try {
+        scheduleEviction = !this.evictionScheduled;
+        this.evictionScheduled = true;
+        Tenant tenant = getOrCreateTenant(tenantKey);
+        PendingCall<T> pendingCall = new PendingCall<>(
+            call.doOnSuccess((result) -> tenant.completed.increment())
+                .doOnError((error) -> tenant.failed.increment()),
+            deadline, emitter, () -> releaseSlot(tenant));
+        emitter.setCancellable(pendingCall::cancel);
+        tenant.queue.add(pendingCall);
+        tenant.lastActiveNanos = this.scheduler.now(TimeUnit.NANOSECONDS);
+        if (!tenant.active) {
+          tenant.active = true;
+          this.activeTenants.add(tenant);
+        }
+      } finally {
+        this.lock.unlock();
+      }
+      if (scheduleEviction) {
+        scheduleEviction();
+      }
+      this.drain.run();
+    });
+  }
+
+  /**
+   * Starts the next queued call if there is a free slot or schedules a wake-up if only the rate
+   * limits of the tenants hold back the calls.
+   *
+   * @return Whether a call was started.
+   */
+  private boolean drainStep() {
+    List<PendingCall<?>> expiredCalls = new ArrayList<>();
+    long wakeUpDelay = Long.MAX_VALUE;
+    PendingCall<?> next = null;
+    this.lock.lock();
+    try {
+      if (this.inFlight < this.maxInFlight) {
+        long[] wakeUpDelayHolder = { Long.MAX_VALUE };
+        next = pollNext(expiredCalls, wakeUpDelayHolder);
+        if (next != null) {
+          this.inFlight++;
+        } else {
+          wakeUpDelay = reserveWakeUp(wakeUpDelayHolder[0]);
+        }
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    PendingCall.expireAll(expiredCalls);
+    if (next != null) {
+      next.start();
+      return true;
+    }
+    if (wakeUpDelay != Long.MAX_VALUE) {
+      this.scheduler.scheduleDirect(this::wakeUp, wakeUpDelay, TimeUnit.NANOSECONDS);
+    }
+    return false;
+  }
+
+  /**
+   * Drops the tenants that are idle for the idle tenant timeout. The eviction is rescheduled while
+   * there are tenants.
+   */
+  private void evictIdleTenants() {
+    boolean reschedule;
+    this.lock.lock();
+    try {
+      long nowNanos = this.scheduler.now(TimeUnit.NANOSECONDS);
+      Iterator<Tenant> iterator = this.tenants.values().iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().isIdle(nowNanos)) {
+          iterator.remove();
+        }
+      }
+      reschedule = !this.tenants.isEmpty();
+      this.evictionScheduled = reschedule;
+    } finally {
+      this.lock.unlock();
+    }
+    if (reschedule) {
+      scheduleEviction();
+    }
+  }
+
+  /**
+   * The number of calls that are started but not completed yet for all tenants.
+   */
+  public int getInFlight() {
+    this.lock.lock();
+    try {
+      return this.inFlight;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private Tenant getOrCreateTenant(String tenantKey) {
+    Tenant tenant = this.tenants.get(tenantKey);
+    if (tenant == null) {
+      tenant = new Tenant(tenantKey, this.tenantWeights.getOrDefault(tenantKey, 1),
+          this.scheduler.now(TimeUnit.NANOSECONDS));
+      this.tenants.put(tenantKey, tenant);
+    }
+    return tenant;
+  }
+
+  /**
+   * The statistics of the tenant if the tenant has queued or in-flight calls or it had some within
+   * the idle tenant timeout.
+   */
+  public Optional<TenantStatistics> getTenantStatistics(String tenant) {
+    this.lock.lock();
+    try {
+      return Optional.ofNullable(this.tenants.get(tenant)).map(Tenant::toStatistics);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * The statistics of all tenants that have queued or in-flight calls or had some within the idle
+   * tenant timeout, sorted by the tenant keys.
+   */
+  public Map<String, TenantStatistics> getTenantStatistics() {
+    this.lock.lock();
+    try {
+      Map<String, TenantStatistics> result = new TreeMap<>();
+      for (Tenant tenant : this.tenants.values()) {
+        result.put(tenant.key, tenant.toStatistics());
+      }
+      return result;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Selects the next call with deficit round-robin among the tenants that have waiting calls.
+   * Tenants that reached their own limits are skipped and lose the rest of their turn. Must be
+   * called while holding the lock.
+   *
+   * @param expiredCalls
+   *          The calls whose deadline passed are added to this list.
+   * @param wakeUpDelayHolder
+   *          The shortest time until a rate limited tenant can start a call is written into the
+   *          first element.
+   */
+  private PendingCall<?> pollNext(List<PendingCall<?>> expiredCalls, long[] wakeUpDelayHolder) {
+    Instant now = this.clock.instant();
+    long nowNanos = this.scheduler.now(TimeUnit.NANOSECONDS);
+    int blocked = 0;
+    while (blocked < this.activeTenants.size()) {
+      Tenant tenant = this.activeTenants.peek();
+      tenant.expired += PendingCall.pollDeadCalls(tenant.queue, now, expiredCalls);
+      if (tenant.queue.isEmpty()) {
+        this.activeTenants.poll();
+        tenant.active = false;
+        tenant.deficit = 0;
+        continue;
+      }
+
+      long delay = tenant.delayUntilStart(nowNanos);
+      if (delay > 0) {
+        wakeUpDelayHolder[0] = Math.min(wakeUpDelayHolder[0], delay);
+        tenant.deficit = 0;
+        this.activeTenants.add(this.activeTenants.poll());
+        blocked++;
+        continue;
+      }
+
+      if (tenant.deficit < 1) {
+        tenant.deficit += this.quantum * tenant.weight;
+      }
+      tenant.deficit--;
+      PendingCall<?> next = tenant.queue.poll();
+      tenant.throttledCall = null;
+      tenant.inFlight++;
+      tenant.started++;
+      if (this.tenantRateLimit.isPresent()) {
+        tenant.tokens--;
+      }
+      if (tenant.deficit < 1) {
+        this.activeTenants.add(this.activeTenants.poll());
+      }
+      return next;
+    }
+    return null;
+  }
+
+  private void releaseSlot(Tenant tenant) {
+    this.lock.lock();
+    try {
+      this.inFlight--;
+      tenant.inFlight--;
+      tenant.lastActiveNanos = this.scheduler.now(TimeUnit.NANOSECONDS);
+    } finally {
+      this.lock.unlock();
+    }
+    this.drain.run();
+  }
+
+  /**
+   * Returns the delay of the wake-up that should be scheduled or {@link Long#MAX_VALUE} if an
+   * earlier wake-up is already scheduled. Must be called while holding the lock.
+   */
+  private long reserveWakeUp(long delay) {
+    if (delay == Long.MAX_VALUE) {
+      return Long.MAX_VALUE;
+    }
+    long wakeUpNanos = this.scheduler.now(TimeUnit.NANOSECONDS) + delay;
+    if (wakeUpNanos >= this.scheduledWakeUpNanos) {
+      return Long.MAX_VALUE;
+    }
+    this.scheduledWakeUpNanos = wakeUpNanos;
+    return delay;
+  }
+
+  private void scheduleEviction() {
+    this.scheduler.scheduleDirect(this::evictIdleTenants, this.idleTenantTimeoutNanos,
+        TimeUnit.NANOSECONDS);
+  }
+
+  private void wakeUp() {
+    this.lock.lock();
+    try {
+      this.scheduledWakeUpNanos = Long.MAX_VALUE;
+    } finally {
+      this.lock.unlock();
+    }
+    this.drain.run();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+/**
+ * Snapshot of the counters of a tenant of a {@link TenantFairRequestDispatcher}.
+ */
+public final class TenantStatistics {
+
+  private final long completed;
+
+  private final long expired;
+
+  private final long failed;
+
+  private final int inFlight;
+
+  private final int queued;
+
+  private final long started;
+
+  private final String tenant;
+
+  private final long throttled;
+
+  TenantStatistics(String tenant, int queued, int inFlight, long started, long completed,
+      long failed, long expired, long throttled) {
+    this.tenant = tenant;
+    this.queued = queued;
+    this.inFlight = inFlight;
+    this.started = started;
+    this.completed = completed;
+    this.failed = failed;
+    this.expired = expired;
+    this.throttled = throttled;
+  }
+
+  /**
+   * The number of calls that completed successfully.
+   */
+  public long getCompleted() {
+    return this.completed;
+  }
+
+  /**
+   * The number of calls that were dropped because their deadline passed while they were queued.
+   */
+  public long getExpired() {
+    return this.expired;
+  }
+
+  /**
+   * The number of calls that completed with an error.
+   */
+  public long getFailed() {
+    return this.failed;
+  }
+
+  /**
+   * The number of calls that are started but not completed yet.
+   */
+  public int getInFlight() {
+    return this.inFlight;
+  }
+
+  /**
+   * The number of calls that wait for being started.
+   */
+  public int getQueued() {
+    return this.queued;
+  }
+
+  /**
+   * The number of calls that were started.
+   */
+  public long getStarted() {
+    return this.started;
+  }
+
+  /**
+   * The tenant id or the base path of the requests.
+   */
+  public String getTenant() {
+    return this.tenant;
+  }
+
+  /**
+   * The number of times the tenant had to wait because of its rate limit.
+   */
+  public long getThrottled() {
+    return this.throttled;
+  }
+
+  @Override
+  public String toString() {
+    return "TenantStatistics [tenant=" + this.tenant + ", queued=" + this.queued + ", inFlight="
+        + this.inFlight + ", started=" + this.started + ", completed=" + this.completed
+        + ", failed=" + this.failed + ", expired=" + this.expired + ", throttled="
+        + this.throttled + "]";
+  }
+}
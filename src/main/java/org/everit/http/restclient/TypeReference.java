@@ -17,10 +17,13 @@ package org.everit.http.restclient;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Objects;
 
 /**
  * Helper class to convert JSON to parameterized types by using
- * {@link JSONObjectMapper#fromJSON(String, TypeReference)}.
+ * {@link JSONObjectMapper#fromJSON(String, TypeReference)}. The type is either captured from an
+ * anonymous subclass or specified explicitly via {@link Types}, which does not need reflection and
+ * works in native images without configuration.
  *
  * @param <T>
  *          The type that the deserializer function should generate.
@@ -30,7 +33,7 @@ public abstract class TypeReference<T> {
   protected final Type type;
 
   /**
-   * Constructor.
+   * Constructor that reads the type from the generic superclass of the anonymous subclass.
    */
   protected TypeReference() {
     Type superClass = getClass().getGenericSuperclass();
@@ -42,6 +45,16 @@ public abstract class TypeReference<T> {
     this.type = ((ParameterizedType) superClass).getActualTypeArguments()[0];
   }
 
+  /**
+   * Constructor with an explicit type.
+   *
+   * @param type
+   *          The type that the deserializer function should generate.
+   */
+  protected TypeReference(Type type) {
+    this.type = Objects.requireNonNull(type);
+  }
+
   public Type getType() {
     return this.type;
   }
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Creates {@link TypeReference} instances explicitly, without anonymous subclasses and without
+ * reading the generic superclass via reflection. The type references can be composed, e.g.
+ * <code>Types.mapOf(String.class, Types.listOf(Issue.class))</code>. The created parameterized
+ * types are equal to the ones of the JDK, so they share the cache entries of the JSON object
+ * mappers with the type references that are created via anonymous subclasses.
+ */
+public final class Types {
+
+  /**
+   * {@link ParameterizedType} implementation whose {@link #equals(Object)} and
+   * {@link #hashCode()} are compatible with the implementation of the JDK.
+   */
+  private static final class ParameterizedTypeImpl implements ParameterizedType {
+
+    private final Type[] actualTypeArguments;
+
+    private final Type ownerType;
+
+    private final Class<?> rawType;
+
+    ParameterizedTypeImpl(Class<?> rawType, Type[] actualTypeArguments) {
+      this.rawType = rawType;
+      this.ownerType = rawType.getDeclaringClass();
+      this.actualTypeArguments = actualTypeArguments;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ParameterizedType)) {
+        return false;
+      }
+      ParameterizedType other = (ParameterizedType) obj;
+      return this == other || (Objects.equals(this.ownerType, other.getOwnerType())
+          && this.rawType.equals(other.getRawType())
+          && Arrays.equals(this.actualTypeArguments, other.getActualTypeArguments()));
+    }
+
+    @Override
+    public Type[] getActualTypeArguments() {
+      return this.actualTypeArguments.clone();
+    }
+
+    @Override
+    public Type getOwnerType() {
+      return this.ownerType;
+    }
+
+    @Override
+    public Type getRawType() {
+      return this.rawType;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(this.actualTypeArguments) ^ Objects.hashCode(this.ownerType)
+          ^ this.rawType.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder(this.rawType.getName()).append('<');
+      for (int i = 0; i < this.actualTypeArguments.length; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append(this.actualTypeArguments[i].getTypeName());
+      }
+      return sb.append('>').toString();
+    }
+  }
+
+  /**
+   * {@link TypeReference} with an explicit type.
+   */
+  private static final class TypeToken<T> extends TypeReference<T> {
+
+    TypeToken(Type type) {
+      super(type);
+    }
+  }
+
+  /**
+   * Type reference of a {@link List} with the specified element type.
+   */
+  public static <E> TypeReference<List<E>> listOf(Class<E> elementType) {
+    return Types.parameterized(List.class, elementType);
+  }
+
+  /**
+   * Type reference of a {@link List} with the specified parameterized element type.
+   */
+  public static <E> TypeReference<List<E>> listOf(TypeReference<E> elementType) {
+    return Types.parameterized(List.class, elementType.getType());
+  }
+
+  /**
+   * Type reference of a {@link Map} with the specified key and value types.
+   */
+  public static <K, V> TypeReference<Map<K, V>> mapOf(Class<K> keyType, Class<V> valueType) {
+    return Types.parameterized(Map.class, keyType, valueType);
+  }
+
+  /**
+   * Type reference of a {@link Map} with the specified key type and parameterized value type.
+   */
+  public static <K, V> TypeReference<Map<K, V>> mapOf(Class<K> keyType,
+      TypeReference<V> valueType) {
+    return Types.parameterized(Map.class, keyType, valueType.getType());
+  }
+
+  /**
+   * Type reference of a class.
+   */
+  public static <T> TypeReference<T> of(Class<T> type) {
+    return new TypeToken<>(type);
+  }
+
+  /**
+   * Type reference of any type, e.g. one that is taken from a type argument of another type. The
+   * caller is responsible for the type parameter of the result matching the type.
+   */
+  public static <T> TypeReference<T> of(Type type) {
+    return new TypeToken<>(Objects.requireNonNull(type));
+  }
+
+  /**
+   * Type reference of a generic class with the specified type arguments. The caller is
+   * responsible for the type parameter of the result matching the type.
+   *
+   * @param <T>
+   *          The parameterized type.
+   * @param rawType
+   *          The generic class.
+   * @param typeArguments
+   *          The type arguments of the generic class.
+   * @return The type reference of the parameterized type.
+   */
+  public static <T> TypeReference<T> parameterized(Class<?> rawType, Type... typeArguments) {
+    Type[] arguments = typeArguments.clone();
+    for (Type argument : arguments) {
+      Objects.requireNonNull(argument);
+    }
+    return new TypeToken<>(new ParameterizedTypeImpl(Objects.requireNonNull(rawType), arguments));
+  }
+
+  /**
+   * Type reference of a {@link Set} with the specified element type.
+   */
+  public static <E> TypeReference<Set<E>> setOf(Class<E> elementType) {
+    return Types.parameterized(Set.class, elementType);
+  }
+
+  /**
+   * Type reference of a {@link Set} with the specified parameterized element type.
+   */
+  public static <E> TypeReference<Set<E>> setOf(TypeReference<E> elementType) {
+    return Types.parameterized(Set.class, elementType.getType());
+  }
+
+  private Types() {
+  }
+}
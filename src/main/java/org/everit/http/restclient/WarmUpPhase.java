@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+/**
+ * Phases of the warm-up of {@link RestClient}. The phases run in the order of their declaration.
+ */
+public enum WarmUpPhase {
+
+  /**
+   * Fetching the auth tokens by calling the request enhancer once per base path.
+   */
+  AUTHENTICATION,
+
+  /**
+   * Preparing the readers of the known types in the {@link JSONObjectMapper}.
+   */
+  CODECS,
+
+  /**
+   * Opening a connection to each base path with a HEAD request.
+   */
+  CONNECTIONS,
+
+  /**
+   * Sending the synthetic requests through the whole pipeline of the client, including the
+   * conversion of their responses.
+   */
+  REQUESTS
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The known endpoints and types that {@link RestClient#warmUp(WarmUpPlan)} prepares before the
+ * client gets real traffic.
+ */
+public final class WarmUpPlan {
+
+  /**
+   * Builder class for {@link WarmUpPlan}.
+   */
+  public static final class Builder {
+
+    private final List<String> basePaths = new ArrayList<>();
+
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    private Optional<RestRequestEnhancer> requestEnhancer = Optional.empty();
+
+    private final Map<RestRequest, TypeReference<?>> syntheticRequests = new LinkedHashMap<>();
+
+    private int syntheticRequestRepetitions = 1;
+
+    private final List<Type> types = new ArrayList<>();
+
+    private Builder() {
+    }
+
+    /**
+     * A base path that a connection is opened to. If a request enhancer is specified, it is called
+     * once with a request of the base path, so the auth token of the base path is fetched.
+     */
+    public Builder basePath(String basePath) {
+      this.basePaths.add(Objects.requireNonNull(basePath));
+      return this;
+    }
+
+    public WarmUpPlan build() {
+      return new WarmUpPlan(this);
+    }
+
+    /**
+     * The maximum number of steps that run at the same time within a phase. Default: 4.
+     */
+    public Builder maxInFlight(int maxInFlight) {
+      if (maxInFlight < 1) {
+        throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * The enhancer that fetches the auth tokens. It is also used to enhance the synthetic
+     * requests.
+     */
+    public Builder requestEnhancer(Optional<RestRequestEnhancer> requestEnhancer) {
+      this.requestEnhancer = Objects.requireNonNull(requestEnhancer);
+      return this;
+    }
+
+    /**
+     * A request that is sent through the whole pipeline of the client, so the code paths are
+     * compiled by the JIT before the real traffic arrives. It should be a cheap and idempotent
+     * request. Its response is converted to the return type like the responses of the real
+     * calls, so the readers, the buffer pool and the parallel decoder are warmed up too. The
+     * return type is also prepared in the {@link WarmUpPhase#CODECS} phase. An error response or
+     * a failed conversion fails the step.
+     *
+     * @param syntheticRequest
+     *          The request to send.
+     * @param returnType
+     *          The type that the response is converted to.
+     */
+    public Builder syntheticRequest(RestRequest syntheticRequest, TypeReference<?> returnType) {
+      this.syntheticRequests.put(Objects.requireNonNull(syntheticRequest),
+          Objects.requireNonNull(returnType));
+      if (!this.types.contains(returnType.getType())) {
+        this.types.add(returnType.getType());
+      }
+      return this;
+    }
+
+    /**
+     * The number of times each synthetic request is sent. Default: 1.
+     */
+    public Builder syntheticRequestRepetitions(int syntheticRequestRepetitions) {
+      if (syntheticRequestRepetitions < 0) {
+        throw new IllegalArgumentException(
+            "syntheticRequestRepetitions must not be negative: " + syntheticRequestRepetitions);
+      }
+      this.syntheticRequestRepetitions = syntheticRequestRepetitions;
+      return this;
+    }
+
+    /**
+     * A type whose reader is prepared via {@link JSONObjectMapper#prepare(Type)}.
+     */
+    public Builder type(Type type) {
+      this.types.add(Objects.requireNonNull(type));
+      return this;
+    }
+
+    /**
+     * A parameterized type whose reader is prepared via {@link JSONObjectMapper#prepare(Type)}.
+     */
+    public Builder type(TypeReference<?> typeReference) {
+      return type(typeReference.getType());
+    }
+  }
+
+  private static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final List<String> basePaths;
+
+  private final int maxInFlight;
+
+  private final Optional<RestRequestEnhancer> requestEnhancer;
+
+  private final Map<RestRequest, TypeReference<?>> syntheticRequests;
+
+  private final int syntheticRequestRepetitions;
+
+  private final List<Type> types;
+
+  private WarmUpPlan(Builder builder) {
+    this.basePaths = Collections.unmodifiableList(new ArrayList<>(builder.basePaths));
+    this.maxInFlight = builder.maxInFlight;
+    this.requestEnhancer = builder.requestEnhancer;
+    this.syntheticRequests =
+        Collections.unmodifiableMap(new LinkedHashMap<>(builder.syntheticRequests));
+    this.syntheticRequestRepetitions = builder.syntheticRequestRepetitions;
+    this.types = Collections.unmodifiableList(new ArrayList<>(builder.types));
+  }
+
+  public List<String> getBasePaths() {
+    return this.basePaths;
+  }
+
+  public int getMaxInFlight() {
+    return this.maxInFlight;
+  }
+
+  public Optional<RestRequestEnhancer> getRequestEnhancer() {
+    return this.requestEnhancer;
+  }
+
+  /**
+   * The synthetic requests with the types that their responses are converted to.
+   */
+  public Map<RestRequest, TypeReference<?>> getSyntheticRequests() {
+    return this.syntheticRequests;
+  }
+
+  public int getSyntheticRequestRepetitions() {
+    return this.syntheticRequestRepetitions;
+  }
+
+  public List<Type> getTypes() {
+    return this.types;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Optional;
+
+/**
+ * The progress of the warm-up of {@link RestClient} after a step finished. A failing step does not
+ * abort the warm-up, its exception is available via {@link #getError()}.
+ */
+public final class WarmUpProgress {
+
+  private final int completedSteps;
+
+  private final Throwable error;
+
+  private final int failedSteps;
+
+  private final WarmUpPhase phase;
+
+  private final int totalSteps;
+
+  WarmUpProgress(WarmUpPhase phase, int completedSteps, int failedSteps, int totalSteps,
+      Throwable error) {
+    this.phase = phase;
+    this.completedSteps = completedSteps;
+    this.failedSteps = failedSteps;
+    this.totalSteps = totalSteps;
+    this.error = error;
+  }
+
+  /**
+   * The number of finished steps, including the failed ones.
+   */
+  public int getCompletedSteps() {
+    return this.completedSteps;
+  }
+
+  /**
+   * The exception of the step if it failed.
+   */
+  public Optional<Throwable> getError() {
+    return Optional.ofNullable(this.error);
+  }
+
+  /**
+   * The number of steps that failed so far.
+   */
+  public int getFailedSteps() {
+    return this.failedSteps;
+  }
+
+  /**
+   * The phase of the step that finished.
+   */
+  public WarmUpPhase getPhase() {
+    return this.phase;
+  }
+
+  /**
+   * The number of steps of the whole warm-up.
+   */
+  public int getTotalSteps() {
+    return this.totalSteps;
+  }
+
+  /**
+   * Whether all steps of the warm-up are finished.
+   */
+  public boolean isDone() {
+    return this.completedSteps == this.totalSteps;
+  }
+
+  @Override
+  public String toString() {
+    return "WarmUpProgress [phase=" + this.phase + ", completedSteps=" + this.completedSteps
+        + ", failedSteps=" + this.failedSteps + ", totalSteps=" + this.totalSteps + "]";
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The position of an {@link IncrementalSync} query: the latest update time that was synchronized
+ * and the versions of the entities that were updated within the overlap window before it. The next
+ * cycle queries the changes since the timestamp minus the overlap, so the entities that were
+ * committed late or updated in the same second are not missed, and the versions are used to drop
+ * the entities that were already emitted.
+ */
+public final class Watermark {
+
+  private final Map<String, String> seenVersions;
+
+  private final Instant timestamp;
+
+  /**
+   * Constructor.
+   *
+   * @param timestamp
+   *          The latest update time that was synchronized.
+   * @param seenVersions
+   *          The versions of the entities by their ids that were updated within the overlap window
+   *          before the timestamp.
+   */
+  public Watermark(Instant timestamp, Map<String, String> seenVersions) {
+    this.timestamp = Objects.requireNonNull(timestamp);
+    this.seenVersions = Collections.unmodifiableMap(new HashMap<>(seenVersions));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Watermark)) {
+      return false;
+    }
+    Watermark other = (Watermark) obj;
+    return this.timestamp.equals(other.timestamp) && this.seenVersions.equals(other.seenVersions);
+  }
+
+  /**
+   * The versions of the entities by their ids that were updated within the overlap window before
+   * the timestamp.
+   */
+  public Map<String, String> getSeenVersions() {
+    return this.seenVersions;
+  }
+
+  /**
+   * The latest update time that was synchronized.
+   */
+  public Instant getTimestamp() {
+    return this.timestamp;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.timestamp, this.seenVersions);
+  }
+
+  @Override
+  public String toString() {
+    return "Watermark [timestamp=" + this.timestamp + ", seenVersions=" + this.seenVersions.size()
+        + "]";
+  }
+}
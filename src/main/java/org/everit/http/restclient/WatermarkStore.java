@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Optional;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+
+/**
+ * Durable storage of the {@link Watermark} of the {@link IncrementalSync} queries.
+ */
+public interface WatermarkStore {
+
+  /**
+   * Loads the watermark of the query.
+   *
+   * @param queryKey
+   *          Identifies the query.
+   * @return The stored watermark or empty if the query was never synchronized.
+   */
+  Single<Optional<Watermark>> load(String queryKey);
+
+  /**
+   * Stores the watermark of the query. The previous watermark of the query is replaced.
+   *
+   * @param queryKey
+   *          Identifies the query.
+   * @param watermark
+   *          The new watermark.
+   * @return Completes when the watermark is stored durably.
+   */
+  Completable save(String queryKey, Watermark watermark);
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Eviction policy that decides which keys should be kept in a size-bounded cache. New keys get into
+ * a small LRU window. Keys that fall out of the window compete with the least recently used key of
+ * the main region and the one that was accessed more frequently according to a
+ * {@link FrequencySketch} is kept. The main region is a segmented LRU: keys that are accessed again
+ * while they are on probation are promoted to the protected segment. The class is not thread-safe.
+ *
+ * @param <K>
+ *          Type of the keys.
+ */
+final class WindowTinyLfuPolicy<K> {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private static final int PERCENT = 100;
+
+  private static final int PROTECTED_PERCENT = 80;
+
+  private static <K> K first(LinkedHashMap<K, Boolean> region) {
+    Iterator<K> iterator = region.keySet().iterator();
+    return iterator.hasNext() ? iterator.next() : null;
+  }
+
+  private static <K> LinkedHashMap<K, Boolean> newRegion() {
+    return new LinkedHashMap<>(WindowTinyLfuPolicy.INITIAL_CAPACITY,
+        WindowTinyLfuPolicy.LOAD_FACTOR, true);
+  }
+
+  private final int mainMaximum;
+
+  private final LinkedHashMap<K, Boolean> probation = WindowTinyLfuPolicy.newRegion();
+
+  private final LinkedHashMap<K, Boolean> protectedRegion = WindowTinyLfuPolicy.newRegion();
+
+  private final int protectedMaximum;
+
+  private final FrequencySketch sketch;
+
+  private final LinkedHashMap<K, Boolean> window = WindowTinyLfuPolicy.newRegion();
+
+  private final int windowMaximum;
+
+  WindowTinyLfuPolicy(int maximumSize) {
+    if (maximumSize < 2) {
+      throw new IllegalArgumentException("Maximum size must be at least 2");
+    }
+    this.windowMaximum = Math.max(1, maximumSize / WindowTinyLfuPolicy.PERCENT);
+    this.mainMaximum = maximumSize - this.windowMaximum;
+    this.protectedMaximum =
+        this.mainMaximum * WindowTinyLfuPolicy.PROTECTED_PERCENT / WindowTinyLfuPolicy.PERCENT;
+    this.sketch = new FrequencySketch(maximumSize);
+  }
+
+  private boolean contains(K key) {
+    return this.window.containsKey(key) || this.probation.containsKey(key)
+        || this.protectedRegion.containsKey(key);
+  }
+
+  /**
+   * Records the access of a key that is in the cache.
+   */
+  void onAccess(K key) {
+    this.sketch.increment(key);
+    if (this.window.get(key) != null || this.protectedRegion.get(key) != null) {
+      return;
+    }
+
+    if (this.probation.remove(key) != null) {
+      this.protectedRegion.put(key, Boolean.TRUE);
+      if (this.protectedRegion.size() > this.protectedMaximum) {
+        K demoted = WindowTinyLfuPolicy.first(this.protectedRegion);
+        this.protectedRegion.remove(demoted);
+        this.probation.put(demoted, Boolean.TRUE);
+      }
+    }
+  }
+
+  /**
+   * Records that a key is added to the cache.
+   *
+   * @return The keys that must be evicted from the cache. It might be the inserted key itself.
+   */
+  List<K> onInsert(K key) {
+    if (contains(key)) {
+      onAccess(key);
+      return Collections.emptyList();
+    }
+
+    this.sketch.increment(key);
+    this.window.put(key, Boolean.TRUE);
+    if (this.window.size() <= this.windowMaximum) {
+      return Collections.emptyList();
+    }
+
+    K candidate = WindowTinyLfuPolicy.first(this.window);
+    this.window.remove(candidate);
+
+    if (this.probation.size() + this.protectedRegion.size() < this.mainMaximum) {
+      this.probation.put(candidate, Boolean.TRUE);
+      return Collections.emptyList();
+    }
+
+    LinkedHashMap<K, Boolean> victimRegion =
+        this.probation.isEmpty() ? this.protectedRegion : this.probation;
+    K victim = WindowTinyLfuPolicy.first(victimRegion);
+
+    if (this.sketch.frequency(candidate) > this.sketch.frequency(victim)) {
+      victimRegion.remove(victim);
+      this.probation.put(candidate, Boolean.TRUE);
+      return Collections.singletonList(victim);
+    }
+    return Collections.singletonList(candidate);
+  }
+
+  /**
+   * Records that a key is removed from the cache due to expiration or invalidation.
+   */
+  void onRemove(K key) {
+    if (this.window.remove(key) == null && this.probation.remove(key) == null) {
+      this.protectedRegion.remove(key);
+    }
+  }
+}
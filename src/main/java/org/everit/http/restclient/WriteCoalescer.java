@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+import org.everit.http.client.HttpMethod;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Merges the writes (PUT and PATCH requests) that are sent to the same resource within a short
+ * window into one request. The first write starts the window, when it passes, the writes of each
+ * resource are sent as one request with the merged body and the outcome is reported to every
+ * caller. If a bulk request factory is specified and multiple resources are written in the window,
+ * they are sent as one bulk request.
+ *
+ * <p>
+ * The writes are identified by their method, URL, query parameters and headers. By default, the
+ * bodies are merged field by field (nested objects recursively) and the later write wins on every
+ * field; other bodies (e.g. arrays) are replaced by the later one. The merged request has the
+ * earliest deadline of the merged writes. Disposing a write does not cancel it, as it may have
+ * been merged with other writes already. Requests with other methods (e.g. POST) are not
+ * idempotent and are sent immediately without merging.
+ */
+public final class WriteCoalescer {
+
+  /**
+   * Builder class for {@link WriteCoalescer}.
+   */
+  public static final class Builder {
+
+    private Optional<Function<List<RestRequest>, Optional<RestRequest>>> bulkRequestFactory =
+        Optional.empty();
+
+    private Optional<BinaryOperator<Object>> mergeFunction = Optional.empty();
+
+    private Optional<RestRequestEnhancer> requestEnhancer = Optional.empty();
+
+    private RestClient restClient;
+
+    private Scheduler scheduler = Schedulers.computation();
+
+    private Duration window = DEFAULT_WINDOW;
+
+    private Builder() {
+    }
+
+    public WriteCoalescer build() {
+      Objects.requireNonNull(this.restClient, "restClient must be specified");
+      return new WriteCoalescer(this);
+    }
+
+    /**
+     * Creates a bulk request from the merged requests of the resources that were written in the
+     * same window, e.g. a call of the bulk edit endpoint of Jira. If the function returns empty,
+     * the requests are sent one by one. It is not called if only one resource was written.
+     */
+    public Builder bulkRequestFactory(
+        Optional<Function<List<RestRequest>, Optional<RestRequest>>> bulkRequestFactory) {
+      this.bulkRequestFactory = Objects.requireNonNull(bulkRequestFactory);
+      return this;
+    }
+
+    /**
+     * Merges the body of an earlier write (first parameter) with the body of a later write (second
+     * parameter) to the same resource. Default: last write wins per field.
+     */
+    public Builder mergeFunction(Optional<BinaryOperator<Object>> mergeFunction) {
+      this.mergeFunction = Objects.requireNonNull(mergeFunction);
+      return this;
+    }
+
+    public Builder requestEnhancer(Optional<RestRequestEnhancer> requestEnhancer) {
+      this.requestEnhancer = Objects.requireNonNull(requestEnhancer);
+      return this;
+    }
+
+    public Builder restClient(RestClient restClient) {
+      this.restClient = Objects.requireNonNull(restClient);
+      return this;
+    }
+
+    /**
+     * The scheduler that sends the writes when the window passes. Default:
+     * {@link Schedulers#computation()}.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = Objects.requireNonNull(scheduler);
+      return this;
+    }
+
+    /**
+     * The time that the writes are collected for after the first write. Default: 20 milliseconds.
+     */
+    public Builder window(Duration window) {
+      if (window.isNegative()) {
+        throw new IllegalArgumentException("window must not be negative: " + window);
+      }
+      this.window = window;
+      return this;
+    }
+  }
+
+  /**
+   * The writes of a resource within the window.
+   */
+  private static final class PendingWrite {
+
+    private final List<CompletableEmitter> emitters = new ArrayList<>();
+
+    private final List<RestRequest> restRequests = new ArrayList<>();
+
+    void add(RestRequest restRequest, CompletableEmitter emitter) {
+      this.restRequests.add(restRequest);
+      this.emitters.add(emitter);
+    }
+  }
+
+  private static final Duration DEFAULT_WINDOW = Duration.ofMillis(20);
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static Optional<Instant> earliest(Optional<Instant> deadline,
+      Optional<Instant> otherDeadline) {
+
+    if (!deadline.isPresent()) {
+      return otherDeadline;
+    }
+    if (!otherDeadline.isPresent()) {
+      return deadline;
+    }
+    return deadline.get().isBefore(otherDeadline.get()) ? deadline : otherDeadline;
+  }
+
+  private static void reportOutcome(List<CompletableEmitter> emitters, Completable outcome) {
+    outcome.subscribe(() -> {
+      for (CompletableEmitter emitter : emitters) {
+        emitter.onComplete();
+      }
+    }, (error) -> {
+      for (CompletableEmitter emitter : emitters) {
+        emitter.tryOnError(error);
+      }
+    });
+  }
+
+  private final Optional<Function<List<RestRequest>, Optional<RestRequest>>> bulkRequestFactory;
+
+  private final AtomicLong coalescedWriteCount = new AtomicLong();
+
+  private boolean flushScheduled = false;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final BinaryOperator<Object> mergeFunction;
+
+  private Map<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+
+  private final Optional<RestRequestEnhancer> requestEnhancer;
+
+  private final RestClient restClient;
+
+  private final Scheduler scheduler;
+
+  private final long windowMillis;
+
+  private WriteCoalescer(Builder builder) {
+    this.bulkRequestFactory = builder.bulkRequestFactory;
+    this.mergeFunction = builder.mergeFunction.orElse(this::mergeLastWriteWinsPerField);
+    this.requestEnhancer = builder.requestEnhancer;
+    this.restClient = builder.restClient;
+    this.scheduler = builder.scheduler;
+    this.windowMillis = builder.window.toMillis();
+  }
+
+  private void flush() {
+    Map<String, PendingWrite> writes;
+    this.lock.lock();
+    try {
+      writes = this.pendingWrites;
+      this.pendingWrites = new LinkedHashMap<>();
+      this.flushScheduled = false;
+    } finally {
+      this.lock.unlock();
+    }
+
+    List<RestRequest> mergedRequests = new ArrayList<>(writes.size());
+    List<List<CompletableEmitter>> mergedEmitters = new ArrayList<>(writes.size());
+    for (PendingWrite pendingWrite : writes.values()) {
+      RestRequest mergedRequest;
+      try {
+        mergedRequest = pendingWrite.restRequests.stream().reduce(this::merge).get();
+      } catch (RuntimeException e) {
+        WriteCoalescer.reportOutcome(pendingWrite.emitters, Completable.error(e));
+        continue;
+      }
+      mergedRequests.add(mergedRequest);
+      mergedEmitters.add(pendingWrite.emitters);
+    }
+
+    Optional<RestRequest> bulkRequest = (mergedRequests.size() > 1)
+        ? this.bulkRequestFactory.flatMap((factory) -> factory.apply(mergedRequests))
+        : Optional.empty();
+    if (bulkRequest.isPresent()) {
+      List<CompletableEmitter> emitters = new ArrayList<>();
+      mergedEmitters.forEach(emitters::addAll);
+      WriteCoalescer.reportOutcome(emitters,
+          this.restClient.callEndpoint(bulkRequest.get(), this.requestEnhancer));
+      return;
+    }
+    for (int i = 0; i < mergedRequests.size(); i++) {
+      WriteCoalescer.reportOutcome(mergedEmitters.get(i),
+          this.restClient.callEndpoint(mergedRequests.get(i), this.requestEnhancer));
+    }
+  }
+
+  /**
+   * The number of writes that were merged into an earlier write of the same resource.
+   */
+  public long getCoalescedWriteCount() {
+    return this.coalescedWriteCount.get();
+  }
+
+  private RestRequest merge(RestRequest previousRequest, RestRequest nextRequest) {
+    Optional<?> previousBody = previousRequest.getRequestBody();
+    Optional<?> nextBody = nextRequest.getRequestBody();
+    Optional<?> mergedBody = (previousBody.isPresent() && nextBody.isPresent())
+        ? Optional.ofNullable(this.mergeFunction.apply(previousBody.get(), nextBody.get()))
+        : nextBody;
+    return RestRequest.builderFrom(nextRequest)
+        .deadline(WriteCoalescer.earliest(previousRequest.getDeadline(), nextRequest.getDeadline()))
+        .requestBody(mergedBody)
+        .build();
+  }
+
+  private Object mergeLastWriteWinsPerField(Object previousBody, Object nextBody) {
+    JSONObjectMapper objectMapper = this.restClient.getObjectMapper();
+    Object previousValue = objectMapper.convertValue(previousBody, Object.class);
+    Object nextValue = objectMapper.convertValue(nextBody, Object.class);
+    return mergeValues(previousValue, nextValue);
+  }
+
+  private Object mergeValues(Object previousValue, Object nextValue) {
+    if (!(previousValue instanceof Map) || !(nextValue instanceof Map)) {
+      return nextValue;
+    }
+    Map<Object, Object> merged = new LinkedHashMap<>((Map<?, ?>) previousValue);
+    for (Entry<?, ?> entry : ((Map<?, ?>) nextValue).entrySet()) {
+      merged.put(entry.getKey(), mergeValues(merged.get(entry.getKey()), entry.getValue()));
+    }
+    return merged;
+  }
+
+  /**
+   * Sends the write together with the other writes of the window. Requests with other methods
+   * than PUT and PATCH are sent immediately.
+   *
+   * @param restRequest
+   *          The request of the write.
+   * @return Completes when the request that contains the write is processed successfully.
+   */
+  public Completable write(RestRequest restRequest) {
+    if (restRequest.getMethod() != HttpMethod.PUT && restRequest.getMethod() != HttpMethod.PATCH) {
+      return this.restClient.callEndpoint(restRequest, this.requestEnhancer);
+    }
+    return Completable.create((emitter) -> {
+      String key = RestClientUtil.canonicalKey(restRequest);
+      boolean scheduleFlush;
+      this.lock.lock();
+      try {
+        PendingWrite pendingWrite = this.pendingWrites.get(key);
+        if (pendingWrite == null) {
+          pendingWrite = new PendingWrite();
+          this.pendingWrites.put(key, pendingWrite);
+        } else {
+          this.coalescedWriteCount.incrementAndGet();
+        }
+        pendingWrite.add(restRequest, emitter);
+        scheduleFlush = !this.flushScheduled;
+        this.flushScheduled = true;
+      } finally {
+        this.lock.unlock();
+      }
+      if (scheduleFlush) {
+        this.scheduler.scheduleDirect(this::flush, this.windowMillis, TimeUnit.MILLISECONDS);
+      }
+    });
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.everit.web.servlet.HttpServlet;
+
+/**
+ * Servlet that simulates the paged endpoints of the Atlassian REST APIs with configurable latency,
+ * rate limiting and fault injection. It can be used to test the resilience and the throughput of
+ * {@link RestClient} without a live Atlassian instance.
+ *
+ * <p>
+ * Paths:
+ * <ul>
+ * <li>{@value #PATH_PAGED}: offset based paging with the <code>startAt</code> and
+ * <code>maxResults</code> query parameters.</li>
+ * <li>{@value #PATH_TOKEN_PAGED}: cursor based paging with the <code>nextPageToken</code> query
+ * parameter.</li>
+ * </ul>
+ */
+public class AtlassianSimulatorServlet extends HttpServlet {
+
+  /**
+   * The behavior of the simulator.
+   */
+  public static final class Settings {
+
+    /**
+     * Builder class for {@link Settings}.
+     */
+    public static final class Builder {
+
+      private double connectionDropProbability = 0;
+
+      private long firstByteDelayMillis = 0;
+
+      private int pageSize = DEFAULT_PAGE_SIZE;
+
+      private double rateLimitProbability = 0;
+
+      private int retryAfterSeconds = 1;
+
+      private long seed = 0;
+
+      private double serverErrorProbability = 0;
+
+      private int serverErrorStatus = DEFAULT_SERVER_ERROR_STATUS;
+
+      private int totalItems = DEFAULT_TOTAL_ITEMS;
+
+      private int trickleChunkSize = 0;
+
+      private long trickleDelayMillis = 0;
+
+      private Builder() {
+      }
+
+      public Settings build() {
+        return new Settings(this);
+      }
+
+      /**
+       * The probability of closing the connection after sending half of the response body.
+       */
+      public Builder connectionDropProbability(double connectionDropProbability) {
+        this.connectionDropProbability = connectionDropProbability;
+        return this;
+      }
+
+      /**
+       * The delay before the response status and headers are sent.
+       */
+      public Builder firstByteDelayMillis(long firstByteDelayMillis) {
+        this.firstByteDelayMillis = firstByteDelayMillis;
+        return this;
+      }
+
+      /**
+       * The default and maximum number of items on a page.
+       */
+      public Builder pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+      }
+
+      /**
+       * The probability of responding with 429 and a Retry-After header.
+       */
+      public Builder rateLimitProbability(double rateLimitProbability) {
+        this.rateLimitProbability = rateLimitProbability;
+        return this;
+      }
+
+      /**
+       * The value of the Retry-After header of the 429 responses.
+       */
+      public Builder retryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+      }
+
+      /**
+       * The seed of the random generator that decides about the injected faults.
+       */
+      public Builder seed(long seed) {
+        this.seed = seed;
+        return this;
+      }
+
+      /**
+       * The probability of responding with a server error.
+       */
+      public Builder serverErrorProbability(double serverErrorProbability) {
+        this.serverErrorProbability = serverErrorProbability;
+        return this;
+      }
+
+      /**
+       * The status of the injected server errors.
+       */
+      public Builder serverErrorStatus(int serverErrorStatus) {
+        this.serverErrorStatus = serverErrorStatus;
+        return this;
+      }
+
+      /**
+       * The number of items that can be paged through.
+       */
+      public Builder totalItems(int totalItems) {
+        this.totalItems = totalItems;
+        return this;
+      }
+
+      /**
+       * If positive, the response body is sent in chunks of this size.
+       */
+      public Builder trickleChunkSize(int trickleChunkSize) {
+        this.trickleChunkSize = trickleChunkSize;
+        return this;
+      }
+
+      /**
+       * The delay between the chunks of a trickled response body.
+       */
+      public Builder trickleDelayMillis(long trickleDelayMillis) {
+        this.trickleDelayMillis = trickleDelayMillis;
+        return this;
+      }
+    }
+
+    public static Builder builder() {
+      return new Builder();
+    }
+
+    private final double connectionDropProbability;
+
+    private final long firstByteDelayMillis;
+
+    private final int pageSize;
+
+    private final double rateLimitProbability;
+
+    private final int retryAfterSeconds;
+
+    private final long seed;
+
+    private final double serverErrorProbability;
+
+    private final int serverErrorStatus;
+
+    private final int totalItems;
+
+    private final int trickleChunkSize;
+
+    private final long trickleDelayMillis;
+
+    private Settings(Builder builder) {
+      this.connectionDropProbability = builder.connectionDropProbability;
+      this.firstByteDelayMillis = builder.firstByteDelayMillis;
+      this.pageSize = builder.pageSize;
+      this.rateLimitProbability = builder.rateLimitProbability;
+      this.retryAfterSeconds = builder.retryAfterSeconds;
+      this.seed = builder.seed;
+      this.serverErrorProbability = builder.serverErrorProbability;
+      this.serverErrorStatus = builder.serverErrorStatus;
+      this.totalItems = builder.totalItems;
+      this.trickleChunkSize = builder.trickleChunkSize;
+      this.trickleDelayMillis = builder.trickleDelayMillis;
+    }
+  }
+
+  public static final String PATH_PAGED = "/paged";
+
+  public static final String PATH_TOKEN_PAGED = "/token-paged";
+
+  private static final int DEFAULT_PAGE_SIZE = 50;
+
+  private static final int DEFAULT_SERVER_ERROR_STATUS = 503;
+
+  private static final int DEFAULT_TOTAL_ITEMS = 1000;
+
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  private static final long serialVersionUID = 4364236094328129395L;
+
+  private static final String TOKEN_PREFIX = "token-";
+
+  private static void sleep(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private final AtomicLong connectionDrops = new AtomicLong();
+
+  private transient Random random = new Random(0);
+
+  private final AtomicLong rateLimitedRequests = new AtomicLong();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong serverErrors = new AtomicLong();
+
+  private volatile Settings settings = Settings.builder().build();
+
+  /**
+   * The number of responses whose connection was dropped in the middle of the body.
+   */
+  public long getConnectionDrops() {
+    return this.connectionDrops.get();
+  }
+
+  /**
+   * The number of requests that got a 429 response.
+   */
+  public long getRateLimitedRequests() {
+    return this.rateLimitedRequests.get();
+  }
+
+  /**
+   * The number of requests that arrived at the simulator.
+   */
+  public long getRequests() {
+    return this.requests.get();
+  }
+
+  /**
+   * The number of requests that got an injected server error.
+   */
+  public long getServerErrors() {
+    return this.serverErrors.get();
+  }
+
+  private synchronized boolean inject(double probability) {
+    return probability > 0 && this.random.nextDouble() < probability;
+  }
+
+  private String pagedBody(Settings currentSettings, int startAt, int maxResults,
+      boolean tokenPaging) {
+    int end = Math.min(currentSettings.totalItems, startAt + maxResults);
+    boolean isLast = end >= currentSettings.totalItems;
+
+    StringBuilder sb = new StringBuilder("{");
+    if (tokenPaging) {
+      if (!isLast) {
+        sb.append("\"nextPageToken\":\"").append(TOKEN_PREFIX).append(end).append("\",");
+      }
+    } else {
+      sb.append("\"startAt\":").append(startAt)
+          .append(",\"maxResults\":").append(maxResults)
+          .append(",\"total\":").append(currentSettings.totalItems).append(',');
+    }
+    sb.append("\"isLast\":").append(isLast).append(",\"values\":[");
+    for (int i = startAt; i < end; i++) {
+      if (i > startAt) {
+        sb.append(',');
+      }
+      sb.append("{\"id\":\"").append(i).append("\",\"key\":\"SIM-").append(i).append("\"}");
+    }
+    return sb.append("]}").toString();
+  }
+
+  private int parseIntParameter(HttpServletRequest req, String name, int defaultValue) {
+    String value = req.getParameter(name);
+    return (value == null) ? defaultValue : Integer.parseInt(value);
+  }
+
+  @Override
+  protected void service(HttpServletRequest req, HttpServletResponse resp)
+      throws ServletException, IOException {
+
+    this.requests.incrementAndGet();
+    Settings currentSettings = this.settings;
+    resp.setCharacterEncoding("UTF-8");
+
+    sleep(currentSettings.firstByteDelayMillis);
+
+    if (inject(currentSettings.rateLimitProbability)) {
+      this.rateLimitedRequests.incrementAndGet();
+      resp.setStatus(HTTP_TOO_MANY_REQUESTS);
+      resp.setHeader("Retry-After", String.valueOf(currentSettings.retryAfterSeconds));
+      return;
+    }
+    if (inject(currentSettings.serverErrorProbability)) {
+      this.serverErrors.incrementAndGet();
+      resp.setStatus(currentSettings.serverErrorStatus);
+      return;
+    }
+
+    String body;
+    String pathInfo = Objects.toString(req.getPathInfo(), "");
+    switch (pathInfo) {
+      case PATH_PAGED:
+        body = pagedBody(currentSettings, parseIntParameter(req, "startAt", 0),
+            Math.min(currentSettings.pageSize,
+                parseIntParameter(req, "maxResults", currentSettings.pageSize)),
+            false);
+        break;
+      case PATH_TOKEN_PAGED:
+        String token = req.getParameter("nextPageToken");
+        int startAt =
+            (token == null) ? 0 : Integer.parseInt(token.substring(TOKEN_PREFIX.length()));
+        body = pagedBody(currentSettings, startAt, currentSettings.pageSize, true);
+        break;
+      default:
+        resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        return;
+    }
+
+    resp.setContentType("application/json");
+    writeBody(currentSettings, resp, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Replaces the behavior of the simulator. The requests that are already being processed keep
+   * the previous settings.
+   */
+  public void setSettings(Settings settings) {
+    synchronized (this) {
+      this.random = new Random(settings.seed);
+    }
+    this.settings = Objects.requireNonNull(settings);
+  }
+
+  private void writeBody(Settings currentSettings, HttpServletResponse resp, byte[] body)
+      throws IOException {
+
+    boolean dropConnection = inject(currentSettings.connectionDropProbability);
+    int length = dropConnection ? body.length / 2 : body.length;
+    if (currentSettings.trickleChunkSize <= 0) {
+      resp.setContentLength(body.length);
+    }
+
+    OutputStream out = resp.getOutputStream();
+    int chunkSize = (currentSettings.trickleChunkSize > 0) ? currentSettings.trickleChunkSize
+        : Math.max(1, length);
+    for (int offset = 0; offset < length; offset += chunkSize) {
+      if (offset > 0) {
+        sleep(currentSettings.trickleDelayMillis);
+      }
+      out.write(body, offset, Math.min(chunkSize, length - offset));
+      out.flush();
+    }
+
+    if (dropConnection) {
+      this.connectionDrops.incrementAndGet();
+      throw new IOException("Simulated connection drop in the middle of the response body");
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.Single;
+
+public class BlockingRestClientTest {
+
+  /**
+   * Answers the requests of {@value #PATH_FAIL} with status 500 as soon as the expected number of
+   * requests of {@value #PATH_HANG} are in flight. The requests of {@value #PATH_HANG} are never
+   * answered.
+   */
+  private static class StubHttpClient implements HttpClient {
+
+    private static final String PATH_FAIL = "/fail";
+
+    private static final String PATH_HANG = "/hang";
+
+    private final AtomicInteger disposedCalls = new AtomicInteger();
+
+    private final CountDownLatch hangingCalls;
+
+    StubHttpClient(int expectedHangingCalls) {
+      this.hangingCalls = new CountDownLatch(expectedHangingCalls);
+    }
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    public Single<HttpResponse> send(HttpRequest request) {
+      if (request.getUrl().endsWith(StubHttpClient.PATH_HANG)) {
+        return Single.<HttpResponse> never()
+            .doOnSubscribe((disposable) -> this.hangingCalls.countDown())
+            .doOnDispose(this.disposedCalls::incrementAndGet);
+      }
+      return Single.fromCallable(() -> {
+        Assert.assertTrue(this.hangingCalls.await(BlockingRestClientTest.TIMEOUT_SECONDS,
+            TimeUnit.SECONDS));
+        return HttpResponse.builder()
+            .status(500)
+            .headers(Collections.emptyMap())
+            .body(new ByteArrayAsyncContentProvider(new byte[0], Optional.empty()))
+            .build();
+      });
+    }
+  }
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private static RestRequest request(String path) {
+    return RestRequest.builder()
+        .basePath("http://localhost")
+        .path(path)
+        .build();
+  }
+
+  @Test
+  public void testFailedCallDisposesSiblingCalls() {
+    StubHttpClient httpClient = new StubHttpClient(2);
+    RestClient restClient = new RestClient(httpClient, TestJSONObjectMapper.INSTANCE);
+
+    try (BlockingRestClient blockingRestClient = new BlockingRestClient(restClient)) {
+      blockingRestClient.callAll(Arrays.asList(
+          BlockingRestClientTest.request(StubHttpClient.PATH_HANG),
+          BlockingRestClientTest.request(StubHttpClient.PATH_FAIL),
+          BlockingRestClientTest.request(StubHttpClient.PATH_HANG)),
+          Optional.empty(), Types.of(Bar.class));
+      Assert.fail("Expected RestException");
+    } catch (RestException e) {
+      Assert.assertEquals(500, e.getStatus());
+    }
+    Assert.assertEquals(2, httpClient.disposedCalls.get());
+  }
+
+  @Test
+  public void testFirstFailurePropagatesAndInterruptsSiblings() throws InterruptedException {
+    CountDownLatch siblingsStarted = new CountDownLatch(2);
+    AtomicInteger interruptedSiblings = new AtomicInteger();
+    Callable<String> sibling = () -> {
+      siblingsStarted.countDown();
+      try {
+        Thread.sleep(TimeUnit.SECONDS.toMillis(BlockingRestClientTest.TIMEOUT_SECONDS));
+      } catch (InterruptedException e) {
+        interruptedSiblings.incrementAndGet();
+        throw new IllegalStateException("second", e);
+      }
+      return "sibling";
+    };
+    Callable<String> failing = () -> {
+      Assert.assertTrue(
+          siblingsStarted.await(BlockingRestClientTest.TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      throw new IllegalStateException("first");
+    };
+
+    RestClient restClient = new RestClient(new StubHttpClient(0), TestJSONObjectMapper.INSTANCE);
+    try (BlockingRestClient blockingRestClient = new BlockingRestClient(restClient)) {
+      blockingRestClient.invokeAll(Arrays.asList(sibling, failing, sibling));
+      Assert.fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("first", e.getMessage());
+    }
+    Assert.assertEquals(2, interruptedSiblings.get());
+  }
+
+  @Test
+  public void testInterruptDisposesInFlightCalls() throws InterruptedException {
+    StubHttpClient httpClient = new StubHttpClient(2);
+    RestClient restClient = new RestClient(httpClient, TestJSONObjectMapper.INSTANCE);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicReference<Boolean> interruptFlag = new AtomicReference<>();
+
+    try (BlockingRestClient blockingRestClient = new BlockingRestClient(restClient)) {
+      Thread waitingThread = new Thread(() -> {
+        try {
+          List<Bar> result = blockingRestClient.callAll(Arrays.asList(
+              BlockingRestClientTest.request(StubHttpClient.PATH_HANG),
+              BlockingRestClientTest.request(StubHttpClient.PATH_HANG)),
+              Optional.empty(), Types.of(Bar.class));
+          failure.set(new AssertionError("Expected CancellationException: " + result));
+        } catch (CancellationException e) {
+          interruptFlag.set(Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+          failure.set(e);
+        }
+      });
+      waitingThread.start();
+      Assert.assertTrue(httpClient.hangingCalls.await(BlockingRestClientTest.TIMEOUT_SECONDS,
+          TimeUnit.SECONDS));
+
+      waitingThread.interrupt();
+      waitingThread.join(TimeUnit.SECONDS.toMillis(BlockingRestClientTest.TIMEOUT_SECONDS));
+
+      Assert.assertFalse(waitingThread.isAlive());
+    }
+    Assert.assertNull(failure.get());
+    Assert.assertEquals(Boolean.TRUE, interruptFlag.get());
+    Assert.assertEquals(2, httpClient.disposedCalls.get());
+  }
+}
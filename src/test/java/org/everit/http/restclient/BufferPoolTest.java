@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+  private static final int CHUNK_SIZE = 777;
+
+  private static final int CONTENT_SIZE = 100000;
+
+  private static final int MAX_SEGMENT_SIZE = 16 * 1024;
+
+  @Test
+  public void testCompositeBufferIsReused() throws IOException {
+    BufferPool pool = BufferPool.builder()
+        .leakDetection(true)
+        .maxSegmentSize(BufferPoolTest.MAX_SEGMENT_SIZE)
+        .build();
+    byte[] content = new byte[BufferPoolTest.CONTENT_SIZE];
+    new Random(1).nextBytes(content);
+
+    long allocatedAfterFirstRound = -1;
+    for (int round = 0; round < 3; round++) {
+      CompositeBuffer buffer = pool.newCompositeBuffer();
+      for (int offset = 0; offset < content.length; offset += BufferPoolTest.CHUNK_SIZE) {
+        buffer.write(ByteBuffer.wrap(content, offset,
+            Math.min(BufferPoolTest.CHUNK_SIZE, content.length - offset)));
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (InputStream in = buffer.newInputStream()) {
+        byte[] readBuffer = new byte[BufferPoolTest.CHUNK_SIZE];
+        int n = in.read(readBuffer);
+        while (n >= 0) {
+          out.write(readBuffer, 0, n);
+          n = in.read(readBuffer);
+        }
+      }
+      Assert.assertArrayEquals(content, out.toByteArray());
+      Assert.assertEquals(pool.getOutstandingBuffers(), pool.getLeakReports().size());
+
+      Assert.assertTrue(buffer.release());
+      Assert.assertEquals(0, pool.getOutstandingBuffers());
+      Assert.assertTrue(pool.getLeakReports().isEmpty());
+
+      if (allocatedAfterFirstRound < 0) {
+        allocatedAfterFirstRound = pool.getAllocatedBuffers();
+      }
+      Assert.assertEquals(allocatedAfterFirstRound, pool.getAllocatedBuffers());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDoubleRelease() {
+    CompositeBuffer buffer = BufferPool.builder().build().newCompositeBuffer();
+    buffer.release();
+    buffer.release();
+  }
+
+  @Test
+  public void testSliceSharesReferenceCount() {
+    BufferPool pool = BufferPool.builder().build();
+    PooledBuffer buffer = pool.allocate(5000);
+    Assert.assertEquals(8192, buffer.getCapacity());
+    buffer.write(ByteBuffer.wrap(new byte[10]));
+
+    PooledBuffer slice = buffer.retainedSlice(2, 5);
+    Assert.assertEquals(2, buffer.getRefCnt());
+    Assert.assertFalse(buffer.release());
+    Assert.assertTrue(slice.release());
+    Assert.assertEquals(0, pool.getOutstandingBuffers());
+  }
+}
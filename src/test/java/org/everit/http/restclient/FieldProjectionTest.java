@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class FieldProjectionTest {
+
+  public static class Issue {
+
+    public IssueFields fields;
+
+    public String key;
+  }
+
+  public static class IssueFields {
+
+    @JsonIgnore
+    public String ignored;
+
+    public Map<String, Object> status;
+
+    @JsonProperty("summary")
+    public String title;
+  }
+
+  public static class Page<T> {
+
+    public List<T> values;
+  }
+
+  public static class RawIssue {
+
+    public Map<String, Object> fields;
+  }
+
+  public static class SearchResult {
+
+    public List<Issue> issues;
+
+    public int total;
+  }
+
+  private static RestRequest request(Map<String, Collection<String>> queryParams) {
+    return RestRequest.builder()
+        .basePath("http://localhost")
+        .path("/rest/api/2/search")
+        .queryParams(queryParams)
+        .build();
+  }
+
+  @Test
+  public void testExplicitQueryParamIsKept() {
+    FieldProjection fieldProjection = FieldProjection.builder().build();
+    Map<String, Collection<String>> queryParams = new HashMap<>();
+    queryParams.put("fields", Collections.singleton("*all"));
+
+    RestRequest request = FieldProjectionTest.request(queryParams);
+    Assert.assertSame(request, fieldProjection.apply(request, SearchResult.class));
+  }
+
+  @Test
+  public void testGenericPage() {
+    FieldProjection fieldProjection = FieldProjection.builder().build();
+    Map<String, Collection<String>> projection =
+        fieldProjection.getProjection(new TypeReference<Page<Issue>>() {
+        }.getType());
+
+    Assert.assertEquals(Collections.singleton("status,summary"), projection.get("fields"));
+  }
+
+  @Test
+  public void testMapIsNotProjected() {
+    FieldProjection fieldProjection = FieldProjection.builder().build();
+    Assert.assertTrue(fieldProjection.getProjection(RawIssue.class).isEmpty());
+  }
+
+  @Test
+  public void testSearchResult() {
+    FieldProjection fieldProjection = FieldProjection.builder().build();
+    RestRequest request = fieldProjection
+        .apply(FieldProjectionTest.request(Collections.emptyMap()), SearchResult.class);
+
+    Assert.assertEquals(Collections.singleton("status,summary"),
+        request.getQueryParams().get("fields"));
+    Assert.assertFalse(request.getQueryParams().containsKey("properties"));
+  }
+}
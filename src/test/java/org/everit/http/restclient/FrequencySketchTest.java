@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+  @Test
+  public void testAgingHalvesCounters() {
+    FrequencySketch sketch = new FrequencySketch(10000);
+    for (int i = 0; i < 15; i++) {
+      sketch.increment("hot");
+    }
+    Assert.assertEquals(15, sketch.frequency("hot"));
+
+    // The sample size is ten times the maximum size, the last addition triggers the aging
+    for (int i = 0; i < 100000 - 15; i++) {
+      sketch.increment("key-" + i);
+    }
+
+    Assert.assertEquals(7, sketch.frequency("hot"));
+  }
+
+  @Test
+  public void testCountersOfNeighbourKeysAreIndependent() {
+    FrequencySketch sketch = new FrequencySketch(1000);
+    for (int i = 0; i < 64; i++) {
+      for (int j = 0; j <= i % 16; j++) {
+        sketch.increment(i);
+      }
+    }
+
+    for (int i = 0; i < 64; i++) {
+      Assert.assertEquals(Math.min(i % 16 + 1, 15), sketch.frequency(i));
+    }
+  }
+
+  @Test
+  public void testCountersSaturate() {
+    FrequencySketch sketch = new FrequencySketch(100);
+    Assert.assertEquals(0, sketch.frequency("key"));
+
+    for (int i = 0; i < 20; i++) {
+      sketch.increment("key");
+    }
+
+    Assert.assertEquals(15, sketch.frequency("key"));
+    Assert.assertEquals(0, sketch.frequency("other"));
+  }
+}
@@ -17,11 +17,13 @@ package org.everit.http.restclient;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.everit.web.servlet.HttpServlet;
 
 /**
@@ -34,12 +36,38 @@ public class HttpClientTestServlet extends HttpServlet {
 
   public static final String PATH_TEST_CONNECTION_ERROR_ON_ARRIVE = "/connection-error-on-arrive";
 
+  /**
+   * Responds after the number of milliseconds in the <code>delay</code> query parameter with the
+   * delay as the value of a {@link Bar}.
+   */
+  public static final String PATH_TEST_DELAYED = "/delayed";
+
+  public static final String PATH_TEST_ECHO = "/echo";
+
   public static final String PATH_TEST_FORM_URL_ENCODED = "/formurl";
 
+  public static final String PATH_TEST_SERVER_ERROR = "/server-error";
+
   public static final String PATH_TEST_WITH_BODY = "/body";
 
   public static final String PATH_TEST_WITH_NO_BODY = "/nobody";
 
+  private final AtomicInteger concurrentRequests = new AtomicInteger();
+
+  private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+  /**
+   * The maximum number of requests that were processed concurrently since the last
+   * {@link #resetMaxConcurrentRequests()}.
+   */
+  public int getMaxConcurrentRequests() {
+    return this.maxConcurrentRequests.get();
+  }
+
+  public void resetMaxConcurrentRequests() {
+    this.maxConcurrentRequests.set(0);
+  }
+
   @Override
   protected void service(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
@@ -47,7 +75,28 @@ public class HttpClientTestServlet extends HttpServlet {
     resp.setCharacterEncoding("UTF-8");
 
     String pathInfo = req.getPathInfo();
+    this.maxConcurrentRequests.accumulateAndGet(this.concurrentRequests.incrementAndGet(),
+        Math::max);
+    try {
+      handle(pathInfo, req, resp);
+    } finally {
+      this.concurrentRequests.decrementAndGet();
+    }
+  }
+
+  private void handle(String pathInfo, HttpServletRequest req, HttpServletResponse resp)
+      throws IOException {
     switch (pathInfo) {
+      case PATH_TEST_DELAYED:
+        writeDelayedResponse(req, resp);
+        break;
+      case PATH_TEST_ECHO:
+        resp.setContentType(req.getContentType());
+        IOUtils.copy(req.getInputStream(), resp.getOutputStream());
+        break;
+      case PATH_TEST_SERVER_ERROR:
+        resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        break;
       case PATH_TEST_WITH_BODY:
         writeRequestBodyToResponse(req, resp);
         break;
@@ -56,6 +105,20 @@ public class HttpClientTestServlet extends HttpServlet {
     }
   }
 
+  private void writeDelayedResponse(HttpServletRequest req, HttpServletResponse resp)
+      throws IOException {
+    String delay = req.getParameter("delay");
+    try {
+      Thread.sleep(Long.parseLong(delay));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    byte[] body = ("{\"value\":\"" + delay + "\"}").getBytes(StandardCharsets.UTF_8);
+    resp.setContentLength(body.length);
+    resp.getOutputStream().write(body);
+  }
+
   private void writeRequestBodyToResponse(HttpServletRequest req, HttpServletResponse resp) {
     try {
       byte[] body = "{\"value\":\"bar\"}".getBytes(StandardCharsets.UTF_8);
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.reactivex.Single;
+
+public class IncrementalSyncTest {
+
+  /**
+   * Serves the entities that were updated since the <code>since</code> query parameter ordered by
+   * the update time, in pages of two entities.
+   */
+  private static class SearchHttpClient implements HttpClient {
+
+    private static final int PAGE_SIZE = 2;
+
+    private final Map<Integer, Runnable> beforeRequest = new HashMap<>();
+
+    private final Map<String, Map<String, String>> entities = new HashMap<>();
+
+    private int requests = 0;
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    void put(String id, String version, long updatedSeconds) {
+      Map<String, String> entity = new HashMap<>();
+      entity.put("id", id);
+      entity.put("version", version);
+      entity.put("updated", Instant.ofEpochSecond(updatedSeconds).toString());
+      this.entities.put(id, entity);
+    }
+
+    @Override
+    public Single<HttpResponse> send(HttpRequest request) {
+      this.requests++;
+      Runnable action = this.beforeRequest.remove(this.requests);
+      if (action != null) {
+        action.run();
+      }
+      Map<String, String> queryParams = new HashMap<>();
+      for (String queryParam : URI.create(request.getUrl()).getQuery().split("&")) {
+        String[] nameAndValue = queryParam.split("=");
+        queryParams.put(nameAndValue[0], nameAndValue[1]);
+      }
+      Instant since = Instant.ofEpochSecond(Long.parseLong(queryParams.get("since")));
+      int startAt = Integer.parseInt(queryParams.get("startAt"));
+
+      List<Map<String, String>> matching = this.entities.values().stream()
+          .filter((entity) -> !Instant.parse(entity.get("updated")).isBefore(since))
+          .sorted(Comparator.comparing((Map<String, String> entity) -> entity.get("updated"))
+              .thenComparing((entity) -> entity.get("id")))
+          .collect(Collectors.toList());
+      List<Map<String, String>> page = matching.subList(Math.min(startAt, matching.size()),
+          Math.min(startAt + PAGE_SIZE, matching.size()));
+
+      Map<String, Object> body = new HashMap<>();
+      body.put("startAt", startAt);
+      body.put("total", matching.size());
+      body.put("values", page);
+      byte[] bytes = TestJSONObjectMapper.INSTANCE.toJSON(body).getBytes(StandardCharsets.UTF_8);
+      return Single.just(HttpResponse.builder()
+          .status(200)
+          .headers(Collections.emptyMap())
+          .body(new ByteArrayAsyncContentProvider(bytes, Optional.empty()))
+          .build());
+    }
+  }
+
+  private static List<String> ids(List<Map<String, String>> entities) {
+    List<String> result = new ArrayList<>();
+    for (Map<String, String> entity : entities) {
+      result.add(entity.get("id") + ":" + entity.get("version"));
+    }
+    return result;
+  }
+
+  private static RestRequest pageRequest(Instant since, int startAt) {
+    Map<String, Collection<String>> queryParams = new HashMap<>();
+    queryParams.put("since", Collections.singleton(String.valueOf(since.getEpochSecond())));
+    queryParams.put("startAt", Collections.singleton(String.valueOf(startAt)));
+    return RestRequest.builder()
+        .basePath("http://localhost")
+        .path("/search")
+        .queryParams(queryParams)
+        .build();
+  }
+
+  private static IncrementalSync<Map<String, String>> sync(SearchHttpClient httpClient,
+      WatermarkStore watermarkStore) {
+    return IncrementalSync.<Map<String, String>> builder()
+        .idFunction((entity) -> entity.get("id"))
+        .itemType(new TypeReference<Map<String, String>>() {
+        })
+        .overlap(Duration.ofSeconds(60))
+        .pageRequestFactory(IncrementalSyncTest::pageRequest)
+        .queryKey("search")
+        .restClient(new RestClient(httpClient, TestJSONObjectMapper.INSTANCE))
+        .updatedFunction((entity) -> Instant.parse(entity.get("updated")))
+        .versionFunction((entity) -> entity.get("version"))
+        .watermarkStore(watermarkStore)
+        .build();
+  }
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testChangesSinceWatermark() {
+    SearchHttpClient httpClient = new SearchHttpClient();
+    httpClient.put("A", "1", 100);
+    httpClient.put("B", "1", 200);
+    httpClient.put("C", "1", 200);
+
+    InMemoryWatermarkStore watermarkStore = new InMemoryWatermarkStore();
+    IncrementalSync<Map<String, String>> sync = IncrementalSyncTest.sync(httpClient,
+        watermarkStore);
+
+    Assert.assertEquals(Arrays.asList("A:1", "B:1", "C:1"),
+        ids(sync.sync().toList().blockingGet()));
+    Watermark watermark = watermarkStore.load("search").blockingGet().get();
+    Assert.assertEquals(Instant.ofEpochSecond(200), watermark.getTimestamp());
+    Assert.assertEquals(2, watermark.getSeenVersions().size());
+
+    Assert.assertTrue(sync.sync().toList().blockingGet().isEmpty());
+
+    httpClient.put("D", "1", 200);
+    httpClient.put("B", "2", 300);
+    int requestsBefore = httpClient.requests;
+    Assert.assertEquals(Arrays.asList("D:1", "B:2"),
+        ids(sync.sync().toList().blockingGet()));
+    Assert.assertEquals(2, httpClient.requests - requestsBefore);
+    Assert.assertEquals(Instant.ofEpochSecond(300),
+        watermarkStore.load("search").blockingGet().get().getTimestamp());
+  }
+
+  @Test
+  public void testEntitiesWithSameUpdateTime() {
+    SearchHttpClient httpClient = new SearchHttpClient();
+    for (String id : Arrays.asList("A", "B", "C", "D", "E")) {
+      httpClient.put(id, "1", 100);
+    }
+
+    IncrementalSync<Map<String, String>> sync =
+        IncrementalSyncTest.sync(httpClient, new InMemoryWatermarkStore());
+
+    Assert.assertEquals(Arrays.asList("A:1", "B:1", "C:1", "D:1", "E:1"),
+        ids(sync.sync().toList().blockingGet()));
+    Assert.assertEquals(3, httpClient.requests);
+  }
+
+  @Test
+  public void testEntityMovesToTheEndDuringCycle() {
+    SearchHttpClient httpClient = new SearchHttpClient();
+    httpClient.put("A", "1", 100);
+    httpClient.put("B", "1", 200);
+    httpClient.put("C", "1", 300);
+    httpClient.put("D", "1", 400);
+    httpClient.put("E", "1", 500);
+    // A moves from the first page to the end of the result, so the others shift left by one
+    httpClient.beforeRequest.put(2, () -> httpClient.put("A", "2", 600));
+
+    IncrementalSync<Map<String, String>> sync =
+        IncrementalSyncTest.sync(httpClient, new InMemoryWatermarkStore());
+
+    Assert.assertEquals(Arrays.asList("A:1", "B:1", "C:1", "D:1", "E:1", "A:2"),
+        ids(sync.sync().toList().blockingGet()));
+    Assert.assertEquals(3, httpClient.requests);
+  }
+
+  @Test
+  public void testFileWatermarkStore() throws IOException {
+    FileWatermarkStore store = FileWatermarkStore.builder()
+        .directory(this.temporaryFolder.getRoot().toPath().resolve("watermarks"))
+        .build();
+    Assert.assertFalse(store.load("project = SIM").blockingGet().isPresent());
+
+    Map<String, String> seenVersions = new HashMap<>();
+    seenVersions.put("10001", "2020-01-01T00:00:00Z");
+    seenVersions.put("id with space & =", "v 1");
+    Watermark watermark = new Watermark(Instant.ofEpochSecond(1000), seenVersions);
+    store.save("project = SIM", watermark).blockingAwait();
+    store.save("project = OTHER", new Watermark(Instant.EPOCH, Collections.emptyMap()))
+        .blockingAwait();
+
+    Assert.assertEquals(Optional.of(watermark), store.load("project = SIM").blockingGet());
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LazyJSONDocumentTest {
+
+  private static final String JSON = "{\"key\":\"SIM-1\",\"fields\":{"
+      + "\"status\":{\"name\":\"Open\",\"id\":3},"
+      + "\"a/b\":true,"
+      + "\"desc\\\"ription\":\"line\\nnext \\u00e9\","
+      + "\"customfield_10010\":[1,2,3],"
+      + "\"assignee\":null}}";
+
+  private static LazyJSONDocument document() {
+    return new LazyJSONDocument(LazyJSONDocumentTest.JSON.getBytes(StandardCharsets.UTF_8),
+        TestJSONObjectMapper.INSTANCE);
+  }
+
+  @Test
+  public void testConvertValues() {
+    LazyJSONDocument document = LazyJSONDocumentTest.document();
+
+    Bar bar = new LazyJSONDocument("{\"nested\":{\"value\":\"bar\"}}"
+        .getBytes(StandardCharsets.UTF_8), TestJSONObjectMapper.INSTANCE)
+            .get("/nested", Bar.class).get();
+    Assert.assertEquals("bar", bar.value);
+
+    Assert.assertEquals(Optional.of(Arrays.asList(1, 2, 3)),
+        document.get("/fields/customfield_10010", new TypeReference<List<Integer>>() {
+        }));
+    Assert.assertEquals(Optional.of(3), document.get("/fields/status/id", Integer.class));
+    Assert.assertFalse(document.get("/fields/assignee", Bar.class).isPresent());
+    Assert.assertTrue(document.contains("/fields/assignee"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedDocument() {
+    new LazyJSONDocument("{\"a\":[1,2}".getBytes(StandardCharsets.UTF_8),
+        TestJSONObjectMapper.INSTANCE).contains("/a");
+  }
+
+  @Test
+  public void testPointers() {
+    LazyJSONDocument document = LazyJSONDocumentTest.document();
+
+    Assert.assertEquals(Optional.of("SIM-1"), document.getString("/key"));
+    Assert.assertEquals(Optional.of("Open"), document.getString("/fields/status/name"));
+    Assert.assertEquals(Optional.of("true"), document.getString("/fields/a~1b"));
+    Assert.assertEquals(Optional.of("line\nnext \u00e9"),
+        document.getString("/fields/desc\"ription"));
+    Assert.assertEquals(Optional.of("2"), document.getString("/fields/customfield_10010/1"));
+    Assert.assertEquals(Optional.of("{\"name\":\"Open\",\"id\":3}"),
+        document.getRawJSON("/fields/status"));
+    Assert.assertEquals(3, document.getSize("/fields/customfield_10010"));
+    Assert.assertEquals(5, document.getSize("/fields"));
+
+    Assert.assertFalse(document.contains("/fields/customfield_10010/3"));
+    Assert.assertFalse(document.contains("/fields/missing"));
+    Assert.assertFalse(document.contains("/key/nested"));
+  }
+}
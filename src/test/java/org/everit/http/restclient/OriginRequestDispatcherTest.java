@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+
+public class OriginRequestDispatcherTest {
+
+  private static RestRequest request(String basePath) {
+    return RestRequest.builder()
+        .basePath(basePath)
+        .path("/test")
+        .build();
+  }
+
+  @Test
+  public void testDynamicLimit() {
+    AtomicInteger limit = new AtomicInteger(1);
+    OriginRequestDispatcher dispatcher = OriginRequestDispatcher.builder()
+        .maxInFlightPerOrigin((origin) -> limit.get())
+        .build();
+    URI origin = URI.create("http://localhost");
+
+    SingleSubject<String> first = SingleSubject.create();
+    SingleSubject<String> second = SingleSubject.create();
+    SingleSubject<String> third = SingleSubject.create();
+    dispatcher.dispatch(request("http://localhost"), first).test();
+    dispatcher.dispatch(request("http://localhost:80/"), second).test();
+    TestObserver<String> thirdObserver =
+        dispatcher.dispatch(request("HTTP://LOCALHOST"), third).test();
+
+    Assert.assertEquals(1, dispatcher.getInFlight(origin));
+    Assert.assertEquals(2, dispatcher.getQueueLength(origin));
+
+    limit.set(2);
+    first.onSuccess("first");
+    Assert.assertEquals(2, dispatcher.getInFlight(origin));
+    Assert.assertEquals(0, dispatcher.getQueueLength(origin));
+
+    second.onSuccess("second");
+    third.onSuccess("third");
+    thirdObserver.assertValue("third");
+    Assert.assertEquals(0, dispatcher.getInFlight(origin));
+  }
+
+  @Test
+  public void testOriginsAreIndependent() {
+    OriginRequestDispatcher dispatcher = OriginRequestDispatcher.builder()
+        .maxInFlightPerOrigin(1)
+        .build();
+
+    SingleSubject<String> blocker = SingleSubject.create();
+    dispatcher.dispatch(request("https://first.example.com/jira"), blocker).test();
+    TestObserver<String> sameOrigin = dispatcher
+        .dispatch(request("https://first.example.com:443/confluence"), SingleSubject.create())
+        .test();
+    SingleSubject<String> otherOriginCall = SingleSubject.create();
+    dispatcher.dispatch(request("https://second.example.com"), otherOriginCall).test();
+
+    Assert.assertTrue(otherOriginCall.hasObservers());
+    Assert.assertEquals(1, dispatcher.getQueueLength(URI.create("https://first.example.com")));
+
+    sameOrigin.dispose();
+    blocker.onSuccess("blocker");
+    Assert.assertEquals(0, dispatcher.getInFlight(URI.create("https://first.example.com")));
+    Assert.assertEquals(0, dispatcher.getQueueLength(URI.create("https://first.example.com")));
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.observers.TestObserver;
+
+public class ParallelArrayDecoderTest {
+
+  private static final int ELEMENT_COUNT = 200;
+
+  private static LazyJSONDocument document(String json) {
+    return new LazyJSONDocument(json.getBytes(StandardCharsets.UTF_8),
+        TestJSONObjectMapper.INSTANCE);
+  }
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void after() {
+    this.pool.shutdown();
+  }
+
+  private ParallelArrayDecoder decoder() {
+    return ParallelArrayDecoder.builder()
+        .pool(this.pool)
+        .minRangeLength(1)
+        .build();
+  }
+
+  @Test
+  public void testAsyncConversionFailure() throws InterruptedException {
+    TestObserver<Optional<List<Bar>>> observer = decoder()
+        .decodeAsync(ParallelArrayDecoderTest.document("[{\"value\":\"a\"},\"b\",{}]"), "",
+            Types.of(Bar.class))
+        .test();
+
+    Assert.assertTrue(observer.await(1, TimeUnit.MINUTES));
+    observer.assertError(UncheckedIOException.class);
+  }
+
+  @Test
+  public void testAsyncDecodingRunsOnPool() throws InterruptedException {
+    Thread[] emittingThread = new Thread[1];
+    TestObserver<Optional<List<Bar>>> observer = decoder()
+        .decodeAsync(ParallelArrayDecoderTest.document("[{\"value\":\"a\"},{\"value\":\"b\"}]"),
+            "", Types.of(Bar.class))
+        .doOnSuccess((elements) -> emittingThread[0] = Thread.currentThread())
+        .test();
+
+    Assert.assertTrue(observer.await(1, TimeUnit.MINUTES));
+    observer.assertNoErrors();
+    Assert.assertEquals("b", observer.values().get(0).get().get(1).value);
+    Assert.assertTrue(emittingThread[0] instanceof ForkJoinWorkerThread);
+    Assert.assertSame(this.pool, ((ForkJoinWorkerThread) emittingThread[0]).getPool());
+  }
+
+  @Test(expected = UncheckedIOException.class)
+  public void testConversionFailure() {
+    decoder().decode(ParallelArrayDecoderTest.document("[{\"value\":\"a\"},\"b\",{}]"), "",
+        Types.of(Bar.class));
+  }
+
+  @Test
+  public void testElementsInDocumentOrder() {
+    StringBuilder sb = new StringBuilder("{\"total\":")
+        .append(ParallelArrayDecoderTest.ELEMENT_COUNT)
+        .append(",\"issues\":[");
+    for (int i = 0; i < ParallelArrayDecoderTest.ELEMENT_COUNT; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      if (i % 10 == 0) {
+        sb.append("null");
+        continue;
+      }
+      // Elements of different length, so the ranges are split by length rather than by count
+      sb.append("{\"value\":\"").append(i);
+      for (int j = 0; j < i; j++) {
+        sb.append('x');
+      }
+      sb.append("\"}");
+    }
+    LazyJSONDocument document = ParallelArrayDecoderTest.document(sb.append("]}").toString());
+
+    List<Bar> bars = decoder().decode(document, "/issues", Types.of(Bar.class)).get();
+
+    Assert.assertEquals(ParallelArrayDecoderTest.ELEMENT_COUNT, bars.size());
+    for (int i = 0; i < ParallelArrayDecoderTest.ELEMENT_COUNT; i++) {
+      if (i % 10 == 0) {
+        Assert.assertNull(bars.get(i));
+      } else {
+        Assert.assertTrue(bars.get(i).value.startsWith(i + "x"));
+      }
+    }
+  }
+
+  @Test
+  public void testNoArrayAtPointer() {
+    LazyJSONDocument document = ParallelArrayDecoderTest.document("{\"values\":[],\"total\":0}");
+
+    Assert.assertEquals(Optional.empty(),
+        decoder().decode(document, "/total", Types.of(Bar.class)));
+    Assert.assertEquals(Optional.empty(),
+        decoder().decode(document, "/missing", Types.of(Bar.class)));
+    Assert.assertTrue(decoder().decode(document, "/values", Types.of(Bar.class)).get().isEmpty());
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.reactivex.schedulers.TestScheduler;
+
+public class PersistentResponseStoreTest {
+
+  private static final int KEY_COUNT = 5000;
+
+  private static final int OVERWRITE_ROUNDS = 20;
+
+  private static final int OVERWRITE_STEP = 7;
+
+  private static String expectedBody(int i) {
+    return i % PersistentResponseStoreTest.OVERWRITE_STEP == 0
+        ? "overwritten-" + (PersistentResponseStoreTest.OVERWRITE_ROUNDS - 1) + "-" + i
+        : "body-" + i;
+  }
+
+  private static StoredResponse response(String body, Optional<String> etag) {
+    return new StoredResponse(body.getBytes(StandardCharsets.UTF_8), etag, Optional.empty(), 1, 2);
+  }
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private void assertContent(PersistentResponseStore store) {
+    Assert.assertFalse(store.get("key-1").isPresent());
+    for (int i = 2; i < PersistentResponseStoreTest.KEY_COUNT; i++) {
+      Optional<StoredResponse> response = store.get("key-" + i);
+      Assert.assertTrue(response.isPresent());
+      Assert.assertEquals(PersistentResponseStoreTest.expectedBody(i),
+          response.get().getBodyAsString());
+    }
+  }
+
+  private void fill(PersistentResponseStore store) {
+    for (int i = 0; i < PersistentResponseStoreTest.KEY_COUNT; i++) {
+      store.put("key-" + i,
+          PersistentResponseStoreTest.response("body-" + i, Optional.of("e" + i)));
+    }
+    for (int round = 0; round < PersistentResponseStoreTest.OVERWRITE_ROUNDS; round++) {
+      for (int i = 0; i < PersistentResponseStoreTest.KEY_COUNT;
+          i += PersistentResponseStoreTest.OVERWRITE_STEP) {
+        store.put("key-" + i, PersistentResponseStoreTest
+            .response("overwritten-" + round + "-" + i, Optional.empty()));
+      }
+    }
+    store.remove("key-1");
+  }
+
+  private PersistentResponseStore open(Path directory) {
+    return PersistentResponseStore.builder()
+        .directory(directory)
+        .maxSegmentSize(200000)
+        .build();
+  }
+
+  @Test
+  public void testBackgroundCompaction() throws IOException {
+    TestScheduler scheduler = new TestScheduler();
+    Path directory = this.temporaryFolder.newFolder().toPath();
+    try (PersistentResponseStore store = PersistentResponseStore.builder()
+        .directory(directory)
+        .maxSegmentSize(200000)
+        .scheduler(scheduler)
+        .build()) {
+      fill(store);
+      Assert.assertTrue(store.getTotalBytes() > store.getLiveBytes());
+
+      scheduler.triggerActions();
+
+      Assert.assertEquals(store.getLiveBytes(), store.getTotalBytes());
+      assertContent(store);
+    }
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    Path directory = this.temporaryFolder.newFolder().toPath();
+    try (PersistentResponseStore store = open(directory)) {
+      fill(store);
+      store.compact();
+
+      Assert.assertEquals(store.getLiveBytes(), store.getTotalBytes());
+      assertContent(store);
+    }
+  }
+
+  @Test
+  public void testKeyIsNotPersisted() throws IOException {
+    Path directory = this.temporaryFolder.newFolder().toPath();
+    String key = "GET http://localhost|/issue|{}|{Authorization=Bearer secret-token}";
+    try (PersistentResponseStore store = open(directory)) {
+      store.put(key, PersistentResponseStoreTest.response("body", Optional.empty()));
+      Assert.assertEquals("body", store.get(key).get().getBodyAsString());
+    }
+
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        Assert.assertFalse(content.contains("secret-token"));
+      }
+    }
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    Path directory = this.temporaryFolder.newFolder().toPath();
+    try (PersistentResponseStore store = open(directory)) {
+      fill(store);
+    }
+
+    try (PersistentResponseStore store = open(directory)) {
+      assertContent(store);
+      Assert.assertEquals(Optional.of("e2"), store.get("key-2").get().getEtag());
+    }
+  }
+
+  @Test
+  public void testRebuildIndex() throws IOException {
+    Path directory = this.temporaryFolder.newFolder().toPath();
+    try (PersistentResponseStore store = open(directory)) {
+      fill(store);
+    }
+    Files.delete(directory.resolve("index.dat"));
+
+    try (PersistentResponseStore store = open(directory)) {
+      assertContent(store);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+
+public class PriorityRequestDispatcherTest {
+
+  private static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+
+  private static RestRequest request(RequestPriority priority, Optional<Instant> deadline) {
+    return RestRequest.builder()
+        .basePath("http://localhost")
+        .path("/test")
+        .priority(priority)
+        .deadline(deadline)
+        .build();
+  }
+
+  private PriorityRequestDispatcher createDispatcher() {
+    return PriorityRequestDispatcher.builder()
+        .clock(Clock.fixed(PriorityRequestDispatcherTest.NOW, ZoneOffset.UTC))
+        .maxInFlight(1)
+        .weight(RequestPriority.INTERACTIVE, 2)
+        .weight(RequestPriority.BACKGROUND, 1)
+        .build();
+  }
+
+  @Test
+  public void testCancelQueuedCall() {
+    PriorityRequestDispatcher dispatcher = createDispatcher();
+    SingleSubject<String> blocker = SingleSubject.create();
+    dispatcher.dispatch(request(RequestPriority.NORMAL, Optional.empty()), blocker).test();
+
+    List<String> started = new ArrayList<>();
+    TestObserver<String> cancelled = dispatcher
+        .dispatch(request(RequestPriority.NORMAL, Optional.empty()),
+            Single.fromCallable(() -> {
+              started.add("cancelled");
+              return "cancelled";
+            }))
+        .test();
+    cancelled.dispose();
+
+    blocker.onSuccess("blocker");
+    Assert.assertTrue(started.isEmpty());
+    Assert.assertEquals(0, dispatcher.getInFlight());
+  }
+
+  @Test
+  public void testExpiredDeadline() {
+    PriorityRequestDispatcher dispatcher = createDispatcher();
+    dispatcher
+        .dispatch(request(RequestPriority.INTERACTIVE,
+            Optional.of(PriorityRequestDispatcherTest.NOW.minusSeconds(1))),
+            Single.just("late"))
+        .test()
+        .assertError(RequestDeadlineExceededException.class);
+  }
+
+  @Test
+  public void testWeightedOrder() {
+    PriorityRequestDispatcher dispatcher = createDispatcher();
+    SingleSubject<String> blocker = SingleSubject.create();
+    dispatcher.dispatch(request(RequestPriority.NORMAL, Optional.empty()), blocker).test();
+
+    List<String> started = new ArrayList<>();
+    List<TestObserver<String>> observers = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      for (RequestPriority priority : new RequestPriority[] { RequestPriority.BACKGROUND,
+          RequestPriority.INTERACTIVE }) {
+        String name = priority + "-" + i;
+        observers.add(dispatcher.dispatch(request(priority, Optional.empty()),
+            Single.fromCallable(() -> {
+              started.add(name);
+              return name;
+            })).test());
+      }
+    }
+    Assert.assertEquals(2, dispatcher.getQueueLength(RequestPriority.INTERACTIVE));
+
+    blocker.onSuccess("blocker");
+
+    Assert.assertEquals(4, started.size());
+    Assert.assertEquals("INTERACTIVE-0", started.get(0));
+    Assert.assertEquals("BACKGROUND-0", started.get(1));
+    Assert.assertEquals("INTERACTIVE-1", started.get(2));
+    Assert.assertEquals("BACKGROUND-1", started.get(3));
+    for (TestObserver<String> observer : observers) {
+      observer.assertComplete();
+    }
+  }
+}
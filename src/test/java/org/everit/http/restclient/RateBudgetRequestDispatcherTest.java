@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+public class RateBudgetRequestDispatcherTest {
+
+  private static final Clock CLOCK =
+      Clock.fixed(Instant.parse("2020-01-01T00:00:30Z"), ZoneOffset.UTC);
+
+  private static void dispatch(RequestDispatcher dispatcher, List<String> started, int count) {
+    RestRequest restRequest = RestRequest.builder()
+        .basePath("http://localhost")
+        .path("/test")
+        .build();
+    for (int i = 0; i < count; i++) {
+      String name = "call-" + i;
+      dispatcher.dispatch(restRequest, Single.fromCallable(() -> {
+        started.add(name);
+        return name;
+      })).test();
+    }
+  }
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testFallbackWhenStoreFails() {
+    TestScheduler scheduler = new TestScheduler();
+    RateBudgetRequestDispatcher dispatcher = RateBudgetRequestDispatcher.builder()
+        .clock(RateBudgetRequestDispatcherTest.CLOCK)
+        .scheduler(scheduler)
+        .store((budgetKey, requestedTokens) -> Single.error(new IOException("unavailable")))
+        .fallbackRateLimit(1)
+        .build();
+
+    List<String> started = new ArrayList<>();
+    RateBudgetRequestDispatcherTest.dispatch(dispatcher, started, 2);
+    Assert.assertEquals(1, started.size());
+
+    scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+    Assert.assertEquals(2, started.size());
+  }
+
+  @Test
+  public void testFileLockStoreSharesBudget() throws IOException {
+    FileLockRateBudgetStore.Builder builder = FileLockRateBudgetStore.builder()
+        .clock(RateBudgetRequestDispatcherTest.CLOCK)
+        .directory(this.temporaryFolder.getRoot().toPath())
+        .limit(5)
+        .scheduler(Schedulers.trampoline());
+    FileLockRateBudgetStore store1 = builder.build();
+    FileLockRateBudgetStore store2 = builder.build();
+
+    Assert.assertEquals(3, store1.lease("site", 3).blockingGet().getGrantedTokens());
+    RateBudgetLease lease = store2.lease("site", 3).blockingGet();
+    Assert.assertEquals(2, lease.getGrantedTokens());
+    Assert.assertEquals(Instant.parse("2020-01-01T00:01:00Z"), lease.getValidUntil());
+    Assert.assertEquals(3, store2.lease("other", 3).blockingGet().getGrantedTokens());
+  }
+
+  @Test
+  public void testLeasesInBlocks() {
+    InMemoryRateBudgetStore inMemoryStore = InMemoryRateBudgetStore.builder()
+        .clock(RateBudgetRequestDispatcherTest.CLOCK)
+        .limit(5)
+        .build();
+    AtomicInteger leaseCount = new AtomicInteger();
+    RateBudgetRequestDispatcher dispatcher = RateBudgetRequestDispatcher.builder()
+        .clock(RateBudgetRequestDispatcherTest.CLOCK)
+        .scheduler(new TestScheduler())
+        .store((budgetKey, requestedTokens) -> {
+          leaseCount.incrementAndGet();
+          return inMemoryStore.lease(budgetKey, requestedTokens);
+        })
+        .leaseSize(2)
+        .build();
+
+    List<String> started = new ArrayList<>();
+    RateBudgetRequestDispatcherTest.dispatch(dispatcher, started, 7);
+
+    Assert.assertEquals(5, started.size());
+    Assert.assertEquals(4, leaseCount.get());
+  }
+}
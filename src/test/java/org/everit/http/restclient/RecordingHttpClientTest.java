@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpMethod;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.async.AsyncContentUtil;
+import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.reactivex.Single;
+
+public class RecordingHttpClientTest {
+
+  /**
+   * Responds with the body of the request wrapped in an object.
+   */
+  private static class EchoHttpClient implements HttpClient {
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    public Single<HttpResponse> send(HttpRequest request) {
+      return AsyncContentUtil.readString(request.getBody().get(), StandardCharsets.UTF_8)
+          .map((body) -> HttpResponse.builder()
+              .status(200)
+              .headers(Collections.emptyMap())
+              .body(new ByteArrayAsyncContentProvider(
+                  ("{\"echo\":" + body + "}").getBytes(StandardCharsets.UTF_8),
+                  Optional.empty()))
+              .build());
+    }
+  }
+
+  private static HttpRequest search(String jql, String token) {
+    Map<String, String> headers = Collections.singletonMap("Authorization", "Bearer " + token);
+    return HttpRequest.builder()
+        .url("http://localhost/rest/api/2/search")
+        .method(HttpMethod.POST)
+        .headers(headers)
+        .body(Optional.of(new ByteArrayAsyncContentProvider(
+            ("\"" + jql + "\"").getBytes(StandardCharsets.UTF_8), Optional.empty())))
+        .build();
+  }
+
+  private static String send(HttpClient httpClient, HttpRequest request) {
+    return httpClient.send(request)
+        .flatMap((httpResponse) -> AsyncContentUtil.readString(httpResponse.getBody(),
+            StandardCharsets.UTF_8))
+        .blockingGet();
+  }
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private void record(Path file, String... jqls) throws IOException {
+    try (RecordingHttpClient recordingHttpClient = RecordingHttpClient.builder()
+        .httpClient(new EchoHttpClient())
+        .file(file)
+        .build()) {
+      for (String jql : jqls) {
+        RecordingHttpClientTest.send(recordingHttpClient,
+            RecordingHttpClientTest.search(jql, "recording-token"));
+      }
+    }
+  }
+
+  @Test
+  public void testAppendKeepsOffsetsMonotonic() throws IOException {
+    Path file = this.temporaryFolder.newFile().toPath();
+    record(file, "project = A");
+    record(file, "project = B");
+
+    try (ReplayingHttpClient replayingHttpClient = ReplayingHttpClient.builder()
+        .file(file)
+        .build()) {
+      List<RecordedExchange> exchanges = replayingHttpClient.getRecordedExchanges();
+      Assert.assertEquals(2, exchanges.size());
+      RecordedExchange first = exchanges.get(0);
+      Assert.assertTrue(exchanges.get(1).getStartOffsetNanos()
+          >= first.getStartOffsetNanos() + first.getLatencyNanos());
+    }
+  }
+
+  @Test
+  public void testRequestsWithDifferentBodies() throws IOException {
+    Path file = this.temporaryFolder.newFile().toPath();
+    record(file, "project = A", "project = B");
+
+    try (ReplayingHttpClient replayingHttpClient = ReplayingHttpClient.builder()
+        .file(file)
+        .build()) {
+      Assert.assertEquals("{\"echo\":\"project = B\"}", RecordingHttpClientTest
+          .send(replayingHttpClient, RecordingHttpClientTest.search("project = B", "other")));
+      Assert.assertEquals("{\"echo\":\"project = A\"}", RecordingHttpClientTest
+          .send(replayingHttpClient, RecordingHttpClientTest.search("project = A", "other")));
+
+      RecordedExchange exchange = replayingHttpClient.getRecordedExchanges().get(0);
+      Assert.assertFalse(exchange.getRequestHeaders().containsKey("Authorization"));
+    }
+  }
+}
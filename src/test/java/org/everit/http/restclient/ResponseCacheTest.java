@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpMethod;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+
+public class ResponseCacheTest {
+
+  /**
+   * Responds with a {@link Bar} whose value is the <code>Authorization</code> header of the
+   * request.
+   */
+  private static class AuthorizationEchoHttpClient implements HttpClient {
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    public Single<HttpResponse> send(HttpRequest request) {
+      this.requests.incrementAndGet();
+      byte[] body = ("{\"value\":\"" + request.getHeaders().get("Authorization") + "\"}")
+          .getBytes(StandardCharsets.UTF_8);
+      return Single.just(HttpResponse.builder()
+          .status(200)
+          .headers(Collections.emptyMap())
+          .body(new ByteArrayAsyncContentProvider(body, Optional.empty()))
+          .build());
+    }
+  }
+
+  private static final String PATH = "/rest/api/2/field";
+
+  private static final long SHORT_TTL_MILLIS = 100;
+
+  private static RestRequestEnhancer authorization(String user) {
+    return (restRequest) -> Single.just(RestRequest.builderFrom(restRequest)
+        .headers(Collections.singletonMap("Authorization", user))
+        .build());
+  }
+
+  private static Supplier<Single<String>> countingLoader(AtomicInteger loads) {
+    return () -> Single.fromCallable(() -> "v" + loads.incrementAndGet());
+  }
+
+  private static RestRequest request(String path) {
+    return RestRequest.builder()
+        .basePath("http://localhost")
+        .path(path)
+        .build();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private final TypeReference<String> stringType = Types.of(String.class);
+
+  @Test
+  public void testEnhancedHeadersArePartOfKey() {
+    AuthorizationEchoHttpClient httpClient = new AuthorizationEchoHttpClient();
+    RestClient restClient = RestClient.builder()
+        .httpClient(httpClient)
+        .objectMapper(TestJSONObjectMapper.INSTANCE)
+        .responseCache(Optional.of(ResponseCache.builder()
+            .defaultTtl(Optional.of(Duration.ofMinutes(1)))
+            .build()))
+        .build();
+    RestRequest request = ResponseCacheTest.request(ResponseCacheTest.PATH);
+
+    Assert.assertEquals("alice", restClient.callEndpoint(request,
+        Optional.of(ResponseCacheTest.authorization("alice")), Types.of(Bar.class))
+        .blockingGet().value);
+    Assert.assertEquals("bob", restClient.callEndpoint(request,
+        Optional.of(ResponseCacheTest.authorization("bob")), Types.of(Bar.class))
+        .blockingGet().value);
+    Assert.assertEquals("alice", restClient.callEndpoint(request,
+        Optional.of(ResponseCacheTest.authorization("alice")), Types.of(Bar.class))
+        .blockingGet().value);
+
+    Assert.assertEquals(2, httpClient.requests.get());
+  }
+
+  @Test
+  public void testEviction() {
+    ResponseCache cache = ResponseCache.builder()
+        .defaultTtl(Optional.of(Duration.ofMinutes(1)))
+        .maximumSize(10)
+        .build();
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 100; i++) {
+      cache.get(ResponseCacheTest.request("/path/" + i), this.stringType,
+          ResponseCacheTest.countingLoader(loads)).blockingGet();
+    }
+
+    Assert.assertEquals(100, loads.get());
+    Assert.assertEquals(10, cache.size());
+    Assert.assertEquals(90, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testExpiration() {
+    ResponseCache cache = ResponseCache.builder()
+        .endpointTtl(ResponseCacheTest.PATH, Duration.ofMillis(ResponseCacheTest.SHORT_TTL_MILLIS))
+        .build();
+    AtomicInteger loads = new AtomicInteger();
+    RestRequest request = ResponseCacheTest.request(ResponseCacheTest.PATH);
+
+    Assert.assertEquals("v1", cache.get(request, this.stringType,
+        ResponseCacheTest.countingLoader(loads)).blockingGet());
+    Assert.assertEquals("v1", cache.get(request, this.stringType,
+        ResponseCacheTest.countingLoader(loads)).blockingGet());
+    ResponseCacheTest.sleep(ResponseCacheTest.SHORT_TTL_MILLIS * 2);
+    Assert.assertEquals("v2", cache.get(request, this.stringType,
+        ResponseCacheTest.countingLoader(loads)).blockingGet());
+
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testNegativeCaching() {
+    ResponseCache cache = ResponseCache.builder()
+        .defaultTtl(Optional.of(Duration.ofMinutes(1)))
+        .negativeTtl(Duration.ofMinutes(1))
+        .build();
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<Single<String>> notFoundLoader = () -> Single.defer(() -> {
+      loads.incrementAndGet();
+      return Single.error(new RestException("Not found", 404, Optional.empty()));
+    });
+    Supplier<Single<String>> serverErrorLoader = () -> Single.defer(() -> {
+      loads.incrementAndGet();
+      return Single.error(new RestException("Server error", 500, Optional.empty()));
+    });
+
+    for (int i = 0; i < 2; i++) {
+      cache.get(ResponseCacheTest.request("/missing"), this.stringType, notFoundLoader).test()
+          .assertError(RestException.class);
+    }
+    Assert.assertEquals(1, loads.get());
+
+    for (int i = 0; i < 2; i++) {
+      cache.get(ResponseCacheTest.request("/failing"), this.stringType, serverErrorLoader)
+          .test().assertError(RestException.class);
+    }
+    Assert.assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testNotCachedRequests() {
+    ResponseCache cache = ResponseCache.builder()
+        .endpointTtl(ResponseCacheTest.PATH, Duration.ofMinutes(1))
+        .build();
+    AtomicInteger loads = new AtomicInteger();
+    RestRequest postRequest = RestRequest.builder()
+        .method(HttpMethod.POST)
+        .basePath("http://localhost")
+        .path(ResponseCacheTest.PATH)
+        .build();
+
+    for (int i = 0; i < 2; i++) {
+      cache.get(postRequest, this.stringType, ResponseCacheTest.countingLoader(loads))
+          .blockingGet();
+      cache.get(ResponseCacheTest.request("/other"), this.stringType,
+          ResponseCacheTest.countingLoader(loads)).blockingGet();
+    }
+
+    Assert.assertEquals(4, loads.get());
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testSingleFlightLoading() {
+    ResponseCache cache = ResponseCache.builder()
+        .defaultTtl(Optional.of(Duration.ofMinutes(1)))
+        .build();
+    AtomicInteger loads = new AtomicInteger();
+    SingleSubject<String> response = SingleSubject.create();
+    Supplier<Single<String>> loader = () -> {
+      loads.incrementAndGet();
+      return response;
+    };
+    RestRequest request = ResponseCacheTest.request(ResponseCacheTest.PATH);
+
+    TestObserver<String> first = cache.get(request, this.stringType, loader).test();
+    TestObserver<String> second = cache.get(request, this.stringType, loader).test();
+    first.assertNoValues();
+    response.onSuccess("loaded");
+
+    first.assertValue("loaded");
+    second.assertValue("loaded");
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testStaleWhileRevalidate() {
+    ResponseCache cache = ResponseCache.builder()
+        .endpointTtl(ResponseCacheTest.PATH, Duration.ofMillis(ResponseCacheTest.SHORT_TTL_MILLIS))
+        .staleWhileRevalidate(Duration.ofMinutes(1))
+        .build();
+    AtomicInteger loads = new AtomicInteger();
+    RestRequest request = ResponseCacheTest.request(ResponseCacheTest.PATH);
+
+    cache.get(request, this.stringType, ResponseCacheTest.countingLoader(loads)).blockingGet();
+    ResponseCacheTest.sleep(ResponseCacheTest.SHORT_TTL_MILLIS * 2);
+
+    Assert.assertEquals("v1", cache.get(request, this.stringType,
+        ResponseCacheTest.countingLoader(loads)).blockingGet());
+    Assert.assertEquals(2, loads.get());
+    Assert.assertEquals("v2", cache.get(request, this.stringType,
+        ResponseCacheTest.countingLoader(loads)).blockingGet());
+    Assert.assertEquals(1, cache.getStaleHitCount());
+  }
+}
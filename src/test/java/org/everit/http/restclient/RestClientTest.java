@@ -15,7 +15,23 @@
  */
 package org.everit.http.restclient;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.NetworkConnector;
@@ -31,20 +47,31 @@ import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import io.reactivex.Flowable;
 import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
 
 public class RestClientTest {
 
   public static final String CONTEXT_PATH = "/test";
 
+  public static final String SIMULATOR_PATH = "/simulator";
+
   private static int port;
 
+  private static final AtlassianSimulatorServlet SIMULATOR = new AtlassianSimulatorServlet();
+
   private static Server server;
 
   private static final HttpClientTestServlet TEST_SERVLET = new HttpClientTestServlet();
 
+  private static final long TIMEOUT_SECONDS = 10;
+
   /**
    * Stops the HTTP server that the tests communicate with.
    */
@@ -63,6 +90,24 @@ public class RestClientTest {
     return "http://localhost:" + RestClientTest.port;
   }
 
+  private static RestRequest delayedRequest(long delayMillis) {
+    return RestRequest.builder()
+        .method(HttpMethod.GET)
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_DELAYED)
+        .queryParams(Collections.singletonMap("delay",
+            Collections.singleton(String.valueOf(delayMillis))))
+        .build();
+  }
+
+  private static List<String> values(List<BatchResult<Bar>> results) {
+    List<String> values = new ArrayList<>();
+    for (BatchResult<Bar> result : results) {
+      values.add(result.getValue().get().value);
+    }
+    return values;
+  }
+
   /**
    * Starts up an HTTP server and registers {@link HttpClientTestServlet} on it to let the tests
    * communicate with the servlet.
@@ -73,6 +118,8 @@ public class RestClientTest {
     ServletContextHandler servletContextHandler =
         new ServletContextHandler(RestClientTest.server, RestClientTest.CONTEXT_PATH);
     servletContextHandler.addServlet(new ServletHolder(RestClientTest.TEST_SERVLET), "/*");
+    servletContextHandler.addServlet(new ServletHolder(RestClientTest.SIMULATOR),
+        RestClientTest.SIMULATOR_PATH + "/*");
     RestClientTest.server.setHandler(servletContextHandler);
     ServerConnector serverConnector = new ServerConnector(RestClientTest.server);
     final int thirtySecondsInMillisecs = 30000;
@@ -93,6 +140,9 @@ public class RestClientTest {
 
   private HttpClient httpClient;
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   /**
    * Closes the created {@link HttpClient} instance after running the test.
    */
@@ -106,6 +156,107 @@ public class RestClientTest {
   @Before
   public void before() {
     this.httpClient = new JettyClientHttpClient(new org.eclipse.jetty.client.HttpClient());
+    RestClientTest.SIMULATOR.setSettings(AtlassianSimulatorServlet.Settings.builder().build());
+  }
+
+  @Test
+  public void testBatchCallFailures() {
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+    RestRequest.Builder requestBuilder = RestRequest.builder()
+        .method(HttpMethod.GET)
+        .basePath(RestClientTest.baseUr());
+    RestRequest okRequest = requestBuilder
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+        .build();
+    RestRequest failingRequest = requestBuilder
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_SERVER_ERROR)
+        .build();
+    BatchStatistics statistics = new BatchStatistics();
+
+    List<BatchResult<Bar>> results = restClient.callEndpoints(
+        Arrays.asList(okRequest, failingRequest, okRequest), Optional.empty(),
+        Types.of(Bar.class), BatchOptions.builder()
+            .statistics(Optional.of(statistics))
+            .build())
+        .toList().blockingGet();
+
+    Assert.assertEquals(3, results.size());
+    Assert.assertTrue(results.get(0).isSuccess());
+    Assert.assertTrue(results.get(2).isSuccess());
+    BatchResult<Bar> failure = results.get(1);
+    Assert.assertFalse(failure.isSuccess());
+    Assert.assertEquals(1, failure.getIndex());
+    Assert.assertSame(failingRequest, failure.getRequest());
+    Assert.assertFalse(failure.getValue().isPresent());
+    Assert.assertEquals(500, ((RestException) failure.getError().get()).getStatus());
+
+    Assert.assertEquals(3, statistics.getStarted());
+    Assert.assertEquals(2, statistics.getSucceeded());
+    Assert.assertEquals(1, statistics.getFailed());
+    Assert.assertEquals(0, statistics.getInFlight());
+  }
+
+  @Test
+  public void testBatchCallMaxInFlight() {
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+    List<RestRequest> requests = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      requests.add(RestClientTest.delayedRequest(100));
+    }
+    BatchStatistics statistics = new BatchStatistics();
+    RestClientTest.TEST_SERVLET.resetMaxConcurrentRequests();
+
+    List<BatchResult<Bar>> results = restClient.callEndpoints(requests, Optional.empty(),
+        Types.of(Bar.class), BatchOptions.builder()
+            .maxInFlight(2)
+            .statistics(Optional.of(statistics))
+            .build())
+        .toList().blockingGet();
+
+    Assert.assertEquals(8, results.size());
+    Assert.assertTrue(RestClientTest.TEST_SERVLET.getMaxConcurrentRequests() <= 2);
+    Assert.assertEquals(2, statistics.getMaxInFlight());
+    Assert.assertEquals(8, statistics.getSucceeded());
+    Assert.assertTrue(statistics.getAverageLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  public void testBatchCallOrder() {
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+    List<RestRequest> requests = Arrays.asList(RestClientTest.delayedRequest(600),
+        RestClientTest.delayedRequest(0), RestClientTest.delayedRequest(300));
+
+    List<BatchResult<Bar>> ordered = restClient.callEndpoints(requests, Optional.empty(),
+        Types.of(Bar.class), BatchOptions.builder().build()).toList().blockingGet();
+    Assert.assertEquals(Arrays.asList("600", "0", "300"), RestClientTest.values(ordered));
+
+    List<BatchResult<Bar>> unordered = restClient.callEndpoints(requests, Optional.empty(),
+        Types.of(Bar.class), BatchOptions.builder().ordered(false).build())
+        .toList().blockingGet();
+    Assert.assertEquals(Arrays.asList("0", "300", "600"), RestClientTest.values(unordered));
+    Assert.assertEquals(1, unordered.get(0).getIndex());
+  }
+
+  @Test
+  public void testBlockingCallAll() {
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+
+    RestRequest request = RestRequest.builder()
+        .method(HttpMethod.GET)
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+        .build();
+
+    try (BlockingRestClient blockingRestClient = new BlockingRestClient(restClient)) {
+      List<Bar> result = blockingRestClient.callAll(Arrays.asList(request, request, request),
+          Optional.empty(), new TypeReference<Bar>() {
+          });
+
+      Assert.assertEquals(3, result.size());
+      for (Bar bar : result) {
+        Assert.assertEquals("bar", bar.value);
+      }
+    }
   }
 
   @Test
@@ -128,4 +279,424 @@ public class RestClientTest {
     Assert.assertEquals("bar", bar.value);
   }
 
+  @Test
+  public void testBufferPool() {
+    BufferPool bufferPool = BufferPool.builder().leakDetection(true).build();
+    RestClient restClient = RestClient.builder()
+        .httpClient(this.httpClient)
+        .objectMapper(TestJSONObjectMapper.INSTANCE)
+        .bufferPool(Optional.of(bufferPool))
+        .build();
+
+    Bar bar = restClient.callEndpoint(RestRequest.builder()
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+        .build(), Optional.empty(), new TypeReference<Bar>() {
+        }).blockingGet();
+    Assert.assertEquals("bar", bar.value);
+
+    RestClientTest.SIMULATOR.setSettings(AtlassianSimulatorServlet.Settings.builder()
+        .serverErrorProbability(1)
+        .build());
+    try {
+      restClient.callEndpoint(RestRequest.builder()
+          .basePath(RestClientTest.baseUr())
+          .path(RestClientTest.CONTEXT_PATH + RestClientTest.SIMULATOR_PATH
+              + AtlassianSimulatorServlet.PATH_PAGED)
+          .build(), Optional.empty(), new TypeReference<Bar>() {
+          }).blockingGet();
+      Assert.fail("Expected RestException");
+    } catch (RestException e) {
+      Assert.assertEquals(503, e.getStatus());
+    }
+
+    Assert.assertEquals(bufferPool.getLeakReports().toString(), 0,
+        bufferPool.getOutstandingBuffers());
+  }
+
+  @Test
+  public void testBufferPoolReleasedWhenDisposedAfterAggregation() throws InterruptedException {
+    BufferPool bufferPool = BufferPool.builder().leakDetection(true).build();
+    CountDownLatch aggregated = new CountDownLatch(1);
+    RequestDispatcher droppingDispatcher = new RequestDispatcher() {
+      @Override
+      public <T> Single<T> dispatch(RestRequest restRequest, Single<T> call) {
+        // Swallows the result like a dispatcher whose call was cancelled after it completed
+        return Single.create((emitter) -> emitter.setDisposable(
+            call.subscribe((result) -> aggregated.countDown(), emitter::tryOnError)));
+      }
+    };
+    RestClient restClient = RestClient.builder()
+        .httpClient(this.httpClient)
+        .objectMapper(TestJSONObjectMapper.INSTANCE)
+        .bufferPool(Optional.of(bufferPool))
+        .requestDispatcher(Optional.of(droppingDispatcher))
+        .build();
+
+    TestObserver<Bar> observer = restClient.callEndpoint(RestRequest.builder()
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+        .build(), Optional.empty(), Types.of(Bar.class)).test();
+    Assert.assertTrue(aggregated.await(RestClientTest.TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    observer.dispose();
+
+    Assert.assertEquals(bufferPool.getLeakReports().toString(), 0,
+        bufferPool.getOutstandingBuffers());
+  }
+
+  @Test
+  public void testCallEndpointAsDocument() {
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+
+    RestRequest request = RestRequest.builder()
+        .method(HttpMethod.GET)
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+        .build();
+
+    LazyJSONDocument document =
+        restClient.callEndpointAsDocument(request, Optional.empty()).blockingGet();
+    Assert.assertEquals(Optional.of("bar"), document.getString("/value"));
+  }
+
+  @Test
+  public void testDeadline() {
+    RestClientTest.SIMULATOR.setSettings(AtlassianSimulatorServlet.Settings.builder()
+        .firstByteDelayMillis(3000)
+        .build());
+    RestClient restClient = RestClient.builder()
+        .httpClient(this.httpClient)
+        .objectMapper(TestJSONObjectMapper.INSTANCE)
+        .defaultTimeout(Optional.of(Duration.ofMillis(200)))
+        .build();
+
+    List<Optional<Instant>> enhancerDeadlines = new ArrayList<>();
+    RestRequestEnhancer enhancer = (request) -> {
+      enhancerDeadlines.add(request.getDeadline());
+      return Single.just(request);
+    };
+
+    long startNanos = System.nanoTime();
+    try {
+      restClient.callEndpoint(RestRequest.builder()
+          .basePath(RestClientTest.baseUr())
+          .path(RestClientTest.CONTEXT_PATH + RestClientTest.SIMULATOR_PATH
+              + AtlassianSimulatorServlet.PATH_PAGED)
+          .build(), Optional.of(enhancer), new TypeReference<Map<String, Object>>() {
+          }).blockingGet();
+      Assert.fail("Expected RequestDeadlineExceededException");
+    } catch (RequestDeadlineExceededException e) {
+      Assert.assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(2));
+    }
+    Assert.assertEquals(1, enhancerDeadlines.size());
+    Assert.assertTrue(enhancerDeadlines.get(0).isPresent());
+
+    try {
+      restClient.callEndpoint(RestRequest.builder()
+          .basePath(RestClientTest.baseUr())
+          .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+          .deadline(Optional.of(Instant.now().plusMillis(100)))
+          .build(), Optional.of((request) -> Single.never()), new TypeReference<Bar>() {
+          }).blockingGet();
+      Assert.fail("Expected RequestDeadlineExceededException");
+    } catch (RequestDeadlineExceededException e) {
+      Assert.assertNotNull(e.getDeadline());
+    }
+  }
+
+  @Test
+  public void testDecodeOnScheduler() {
+    ExecutorService executor =
+        Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "decode-thread"));
+    try {
+      String[] decodeThreadName = new String[1];
+      RestClient restClient = RestClient.builder()
+          .httpClient(this.httpClient)
+          .objectMapper(new TestJSONObjectMapper() {
+            @Override
+            public <T> T fromJSON(String json, TypeReference<T> valueTypeReference) {
+              decodeThreadName[0] = Thread.currentThread().getName();
+              return super.fromJSON(json, valueTypeReference);
+            }
+          })
+          .decodeScheduler(Optional.of(Schedulers.from(executor)))
+          .offloadThreshold(0)
+          .build();
+
+      RestRequest request = RestRequest.builder()
+          .method(HttpMethod.GET)
+          .basePath(RestClientTest.baseUr())
+          .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+          .build();
+
+      Bar bar = restClient.callEndpoint(request, Optional.empty(), new TypeReference<Bar>() {
+      }).blockingGet();
+
+      Assert.assertEquals("bar", bar.value);
+      Assert.assertEquals("decode-thread", decodeThreadName[0]);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testExistsAndStatus() {
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+    String simulatorPath = RestClientTest.CONTEXT_PATH + RestClientTest.SIMULATOR_PATH;
+
+    RestRequest existingRequest = RestRequest.builder()
+        .basePath(RestClientTest.baseUr())
+        .path(simulatorPath + AtlassianSimulatorServlet.PATH_PAGED)
+        .build();
+    Assert.assertTrue(restClient.exists(existingRequest, Optional.empty()).blockingGet());
+    restClient.callEndpoint(existingRequest, Optional.empty()).blockingAwait();
+
+    RestRequest missingRequest = RestRequest.builder()
+        .basePath(RestClientTest.baseUr())
+        .path(simulatorPath + "/missing")
+        .build();
+    Assert.assertFalse(restClient.exists(missingRequest, Optional.empty()).blockingGet());
+
+    RestClientTest.SIMULATOR.setSettings(AtlassianSimulatorServlet.Settings.builder()
+        .serverErrorProbability(1)
+        .build());
+    Assert.assertEquals(Integer.valueOf(503),
+        restClient.callEndpointForStatus(existingRequest, Optional.empty()).blockingGet());
+    try {
+      restClient.exists(existingRequest, Optional.empty()).blockingGet();
+      Assert.fail("Expected RestException");
+    } catch (RestException e) {
+      Assert.assertEquals(503, e.getStatus());
+    }
+  }
+
+  @Test
+  public void testParallelArrayDecoding() {
+    AtomicInteger elementConversions = new AtomicInteger();
+    RestClient restClient = RestClient.builder()
+        .httpClient(this.httpClient)
+        .objectMapper(new TestJSONObjectMapper() {
+          @Override
+          public <T> T fromJSON(byte[] json, int offset, int length,
+              TypeReference<T> valueTypeRef) {
+            if (Bar.class.equals(valueTypeRef.getType())) {
+              elementConversions.incrementAndGet();
+            }
+            return super.fromJSON(json, offset, length, valueTypeRef);
+          }
+        })
+        .parallelArrayDecoder(Optional.of(ParallelArrayDecoder.builder()
+            .minRangeLength(1)
+            .threshold(0)
+            .build()))
+        .build();
+    RestRequest.Builder requestBuilder = RestRequest.builder()
+        .method(HttpMethod.POST)
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_ECHO);
+
+    List<Bar> bars = restClient.callEndpoint(requestBuilder
+        .requestBody(Optional.of(Arrays.asList(Collections.singletonMap("value", "a"),
+            Collections.singletonMap("value", "b"), Collections.singletonMap("value", "c"))))
+        .build(), Optional.empty(), Types.listOf(Bar.class)).blockingGet();
+    Assert.assertEquals(3, bars.size());
+    Assert.assertEquals("c", bars.get(2).value);
+    Assert.assertEquals(3, elementConversions.get());
+
+    Map<String, Object> map = restClient.callEndpoint(requestBuilder
+        .requestBody(Optional.of(Collections.singletonMap("value", "a")))
+        .build(), Optional.empty(), Types.mapOf(String.class, Object.class)).blockingGet();
+    Assert.assertEquals("a", map.get("value"));
+  }
+
+  @Test
+  public void testRecordAndReplay() throws IOException {
+    Path recordingFile = this.temporaryFolder.getRoot().toPath().resolve("traffic.rec");
+    RestRequest request = RestRequest.builder()
+        .method(HttpMethod.GET)
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_WITH_BODY)
+        .build();
+
+    RecordingHttpClient recordingHttpClient = RecordingHttpClient.builder()
+        .httpClient(this.httpClient)
+        .file(recordingFile)
+        .build();
+    this.httpClient = recordingHttpClient;
+    Bar recorded = new RestClient(recordingHttpClient, TestJSONObjectMapper.INSTANCE)
+        .callEndpoint(request, Optional.empty(), new TypeReference<Bar>() {
+        }).blockingGet();
+    Assert.assertEquals("bar", recorded.value);
+
+    ReplayingHttpClient replayingHttpClient = ReplayingHttpClient.builder()
+        .file(recordingFile)
+        .build();
+    Assert.assertEquals(1, replayingHttpClient.getRecordedExchanges().size());
+    Assert.assertEquals(200, replayingHttpClient.getRecordedExchanges().get(0).getStatus());
+
+    RestClient replayingRestClient =
+        new RestClient(replayingHttpClient, TestJSONObjectMapper.INSTANCE);
+    for (int i = 0; i < 2; i++) {
+      Bar replayed = replayingRestClient
+          .callEndpoint(request, Optional.empty(), new TypeReference<Bar>() {
+          }).blockingGet();
+      Assert.assertEquals("bar", replayed.value);
+    }
+  }
+
+  @Test
+  public void testSimulatorPaging() {
+    RestClientTest.SIMULATOR.setSettings(AtlassianSimulatorServlet.Settings.builder()
+        .pageSize(50)
+        .totalItems(120)
+        .build());
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+
+    int itemCount = 0;
+    int pageCount = 0;
+    boolean isLast = false;
+    while (!isLast) {
+      Map<String, Collection<String>> queryParams = new HashMap<>();
+      queryParams.put("startAt", Collections.singleton(String.valueOf(itemCount)));
+      Map<String, Object> page = restClient.callEndpoint(RestRequest.builder()
+          .basePath(RestClientTest.baseUr())
+          .path(RestClientTest.CONTEXT_PATH + RestClientTest.SIMULATOR_PATH
+              + AtlassianSimulatorServlet.PATH_PAGED)
+          .queryParams(queryParams)
+          .build(), Optional.empty(), new TypeReference<Map<String, Object>>() {
+          }).blockingGet();
+
+      itemCount += ((List<?>) page.get("values")).size();
+      isLast = (Boolean) page.get("isLast");
+      pageCount++;
+    }
+    Assert.assertEquals(120, itemCount);
+    Assert.assertEquals(3, pageCount);
+  }
+
+  @Test
+  public void testSimulatorRateLimit() {
+    RestClientTest.SIMULATOR.setSettings(AtlassianSimulatorServlet.Settings.builder()
+        .rateLimitProbability(1)
+        .build());
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+
+    try {
+      restClient.callEndpoint(RestRequest.builder()
+          .basePath(RestClientTest.baseUr())
+          .path(RestClientTest.CONTEXT_PATH + RestClientTest.SIMULATOR_PATH
+              + AtlassianSimulatorServlet.PATH_TOKEN_PAGED)
+          .build(), Optional.empty(), new TypeReference<Map<String, Object>>() {
+          }).blockingGet();
+      Assert.fail("Expected RestException");
+    } catch (RestException e) {
+      Assert.assertEquals(429, e.getStatus());
+    }
+    Assert.assertTrue(RestClientTest.SIMULATOR.getRateLimitedRequests() > 0);
+  }
+
+  @Test
+  public void testSlowCallSampler() {
+    RestClientTest.SIMULATOR.setSettings(AtlassianSimulatorServlet.Settings.builder()
+        .firstByteDelayMillis(300)
+        .build());
+    SlowCallSampler sampler = SlowCallSampler.builder()
+        .minThreshold(Duration.ofMillis(100))
+        .build();
+    RestClient restClient = RestClient.builder()
+        .httpClient(this.httpClient)
+        .objectMapper(TestJSONObjectMapper.INSTANCE)
+        .slowCallSampler(Optional.of(sampler))
+        .build();
+
+    String path = RestClientTest.CONTEXT_PATH + RestClientTest.SIMULATOR_PATH
+        + AtlassianSimulatorServlet.PATH_PAGED;
+    restClient.callEndpoint(RestRequest.builder()
+        .basePath(RestClientTest.baseUr())
+        .path(path)
+        .build(), Optional.empty(), new TypeReference<Map<String, Object>>() {
+        }).blockingGet();
+
+    List<SlowCall> slowCalls = sampler.getSlowCalls();
+    Assert.assertEquals(1, slowCalls.size());
+    SlowCall slowCall = slowCalls.get(0);
+    Assert.assertEquals(path, slowCall.getNormalizedPath());
+    Assert.assertEquals(200, slowCall.getStatus());
+    Assert.assertTrue(slowCall.getTimeToHeadersNanos() >= TimeUnit.MILLISECONDS.toNanos(300));
+    Assert.assertTrue(slowCall.getResponseSize() > 0);
+    Assert.assertTrue(slowCall.getResponseSnippet().get().startsWith("{"));
+  }
+
+  @Test
+  public void testStreamedBody() {
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+    RestRequest.Builder requestBuilder = RestRequest.builder()
+        .method(HttpMethod.POST)
+        .basePath(RestClientTest.baseUr())
+        .path(RestClientTest.CONTEXT_PATH + HttpClientTestServlet.PATH_TEST_ECHO);
+    AtomicInteger requestedElements = new AtomicInteger();
+    Flowable<Bar> bars = Flowable.range(0, 5)
+        .doOnRequest((n) -> requestedElements.addAndGet((int) Math.min(n, Integer.MAX_VALUE)))
+        .map((i) -> {
+          Bar bar = new Bar();
+          bar.value = "v" + i;
+          return bar;
+        });
+
+    List<Bar> echoed = restClient.callEndpoint(requestBuilder
+        .requestBody(Optional.of(bars))
+        .build(), Optional.empty(), Types.listOf(Bar.class)).blockingGet();
+    Assert.assertEquals(5, echoed.size());
+    Assert.assertEquals("v4", echoed.get(4).value);
+    Assert.assertTrue(requestedElements.get() <= 6);
+
+    List<Map<String, List<Bar>>> batches = restClient.callEndpointInBatches(requestBuilder
+        .requestBody(Optional.of(JSONArrayBody.of(bars).wrappedIn("bars")))
+        .build(), 2, Optional.empty(), Types.mapOf(String.class, Types.listOf(Bar.class)))
+        .toList().blockingGet();
+    Assert.assertEquals(3, batches.size());
+    Assert.assertEquals(2, batches.get(0).get("bars").size());
+    Assert.assertEquals("v3", batches.get(1).get("bars").get(1).value);
+    Assert.assertEquals(1, batches.get(2).get("bars").size());
+  }
+
+  @Test
+  public void testWarmUp() {
+    long requestsBefore = RestClientTest.SIMULATOR.getRequests();
+    RestClient restClient = new RestClient(this.httpClient, TestJSONObjectMapper.INSTANCE);
+    AtomicInteger enhancerCalls = new AtomicInteger();
+    RestRequestEnhancer enhancer = (request) -> {
+      enhancerCalls.incrementAndGet();
+      return Single.just(request);
+    };
+
+    WarmUpPlan plan = WarmUpPlan.builder()
+        .basePath(RestClientTest.baseUr())
+        .basePath("http://localhost:1")
+        .requestEnhancer(Optional.of(enhancer))
+        .syntheticRequest(RestRequest.builder()
+            .basePath(RestClientTest.baseUr())
+            .path(RestClientTest.CONTEXT_PATH + RestClientTest.SIMULATOR_PATH
+                + AtlassianSimulatorServlet.PATH_PAGED)
+            .build(), Types.mapOf(String.class, Object.class))
+        .syntheticRequestRepetitions(3)
+        .type(Bar.class)
+        .type(new TypeReference<List<Bar>>() {
+        })
+        .build();
+
+    List<WarmUpProgress> progress = restClient.warmUp(plan).toList().blockingGet();
+
+    Assert.assertEquals(10, progress.size());
+    for (int i = 1; i < progress.size(); i++) {
+      Assert.assertTrue(
+          progress.get(i - 1).getPhase().compareTo(progress.get(i).getPhase()) <= 0);
+    }
+    WarmUpProgress last = progress.get(progress.size() - 1);
+    Assert.assertTrue(last.isDone());
+    Assert.assertEquals(WarmUpPhase.REQUESTS, last.getPhase());
+    Assert.assertEquals(1, last.getFailedSteps());
+    Assert.assertEquals(5, enhancerCalls.get());
+    Assert.assertEquals(3, RestClientTest.SIMULATOR.getRequests() - requestsBefore);
+  }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.everit.http.client.HttpMethod;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlowCallSamplerTest {
+
+  private static final long ONE_SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static CallTrace trace(String path) {
+    RestRequest restRequest = RestRequest.builder()
+        .method(HttpMethod.POST)
+        .path(path)
+        .requestBody(Optional.of(new Bar()))
+        .build();
+    return new CallTrace(restRequest, System.nanoTime() - SlowCallSamplerTest.ONE_SECOND_NANOS);
+  }
+
+  @Test
+  public void testOldestCallsAreOverwritten() {
+    SlowCallSampler sampler = SlowCallSampler.builder()
+        .capacity(2)
+        .minThreshold(Duration.ZERO)
+        .build();
+
+    for (int i = 0; i < 3; i++) {
+      sampler.onCallFinished(SlowCallSamplerTest.trace("/path/" + i), null);
+    }
+
+    List<SlowCall> slowCalls = sampler.getSlowCalls();
+    Assert.assertEquals(3, sampler.getSampledCallCount());
+    Assert.assertEquals(2, slowCalls.size());
+    Assert.assertEquals("/path/1", slowCalls.get(0).getNormalizedPath());
+    Assert.assertEquals("/path/2", slowCalls.get(1).getNormalizedPath());
+  }
+
+  @Test
+  public void testPathNormalization() {
+    SlowCallSampler sampler = SlowCallSampler.builder()
+        .minThreshold(Duration.ZERO)
+        .build();
+
+    sampler.onCallFinished(
+        SlowCallSamplerTest.trace("/rest/api/2/issue/ABC-123/comment/10001"), null);
+    sampler.onCallFinished(SlowCallSamplerTest.trace(
+        "/rest/api/2/attachment/3f2a9c1e-7b4d-4e8a-9c2f-1a2b3c4d5e6f"), null);
+
+    List<SlowCall> slowCalls = sampler.getSlowCalls();
+    Assert.assertEquals("/rest/api/2/issue/{id}/comment/{id}",
+        slowCalls.get(0).getNormalizedPath());
+    Assert.assertEquals("/rest/api/2/attachment/{id}", slowCalls.get(1).getNormalizedPath());
+  }
+
+  @Test
+  public void testPhasesAndSnippets() {
+    SlowCallSampler sampler = SlowCallSampler.builder()
+        .minThreshold(Duration.ZERO)
+        .snippetLength(5)
+        .build();
+
+    CallTrace trace = SlowCallSamplerTest.trace("/rest/api/2/issue/{issueIdOrKey}");
+    trace.markDispatched();
+    trace.markEnhanced();
+    trace.markRequestBody("{\"value\":null}".getBytes(StandardCharsets.UTF_8));
+    trace.markHeaders(200);
+    trace.markBody("{\"value\":\"bar\"}".getBytes(StandardCharsets.UTF_8));
+    sampler.onCallFinished(trace, null);
+
+    SlowCall slowCall = sampler.getSlowCalls().get(0);
+    Assert.assertEquals(HttpMethod.POST, slowCall.getMethod());
+    Assert.assertEquals("/rest/api/2/issue/{issueIdOrKey}", slowCall.getNormalizedPath());
+    Assert.assertEquals(200, slowCall.getStatus());
+    Assert.assertTrue(slowCall.getQueueNanos() >= SlowCallSamplerTest.ONE_SECOND_NANOS);
+    Assert.assertTrue(slowCall.getDecodeNanos() >= 0);
+    Assert.assertEquals(15, slowCall.getResponseSize());
+    Assert.assertEquals(Optional.of("{\"val"), slowCall.getResponseSnippet());
+    Assert.assertEquals(Optional.of("{\"val"), slowCall.getRequestSnippet());
+    Assert.assertEquals(14, slowCall.getRequestSize());
+    Assert.assertFalse(slowCall.getError().isPresent());
+  }
+
+  @Test
+  public void testThreshold() {
+    SlowCallSampler sampler = SlowCallSampler.builder()
+        .minThreshold(Duration.ofSeconds(10))
+        .build();
+
+    sampler.onCallFinished(SlowCallSamplerTest.trace("/fast"), new RuntimeException("test"));
+
+    Assert.assertEquals(0, sampler.getSampledCallCount());
+    Assert.assertTrue(sampler.getSlowCalls().isEmpty());
+    Assert.assertEquals(Duration.ofSeconds(10), sampler.getThreshold());
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpMethod;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.SingleSubject;
+
+public class StripedHttpClientTest {
+
+  /**
+   * Client that keeps the responses pending until the test completes them.
+   */
+  private static class PendingHttpClient implements HttpClient {
+
+    private boolean closed = false;
+
+    private final List<SingleSubject<HttpResponse>> responses = new ArrayList<>();
+
+    @Override
+    public void close() {
+      this.closed = true;
+    }
+
+    @Override
+    public Single<HttpResponse> send(HttpRequest request) {
+      SingleSubject<HttpResponse> response = SingleSubject.create();
+      this.responses.add(response);
+      return response;
+    }
+  }
+
+  private static HttpRequest request(String url) {
+    return HttpRequest.builder()
+        .url(url)
+        .method(HttpMethod.GET)
+        .build();
+  }
+
+  @Test
+  public void testLeastOutstandingStripeOfHost() {
+    StripedHttpClient httpClient = StripedHttpClient.builder()
+        .httpClientFactory(PendingHttpClient::new)
+        .stripeCount(4)
+        .stripesPerHost(2)
+        .build();
+
+    for (int i = 0; i < 4; i++) {
+      httpClient.send(request("http://localhost:8080/test?i=" + i)).test();
+    }
+
+    int usedStripes = 0;
+    for (int i = 0; i < httpClient.getStripeCount(); i++) {
+      int outstanding = httpClient.getOutstandingRequests(i);
+      if (outstanding > 0) {
+        usedStripes++;
+        Assert.assertEquals(2, outstanding);
+      }
+    }
+    Assert.assertEquals(2, usedStripes);
+
+    httpClient.close();
+    httpClient.send(request("http://localhost:8080/test")).test()
+        .assertError(IllegalStateException.class);
+  }
+
+  @Test
+  public void testReplacedStripeIsDrained() {
+    List<PendingHttpClient> clients = new ArrayList<>();
+    TestScheduler scheduler = new TestScheduler();
+    StripedHttpClient httpClient = StripedHttpClient.builder()
+        .drainPeriod(Duration.ofSeconds(10))
+        .httpClientFactory(() -> {
+          PendingHttpClient client = new PendingHttpClient();
+          clients.add(client);
+          return client;
+        })
+        .scheduler(scheduler)
+        .stripeCount(1)
+        .build();
+
+    TestObserver<HttpResponse> oldObserver =
+        httpClient.send(request("http://localhost/old")).test();
+    httpClient.replaceStripe(0);
+    httpClient.send(request("http://localhost/new")).test();
+
+    PendingHttpClient oldClient = clients.get(0);
+    PendingHttpClient newClient = clients.get(1);
+    Assert.assertEquals(1, oldClient.responses.size());
+    Assert.assertEquals(1, newClient.responses.size());
+
+    scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+    Assert.assertFalse(oldClient.closed);
+
+    oldObserver.dispose();
+    Assert.assertTrue(oldClient.closed);
+    Assert.assertFalse(newClient.closed);
+
+    httpClient.close();
+    Assert.assertTrue(newClient.closed);
+  }
+}
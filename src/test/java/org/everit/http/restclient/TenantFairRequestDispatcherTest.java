@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.SingleSubject;
+
+public class TenantFairRequestDispatcherTest {
+
+  private static RestRequest request(String tenant) {
+    return RestRequest.builder()
+        .basePath("http://localhost")
+        .path("/test")
+        .tenantId(Optional.of(tenant))
+        .build();
+  }
+
+  private static Single<String> recordingCall(List<String> started, String name) {
+    return Single.fromCallable(() -> {
+      started.add(name);
+      return name;
+    });
+  }
+
+  @Test
+  public void testIdleTenantEviction() {
+    TestScheduler scheduler = new TestScheduler();
+    TenantFairRequestDispatcher dispatcher = TenantFairRequestDispatcher.builder()
+        .idleTenantTimeout(Duration.ofMinutes(1))
+        .scheduler(scheduler)
+        .build();
+    SingleSubject<String> blocker = SingleSubject.create();
+    dispatcher.dispatch(request("busy"), blocker).test();
+    dispatcher.dispatch(request("idle"), Single.just("idle")).test();
+    Assert.assertEquals(2, dispatcher.getTenantStatistics().size());
+
+    scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+    Assert.assertFalse(dispatcher.getTenantStatistics("idle").isPresent());
+    Assert.assertEquals(1, dispatcher.getTenantStatistics("busy").get().getInFlight());
+
+    blocker.onSuccess("busy");
+    scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+    Assert.assertTrue(dispatcher.getTenantStatistics().isEmpty());
+  }
+
+  @Test
+  public void testRoundRobinBetweenTenants() {
+    TenantFairRequestDispatcher dispatcher = TenantFairRequestDispatcher.builder()
+        .maxInFlight(1)
+        .build();
+    SingleSubject<String> blocker = SingleSubject.create();
+    dispatcher.dispatch(request("noisy"), blocker).test();
+
+    List<String> started = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch(request("noisy"), recordingCall(started, "noisy-" + i)).test();
+    }
+    dispatcher.dispatch(request("quiet"), recordingCall(started, "quiet-0")).test();
+
+    blocker.onSuccess("blocker");
+
+    Assert.assertEquals(4, started.size());
+    Assert.assertEquals("quiet-0", started.get(1));
+
+    TenantStatistics noisyStatistics = dispatcher.getTenantStatistics("noisy").get();
+    Assert.assertEquals(4, noisyStatistics.getStarted());
+    Assert.assertEquals(4, noisyStatistics.getCompleted());
+    Assert.assertEquals(0, noisyStatistics.getInFlight());
+    Assert.assertEquals(2, dispatcher.getTenantStatistics().size());
+  }
+
+  @Test
+  public void testTenantRateLimit() {
+    TestScheduler scheduler = new TestScheduler();
+    TenantFairRequestDispatcher dispatcher = TenantFairRequestDispatcher.builder()
+        .scheduler(scheduler)
+        .tenantRateLimit(Optional.of(1D))
+        .build();
+
+    List<String> started = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch(request("tenant"), recordingCall(started, "call-" + i)).test();
+    }
+    dispatcher.dispatch(request("other"), recordingCall(started, "other-0")).test();
+    Assert.assertEquals(2, started.size());
+
+    scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+    Assert.assertEquals(3, started.size());
+
+    scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+    Assert.assertEquals(4, started.size());
+    Assert.assertEquals(0,
+        dispatcher.getTenantStatistics("tenant").get().getQueued());
+  }
+
+  @Test
+  public void testThrottledCallsCountedOnce() {
+    TestScheduler scheduler = new TestScheduler();
+    TenantFairRequestDispatcher dispatcher = TenantFairRequestDispatcher.builder()
+        .scheduler(scheduler)
+        .tenantRateLimit(Optional.of(1D))
+        .build();
+
+    List<String> started = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch(request("tenant"), recordingCall(started, "call-" + i)).test();
+    }
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch(request("other-" + i), recordingCall(started, "other-" + i)).test();
+    }
+    scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+
+    Assert.assertEquals(6, started.size());
+    Assert.assertEquals(2, dispatcher.getTenantStatistics("tenant").get().getThrottled());
+  }
+}
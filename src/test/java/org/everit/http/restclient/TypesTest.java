@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TypesTest {
+
+  @Test
+  public void testDecode() {
+    List<Bar> bars = TestJSONObjectMapper.INSTANCE.fromJSON(
+        "[{\"value\":\"a\"},{\"value\":\"b\"}]", Types.listOf(Bar.class));
+    Assert.assertEquals("b", bars.get(1).value);
+
+    Map<String, List<Integer>> map = TestJSONObjectMapper.INSTANCE.fromJSON(
+        "{\"a\":[1,2]}", Types.mapOf(String.class, Types.listOf(Integer.class)));
+    Assert.assertEquals(Arrays.asList(1, 2), map.get("a"));
+  }
+
+  @Test
+  public void testEqualsAnonymousTypeReference() {
+    Assert.assertEquals(new TypeReference<List<Bar>>() {
+    }.getType(), Types.listOf(Bar.class).getType());
+    Assert.assertEquals(Types.listOf(Bar.class).getType(), new TypeReference<List<Bar>>() {
+    }.getType());
+    Assert.assertEquals(new TypeReference<Map<String, Set<Bar>>>() {
+    }.getType().hashCode(),
+        Types.mapOf(String.class, Types.setOf(Bar.class)).getType().hashCode());
+    Assert.assertEquals(Bar.class, Types.of(Bar.class).getType());
+    Assert.assertEquals("java.util.Map<java.lang.String, java.util.List<java.lang.Integer>>",
+        Types.mapOf(String.class, Types.listOf(Integer.class)).getType().getTypeName());
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WindowTinyLfuPolicyTest {
+
+  private static WindowTinyLfuPolicy<String> fullPolicy() {
+    WindowTinyLfuPolicy<String> policy = new WindowTinyLfuPolicy<>(10);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(Collections.emptyList(), policy.onInsert("a" + i));
+    }
+    return policy;
+  }
+
+  @Test
+  public void testFrequentCandidateEvictsVictim() {
+    WindowTinyLfuPolicy<String> policy = WindowTinyLfuPolicyTest.fullPolicy();
+    Assert.assertEquals(Arrays.asList("a9"), policy.onInsert("new"));
+
+    for (int i = 0; i < 5; i++) {
+      policy.onAccess("new");
+    }
+
+    Assert.assertEquals(Arrays.asList("a0"), policy.onInsert("newer"));
+  }
+
+  @Test
+  public void testFrequentKeysSurviveScan() {
+    WindowTinyLfuPolicy<String> policy = new WindowTinyLfuPolicy<>(100);
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(Collections.emptyList(), policy.onInsert("a" + i));
+    }
+    for (int access = 0; access < 5; access++) {
+      for (int i = 0; i < 50; i++) {
+        policy.onAccess("a" + i);
+      }
+    }
+
+    List<String> evicted = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      evicted.addAll(policy.onInsert("scan" + i));
+    }
+
+    Assert.assertEquals(100, evicted.size());
+    for (int i = 0; i < 50; i++) {
+      Assert.assertFalse(evicted.contains("a" + i));
+    }
+    // Most one-hit keys of the scan are not admitted
+    Assert.assertTrue(evicted.stream().filter((key) -> key.startsWith("scan")).count() >= 90);
+  }
+
+  @Test
+  public void testRemovedKeyFreesCapacity() {
+    WindowTinyLfuPolicy<String> policy = WindowTinyLfuPolicyTest.fullPolicy();
+    policy.onRemove("a3");
+
+    Assert.assertEquals(Collections.emptyList(), policy.onInsert("new"));
+    Assert.assertEquals(1, policy.onInsert("newer").size());
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2011 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.http.restclient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.everit.http.client.HttpClient;
+import org.everit.http.client.HttpMethod;
+import org.everit.http.client.HttpRequest;
+import org.everit.http.client.HttpResponse;
+import org.everit.http.client.async.AsyncContentUtil;
+import org.everit.http.client.async.ByteArrayAsyncContentProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+
+public class WriteCoalescerTest {
+
+  /**
+   * Records the URLs and bodies of the requests and responds with the configured status.
+   */
+  private static class RecordingStubHttpClient implements HttpClient {
+
+    private final Map<String, String> bodies = new HashMap<>();
+
+    private int requestCount = 0;
+
+    private int status = 204;
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    public Single<HttpResponse> send(HttpRequest request) {
+      String body = request.getBody().isPresent()
+          ? AsyncContentUtil.readString(request.getBody().get(), StandardCharsets.UTF_8)
+              .blockingGet()
+          : "";
+      this.bodies.put(request.getUrl(), body);
+      this.requestCount++;
+      return Single.just(HttpResponse.builder()
+          .status(this.status)
+          .headers(Collections.emptyMap())
+          .body(new ByteArrayAsyncContentProvider(new byte[0], Optional.empty()))
+          .build());
+    }
+  }
+
+  private static Map<String, Object> fields(String summary, String... labels) {
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("summary", summary);
+    if (labels.length > 0) {
+      fields.put("labels", Arrays.asList(labels));
+    }
+    return Collections.singletonMap("fields", fields);
+  }
+
+  private static RestRequest put(String path, Object body) {
+    return RestRequest.builder()
+        .method(HttpMethod.PUT)
+        .basePath("http://localhost")
+        .path(path)
+        .requestBody(Optional.of(body))
+        .build();
+  }
+
+  @Test
+  public void testBulkRequest() {
+    RecordingStubHttpClient httpClient = new RecordingStubHttpClient();
+    httpClient.status = 500;
+    TestScheduler scheduler = new TestScheduler();
+    WriteCoalescer coalescer = WriteCoalescer.builder()
+        .bulkRequestFactory(Optional.of((restRequests) -> Optional.of(RestRequest.builder()
+            .method(HttpMethod.POST)
+            .basePath("http://localhost")
+            .path("/bulk")
+            .requestBody(Optional.of(restRequests.stream()
+                .map(RestRequest::getPath)
+                .collect(Collectors.toList())))
+            .build())))
+        .restClient(new RestClient(httpClient, TestJSONObjectMapper.INSTANCE))
+        .scheduler(scheduler)
+        .build();
+
+    List<TestObserver<Void>> observers = new ArrayList<>();
+    observers.add(coalescer.write(put("/issue/1", fields("a"))).test());
+    observers.add(coalescer.write(put("/issue/2", fields("b"))).test());
+    scheduler.advanceTimeBy(20, TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals(Collections.singleton("http://localhost/bulk"), httpClient.bodies.keySet());
+    Assert.assertEquals("[\"/issue/1\",\"/issue/2\"]",
+        httpClient.bodies.get("http://localhost/bulk"));
+    for (TestObserver<Void> observer : observers) {
+      observer.assertError(RestException.class);
+    }
+  }
+
+  @Test
+  public void testLastWriteWinsPerField() {
+    RecordingStubHttpClient httpClient = new RecordingStubHttpClient();
+    TestScheduler scheduler = new TestScheduler();
+    WriteCoalescer coalescer = WriteCoalescer.builder()
+        .restClient(new RestClient(httpClient, TestJSONObjectMapper.INSTANCE))
+        .scheduler(scheduler)
+        .build();
+
+    TestObserver<Void> first = coalescer.write(put("/issue/1", fields("a", "x"))).test();
+    TestObserver<Void> second = coalescer.write(put("/issue/1", fields("b"))).test();
+    TestObserver<Void> other = coalescer.write(put("/issue/2", fields("c"))).test();
+    Assert.assertTrue(httpClient.bodies.isEmpty());
+
+    scheduler.advanceTimeBy(20, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(2, httpClient.bodies.size());
+    Assert.assertEquals(fields("b", "x"), TestJSONObjectMapper.INSTANCE.fromJSON(
+        httpClient.bodies.get("http://localhost/issue/1"),
+        new TypeReference<Map<String, Object>>() {
+        }));
+    Assert.assertEquals(fields("c"), TestJSONObjectMapper.INSTANCE.fromJSON(
+        httpClient.bodies.get("http://localhost/issue/2"),
+        new TypeReference<Map<String, Object>>() {
+        }));
+    first.assertComplete();
+    second.assertComplete();
+    other.assertComplete();
+    Assert.assertEquals(1, coalescer.getCoalescedWriteCount());
+  }
+
+  @Test
+  public void testPostIsNotCoalesced() {
+    RecordingStubHttpClient httpClient = new RecordingStubHttpClient();
+    TestScheduler scheduler = new TestScheduler();
+    WriteCoalescer coalescer = WriteCoalescer.builder()
+        .restClient(new RestClient(httpClient, TestJSONObjectMapper.INSTANCE))
+        .scheduler(scheduler)
+        .build();
+
+    RestRequest post = RestRequest.builder()
+        .method(HttpMethod.POST)
+        .basePath("http://localhost")
+        .path("/issue/1/comment")
+        .requestBody(Optional.of(fields("a")))
+        .build();
+    TestObserver<Void> first = coalescer.write(post).test();
+    TestObserver<Void> second = coalescer.write(post).test();
+
+    Assert.assertEquals(2, httpClient.requestCount);
+    first.assertComplete();
+    second.assertComplete();
+    Assert.assertEquals(0, coalescer.getCoalescedWriteCount());
+  }
+}